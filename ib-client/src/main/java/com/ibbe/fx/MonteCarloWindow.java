@@ -0,0 +1,145 @@
+package com.ibbe.fx;
+
+import com.ibbe.entity.MonteCarloBands;
+import com.ibbe.entity.MonteCarloRequest;
+import com.ibbe.entity.TradeConfig;
+import com.ibbe.websocket.MonteCarloClient;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Font;
+import javafx.stage.Stage;
+
+import java.text.DecimalFormat;
+
+/**
+ * Java FX window client for Monte Carlo robustness runs;
+ * - sends a configuration with the number of simulations, slippage and fee jitter to the server
+ * - draws the percentile bands of the cumulative profit over the resampled chunk sequences as they stream in
+ */
+public class MonteCarloWindow extends TradeConfigWindow {
+
+    private final TextField simulationsField = new TextField("2000");
+    private final TextField slippageField = new TextField("5");
+    private final TextField feeJitterField = new TextField("0.2");
+    private final Button startButton = new Button("Run Simulations");
+    private final Button stopButton = new Button("Stop");
+    private final Label statusLabel = new Label("Status: Ready");
+    private final Label summaryLabel = new Label("");
+
+    private final NumberAxis xAxis = new NumberAxis();
+    private final NumberAxis yAxis = new NumberAxis();
+    private final LineChart<Number, Number> bandsChart = new LineChart<>(xAxis, yAxis);
+    private final DecimalFormat profitFormat = new DecimalFormat("#,##0.00");
+
+    private MonteCarloClient monteCarloClient;
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+
+    @Override
+    public void start(Stage primaryStage) throws Exception {
+        super.start(primaryStage);
+        primaryStage.setTitle("Monte Carlo Robustness");
+        monteCarloClient = new MonteCarloClient(this);
+        primaryStage.setOnCloseRequest(event -> monteCarloClient.shutdown());
+
+        Font font = new Font("Arial", 24);
+        startButton.setFont(font);
+        startButton.setOnAction(event -> startSimulation());
+        stopButton.setFont(font);
+        stopButton.setOnAction(event -> monteCarloClient.stopSimulation());
+        statusLabel.setFont(font);
+        summaryLabel.setFont(font);
+        simulationsField.setPrefWidth(100);
+        slippageField.setPrefWidth(80);
+        feeJitterField.setPrefWidth(80);
+
+        HBox upsDownsBox = new HBox(10, label("Ups:", font), upsField, label("Downs:", font), downsField);
+        upsDownsBox.setAlignment(Pos.CENTER_LEFT);
+        HBox criteriaBox = new HBox(10, avgBidVsAvgAskCheckBox, shortVsLongMovAvgCheckBox, sumAmtUpVsDownCheckBox,
+            tradePriceCloserToAskVsBuyCheckBox);
+        HBox noiseBox = new HBox(10, label("Simulations:", font), simulationsField, label("Slippage (bps):", font),
+            slippageField, label("Fee jitter:", font), feeJitterField);
+        noiseBox.setAlignment(Pos.CENTER_LEFT);
+        HBox buttonBox = new HBox(10, startButton, stopButton);
+
+        xAxis.setLabel("Chunks");
+        yAxis.setLabel("Cumulative profit");
+        bandsChart.setTitle("Profit percentiles over resampled chunk sequences");
+        bandsChart.setCreateSymbols(false);
+        bandsChart.setAnimated(false);
+        bandsChart.setPrefSize(1200, 800);
+
+        VBox root = new VBox(10, upsDownsBox, criteriaBox, noiseBox, buttonBox, statusLabel, summaryLabel, bandsChart);
+        root.setPadding(new Insets(10));
+        Scene scene = new Scene(root);
+        scene.getStylesheets().add(getClass().getResource("/chart.css").toExternalForm());
+        primaryStage.setScene(scene);
+        primaryStage.show();
+    }
+
+    private static Label label(String text, Font font) {
+        Label label = new Label(text);
+        label.setFont(font);
+        return label;
+    }
+
+    private void startSimulation() {
+        try {
+            TradeConfig config = new TradeConfig(generateConfigId(), upsField.getText(), downsField.getText(),
+                avgBidVsAvgAskCheckBox.isSelected(), shortVsLongMovAvgCheckBox.isSelected(),
+                sumAmtUpVsDownCheckBox.isSelected(), tradePriceCloserToAskVsBuyCheckBox.isSelected());
+            MonteCarloRequest request = new MonteCarloRequest(config,
+                Integer.parseInt(simulationsField.getText().trim()),
+                Double.parseDouble(slippageField.getText().trim()),
+                Double.parseDouble(feeJitterField.getText().trim()), 0);
+            bandsChart.getData().clear();
+            summaryLabel.setText("");
+            monteCarloClient.startSimulation(request);
+        } catch (NumberFormatException e) {
+            updateStatus("Invalid number: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Called by the MonteCarloClient with every band update.
+     */
+    public void displayBands(MonteCarloBands bands) {
+        Platform.runLater(() -> {
+            bandsChart.getData().clear();
+            for (int p = 0; p < bands.getPercentiles().length; p++) {
+                XYChart.Series<Number, Number> series = new XYChart.Series<>();
+                series.setName("p" + (int) bands.getPercentiles()[p]);
+                series.getData().add(new XYChart.Data<>(0, 0));
+                for (int i = 0; i < bands.getSteps().length; i++) {
+                    series.getData().add(new XYChart.Data<>(bands.getSteps()[i], bands.getBands()[p][i]));
+                }
+                bandsChart.getData().add(series);
+            }
+            double[][] values = bands.getBands();
+            int last = bands.getSteps().length - 1;
+            summaryLabel.setText("Historical: " + profitFormat.format(bands.getHistoricalProfit())
+                + "   median: " + profitFormat.format(values[values.length / 2][last])
+                + "   p5-p95: " + profitFormat.format(values[0][last]) + " .. "
+                + profitFormat.format(values[values.length - 1][last])
+                + "   P(loss): " + Math.round(bands.getLossProbability() * 100) + "%");
+            statusLabel.setText("Status: " + bands.getSimulationsDone() + " / " + bands.getSimulations()
+                + " simulations over " + bands.getChunks() + " chunks" + (bands.isDone() ? " - done" : ""));
+        });
+    }
+
+    public void updateStatus(String status) {
+        Platform.runLater(() -> statusLabel.setText("Status: " + status));
+    }
+}
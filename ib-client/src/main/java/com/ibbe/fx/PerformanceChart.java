@@ -0,0 +1,645 @@
+package com.ibbe.fx;
+
+import com.ibbe.websocket.ReplayDataset;
+import javafx.animation.AnimationTimer;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Tooltip;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Canvas based chart of the performance analysis data: trade/avg ask/avg bid prices on top, trade/avg ask/avg bid
+ * amounts below, and the pretend buy/sell trades on a separate overlay layer.
+ * <p>
+ * Draws straight from the primitive columns of a {@link ReplayDataset}; when more points are visible than there are
+ * pixel columns, each column is drawn as the min/max of the points falling into it, so the cost of a frame is bounded
+ * by the plot width rather than by scene graph nodes. Redraws are coalesced to at most one per animation pulse.
+ * <ul>
+ *   <li>mouse wheel - zoom around the cursor</li>
+ *   <li>drag - pan</li>
+ *   <li>hover a pretend trade - details tooltip</li>
+ * </ul>
+ */
+public class PerformanceChart extends Region {
+
+    public static final int MIN_VISIBLE_POINTS = 10;
+    private static final double ZOOM_FACTOR = 1.2;
+    private static final double LEFT = 80;
+    private static final double RIGHT = 10;
+    private static final double TOP = 30;
+    private static final double BOTTOM = 22;
+    private static final double GAP = 14;
+    // share of the plot height used by the price pane; the amount pane gets the rest
+    private static final double PRICE_PANE_SHARE = 0.75;
+    private static final double MARKER_SIZE = 7;
+    private static final double HOVER_RADIUS = 8;
+
+    private static final Color TRADE_COLOR = Color.web("#ff0000");
+    private static final Color ASK_COLOR = Color.web("#00ff00");
+    private static final Color BID_COLOR = Color.web("#0000ff");
+    private static final Color BUY_COLOR = Color.web("#00AA00");
+    private static final Color SELL_COLOR = Color.web("#AA0000");
+    private static final Color GRID_COLOR = Color.web("#e4e4e4");
+    private static final Color AXIS_COLOR = Color.web("#888888");
+    private static final Font LABEL_FONT = new Font("Arial", 10);
+
+    private final Canvas seriesCanvas = new Canvas();
+    private final Canvas overlayCanvas = new Canvas();
+    private final SimpleDateFormat xAxisFormatter = new SimpleDateFormat("yy.MM.dd.HH.mm");
+    private final SimpleDateFormat tooltipFormatter = new SimpleDateFormat("MM-dd HH:mm:ss");
+    private final Tooltip markerTooltip = new Tooltip();
+
+    private ReplayDataset data;
+    // first visible row and number of rows in view
+    private int viewStart = 0;
+    private int viewCount;
+    // keep the newest rows in view as data arrives
+    private boolean followLatest = true;
+
+    // y range of the price pane in the last frame (used to place hover hits)
+    private double minPrice;
+    private double maxPrice;
+
+    private double dragStartX;
+    private int dragStartView;
+
+    private boolean dirty = true;
+    private Runnable onViewChanged;
+
+    private final AnimationTimer renderer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            if (dirty) {
+                dirty = false;
+                draw();
+            }
+        }
+    };
+
+    private PerformanceChart(ReplayDataset data, int visiblePoints) {
+        this.data = data;
+        this.viewCount = Math.max(MIN_VISIBLE_POINTS, visiblePoints);
+    }
+
+    /**
+     * creates a chart and starts its render loop; to be called on the FX thread
+     *
+     * @param data          dataset to draw
+     * @param visiblePoints number of rows in view initially
+     */
+    public static PerformanceChart create(ReplayDataset data, int visiblePoints) {
+        PerformanceChart chart = new PerformanceChart(data, visiblePoints);
+        chart.init();
+        return chart;
+    }
+
+    /**
+     * adds the canvases and registers the event handlers; kept out of the constructor so that no handler holds the
+     * chart before it is fully constructed
+     */
+    private void init() {
+        getChildren().addAll(seriesCanvas, overlayCanvas);
+        setMinSize(200, 150);
+
+        overlayCanvas.addEventHandler(ScrollEvent.SCROLL, this::onScroll);
+        overlayCanvas.addEventHandler(MouseEvent.MOUSE_PRESSED, e -> {
+            dragStartX = e.getX();
+            dragStartView = viewStart;
+        });
+        overlayCanvas.addEventHandler(MouseEvent.MOUSE_DRAGGED, this::onDrag);
+        overlayCanvas.addEventHandler(MouseEvent.MOUSE_MOVED, this::onHover);
+        overlayCanvas.addEventHandler(MouseEvent.MOUSE_EXITED, e -> markerTooltip.hide());
+
+        renderer.start();
+    }
+
+    @Override
+    protected void layoutChildren() {
+        double width = snapSizeX(getWidth());
+        double height = snapSizeY(getHeight());
+        if (seriesCanvas.getWidth() != width || seriesCanvas.getHeight() != height) {
+            seriesCanvas.setWidth(width);
+            seriesCanvas.setHeight(height);
+            overlayCanvas.setWidth(width);
+            overlayCanvas.setHeight(height);
+            requestRedraw();
+        }
+    }
+
+    @Override
+    protected double computePrefWidth(double height) {
+        return 1000;
+    }
+
+    @Override
+    protected double computePrefHeight(double width) {
+        return 800;
+    }
+
+    /**
+     * schedules a redraw on the next animation pulse; may be called any number of times per frame
+     */
+    public void requestRedraw() {
+        dirty = true;
+    }
+
+    /**
+     * stops the render loop (when the window closes)
+     */
+    public void dispose() {
+        renderer.stop();
+        markerTooltip.hide();
+    }
+
+    public ReplayDataset getData() {
+        return data;
+    }
+
+    /**
+     * switches to the dataset of a new analysis
+     */
+    public void setData(ReplayDataset data) {
+        this.data = data;
+        dataChanged();
+    }
+
+    /**
+     * to be called (on the FX thread) after rows were appended to the data
+     */
+    public void dataChanged() {
+        if (followLatest) {
+            viewStart = Math.max(0, data.size() - viewCount);
+        }
+        clampView();
+        viewChanged();
+    }
+
+    /**
+     * moves the view to the given relative position
+     *
+     * @param position 0 shows the oldest rows, 1 the newest
+     */
+    public void setViewPosition(double position) {
+        int maxStart = Math.max(0, data.size() - viewCount);
+        viewStart = (int) Math.round(maxStart * Math.min(1, Math.max(0, position)));
+        viewChanged();
+    }
+
+    /**
+     * @return the relative position of the view, 0 for the oldest rows to 1 for the newest
+     */
+    public double getViewPosition() {
+        int maxStart = Math.max(0, data.size() - viewCount);
+        return maxStart == 0 ? 1 : (double) viewStart / maxStart;
+    }
+
+    public void setFollowLatest(boolean followLatest) {
+        this.followLatest = followLatest;
+        if (followLatest) {
+            dataChanged();
+        }
+    }
+
+    public boolean isFollowLatest() {
+        return followLatest;
+    }
+
+    /**
+     * @param onViewChanged called on the FX thread whenever the visible range changes
+     */
+    public void setOnViewChanged(Runnable onViewChanged) {
+        this.onViewChanged = onViewChanged;
+    }
+
+    public int getViewStart() {
+        return viewStart;
+    }
+
+    /**
+     * @return the row after the last visible one
+     */
+    public int getViewEnd() {
+        return Math.min(data.size(), viewStart + viewCount);
+    }
+
+    public int getVisiblePoints() {
+        return viewCount;
+    }
+
+    private void viewChanged() {
+        requestRedraw();
+        if (onViewChanged != null) {
+            onViewChanged.run();
+        }
+    }
+
+    private void clampView() {
+        int size = data.size();
+        viewCount = Math.max(MIN_VISIBLE_POINTS, viewCount);
+        viewStart = Math.max(0, Math.min(viewStart, size - viewCount));
+    }
+
+    private double plotWidth() {
+        return Math.max(1, seriesCanvas.getWidth() - LEFT - RIGHT);
+    }
+
+    private void onScroll(ScrollEvent e) {
+        if (e.getDeltaY() == 0 || data.size() == 0) {
+            return;
+        }
+        // keep the row under the cursor in place
+        double anchorShare = Math.min(1, Math.max(0, (e.getX() - LEFT) / plotWidth()));
+        double anchor = viewStart + anchorShare * viewCount;
+        int newCount = (int) Math.round(e.getDeltaY() > 0 ? viewCount / ZOOM_FACTOR : viewCount * ZOOM_FACTOR);
+        viewCount = Math.max(MIN_VISIBLE_POINTS, Math.min(newCount, Math.max(MIN_VISIBLE_POINTS, data.size())));
+        viewStart = (int) Math.round(anchor - anchorShare * viewCount);
+        followLatest = false;
+        clampView();
+        viewChanged();
+        e.consume();
+    }
+
+    private void onDrag(MouseEvent e) {
+        double pointsPerPixel = viewCount / plotWidth();
+        viewStart = dragStartView - (int) Math.round((e.getX() - dragStartX) * pointsPerPixel);
+        followLatest = false;
+        clampView();
+        viewChanged();
+    }
+
+    private void onHover(MouseEvent e) {
+        int hit = findMarker(e.getX(), e.getY());
+        if (hit < 0) {
+            markerTooltip.hide();
+            return;
+        }
+        boolean buy = data.getPretendSide(hit) == ReplayDataset.BUY;
+        markerTooltip.setText("Trade Type: " + (buy ? "BUY" : "SELL") + "\n"
+            + "Price: " + String.format("%.2f", data.getPretendPrice(hit)) + "\n"
+            + "Amount: " + String.format("%.4f", data.getPretendAmount(hit)) + "\n"
+            + "Time: " + tooltipFormatter.format(new Date(data.getTimestamp(hit))) + "\n"
+            + "Seq: " + data.getSequence(hit));
+        markerTooltip.show(overlayCanvas, e.getScreenX() + 12, e.getScreenY() + 12);
+    }
+
+    /**
+     * @return the row of the pretend trade drawn nearest to the point (within HOVER_RADIUS), or -1
+     */
+    private int findMarker(double x, double y) {
+        int size = data.size();
+        int end = Math.min(size, viewStart + viewCount);
+        if (end <= viewStart || maxPrice <= minPrice) {
+            return -1;
+        }
+        double pixelsPerPoint = plotWidth() / viewCount;
+        int center = viewStart + (int) ((x - LEFT) / pixelsPerPoint);
+        int reach = (int) Math.ceil(HOVER_RADIUS / pixelsPerPoint) + 1;
+        int best = -1;
+        double bestDistance = HOVER_RADIUS * HOVER_RADIUS;
+        for (int i = Math.max(viewStart, center - reach); i < Math.min(end, center + reach + 1); i++) {
+            if (data.getPretendSide(i) == ReplayDataset.NO_TRADE) {
+                continue;
+            }
+            double dx = xOf(i, pixelsPerPoint) - x;
+            double dy = priceY(data.getPretendPrice(i)) - y;
+            double distance = dx * dx + dy * dy;
+            if (distance <= bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private double xOf(int row, double pixelsPerPoint) {
+        return LEFT + (row - viewStart + 0.5) * pixelsPerPoint;
+    }
+
+    private double pricePaneHeight() {
+        return (seriesCanvas.getHeight() - TOP - BOTTOM - GAP) * PRICE_PANE_SHARE;
+    }
+
+    private double priceY(double price) {
+        double paneHeight = pricePaneHeight();
+        return TOP + paneHeight - (price - minPrice) / (maxPrice - minPrice) * paneHeight;
+    }
+
+    /**
+     * renders both layers for the current view
+     */
+    private void draw() {
+        double width = seriesCanvas.getWidth();
+        double height = seriesCanvas.getHeight();
+        GraphicsContext g = seriesCanvas.getGraphicsContext2D();
+        GraphicsContext overlay = overlayCanvas.getGraphicsContext2D();
+        g.clearRect(0, 0, width, height);
+        overlay.clearRect(0, 0, width, height);
+        if (width <= LEFT + RIGHT || height <= TOP + BOTTOM + GAP) {
+            return;
+        }
+
+        // read the size once; the rows below it are complete
+        int size = data.size();
+        int from = Math.min(viewStart, size);
+        int to = Math.min(size, viewStart + viewCount);
+
+        double plotWidth = plotWidth();
+        double priceHeight = pricePaneHeight();
+        double amountTop = TOP + priceHeight + GAP;
+        double amountHeight = height - BOTTOM - amountTop;
+        double pixelsPerPoint = plotWidth / viewCount;
+
+
+        // y range of the visible prices (non-positive values mean missing)
+        minPrice = Double.MAX_VALUE;
+        maxPrice = -Double.MAX_VALUE;
+        double maxAmount = 0;
+        for (int i = from; i < to; i++) {
+            minPrice = minPositive(minPrice, data.getTradePrice(i), data.getAvgAskPrice(i), data.getAvgBidPrice(i));
+            maxPrice = Math.max(maxPrice,
+                Math.max(data.getTradePrice(i), Math.max(data.getAvgAskPrice(i), data.getAvgBidPrice(i))));
+            if (data.getPretendSide(i) != ReplayDataset.NO_TRADE && data.getPretendPrice(i) > 0) {
+                minPrice = Math.min(minPrice, data.getPretendPrice(i));
+                maxPrice = Math.max(maxPrice, data.getPretendPrice(i));
+            }
+            maxAmount = Math.max(maxAmount,
+                Math.max(data.getTradeAmount(i), Math.max(data.getAvgAskAmount(i), data.getAvgBidAmount(i))));
+        }
+        if (minPrice == Double.MAX_VALUE || maxPrice <= 0) {
+            minPrice = 0;
+            maxPrice = 1;
+        }
+        // Add some padding to the Y-axis range (5%)
+        double padding = (maxPrice - minPrice) * 0.05;
+        if (padding < 1) padding = 1000; // Default padding if range is too small
+        minPrice -= padding;
+        maxPrice += padding;
+        if (maxAmount <= 0) {
+            maxAmount = 1;
+        }
+        maxAmount *= 1.1;
+
+        drawGrid(g, plotWidth, priceHeight, amountTop, amountHeight, maxAmount, from, to, pixelsPerPoint);
+
+        // price pane
+        g.save();
+        g.beginPath();
+        g.rect(LEFT, TOP, plotWidth, priceHeight);
+        g.clip();
+        g.setLineWidth(1.5);
+        strokeSeries(g, data::getAvgAskPrice, from, to, pixelsPerPoint, ASK_COLOR);
+        strokeSeries(g, data::getAvgBidPrice, from, to, pixelsPerPoint, BID_COLOR);
+        strokeSeries(g, data::getTradePrice, from, to, pixelsPerPoint, TRADE_COLOR);
+        g.restore();
+
+        // amount pane
+        double amountScale = amountHeight / maxAmount;
+        double baseline = amountTop + amountHeight;
+        if (pixelsPerPoint >= 3) {
+            double barWidth = Math.max(1, pixelsPerPoint * 0.8 / 3);
+            for (int i = from; i < to; i++) {
+                double x = xOf(i, pixelsPerPoint) - barWidth * 1.5;
+                fillBar(g, TRADE_COLOR, x, data.getTradeAmount(i), barWidth, baseline, amountScale);
+                fillBar(g, ASK_COLOR, x + barWidth, data.getAvgAskAmount(i), barWidth, baseline, amountScale);
+                fillBar(g, BID_COLOR, x + 2 * barWidth, data.getAvgBidAmount(i), barWidth, baseline, amountScale);
+            }
+        } else {
+            // one line per pixel column holding the largest amount of the column
+            strokeColumnMax(g, data::getAvgBidAmount, from, to, plotWidth, baseline, amountScale, BID_COLOR);
+            strokeColumnMax(g, data::getAvgAskAmount, from, to, plotWidth, baseline, amountScale, ASK_COLOR);
+            strokeColumnMax(g, data::getTradeAmount, from, to, plotWidth, baseline, amountScale, TRADE_COLOR);
+        }
+
+        drawLegend(g);
+        drawMarkers(overlay, from, to, pixelsPerPoint, plotWidth, priceHeight);
+    }
+
+    private static double minPositive(double current, double a, double b, double c) {
+        if (a > 0) current = Math.min(current, a);
+        if (b > 0) current = Math.min(current, b);
+        if (c > 0) current = Math.min(current, c);
+        return current;
+    }
+
+    /**
+     * strokes one price series; beyond one point per pixel, each pixel column is drawn as a vertical span between the
+     * min and max of its points, entered at its first value and left at its last
+     */
+    private void strokeSeries(GraphicsContext g, IntToDoubleFunction values, int from, int to, double pixelsPerPoint,
+                              Color color) {
+        g.setStroke(color);
+        g.beginPath();
+        boolean started = false;
+        if (pixelsPerPoint >= 1) {
+            for (int i = from; i < to; i++) {
+                if (values.applyAsDouble(i) <= 0) {
+                    continue;
+                }
+                double x = xOf(i, pixelsPerPoint);
+                double y = priceY(values.applyAsDouble(i));
+                if (started) {
+                    g.lineTo(x, y);
+                } else {
+                    g.moveTo(x, y);
+                    started = true;
+                }
+            }
+        } else {
+            int columns = (int) Math.ceil(plotWidth());
+            long count = to - from;
+            for (int column = 0; column < columns; column++) {
+                int start = from + (int) (count * column / columns);
+                int end = from + (int) (count * (column + 1) / columns);
+                double first = 0;
+                double last = 0;
+                double min = Double.MAX_VALUE;
+                double max = -Double.MAX_VALUE;
+                for (int i = start; i < end; i++) {
+                    double value = values.applyAsDouble(i);
+                    if (value <= 0) {
+                        continue;
+                    }
+                    if (first == 0) {
+                        first = value;
+                    }
+                    last = value;
+                    if (value < min) min = value;
+                    if (value > max) max = value;
+                }
+                if (first == 0) {
+                    continue;
+                }
+                double x = LEFT + column + 0.5;
+                if (started) {
+                    g.lineTo(x, priceY(first));
+                } else {
+                    g.moveTo(x, priceY(first));
+                    started = true;
+                }
+                g.lineTo(x, priceY(min));
+                g.lineTo(x, priceY(max));
+                g.lineTo(x, priceY(last));
+            }
+        }
+        g.stroke();
+    }
+
+    private static void fillBar(GraphicsContext g, Color color, double x, double amount, double width,
+                                double baseline, double scale) {
+        if (amount <= 0) {
+            return;
+        }
+        g.setFill(color);
+        double barHeight = amount * scale;
+        g.fillRect(x, baseline - barHeight, width, barHeight);
+    }
+
+    private void strokeColumnMax(GraphicsContext g, IntToDoubleFunction values, int from, int to, double plotWidth,
+                                 double baseline, double scale, Color color) {
+        g.setStroke(color);
+        g.setLineWidth(1);
+        g.beginPath();
+        int columns = (int) Math.ceil(plotWidth);
+        long count = to - from;
+        for (int column = 0; column < columns; column++) {
+            int start = from + (int) (count * column / columns);
+            int end = from + (int) (count * (column + 1) / columns);
+            double max = 0;
+            for (int i = start; i < end; i++) {
+                if (values.applyAsDouble(i) > max) max = values.applyAsDouble(i);
+            }
+            if (max > 0) {
+                double x = LEFT + column + 0.5;
+                g.moveTo(x, baseline);
+                g.lineTo(x, baseline - max * scale);
+            }
+        }
+        g.stroke();
+    }
+
+    /**
+     * draws the pretend trades on the overlay layer; when zoomed out, at most one buy and one sell per pixel column
+     */
+    private void drawMarkers(GraphicsContext overlay, int from, int to, double pixelsPerPoint, double plotWidth,
+                             double priceHeight) {
+        overlay.save();
+        overlay.beginPath();
+        overlay.rect(LEFT - MARKER_SIZE, TOP - MARKER_SIZE, plotWidth + 2 * MARKER_SIZE, priceHeight + 2 * MARKER_SIZE);
+        overlay.clip();
+        if (pixelsPerPoint >= 1) {
+            for (int i = from; i < to; i++) {
+                if (data.getPretendSide(i) != ReplayDataset.NO_TRADE) {
+                    drawMarker(overlay, xOf(i, pixelsPerPoint), priceY(data.getPretendPrice(i)),
+                        data.getPretendSide(i) == ReplayDataset.BUY);
+                }
+            }
+        } else {
+            int columns = (int) Math.ceil(plotWidth);
+            long count = to - from;
+            for (int column = 0; column < columns; column++) {
+                int start = from + (int) (count * column / columns);
+                int end = from + (int) (count * (column + 1) / columns);
+                boolean buyDrawn = false;
+                boolean sellDrawn = false;
+                for (int i = start; i < end && !(buyDrawn && sellDrawn); i++) {
+                    if (data.getPretendSide(i) == ReplayDataset.BUY && !buyDrawn) {
+                        drawMarker(overlay, LEFT + column + 0.5, priceY(data.getPretendPrice(i)), true);
+                        buyDrawn = true;
+                    } else if (data.getPretendSide(i) == ReplayDataset.SELL && !sellDrawn) {
+                        drawMarker(overlay, LEFT + column + 0.5, priceY(data.getPretendPrice(i)), false);
+                        sellDrawn = true;
+                    }
+                }
+            }
+        }
+        overlay.restore();
+    }
+
+    /**
+     * buys are drawn as green triangles pointing up, sells as red triangles pointing down
+     */
+    private static void drawMarker(GraphicsContext g, double x, double y, boolean buy) {
+        g.setFill(buy ? BUY_COLOR : SELL_COLOR);
+        // the tip is above the point for buys, below it for sells
+        double tip = buy ? -MARKER_SIZE : MARKER_SIZE;
+        g.fillPolygon(new double[] {x - MARKER_SIZE, x + MARKER_SIZE, x},
+            new double[] {y - tip / 2, y - tip / 2, y + tip}, 3);
+    }
+
+    private void drawGrid(GraphicsContext g, double plotWidth, double priceHeight, double amountTop,
+                          double amountHeight, double maxAmount, int from, int to, double pixelsPerPoint) {
+        g.setFont(LABEL_FONT);
+        g.setLineWidth(1);
+        g.setTextBaseline(VPos.CENTER);
+
+        // horizontal grid lines with labels
+        g.setTextAlign(TextAlignment.RIGHT);
+        for (int line = 0; line <= 5; line++) {
+            double y = TOP + priceHeight * line / 5;
+            double price = maxPrice - (maxPrice - minPrice) * line / 5;
+            g.setStroke(GRID_COLOR);
+            g.strokeLine(LEFT, y, LEFT + plotWidth, y);
+            g.setFill(AXIS_COLOR);
+            g.fillText(String.format("%,.0f", price), LEFT - 6, y);
+        }
+        for (int line = 0; line <= 2; line++) {
+            double y = amountTop + amountHeight * line / 2;
+            g.setStroke(GRID_COLOR);
+            g.strokeLine(LEFT, y, LEFT + plotWidth, y);
+            g.setFill(AXIS_COLOR);
+            g.fillText(String.format("%.4f", maxAmount - maxAmount * line / 2), LEFT - 6, y);
+        }
+
+        // vertical grid lines every ~180px, labeled "[record #] - [2 digit year].[month].[day].[hour].[min]"
+        g.setTextAlign(TextAlignment.CENTER);
+        g.setTextBaseline(VPos.TOP);
+        int labels = Math.max(1, (int) (plotWidth / 180));
+        for (int label = 0; label <= labels && to > from; label++) {
+            double x = LEFT + plotWidth * label / labels;
+            int row = Math.min(to - 1, viewStart + (int) ((x - LEFT) / pixelsPerPoint));
+            g.setStroke(GRID_COLOR);
+            g.strokeLine(x, TOP, x, amountTop + amountHeight);
+            g.setFill(AXIS_COLOR);
+            g.fillText(data.getSequence(row) + " - " + xAxisFormatter.format(new Date(data.getTimestamp(row))), x,
+                amountTop + amountHeight + 4);
+        }
+
+        g.setStroke(AXIS_COLOR);
+        g.strokeRect(LEFT, TOP, plotWidth, priceHeight);
+        g.strokeRect(LEFT, amountTop, plotWidth, amountHeight);
+    }
+
+    private void drawLegend(GraphicsContext g) {
+        g.setFont(LABEL_FONT);
+        g.setTextAlign(TextAlignment.LEFT);
+        g.setTextBaseline(VPos.CENTER);
+        double x = LEFT;
+        double y = TOP / 2;
+        x = legendItem(g, x, y, TRADE_COLOR, "Trade Price / Amount");
+        x = legendItem(g, x, y, ASK_COLOR, "Avg Ask Price / Amount");
+        x = legendItem(g, x, y, BID_COLOR, "Avg Bid Price / Amount");
+        drawMarker(g, x + 6, y, true);
+        g.setFill(Color.BLACK);
+        g.fillText("Pretend Buy", x + 16, y);
+        drawMarker(g, x + 96, y, false);
+        g.fillText("Pretend Sell", x + 106, y);
+    }
+
+    private static double legendItem(GraphicsContext g, double x, double y, Color color, String text) {
+        g.setFill(color);
+        g.fillRect(x, y - 4, 14, 8);
+        g.setFill(Color.BLACK);
+        g.fillText(text, x + 18, y);
+        return x + 30 + text.length() * 5.5;
+    }
+}
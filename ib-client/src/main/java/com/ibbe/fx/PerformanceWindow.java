@@ -2,16 +2,11 @@ package com.ibbe.fx;
 
 import com.ibbe.entity.TradeSnapshot;
 import com.ibbe.websocket.PerformanceAnalysisClient;
+import com.ibbe.websocket.ReplayDataset;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
-import javafx.scene.Node;
 import javafx.scene.Scene;
-import javafx.scene.chart.BarChart;
-import javafx.scene.chart.CategoryAxis;
-import javafx.scene.chart.LineChart;
-import javafx.scene.chart.NumberAxis;
-import javafx.scene.chart.XYChart;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ScrollPane;
@@ -22,26 +17,17 @@ import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Font;
 import javafx.stage.Stage;
-import javafx.util.StringConverter;
-import javafx.scene.CacheHint;
-import javafx.scene.control.SplitPane;
 import javafx.scene.paint.Color;
-import javafx.geometry.Orientation;
-import javafx.animation.PauseTransition;
-import javafx.util.Duration;
 
 import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.List;
-import java.util.ArrayList;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.stream.Collectors;
-import java.util.Comparator;
 
 /**
  * Java FX window client for performance analysis;
@@ -53,62 +39,39 @@ public class PerformanceWindow extends TradeConfigWindow implements PerformanceW
     // mode of run depending on which button they push
     private int mode = 1;
     
-    // Maximum number of data points to keep in memory - reduced from 1000 to 500
-    private static final int MAX_DATA_POINTS = 500;
-    
-    // Number of data points to display in the visible window - increased from 30 to 50
+    // Number of data points initially displayed in the visible window (zoom with the mouse wheel to see more)
     private static final int VISIBLE_DATA_POINTS = 50;
     
     // Maximum number of trade history entries to keep
     private static final int MAX_TRADE_HISTORY = 100;
     
-    // Date formatter for X-axis
-    private final SimpleDateFormat dateFormatter = new SimpleDateFormat("MM-dd HH:mm:ss");
-    private final SimpleDateFormat xAxisFormatter = new SimpleDateFormat("yy.MM.dd.HH.mm");
-    
-    private NumberAxis xAxis = new NumberAxis();
-    private NumberAxis yAxis = new NumberAxis();
-    private LineChart<Number, Number> lineChart;
-    private XYChart.Series<Number, Number> tradePriceSeries = new XYChart.Series<>();
-    private XYChart.Series<Number, Number> avgAskPriceSeries = new XYChart.Series<>();
-    private XYChart.Series<Number, Number> avgBidPriceSeries = new XYChart.Series<>();
-    
-    // Add permanent pretend trade series
-    private XYChart.Series<Number, Number> pretendBuySeries = new XYChart.Series<>();
-    private XYChart.Series<Number, Number> pretendSellSeries = new XYChart.Series<>();
+    // How often the chart checks the client's dataset for new records
+    private static final long CHART_SYNC_INTERVAL_MS = 250;
     
-    // Amount chart components
-    private CategoryAxis amountXAxis = new CategoryAxis();
-    private NumberAxis amountYAxis = new NumberAxis();
-    private BarChart<String, Number> amountChart;
-    private XYChart.Series<String, Number> tradeAmountSeries = new XYChart.Series<>();
-    private XYChart.Series<String, Number> avgAskAmountSeries = new XYChart.Series<>();
-    private XYChart.Series<String, Number> avgBidAmountSeries = new XYChart.Series<>();
+    // The canvas chart drawing the client's dataset, and the number of rows it has been told about
+    private PerformanceChart performanceChart;
+    private int chartRows = 0;
     
     private Button visualReplayButton = new Button("Visual Replay");
     
 
     private Label statusLabel = new Label("Status: Ready");
-    private ScrollPane chartScrollPane;
     private Slider timeSlider;
     private Button liveButton;
     
     private PerformanceAnalysisClient performanceClient;
     
-    // Queue to store data points for updating the chart
-    private final LinkedList<TradeSnapshot> dataPoints = new LinkedList<>();
     private final AtomicInteger sequenceNumber = new AtomicInteger(0);
     
-    // Flag to indicate if chart is initialized
-    private boolean chartInitialized = false;
-    
     // Flag to indicate if we're in live mode (auto-scrolling to latest data)
     private final AtomicBoolean liveMode = new AtomicBoolean(true);
     
     // Flag to prevent recursive slider updates
     private boolean isUpdatingSlider = false;
     
-    private Timer resizeTimer;
+    // Timer copying new records into the chart data, and the debounce timer of the trade history
+    private Timer chartSyncTimer;
+    private Timer tradeHistoryTimer;
     
     // Add primaryStage as a class member
     private Stage primaryStage;
@@ -138,12 +101,6 @@ public class PerformanceWindow extends TradeConfigWindow implements PerformanceW
     // Add a version label to track changes
     private Label versionLabel = new Label("VERSION #24");
     
-    // Add a timer for continuous pretend trade visibility checks
-    private Timer continuousCheckTimer;
-    
-    // Flag to prevent slider updates during data loading
-    private AtomicBoolean isDataLoading = new AtomicBoolean(false);
-    
     public static void main(String[] args) {
         launch(args);
     }
@@ -151,7 +108,7 @@ public class PerformanceWindow extends TradeConfigWindow implements PerformanceW
     @Override
     public void start(Stage primaryStage) throws Exception {
         super.start(primaryStage);
-        // Store the primaryStage reference for use in setupChartControls
+        // Store the primaryStage reference
         this.primaryStage = primaryStage;
         
         primaryStage.setTitle("Performance Analysis");
@@ -164,147 +121,10 @@ public class PerformanceWindow extends TradeConfigWindow implements PerformanceW
         // Set version label style
         versionLabel.setStyle("-fx-text-fill: #888888; -fx-font-size: 8pt;");
         
-        // Initialize chart with improved axis configuration
-        xAxis.setLabel("Record #");
-        yAxis.setLabel("$USD");
-        xAxis.setAutoRanging(false);  // We'll control the range manually
-        yAxis.setAutoRanging(false);  // We'll control the range manually
-        yAxis.setForceZeroInRange(false); // Don't force zero in the range for better zoom
-        
-        // Simple number formatter for X-axis
-        xAxis.setTickLabelFormatter(new StringConverter<Number>() {
-            @Override
-            public String toString(Number value) {
-                // The value is the sequence number
-                int seq = value.intValue();
-                
-                // Find the corresponding data point if available
-                synchronized (dataPoints) {
-                    for (TradeSnapshot point : dataPoints) {
-                        if (point.getSequence() == seq) {
-                            // Format as "[offset #] - [2 digit year].[month].[day].[hour].[min]"
-                            return seq + " - " + xAxisFormatter.format(new Date(point.getTimestamp()));
-                        }
-                    }
-                }
-                
-                // Fallback if no matching data point is found
-                return String.valueOf(seq);
-            }
-
-            @Override
-            public Number fromString(String string) {
-                try {
-                    // Extract the sequence number from the beginning
-                    if (string.contains(" - ")) {
-                        return Integer.parseInt(string.substring(0, string.indexOf(" - ")));
-                    }
-                    return Integer.parseInt(string);
-                } catch (Exception e) {
-                    return 0;
-                }
-            }
-        });
-        
-        // Set up series with different styles
-        tradePriceSeries.setName("Trade Price");
-        avgAskPriceSeries.setName("Avg Ask Price");
-        avgBidPriceSeries.setName("Avg Bid Price");
-        
-        // Set up pretend trade series
-        pretendBuySeries.setName("Pretend Buy");
-        pretendSellSeries.setName("Pretend Sell");
-        
-        // Create the line chart
-        lineChart = new LineChart<>(xAxis, yAxis);
-        lineChart.setTitle("Performance Analysis");
-        lineChart.setPrefHeight(600);  // Initial height, will be adjusted by layout constraints
-        lineChart.setPrefWidth(1000);
-        lineChart.setAnimated(false); // Disable animations for better performance
-        lineChart.setCreateSymbols(true); // Show data points
-        lineChart.setHorizontalGridLinesVisible(true);
-        lineChart.setVerticalGridLinesVisible(true);
-        lineChart.setHorizontalZeroLineVisible(false);
-        lineChart.setVerticalZeroLineVisible(false);
-        lineChart.setCache(true); // Enable caching for better performance
-        lineChart.setCacheHint(CacheHint.SPEED); // Optimize for speed
-        
-        // Add more bottom padding for diagonal X-axis labels
-        lineChart.setPadding(new Insets(10, 10, 40, 10));
-        
-        // Make the symbols larger and more visible and add specific styling for pretend trade series
-        lineChart.setStyle(
-            ".chart-series-line { -fx-stroke-width: 2px; } " +
-            ".chart-symbol { -fx-background-radius: 5px; -fx-padding: 5px; } " +
-            ".default-color3.chart-series-line { -fx-stroke: transparent; -fx-stroke-width: 0; } " + // Pretend Buy series (index 3)
-            ".default-color4.chart-series-line { -fx-stroke: transparent; -fx-stroke-width: 0; }"    // Pretend Sell series (index 4)
-        );
-        
-        // Initialize and configure the amount chart
-        amountXAxis.setLabel("Record #");
-        amountYAxis.setLabel("Amount");
-        amountYAxis.setAutoRanging(false);   // We'll control the range manually
-        amountYAxis.setForceZeroInRange(false); // Don't force zero in the range for better zoom
-        
-        // Use the same formatter for the amount chart X-axis
-        amountXAxis.setTickLabelRotation(90); // Rotate labels 90 degrees
-        
-        // Set up amount series with the same colors as the price series
-        tradeAmountSeries.setName("Trade Amount");
-        avgAskAmountSeries.setName("Avg Ask Amount");
-        avgBidAmountSeries.setName("Avg Bid Amount");
-        
-        // Create the bar chart
-        amountChart = new BarChart<>(amountXAxis, amountYAxis);
-        amountChart.setTitle("Amount Analysis");
-        amountChart.setPrefHeight(200);  // Initial height, will be adjusted by layout constraints
-        amountChart.setPrefWidth(1000);
-        amountChart.setAnimated(false);
-        amountChart.setHorizontalGridLinesVisible(true);
-        amountChart.setVerticalGridLinesVisible(true);
-        amountChart.setHorizontalZeroLineVisible(true);
-        amountChart.setVerticalZeroLineVisible(false);
-        amountChart.setCache(true); // Enable caching for better performance
-        amountChart.setCacheHint(CacheHint.SPEED); // Optimize for speed
-        
-        // Configure bar chart specific properties with more space between bars
-        amountChart.setCategoryGap(10);  // Increased from 2 for more space between categories
-        amountChart.setBarGap(2);        // Increased from 1 for more space between bars in the same category
-        
-        // Add more bottom padding for diagonal X-axis labels
-        amountChart.setPadding(new Insets(10, 10, 40, 10));
-        
-        // Add series to charts - do this before applying styles
-        lineChart.getData().addAll(tradePriceSeries, avgAskPriceSeries, avgBidPriceSeries, pretendBuySeries, pretendSellSeries);
-        amountChart.getData().addAll(tradeAmountSeries, avgAskAmountSeries, avgBidAmountSeries);
-        
-        // Apply custom colors to the series
-        applySeriesStyles();
-        
-        // Style the pretend trade series to have no line
-        if (pretendBuySeries.getNode() != null) {
-            pretendBuySeries.getNode().setStyle("-fx-stroke: transparent; -fx-stroke-width: 0;");
-        }
-        if (pretendSellSeries.getNode() != null) {
-            pretendSellSeries.getNode().setStyle("-fx-stroke: transparent; -fx-stroke-width: 0;");
-        }
-        
-        // Style the pretend trade series legend symbols
-        Platform.runLater(() -> {
-            Node buyLegendSymbol = pretendBuySeries.getNode().lookup(".chart-legend-item-symbol");
-            if (buyLegendSymbol != null) {
-                buyLegendSymbol.setStyle("-fx-background-color: #00AA00; -fx-background-radius: 0px; -fx-padding: 8px;");
-                buyLegendSymbol.setRotate(180); // Point upward
-            }
-            
-            Node sellLegendSymbol = pretendSellSeries.getNode().lookup(".chart-legend-item-symbol");
-            if (sellLegendSymbol != null) {
-                sellLegendSymbol.setStyle("-fx-background-color: #AA0000; -fx-background-radius: 0px; -fx-padding: 8px;");
-                sellLegendSymbol.setRotate(0); // Point downward
-            }
-        });
+        // Create the chart; it draws the price lines, the amount bars and the pretend trades on canvases
+        performanceChart = PerformanceChart.create(new ReplayDataset(), VISIBLE_DATA_POINTS);
+        performanceChart.setOnViewChanged(this::onChartViewChanged);
         
-
         // Set up labels
         Label upsLabel = new Label("Ups:");
         Label downsLabel = new Label("Downs:");
@@ -371,28 +191,12 @@ public class PerformanceWindow extends TradeConfigWindow implements PerformanceW
         timeSlider.setShowTickLabels(true);
         HBox.setHgrow(timeSlider, Priority.ALWAYS);  // Allow slider to grow horizontally
         
-        // Add listener to time slider
+        // Add listener to time slider; ignore the changes made while following the chart view
         timeSlider.valueProperty().addListener((obs, oldVal, newVal) -> {
-            if (oldVal.doubleValue() != newVal.doubleValue() && !tradePriceSeries.getData().isEmpty()) {
+            if (!isUpdatingSlider && oldVal.doubleValue() != newVal.doubleValue()) {
                 // When slider is moved, exit live mode
-                if (liveMode.get() && oldVal.doubleValue() != 1.0) {
-                    liveMode.set(false);
-                    liveButton.setText("Go Live");
-                }
-                
-                // Use a timer to debounce slider events
-                if (resizeTimer != null) {
-                    resizeTimer.cancel();
-                }
-                resizeTimer = new Timer();
-                resizeTimer.schedule(new TimerTask() {
-                    @Override
-                    public void run() {
-                        Platform.runLater(() -> {
-                            updateChartView(newVal.doubleValue());
-                        });
-                    }
-                }, 100); // 100ms delay for smoother updates
+                setLiveMode(false);
+                performanceChart.setViewPosition(newVal.doubleValue());
             }
         });
         
@@ -400,52 +204,17 @@ public class PerformanceWindow extends TradeConfigWindow implements PerformanceW
         liveButton = new Button("Live");
         liveButton.setPrefSize(100, 30);
         liveButton.setFont(new Font("Arial", 14));
-        liveButton.setOnAction(event -> {
-            liveMode.set(!liveMode.get());
-            if (liveMode.get()) {
-                liveButton.setText("Live");
-                timeSlider.setValue(1.0);
-                updateChartView(1.0);
-            } else {
-                liveButton.setText("Go Live");
-            }
-        });
+        liveButton.setOnAction(event -> setLiveMode(!liveMode.get()));
         
         // Create slider layout
         HBox sliderBox = new HBox(10, timeSlider, liveButton);
         sliderBox.setAlignment(Pos.CENTER);
         sliderBox.setPadding(new Insets(10, 10, 0, 10));
         
-        // Wrap the price chart in a ScrollPane
-        chartScrollPane = new ScrollPane(lineChart);
-        chartScrollPane.setFitToHeight(true);
-        chartScrollPane.setFitToWidth(true);
-        chartScrollPane.setPannable(true);
-        chartScrollPane.setHbarPolicy(ScrollPane.ScrollBarPolicy.NEVER); // Use our custom slider instead
-        chartScrollPane.setVbarPolicy(ScrollPane.ScrollBarPolicy.NEVER);
-        VBox.setVgrow(chartScrollPane, Priority.ALWAYS);  // Allow to grow vertically
-        
-        // Wrap the amount chart in a ScrollPane
-        ScrollPane amountScrollPane = new ScrollPane(amountChart);
-        amountScrollPane.setFitToHeight(true);
-        amountScrollPane.setFitToWidth(true);
-        amountScrollPane.setPannable(true);
-        amountScrollPane.setHbarPolicy(ScrollPane.ScrollBarPolicy.NEVER); // Use our custom slider instead
-        amountScrollPane.setVbarPolicy(ScrollPane.ScrollBarPolicy.NEVER);
-        VBox.setVgrow(amountScrollPane, Priority.ALWAYS);  // Allow to grow vertically
-        
-        // Create a VBox to hold both charts with a SplitPane to allow resizing
-        VBox chartsBox = new VBox(10);
+        // Create a VBox to hold the chart
+        VBox chartsBox = new VBox(10, performanceChart);
         VBox.setVgrow(chartsBox, Priority.ALWAYS);  // Allow charts box to grow vertically
-        
-        // Create a SplitPane to hold both charts with vertical orientation
-        SplitPane splitPane = new SplitPane();
-        splitPane.setOrientation(Orientation.VERTICAL);
-        splitPane.getItems().addAll(chartScrollPane, amountScrollPane);
-        splitPane.setDividerPositions(0.75);
-        VBox.setVgrow(splitPane, Priority.ALWAYS);  // Allow split pane to grow vertically
-        
-        chartsBox.getChildren().add(splitPane);
+        VBox.setVgrow(performanceChart, Priority.ALWAYS);
         
         // Style the balance and profit labels
         balanceLabel.setFont(new Font("Arial", 20));
@@ -570,662 +339,110 @@ public class PerformanceWindow extends TradeConfigWindow implements PerformanceW
         // Initialize WebSocket client
         performanceClient = new PerformanceAnalysisClient(this);
         
-        // Initialize chart with some default values to ensure it displays properly
-        initializeChart();
-        
-        // Setup chart controls
-        setupChartControls();
-        
-        // Start continuous checks for pretend trade visibility
-        startContinuousChecksForPretendTrades();
-        
-        // Schedule immediate checks for pretend trades visibility
-        scheduleMultipleChecksForPretendTrades();
+        // Initialize WebSocket client
+        performanceClient = new PerformanceAnalysisClient(this);
         
-        // Force a layout pass to ensure everything is properly displayed
-                    Platform.runLater(() -> {
-                        lineChart.layout();
-                        amountChart.layout();
-                        
-            // Ensure pretend trade series are in the chart
-            ensurePretendTradesVisible();
-        });
-    }
-    
-    /**
-     * Sets up the chart controls, including slider and window resize listeners.
-     */
-    private void setupChartControls() {
-        // Add scroll listener to the slider
-        timeSlider.valueProperty().addListener((obs, oldVal, newVal) -> {
-            if (newVal != null && !isUpdatingSlider && !isDataLoading.get() && performanceClient != null) {
-                isUpdatingSlider = true;
-                try {
-                    // Only update if the value has actually changed
-                    if (oldVal == null || oldVal.doubleValue() != newVal.doubleValue()) {
-                        // Cancel any pending resize timer
-                        if (resizeTimer != null) {
-                            resizeTimer.cancel();
-                        }
-                        
-                        // Update the chart view with the new slider value
-                        updateChartView(newVal.doubleValue());
-                        
-                        // Ensure pretend trades are visible when scrolling starts
-                        ensurePretendTradesVisible();
-                    }
-                } finally {
-                    isUpdatingSlider = false;
-                }
-            }
-        });
-
-        // Add scroll stop listener to the slider
-        timeSlider.setOnMouseReleased(event -> {
-            // Only process if not loading data
-            if (!isDataLoading.get()) {
-                // Schedule multiple checks to ensure pretend trades remain visible after scrolling stops
-                scheduleMultipleChecksForPretendTrades();
-            }
-        });
-
-        // Add mouse pressed listener to ensure pretend trades are visible when scrolling starts
-        timeSlider.setOnMousePressed(event -> {
-            // Only process if not loading data
-            if (!isDataLoading.get()) {
-                ensurePretendTradesVisible();
-            }
-        });
-
-        // Add window resize listener
-        primaryStage.widthProperty().addListener((obs, oldVal, newVal) -> {
-            if (newVal != null) {
-                // Schedule multiple checks to ensure pretend trades remain visible after resize
-                scheduleMultipleChecksForPretendTrades();
-            }
-        });
-
-        primaryStage.heightProperty().addListener((obs, oldVal, newVal) -> {
-            if (newVal != null) {
-                // Schedule multiple checks to ensure pretend trades remain visible after resize
-                scheduleMultipleChecksForPretendTrades();
-            }
-        });
-
-        // Add a listener for when the user releases the mouse after dragging the slider
-        timeSlider.setOnMouseReleased(event -> {
-            if (!isUpdatingSlider) {
-                    Platform.runLater(() -> {
-                    ensurePretendTradesVisible();
-                    disablePretendTradeLines();
-                    
-                    // Force a layout pass
-                        lineChart.layout();
-                    
-                    // Schedule a final check after a short delay
-                    PauseTransition pause = new PauseTransition(Duration.millis(100));
-                    pause.setOnFinished(e -> {
-                        ensurePretendTradesVisible();
-                        disablePretendTradeLines();
-                        lineChart.layout();
-                    });
-                    pause.play();
-                });
+        // Show newly received records on the chart
+        chartSyncTimer = new Timer("chart-sync", true);
+        chartSyncTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                Platform.runLater(() -> syncChartData());
             }
-        });
-
-        // Add window resize listeners
-        primaryStage.widthProperty().addListener((obs, oldVal, newVal) -> {
-            Platform.runLater(() -> {
-                ensurePretendTradesVisible();
-                disablePretendTradeLines();
-                lineChart.layout();
-            });
-        });
+        }, CHART_SYNC_INTERVAL_MS, CHART_SYNC_INTERVAL_MS);
         
-        primaryStage.heightProperty().addListener((obs, oldVal, newVal) -> {
-            Platform.runLater(() -> {
-                ensurePretendTradesVisible();
-                disablePretendTradeLines();
-                lineChart.layout();
-            });
+        primaryStage.setOnHidden(event -> {
+            chartSyncTimer.cancel();
+            performanceChart.dispose();
         });
     }
     
     /**
-     * Updates the chart view based on the slider position.
-     * 
-     * @param sliderValue The value of the slider (0.0 to 1.0)
+     * Points the chart at the client's dataset and refreshes it if records were added since the last call.
+     * Must be called on the FX thread.
      */
-    private void updateChartView(double sliderValue) {
-        // Check if performanceClient is null
+    private void syncChartData() {
         if (performanceClient == null) {
             return;
         }
-        
-        // Get the current dataset size from the client
-        final int totalPoints = performanceClient.getDatasetSize();
-        final int totalRecords = performanceClient.getTotalRecordsReceived();
-        
-        if (totalPoints == 0) {
-                return;
-            }
-            
-            // Calculate the visible range based on slider value
-        final int visiblePoints = Math.min(VISIBLE_DATA_POINTS, totalPoints);
-            
-            // Calculate the start index based on slider value
-        final int startIndex = Math.max(0, Math.min(
-            (int) Math.round((totalPoints - visiblePoints) * sliderValue),
-            totalPoints - visiblePoints));
-        
-        // Update the data summary label
-        final int endIndex = Math.min(startIndex + visiblePoints - 1, totalPoints - 1);
-        Platform.runLater(() -> {
-            dataSummaryLabel.setText(String.format("Data: %,d records (showing %,d-%,d of %,d)", 
-                totalRecords, startIndex + 1, endIndex + 1, totalPoints));
-        });
-        
-        // Get the window of data from the client
-        List<TradeSnapshot> windowData =
-            performanceClient.getDataWindow(startIndex, visiblePoints);
-        
-        if (windowData.isEmpty()) {
+        ReplayDataset dataset = performanceClient.getDataset();
+        int rows = dataset.size();
+        if (dataset != performanceChart.getData()) {
+            // a new analysis was started
+            performanceChart.setData(dataset);
+        } else if (rows != chartRows) {
+            performanceChart.dataChanged();
+        } else {
             return;
         }
+        chartRows = rows;
         
-        // First, update the trade history with all pretend trades in the window
-        updateTradeHistoryFromWindow(windowData);
-        
-        // Then update the chart with the window data
-        updateChartWithWindowData(windowData, startIndex);
+        // Update the status label with the total records received
+        updateStatus(String.format("Received %,d records (keeping %,d in memory)",
+            performanceClient.getTotalRecordsReceived(), performanceClient.getDatasetSize()));
     }
     
     /**
-     * Update the chart with data from the current window
+     * Switches live mode (keeping the newest records in view) on or off.
      */
-    private void updateChartWithWindowData(List<TradeSnapshot> windowData, int startIndex) {
-        // First, ensure pretend trades are visible
-        ensurePretendTradesVisible();
-        
-        // Store all pretend trades from the window data for later re-addition
-        // CRITICAL: Filter ONLY for pretend trades by checking if pretendTrade is not null
-        List<TradeSnapshot> pretendTradePoints = windowData.stream()
-            .filter(p -> p.getPretendTrade() != null)
-            .toList();
-        
-
-        // Set data loading flag to true
-        isDataLoading.set(true);
-        
-        Platform.runLater(() -> {
-            try {
-                // Store current pretend trade data before clearing
-//                List<XYChart.Data<Number, Number>> currentPretendBuyData = new ArrayList<>(pretendBuySeries.getData());
-//                List<XYChart.Data<Number, Number>> currentPretendSellData = new ArrayList<>(pretendSellSeries.getData());
-                
-                // Clear existing data in price chart
-                tradePriceSeries.getData().clear();
-                avgAskPriceSeries.getData().clear();
-                avgBidPriceSeries.getData().clear();
-                
-                // Clear existing data in amount chart
-                tradeAmountSeries.getData().clear();
-                avgAskAmountSeries.getData().clear();
-                avgBidAmountSeries.getData().clear();
-                
-                // Clear existing categories in amount chart
-                amountXAxis.getCategories().clear();
-                
-                // Clear existing pretend trade data
-                pretendBuySeries.getData().clear();
-                pretendSellSeries.getData().clear();
-                
-                // Ensure pretend trade series are in the chart and properly styled
-                if (!lineChart.getData().contains(pretendBuySeries)) {
-                    lineChart.getData().add(pretendBuySeries);
-                }
-                if (!lineChart.getData().contains(pretendSellSeries)) {
-                    lineChart.getData().add(pretendSellSeries);
-                }
-                
-                // Style the pretend trade series to have no line
-                if (pretendBuySeries.getNode() != null) {
-                    pretendBuySeries.getNode().setStyle("-fx-stroke: transparent; -fx-stroke-width: 0;");
-                }
-                if (pretendSellSeries.getNode() != null) {
-                    pretendSellSeries.getNode().setStyle("-fx-stroke: transparent; -fx-stroke-width: 0;");
-                }
-            
-            // Find min and max Y values in the visible range to auto-scale Y-axis
-            double minY = Double.MAX_VALUE;
-            double maxY = Double.MIN_VALUE;
-                double maxAmount = 0.0;
-                
-                // Batch data points for more efficient rendering
-                List<XYChart.Data<Number, Number>> tradePriceData = new ArrayList<>();
-                List<XYChart.Data<Number, Number>> avgAskPriceData = new ArrayList<>();
-                List<XYChart.Data<Number, Number>> avgBidPriceData = new ArrayList<>();
-                
-                // Lists for amount chart data
-                List<String> amountCategories = new ArrayList<>();
-                List<XYChart.Data<String, Number>> tradeAmountData = new ArrayList<>();
-                List<XYChart.Data<String, Number>> avgAskAmountData = new ArrayList<>();
-                List<XYChart.Data<String, Number>> avgBidAmountData = new ArrayList<>();
-                
-                // Process each data point in the window
-                for (int i = 0; i < windowData.size(); i++) {
-                    TradeSnapshot point = windowData.get(i);
-                    int seq = point.getSequence();
-                    
-                    // Add data to the price series
-                double tradePrice = point.getTradePrice();
-                    tradePriceData.add(new XYChart.Data<>(seq, tradePrice));
-                    if (tradePrice > 0) {
-                    minY = Math.min(minY, tradePrice);
-                    maxY = Math.max(maxY, tradePrice);
-                }
-                
-                double askPrice = point.getAvgAskPrice();
-                    avgAskPriceData.add(new XYChart.Data<>(seq, askPrice));
-                    if (askPrice > 0) {
-                    minY = Math.min(minY, askPrice);
-                    maxY = Math.max(maxY, askPrice);
-                }
-                
-                double bidPrice = point.getAvgBidPrice();
-                    avgBidPriceData.add(new XYChart.Data<>(seq, bidPrice));
-                    if (bidPrice > 0) {
-                    minY = Math.min(minY, bidPrice);
-                    maxY = Math.max(maxY, bidPrice);
-                }
-                    
-                    // Add pretend trade to the price chart if present
-                    if (point.getPretendTrade() != null && point.getPretendTrade().getPrice() != null) {
-                        com.ibbe.entity.Trade trade = point.getPretendTrade();
-                        double pretendTradePrice = trade.getPrice().doubleValue();
-                        if (pretendTradePrice > 0) {
-                            minY = Math.min(minY, pretendTradePrice);
-                            maxY = Math.max(maxY, pretendTradePrice);
-                        }
-                        
-                        // Add the trade point to the appropriate pretend trade series
-                        XYChart.Data<Number, Number> tradePoint = new XYChart.Data<>(seq, pretendTradePrice);
-                        String tradeType = trade.getMakerSide();
-                        
-                        if (tradeType.toLowerCase().contains("buy")) {
-                            pretendBuySeries.getData().add(tradePoint);
-                            
-                            // Style the trade point as a solid green triangle
-                            if (tradePoint.getNode() != null) {
-                                tradePoint.getNode().setStyle("-fx-background-color: #00AA00; -fx-background-radius: 0px; -fx-padding: 8px;");
-                                tradePoint.getNode().setRotate(180); // Point upward
-                            }
-                        } else {
-                            pretendSellSeries.getData().add(tradePoint);
-                            
-                            // Style the trade point as a solid red triangle
-                            if (tradePoint.getNode() != null) {
-                                tradePoint.getNode().setStyle("-fx-background-color: #AA0000; -fx-background-radius: 0px; -fx-padding: 8px;");
-                                tradePoint.getNode().setRotate(0); // Point downward
-                            }
-                        }
-                        
-                        // Add tooltip to the trade point
-                        StringBuilder tooltipText = new StringBuilder();
-                        tooltipText.append("Trade Type: ").append(tradeType.toUpperCase()).append("\n");
-                        tooltipText.append("Price: ").append(String.format("%.2f", trade.getPrice())).append("\n");
-                        tooltipText.append("Amount: ").append(String.format("%.4f", trade.getAmount())).append("\n");
-                        tooltipText.append("Time: ").append(dateFormatter.format(new Date(point.getTimestamp()))).append("\n");
-                        
-                        Tooltip tooltip = new Tooltip(tooltipText.toString());
-                        Tooltip.install(tradePoint.getNode(), tooltip);
-                    }
-                    
-                    // Add data to the amount chart
-                    String seqStr = String.valueOf(seq);
-                    amountCategories.add(seqStr);
-                    
-                    double tradeAmount = point.getTradeAmount();
-                    if (tradeAmount > 0) {
-                        tradeAmountData.add(new XYChart.Data<>(seqStr, tradeAmount));
-                        maxAmount = Math.max(maxAmount, tradeAmount);
-                    }
-                    
-                    double askAmount = point.getAvgAskAmount();
-                    if (askAmount > 0) {
-                        avgAskAmountData.add(new XYChart.Data<>(seqStr, askAmount));
-                        maxAmount = Math.max(maxAmount, askAmount);
-                    }
-                    
-                    double bidAmount = point.getAvgBidAmount();
-                    if (bidAmount > 0) {
-                        avgBidAmountData.add(new XYChart.Data<>(seqStr, bidAmount));
-                        maxAmount = Math.max(maxAmount, bidAmount);
-                    }
-                }
-                
-                // Add all data points to the series at once for better performance
-                tradePriceSeries.getData().addAll(tradePriceData);
-                avgAskPriceSeries.getData().addAll(avgAskPriceData);
-                avgBidPriceSeries.getData().addAll(avgBidPriceData);
-                
-                // Add categories to amount chart
-                amountXAxis.getCategories().addAll(amountCategories);
-                
-                // Add amount data to series
-                tradeAmountSeries.getData().addAll(tradeAmountData);
-                avgAskAmountSeries.getData().addAll(avgAskAmountData);
-                avgBidAmountSeries.getData().addAll(avgBidAmountData);
-                
-                // Apply styles to the amount chart series
-                for (XYChart.Data<String, Number> data : tradeAmountSeries.getData()) {
-                    if (data.getNode() != null) {
-                        data.getNode().setStyle("-fx-bar-fill: #ff0000;");
-                    }
-                }
-                
-                for (XYChart.Data<String, Number> data : avgAskAmountSeries.getData()) {
-                    if (data.getNode() != null) {
-                        data.getNode().setStyle("-fx-bar-fill: #00ff00;");
-                    }
-                }
-                
-                for (XYChart.Data<String, Number> data : avgBidAmountSeries.getData()) {
-                    if (data.getNode() != null) {
-                        data.getNode().setStyle("-fx-bar-fill: #0000ff;");
-                }
-            }
-            
-            // Add some padding to the Y-axis range (5%)
-            double padding = (maxY - minY) * 0.05;
-            if (padding < 1) padding = 1000; // Default padding if range is too small
-            
-            // Update Y-axis range if we found valid min/max values
-            if (minY != Double.MAX_VALUE && maxY != Double.MIN_VALUE) {
-                yAxis.setLowerBound(minY - padding);
-                yAxis.setUpperBound(maxY + padding);
-                }
-                
-                // Set a reasonable range for the amount chart
-                if (maxAmount > 0) {
-                    amountYAxis.setLowerBound(0);
-                    amountYAxis.setUpperBound(maxAmount * 1.1); // Add 10% padding
-            } else {
-                    amountYAxis.setLowerBound(0);
-                    amountYAxis.setUpperBound(1);
-                }
-                
-                // Update X-axis range to match the window data
-                int minSeq = windowData.get(0).getSequence();
-                int maxSeq = windowData.get(windowData.size() - 1).getSequence();
-                xAxis.setLowerBound(minSeq);
-                xAxis.setUpperBound(maxSeq);
-                xAxis.setTickUnit(Math.max(1, (maxSeq - minSeq) / 10)); // Adjust tick unit for readability
-                
-                // Apply styles to the data points
-                applySeriesStyles();
-            
-            // Force a layout pass to ensure both charts are updated
-                lineChart.layout();
-                amountChart.layout();
-                
-                // Update the trade history with all pretend trades in the window
-                updateTradeHistoryFromWindow(windowData);
-                
-                // Double-check that all pretend trades are still in the chart
-                // This is a critical step to ensure they remain visible
-                ensurePretendTradesVisible();
-                disablePretendTradeLines();
-                
-                // Schedule multiple checks to ensure pretend trades remain visible
-                scheduleMultipleChecksForPretendTrades();
-                
-                // Add a final check after a longer delay to catch any late rendering issues
-                Timer finalCheckTimer = new Timer();
-                finalCheckTimer.schedule(new TimerTask() {
-                    @Override
-                    public void run() {
-            Platform.runLater(() -> {
-                            try {
-                                // Re-add all pretend trades from the window data
-                                for (TradeSnapshot point : pretendTradePoints) {
-                                    if (point.getPretendTrade() != null && point.getPretendTrade().getPrice() != null) {
-                                        com.ibbe.entity.Trade trade = point.getPretendTrade();
-                                        int seq = point.getSequence();
-                                        double pretendTradePrice = trade.getPrice().doubleValue();
-                                        
-                                        // Add the trade point to the appropriate pretend trade series
-                                        XYChart.Data<Number, Number> tradePoint = new XYChart.Data<>(seq, pretendTradePrice);
-                                        String tradeType = trade.getMakerSide();
-                                        
-                                        // Check if this point already exists in the series
-                                        boolean exists = false;
-                                        if (tradeType.toLowerCase().contains("buy")) {
-                                            for (XYChart.Data<Number, Number> existingPoint : pretendBuySeries.getData()) {
-                                                if (existingPoint.getXValue().equals(seq)) {
-                                                    exists = true;
-                                                    break;
-                                                }
-                                            }
-                                            
-                                            if (!exists) {
-                                                pretendBuySeries.getData().add(tradePoint);
-                                                
-                                                // Style the trade point as a solid green triangle
-                                                if (tradePoint.getNode() != null) {
-                                                    tradePoint.getNode().setStyle("-fx-background-color: #00AA00; -fx-background-radius: 0px; -fx-padding: 8px;");
-                                                    tradePoint.getNode().setRotate(180); // Point upward
-                                                }
-                                            }
-                                        } else {
-                                            for (XYChart.Data<Number, Number> existingPoint : pretendSellSeries.getData()) {
-                                                if (existingPoint.getXValue().equals(seq)) {
-                                                    exists = true;
-                                                    break;
-                                                }
-                                            }
-                                            
-                                            if (!exists) {
-                                                pretendSellSeries.getData().add(tradePoint);
-                                                
-                                                // Style the trade point as a solid red triangle
-                                                if (tradePoint.getNode() != null) {
-                                                    tradePoint.getNode().setStyle("-fx-background-color: #AA0000; -fx-background-radius: 0px; -fx-padding: 8px;");
-                                                    tradePoint.getNode().setRotate(0); // Point downward
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                                
-                                // Ensure pretend trades are visible one final time
-                                ensurePretendTradesVisible();
-                                disablePretendTradeLines();
-                                
-                                // Force one final layout pass
-                lineChart.layout();
-                amountChart.layout();
-                            } catch (Exception e) {
-                                System.err.println("Error in final pretend trade check: " + e.getMessage());
-                                e.printStackTrace();
-                            } finally {
-                                finalCheckTimer.cancel();
-                            }
-                        });
-                    }
-                }, 1000); // 1 second delay for final check
-            } catch (Exception e) {
-                System.err.println("Error updating chart with window data: " + e.getMessage());
-                e.printStackTrace();
-            } finally {
-                // Set data loading flag to false
-                isDataLoading.set(false);
-            }
-        });
+    private void setLiveMode(boolean live) {
+        liveMode.set(live);
+        liveButton.setText(live ? "Live" : "Go Live");
+        performanceChart.setFollowLatest(live);
     }
     
     /**
-     * Adds a data point to the chart
+     * Called when the visible range of the chart changes (new data, slider, zoom or pan);
+     * moves the slider along and refreshes the data summary and the trade history.
      */
-    private void addDataPoint(long timestamp, double price, double amount) {
-        // ... existing code ...
+    private void onChartViewChanged() {
+        // a pan or zoom on the chart exits live mode
+        if (liveMode.get() && !performanceChart.isFollowLatest()) {
+            liveMode.set(false);
+            liveButton.setText("Go Live");
+        }
         
-        // Ensure pretend trades remain visible after adding new data
-        if (!isDataLoading.get()) {
-            Platform.runLater(() -> {
-                ensurePretendTradesVisible();
-                disablePretendTradeLines();
-            });
+        isUpdatingSlider = true;
+        try {
+            timeSlider.setValue(performanceChart.getViewPosition());
+        } finally {
+            isUpdatingSlider = false;
         }
+        
+        int totalPoints = performanceChart.getData().size();
+        int startIndex = performanceChart.getViewStart();
+        int endIndex = performanceChart.getViewEnd();
+        dataSummaryLabel.setText(String.format("Data: %,d records (showing %,d-%,d of %,d)",
+            performanceClient != null ? performanceClient.getTotalRecordsReceived() : totalPoints,
+            totalPoints == 0 ? 0 : startIndex + 1, endIndex, totalPoints));
+        
+        scheduleTradeHistoryUpdate();
     }
     
     /**
-     * Schedule multiple checks to ensure pretend trades remain visible
-     * This helps with both initial loading and after scrolling
-     */
-    private void scheduleMultipleChecksForPretendTrades() {
-        // Schedule checks at different intervals
-        schedulePretendTradeVisibilityCheck(500);  // Check after 500ms
-        schedulePretendTradeVisibilityCheck(1000); // Check after 1 second
-        schedulePretendTradeVisibilityCheck(2000); // Check after 2 seconds
-        schedulePretendTradeVisibilityCheck(5000); // Check after 5 seconds
-    }
-    
-    /**
-     * Schedule a delayed check for pretend trades visibility
+     * Updates the trade history with the last MAX_TRADE_HISTORY records of the view;
+     * debounced, as the view changes on every slider, zoom and pan event
      */
-    private void scheduleDelayedPretendTradesCheck(int delayMs) {
-        Timer timer = new Timer();
-        timer.schedule(new TimerTask() {
+    private void scheduleTradeHistoryUpdate() {
+        if (tradeHistoryTimer != null) {
+            tradeHistoryTimer.cancel();
+        }
+        tradeHistoryTimer = new Timer(true);
+        tradeHistoryTimer.schedule(new TimerTask() {
             @Override
             public void run() {
-                Platform.runLater(() -> {
-                    ensurePretendTradesVisible();
-                    timer.cancel();
-                });
-            }
-        }, delayMs);
-    }
-    
-    /**
-     * Completely disable the connecting lines for the pretend trade series
-     * This is a more aggressive approach to ensure no lines are shown
-     */
-    private void disablePretendTradeLines() {
-        try {
-            // Apply CSS to completely disable the lines
-            for (XYChart.Series<Number, Number> series : lineChart.getData()) {
-                if (series == pretendBuySeries || series == pretendSellSeries) {
-                    // Get all line segments in the series
-                    for (Node node : series.getNode().lookupAll(".chart-series-line")) {
-                        // Make the line completely invisible
-                        node.setVisible(false);
-                        node.setManaged(false);
-                        node.setStyle("-fx-stroke: transparent; -fx-stroke-width: 0;");
-                    }
-                    
-                    // Apply style to the series node itself
-                    series.getNode().setStyle("-fx-stroke: transparent; -fx-stroke-width: 0;");
+                PerformanceAnalysisClient client = performanceClient;
+                if (client == null) {
+                    return;
                 }
-            }
-        } catch (Exception e) {
-            System.err.println("Error disabling pretend trade lines: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
-    
-    /**
-     * Ensure pretend trades are visible in the chart and fix legend appearance
-     */
-    private void ensurePretendTradesVisible() {
-        try {
-            // Ensure pretend trade series are in the chart
-            if (!lineChart.getData().contains(pretendBuySeries)) {
-                lineChart.getData().add(pretendBuySeries);
-            }
-            if (!lineChart.getData().contains(pretendSellSeries)) {
-                lineChart.getData().add(pretendSellSeries);
-            }
-            
-            // Reapply styles to ensure they persist
-            if (pretendBuySeries.getNode() != null) {
-                pretendBuySeries.getNode().setStyle("-fx-stroke: transparent; -fx-stroke-width: 0;");
-            }
-            if (pretendSellSeries.getNode() != null) {
-                pretendSellSeries.getNode().setStyle("-fx-stroke: transparent; -fx-stroke-width: 0;");
-            }
-            
-            // Fix the legend items to match the actual appearance of the pretend trades
-            // This corrects the legend display to show triangles with proper colors
-            Node buyLegendSymbol = pretendBuySeries.getNode().lookup(".chart-legend-item-symbol");
-            if (buyLegendSymbol != null) {
-                buyLegendSymbol.setStyle("-fx-background-color: #00AA00; -fx-background-radius: 0px; -fx-padding: 8px;");
-                buyLegendSymbol.setRotate(180); // Point upward
-            }
-            
-            Node sellLegendSymbol = pretendSellSeries.getNode().lookup(".chart-legend-item-symbol");
-            if (sellLegendSymbol != null) {
-                sellLegendSymbol.setStyle("-fx-background-color: #AA0000; -fx-background-radius: 0px; -fx-padding: 8px;");
-                sellLegendSymbol.setRotate(0); // Point downward
-            }
-            
-            // Apply styles to individual data points in the pretend trade series
-            for (XYChart.Data<Number, Number> data : pretendBuySeries.getData()) {
-                if (data.getNode() != null) {
-                    data.getNode().setStyle("-fx-background-color: #00AA00; -fx-background-radius: 0px; -fx-padding: 8px;");
-                    data.getNode().setRotate(180); // Point upward
-                } else {
-                    // If node is null, force creation by accessing it
-                    Platform.runLater(() -> {
-                        if (data.getNode() != null) {
-                            data.getNode().setStyle("-fx-background-color: #00AA00; -fx-background-radius: 0px; -fx-padding: 8px;");
-                            data.getNode().setRotate(180); // Point upward
-                        }
-                    });
+                int endIndex = performanceChart.getViewEnd();
+                int startIndex = Math.max(performanceChart.getViewStart(), endIndex - MAX_TRADE_HISTORY);
+                List<TradeSnapshot> windowData = client.getDataWindow(startIndex, endIndex - startIndex);
+                if (!windowData.isEmpty()) {
+                    updateTradeHistoryFromWindow(windowData);
                 }
             }
-            
-            for (XYChart.Data<Number, Number> data : pretendSellSeries.getData()) {
-                if (data.getNode() != null) {
-                    data.getNode().setStyle("-fx-background-color: #AA0000; -fx-background-radius: 0px; -fx-padding: 8px;");
-                    data.getNode().setRotate(0); // Point downward
-                } else {
-                    // If node is null, force creation by accessing it
-                    Platform.runLater(() -> {
-                        if (data.getNode() != null) {
-                            data.getNode().setStyle("-fx-background-color: #AA0000; -fx-background-radius: 0px; -fx-padding: 8px;");
-                            data.getNode().setRotate(0); // Point downward
-                        }
-                    });
-                }
-            }
-            
-            // Ensure the pretend trade series are at the top of the chart (last in the list)
-            // This makes them more visible
-            if (lineChart.getData().contains(pretendBuySeries)) {
-                lineChart.getData().remove(pretendBuySeries);
-                lineChart.getData().add(pretendBuySeries);
-            }
-            if (lineChart.getData().contains(pretendSellSeries)) {
-                lineChart.getData().remove(pretendSellSeries);
-                lineChart.getData().add(pretendSellSeries);
-            }
-            
-            // Completely disable the connecting lines
-            disablePretendTradeLines();
-            
-            // Force a layout pass to ensure everything is properly displayed
-            lineChart.layout();
-            amountChart.layout();
-            
-            // Force a repaint of the chart
-            lineChart.setAnimated(true);
-            lineChart.setAnimated(false);
-        } catch (Exception e) {
-            System.err.println("Error ensuring pretend trades visibility: " + e.getMessage());
-            e.printStackTrace();
-        }
+        }, 100); // 100ms delay for smoother updates
     }
     
     /**
@@ -1425,73 +642,6 @@ public class PerformanceWindow extends TradeConfigWindow implements PerformanceW
         });
     }
     
-    /**
-     * Initialize chart with some default values to ensure it displays properly
-     */
-    private void initializeChart() {
-        // Add some initial data points to ensure the chart displays properly
-        Platform.runLater(() -> {
-            // Clear existing data in price chart
-            tradePriceSeries.getData().clear();
-            avgAskPriceSeries.getData().clear();
-            avgBidPriceSeries.getData().clear();
-            
-            // Clear existing data in amount chart
-            tradeAmountSeries.getData().clear();
-            avgAskAmountSeries.getData().clear();
-            avgBidAmountSeries.getData().clear();
-            
-            // Clear existing categories in amount chart
-            amountXAxis.getCategories().clear();
-            
-            // Don't add any dummy data points - let the real data drive the chart
-            
-            // Set initial axis ranges for price chart - adjusted for actual data values around 87,000-88,000
-            xAxis.setLowerBound(0);
-            xAxis.setUpperBound(50); // Set to VISIBLE_DATA_POINTS to match our display limit
-            yAxis.setLowerBound(75000);  // Changed to match the current data range
-            yAxis.setUpperBound(90000);  // Changed to match the current data range
-            
-            // Set initial axis ranges for amount chart
-            amountYAxis.setLowerBound(0);
-            amountYAxis.setUpperBound(1);
-            
-            // Set bar chart category gap and bar gap
-            amountChart.setCategoryGap(10);
-            amountChart.setBarGap(2);
-            
-            // Add initial categories to amount chart to match price chart X-axis
-            for (int i = 0; i <= 50; i += 5) { // Use step of 5 for readability
-                amountXAxis.getCategories().add(String.valueOf(i));
-            }
-            
-            // Ensure pretend trade series are in the chart
-            if (!lineChart.getData().contains(pretendBuySeries)) {
-                lineChart.getData().add(pretendBuySeries);
-            }
-            if (!lineChart.getData().contains(pretendSellSeries)) {
-                lineChart.getData().add(pretendSellSeries);
-            }
-            
-            // Style the pretend trade series to have no line
-            if (pretendBuySeries.getNode() != null) {
-                pretendBuySeries.getNode().setStyle("-fx-stroke: transparent; -fx-stroke-width: 0;");
-            }
-            if (pretendSellSeries.getNode() != null) {
-                pretendSellSeries.getNode().setStyle("-fx-stroke: transparent; -fx-stroke-width: 0;");
-            }
-            
-            // Force a layout pass
-            lineChart.layout();
-            amountChart.layout();
-            
-            chartInitialized = true;
-            
-            // Schedule multiple checks to ensure pretend trades remain visible
-            scheduleMultipleChecksForPretendTrades();
-        });
-    }
-    
     /**
      * Starts the performance analysis with the given parameters.
      */
@@ -1572,13 +722,10 @@ public class PerformanceWindow extends TradeConfigWindow implements PerformanceW
     
     /**
      * Called when new data is available from the performance client.
-     * This method will update the chart view with the current slider position.
+     * In Visual Replay mode the chart picks up new records from the client's dataset on its own (see syncChartData).
      */
     public void onNewDataAvailable() {
-        // Update the chart view with the current slider position if Visual Replay mode
-        if (mode == 1) {
-            updateChartView(timeSlider.getValue());
-        } else if (mode == 2) {
+        if (mode == 2) {
             // In Quick Replay mode, only update trade history from all available data
             // This ensures all trades are displayed even without chart updates
             List<TradeSnapshot> allData = performanceClient.getDataWindow(0, performanceClient.getDatasetSize());
@@ -1586,136 +733,28 @@ public class PerformanceWindow extends TradeConfigWindow implements PerformanceW
                 updateTradeHistoryFromWindow(allData);
             }
         }
-        
-        // Update the status label with the total records received
-        int totalRecords = performanceClient.getTotalRecordsReceived();
-        int datasetSize = performanceClient.getDatasetSize();
-        updateStatus(String.format("Received %,d records (keeping %,d in memory)", totalRecords, datasetSize));
     }
     
     /**
      * Clear the chart data
      */
     private void clearChart() {
-        Platform.runLater(() -> {
-            // Clear price chart
-            tradePriceSeries.getData().clear();
-            avgAskPriceSeries.getData().clear();
-            avgBidPriceSeries.getData().clear();
-
-            // Clear amount chart
-            tradeAmountSeries.getData().clear();
-            avgAskAmountSeries.getData().clear();
-            avgBidAmountSeries.getData().clear();
-            
-            // Clear pretend trade data but keep the series
-            pretendBuySeries.getData().clear();
-            pretendSellSeries.getData().clear();
-
-            // Set a flag to prevent slider updates while clearing
-            isUpdatingSlider = true;
-            try {
-                // Reset slider
-                timeSlider.setValue(0.0);  // Start from the beginning
-            } finally {
-                isUpdatingSlider = false;
-            }
-        });
-    }
-    
-    /**
-     * Apply custom styles to the chart series
-     * Optimized for large datasets by only styling visible nodes
-     */
-    private void applySeriesStyles() {
-        // Apply custom colors to the series
-            // Apply styles to price chart series
-        if (tradePriceSeries.getNode() != null) {
-                tradePriceSeries.getNode().setStyle("-fx-stroke: #ff0000; -fx-stroke-width: 2px;");
-            }
-            
-        if (avgAskPriceSeries.getNode() != null) {
-                avgAskPriceSeries.getNode().setStyle("-fx-stroke: #00ff00; -fx-stroke-width: 2px;");
-            }
-            
-        if (avgBidPriceSeries.getNode() != null) {
-                avgBidPriceSeries.getNode().setStyle("-fx-stroke: #0000ff; -fx-stroke-width: 2px;");
-        }
-        
-        // For large datasets, we'll only style the series lines, not individual points
-        // This significantly improves performance with large datasets
-        
-        // Apply styles to amount chart series - only style the series, not individual bars
-                for (XYChart.Data<String, Number> data : tradeAmountSeries.getData()) {
-                    if (data.getNode() != null) {
-                        data.getNode().setStyle("-fx-bar-fill: #ff0000;");
-                }
-            }
-            
-                for (XYChart.Data<String, Number> data : avgAskAmountSeries.getData()) {
-                    if (data.getNode() != null) {
-                        data.getNode().setStyle("-fx-bar-fill: #00ff00;");
-                }
-            }
-            
-                for (XYChart.Data<String, Number> data : avgBidAmountSeries.getData()) {
-                    if (data.getNode() != null) {
-                        data.getNode().setStyle("-fx-bar-fill: #0000ff;");
-                    }
-                }
-            }
-    
-    /**
-     * Start continuous checks for pretend trade visibility
-     * This ensures they remain visible during data loading and scrolling
-     */
-    private void startContinuousChecksForPretendTrades() {
-        // Cancel any existing timer
-        if (continuousCheckTimer != null) {
-            continuousCheckTimer.cancel();
-        }
+        performanceChart.setData(new ReplayDataset());
+        chartRows = 0;
         
-        // Create a new timer for continuous checks
-        continuousCheckTimer = new Timer();
-        continuousCheckTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                Platform.runLater(() -> {
-                    ensurePretendTradesVisible();
-                });
-            }
-        }, 0, 500); // Check every 500ms
-    }
-    
-    /**
-     * Stop continuous checks for pretend trade visibility
-     */
-    private void stopContinuousChecksForPretendTrades() {
-        if (continuousCheckTimer != null) {
-            continuousCheckTimer.cancel();
-            continuousCheckTimer = null;
+        // Set a flag to prevent slider updates while clearing
+        isUpdatingSlider = true;
+        try {
+            // Reset slider
+            timeSlider.setValue(1.0);
+        } finally {
+            isUpdatingSlider = false;
         }
     }
     
     /**
-     * Schedule a check to ensure pretend trades are visible after a delay
-     */
-    private void schedulePretendTradeVisibilityCheck(int delayMs) {
-        Timer timer = new Timer();
-        timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                Platform.runLater(() -> {
-                    ensurePretendTradesVisible();
-                    disablePretendTradeLines();
-                    timer.cancel();
-                });
-            }
-        }, delayMs);
-    }
-    
-    /**
-     * Ensure pretend trades are visible in the chart
+     * Gets the current mode of run.
+     * Implementation of PerformanceWindowInterface method.
      */
     @Override
     public int getMode() {
@@ -1797,9 +836,6 @@ public class PerformanceWindow extends TradeConfigWindow implements PerformanceW
         
         // Reset chart data and UI elements
         clearChart();
-        synchronized (dataPoints) {
-            dataPoints.clear();
-        }
         
         // Ensure the trade history is visible
         tradeHistoryVisible = true;
@@ -2,6 +2,9 @@ package com.ibbe.fx;
 
 import com.ibbe.entity.TradeSnapshot;
 import com.ibbe.entity.ChunkInfo;
+import com.ibbe.entity.ProfitEstimate;
+import com.ibbe.entity.TradeConfig;
+import com.ibbe.websocket.QuickEstimateClient;
 import com.ibbe.websocket.QuickReplayClient;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
@@ -9,6 +12,7 @@ import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
@@ -33,6 +37,10 @@ import java.util.HashSet;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 
 /**
  * Java FX window client for quick performance analysis;
@@ -50,10 +58,18 @@ public class QuickReplayWindow extends TradeConfigWindow implements QuickReplayW
     
     private Button startButton = new Button("Start Quick Replay");
     private Button stopButton = new Button("Stop Replay");
+    private Button quickEstimateButton = new Button("Quick Estimate");
+    // estimated total profit of a quick estimate, from a sample of the chunks
+    private Label estimateLabel = new Label("Estimate: -");
     private Label statusLabel = new Label("Status: Ready");
+    // optional time range of the replay; empty for the whole topic
+    private final TextField fromField = new TextField();
+    private final TextField toField = new TextField();
+    private static final DateTimeFormatter RANGE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
     
     // WebSocket client for server-based analysis
     private QuickReplayClient quiclReplayClient;
+    private QuickEstimateClient quickEstimateClient;
     
     // Sequence number tracking
     private final AtomicInteger sequenceNumber = new AtomicInteger(0);
@@ -133,6 +149,9 @@ public class QuickReplayWindow extends TradeConfigWindow implements QuickReplayW
         primaryStage.setOnCloseRequest(event -> {
             // Clean up configuration and disconnect clients
             cleanupConnections();
+            if (quickEstimateClient != null) {
+                quickEstimateClient.shutdown();
+            }
         });
 
         // Style the version label
@@ -155,9 +174,16 @@ public class QuickReplayWindow extends TradeConfigWindow implements QuickReplayW
         stopButton.setFont(new Font("Arial", 28));
         stopButton.setDisable(true); // Initially disabled
         stopButton.setOnAction(event -> stopQuickReplayAnalysis());
+
+        // Set up quick estimate button
+        quickEstimateButton.setPrefSize(200, 30);
+        quickEstimateButton.setFont(new Font("Arial", 28));
+        quickEstimateButton.setOnAction(event -> startQuickEstimate());
         
         // Set up status label
         statusLabel.setFont(new Font("Arial", 28));
+        estimateLabel.setFont(new Font("Arial", 28));
+        estimateLabel.setStyle("-fx-font-weight: bold;");
         
         // Style the trade and chunk count statistics
         totalTradesLabel.setFont(new Font("Arial", 32));
@@ -202,12 +228,22 @@ public class QuickReplayWindow extends TradeConfigWindow implements QuickReplayW
         HBox upsDownsBox = new HBox(10, upsLabel, upsField, downsLabel, downsField);
         upsDownsBox.setAlignment(Pos.CENTER_LEFT);
         
+        // Create HBox for the optional time range
+        Label fromLabel = new Label("From:");
+        Label toLabel = new Label("To:");
+        fromLabel.setFont(new Font("Arial", 28));
+        toLabel.setFont(new Font("Arial", 28));
+        fromField.setPromptText("yyyy-MM-dd HH:mm");
+        toField.setPromptText("yyyy-MM-dd HH:mm");
+        HBox rangeBox = new HBox(10, fromLabel, fromField, toLabel, toField);
+        rangeBox.setAlignment(Pos.CENTER_LEFT);
+
         // Create a button box for the start and stop buttons
-        HBox buttonBox = new HBox(10, startButton, stopButton);
+        HBox buttonBox = new HBox(10, startButton, stopButton, quickEstimateButton);
         buttonBox.setAlignment(Pos.CENTER_LEFT);
         
         // Add the components to the trade config box
-        tradeConfigBox.getChildren().addAll(upsDownsBox, buttonBox);
+        tradeConfigBox.getChildren().addAll(upsDownsBox, rangeBox, buttonBox);
         tradeConfigBox.setAlignment(Pos.CENTER_LEFT);
         
         // Add trade config and criteria to the input box
@@ -357,6 +393,7 @@ public class QuickReplayWindow extends TradeConfigWindow implements QuickReplayW
         mainLayout.getChildren().addAll(
             inputBox,
             statusBox,
+            estimateLabel,
             balanceBox,
             detailedBalanceBox,
             statsBox,
@@ -371,6 +408,39 @@ public class QuickReplayWindow extends TradeConfigWindow implements QuickReplayW
 
         // Initialize clients (but don't connect yet)
         quiclReplayClient = new QuickReplayClient(this);
+        quickEstimateClient = new QuickEstimateClient(this);
+    }
+
+    /**
+     * Starts a quick estimate of the total profit of the current settings, from a growing sample of the chunks
+     */
+    private void startQuickEstimate() {
+        TradeConfig config = new TradeConfig(generateConfigId(), upsField.getText(), downsField.getText(),
+            avgBidVsAvgAskCheckBox.isSelected(), shortVsLongMovAvgCheckBox.isSelected(),
+            sumAmtUpVsDownCheckBox.isSelected(), tradePriceCloserToAskVsBuyCheckBox.isSelected());
+        estimateLabel.setText("Estimate: sampling chunks...");
+        stopButton.setDisable(false);
+        quickEstimateClient.startEstimate(config);
+    }
+
+    /**
+     * Called by the QuickEstimateClient with every estimate update.
+     */
+    public void displayEstimate(ProfitEstimate estimate) {
+        Platform.runLater(() -> {
+            if (estimate.isDone()) {
+                estimateLabel.setText("Estimate: " + currencyFormat.format(estimate.getEstimatedProfit())
+                    + " (exact, " + estimate.getChunks() + " chunks)");
+                // the stop button stays enabled for a replay still running
+                stopButton.setDisable(!startButton.isDisabled());
+            } else {
+                estimateLabel.setText("Estimate: " + currencyFormat.format(estimate.getEstimatedProfit())
+                    + "   " + Math.round(estimate.getConfidence() * 100) + "%: "
+                    + currencyFormat.format(estimate.getLowerBound()) + " .. "
+                    + currencyFormat.format(estimate.getUpperBound())
+                    + "   from " + estimate.getChunksDone() + " / " + estimate.getChunks() + " chunks");
+            }
+        });
     }
 
     /**
@@ -380,6 +450,16 @@ public class QuickReplayWindow extends TradeConfigWindow implements QuickReplayW
         // Set mode to quick analysis
         // mode = 2; (already set as final field)
 
+        long fromMillis;
+        long toMillis;
+        try {
+            fromMillis = rangeMillis(fromField.getText());
+            toMillis = rangeMillis(toField.getText());
+        } catch (DateTimeParseException e) {
+            updateStatus("Invalid time, expected yyyy-MM-dd HH:mm: " + e.getParsedString(), true);
+            return;
+        }
+
         // Clear previous data and reset sequence number
         sequenceNumber.set(0);
         pretendTrades.clear();
@@ -473,15 +553,29 @@ public class QuickReplayWindow extends TradeConfigWindow implements QuickReplayW
 
         // Start using WebSocket connection to server
         quiclReplayClient = new QuickReplayClient(this);
+        quiclReplayClient.setTimeRange(fromMillis, toMillis);
         quiclReplayClient.startPerformanceAnalysis(ups, downs, criteriaStr, configId);
     }
 
+    /**
+     * @return the local time in epoch millis; 0 if the text is empty
+     */
+    private static long rangeMillis(String text) {
+        if (text == null || text.isBlank()) {
+            return 0;
+        }
+        return LocalDateTime.parse(text.trim(), RANGE_FORMAT).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
     /**
      * Stops the current quick replay analysis and cleans up resources
      */
     private void stopQuickReplayAnalysis() {
         // Clean up connections and configuration
         cleanupConnections();
+        if (quickEstimateClient != null) {
+            quickEstimateClient.stopEstimate();
+        }
         
         // Update UI state
         Platform.runLater(() -> {
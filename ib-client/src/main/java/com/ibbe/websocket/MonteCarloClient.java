@@ -0,0 +1,100 @@
+package com.ibbe.websocket;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibbe.entity.MonteCarloBands;
+import com.ibbe.entity.MonteCarloRequest;
+import com.ibbe.fx.MonteCarloWindow;
+import com.ibbe.util.PropertiesUtil;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * WebSocket client for connecting to the MonteCarloEndpoint. Used by the MonteCarloWindow.
+ * Sends a MonteCarloRequest and hands the percentile bands streamed back to the window.
+ */
+public class MonteCarloClient extends TextWebSocketHandler {
+    private final MonteCarloWindow window;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile WebSocketSession session;
+
+    public MonteCarloClient(MonteCarloWindow window) {
+        this.window = window;
+    }
+
+    /**
+     * Starts a run; a run still in progress is replaced.
+     */
+    public void startSimulation(MonteCarloRequest request) {
+        executor.submit(() -> {
+            try {
+                if (session == null || !session.isOpen()) {
+                    String wsUrl = PropertiesUtil.getProperty("server.ws.url");
+                    session = new StandardWebSocketClient()
+                        .execute(this, wsUrl.replace("/websocket", "/montecarlo")).get();
+                }
+                session.sendMessage(new TextMessage(objectMapper.writeValueAsString(request)));
+                window.updateStatus("Running " + request.getSimulations() + " simulations...");
+            } catch (Exception e) {
+                System.err.println("Error starting Monte Carlo simulation: " + e.getMessage());
+                window.updateStatus("Error: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Stops the running simulations by closing the connection.
+     */
+    public void stopSimulation() {
+        executor.submit(() -> {
+            try {
+                if (session != null && session.isOpen()) {
+                    session.close();
+                }
+            } catch (Exception e) {
+                System.err.println("Error closing Monte Carlo connection: " + e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        try {
+            JsonNode node = objectMapper.readTree(message.getPayload());
+            if (node.has("error")) {
+                window.updateStatus("Error: " + node.path("message").asText());
+                return;
+            }
+            window.displayBands(objectMapper.treeToValue(node, MonteCarloBands.class));
+        } catch (Exception e) {
+            System.err.println("Error parsing Monte Carlo bands: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        window.updateStatus("Disconnected");
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        window.updateStatus("Transport error: " + exception.getMessage());
+    }
+
+    /**
+     * Closes the connection and stops the client's thread; called when the window closes.
+     */
+    public void shutdown() {
+        stopSimulation();
+        executor.shutdown();
+    }
+}
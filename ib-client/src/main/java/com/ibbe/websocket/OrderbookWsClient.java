@@ -62,7 +62,9 @@ public class OrderbookWsClient {
             currentSession = stompClient.connect(wsUrl, new StompSessionHandlerAdapter() {
             }).get();
 
-            currentSession.subscribe("/topic/orderbook", new StompFrameHandler() {
+            // the chart needs the full book depth; the trading window only shows the top levels
+            String destination = chartWindow != null ? "/topic/orderbook" : "/topic/orderbook/top";
+            currentSession.subscribe(destination, new StompFrameHandler() {
                 @Override
                 public Type getPayloadType(StompHeaders headers) {
                     return OrderBook.class;
@@ -45,7 +45,7 @@ import javafx.application.Platform;
 /**
  * WebSocket client for connecting to the PerformanceAnalysisEndpoint.
  * Sends configuration data and receives performance analysis results.
- * Maintains a complete dataset of up to 50,000 records for efficient windowing.
+ * Maintains the complete dataset of the analysis in a ReplayDataset for efficient windowing.
  */
 public class PerformanceAnalysisClient extends TextWebSocketHandler {
     private final PerformanceWindowInterface window;
@@ -63,9 +63,12 @@ public class PerformanceAnalysisClient extends TextWebSocketHandler {
     private final AtomicInteger queuedMessageCount = new AtomicInteger(0);
     private static final int MAX_QUEUED_MESSAGES = 10000; // Safety limit to prevent memory issues
     
-    // Complete dataset storage - thread-safe list with capacity for 50,000 records
-    private final List<TradeSnapshot> completeDataset = Collections.synchronizedList(new ArrayList<>(50000));
+    // Complete dataset storage - primitive columns, replaced by a new one for each analysis
+    private volatile ReplayDataset dataset = new ReplayDataset();
     private final AtomicInteger totalRecordsReceived = new AtomicInteger(0);
+
+    // links the current analysis to the local replay result cache
+    private volatile ReplayCacheSession cacheSession;
     
     // Track the last used configuration ID
     private String currentConfigId = null;
@@ -79,14 +82,10 @@ public class PerformanceAnalysisClient extends TextWebSocketHandler {
     // Running total of all chunk profits
     private final AtomicReference<BigDecimal> totalChunkProfit = new AtomicReference<>(BigDecimal.ZERO);
     
-    // Maximum number of records to store in memory
-    private static final int MAX_RECORDS = 50000;
     
     // Window size for batch updates to the UI
     private static final int UI_WINDOW_SIZE = 1000;
     
-    // Add a configuration for maximum dataset size
-    private static final int MAX_DATASET_SIZE = 50000;
     
     /**
      * Custom deserializer for ChunkInfo to handle deserialization from the serialized format
@@ -212,7 +211,7 @@ public class PerformanceAnalysisClient extends TextWebSocketHandler {
                 
                 // Clear any existing data
                 dataQueue.clear();
-                completeDataset.clear();
+                dataset = new ReplayDataset();
                 totalRecordsReceived.set(0);
                 accumulatedChunks.clear(); // Clear accumulated chunks for new analysis
                 processedChunkIds.clear(); // Clear processed chunk IDs
@@ -235,8 +234,18 @@ public class PerformanceAnalysisClient extends TextWebSocketHandler {
                 TradeConfig tradeConfig = new TradeConfig(configId, ups, downs, useAvgBidVsAvgAsk,
                     useShortVsLongMovAvg, useTradingAmountMomentum, useTradePriceCloserToAskVsBuy);
                 
+                // Serve the cached results first, then ask the server only for the tail the cache is missing
+                ReplayCacheSession runCache = new ReplayCacheSession(ReplayResultCache.getInstance(), tradeConfig);
+                cacheSession = runCache;
+                processCachedResults(runCache);
+                if (runCache.isUpToDate()) {
+                    window.updateStatus("Loaded " + runCache.getCachedPayloads().size() + " cached results");
+                    currentConfigId = configId;
+                    return;
+                }
+
                 // Create JSON representation
-                String configJson = objectMapper.writeValueAsString(tradeConfig);
+                String configJson = runCache.createRequest(objectMapper);
                 
                 // Send the configuration to the REST endpoint first
                 String serverUrl = PropertiesUtil.getProperty("server.rest.url");
@@ -303,10 +312,17 @@ public class PerformanceAnalysisClient extends TextWebSocketHandler {
     public void handleTextMessage(WebSocketSession session, TextMessage message) {
         try {
             String payload = message.getPayload();
-            
+            ReplayCacheSession runCache = cacheSession;
+            if (runCache != null && runCache.handleCheckpoint(payload, objectMapper)) {
+                return;
+            }
+
             // Try to deserialize the message directly into a PerformanceData object
             try {
                 TradeSnapshot data = objectMapper.readValue(payload, TradeSnapshot.class);
+                if (runCache != null) {
+                    runCache.record(payload);
+                }
                 processDataPoint(data);
 //                if (data != null) {
 //                    // Add to queue for throttled processing instead of processing immediately
@@ -353,12 +369,6 @@ public class PerformanceAnalysisClient extends TextWebSocketHandler {
         // Set processing active flag
         processingActive.set(true);
         
-        // Schedule periodic memory usage check
-        ScheduledExecutorService memoryMonitor = Executors.newSingleThreadScheduledExecutor();
-        memoryMonitor.scheduleAtFixedRate(() -> {
-            checkMemoryUsage();
-        }, 10, 10, TimeUnit.SECONDS);
-        
         chartUpdater.scheduleAtFixedRate(() -> {
             try {
                 if (!processingActive.get()) {
@@ -444,15 +454,8 @@ public class PerformanceAnalysisClient extends TextWebSocketHandler {
         if (data.getPretendTrade() != null) {
             // For QuickReplayMode (mode == 2), only keep track of pretend trades
             if (window.getMode() == 2) {
-                synchronized (completeDataset) {
-                    // Add the new data with pretend trade to the dataset
-                    completeDataset.add(data);
-                    
-                    // If over the limit, remove the oldest entries
-                    if (completeDataset.size() > MAX_RECORDS) {
-                        completeDataset.remove(0);
-                    }
-                }
+                // Add the new data with pretend trade to the dataset
+                dataset.append(data);
                 
                 // Explicitly tell the window to update when we have a new pretend trade
                 window.onNewDataAvailable();
@@ -555,48 +558,46 @@ public class PerformanceAnalysisClient extends TextWebSocketHandler {
         }
     }
     
+    /**
+     * Processes the cached snapshot messages of the run as if the server had just sent them.
+     */
+    private void processCachedResults(ReplayCacheSession runCache) {
+        for (String payload : runCache.getCachedPayloads()) {
+            try {
+                processDataPoint(objectMapper.readValue(payload, TradeSnapshot.class));
+            } catch (IOException e) {
+                System.err.println("Error parsing cached replay result: " + e.getMessage());
+            }
+        }
+    }
+
     /**
      * Retrieves a window of data from the complete dataset.
-     * Optimized to handle large datasets efficiently.
+     * The window is a read-only view; its TradeSnapshots are rebuilt from the dataset columns as they are read.
      *
      * @param startIndex The start index.
      * @param windowSize The size of the window.
      * @return A list containing the data points in the requested window.
      */
     public List<TradeSnapshot> getDataWindow(int startIndex, int windowSize) {
-        synchronized (completeDataset) {
-            if (completeDataset.isEmpty()) {
-                return new ArrayList<>();
-            }
-            
-            // Validate the start index
-            int validStartIndex = Math.min(Math.max(0, startIndex), completeDataset.size() - 1);
-            
-            // For Quick Replay mode (mode 2), we always want ALL data
-            if (window.getMode() == 2) {
-                return new ArrayList<>(completeDataset);
-            }
-            
-            // For slider view requests, limit window size to improve performance
-            // For full dataset requests (windowSize == MAX_DATASET_SIZE), return a reasonably sized chunk
-            int validWindowSize;
-            if (windowSize >= MAX_DATASET_SIZE) {
-                // For trade history, limit to last 100 records with trades
-                validWindowSize = Math.min(2000, completeDataset.size() - validStartIndex);
-            } else {
-                // For normal chart view, use requested window size
-                validWindowSize = Math.min(windowSize, completeDataset.size() - validStartIndex);
-            }
-            
-            // Return a copy of the data window
-            try {
-                return new ArrayList<>(completeDataset.subList(validStartIndex, validStartIndex + validWindowSize));
-            } catch (OutOfMemoryError e) {
-                // Fallback to a smaller window if we hit memory issues
-                System.gc();
-                return new ArrayList<>(completeDataset.subList(validStartIndex, validStartIndex + Math.min(500, validWindowSize)));
-            }
+        ReplayDataset current = dataset;
+        int size = current.size();
+        
+        // For Quick Replay mode (mode 2), we always want ALL data
+        if (window.getMode() == 2) {
+            return current.window(0, size);
         }
+        
+        // Validate the start index; the window is a view over the dataset, so nothing is copied
+        int validStartIndex = Math.min(Math.max(0, startIndex), Math.max(0, size - 1));
+        return current.window(validStartIndex, (int) Math.min(size, (long) validStartIndex + windowSize));
+    }
+    
+    /**
+     * @return the dataset of the current analysis; replaced by a new one when an analysis starts
+     */
+    public ReplayDataset getDataset() {
+        return dataset;
     }
     
     /**
@@ -605,9 +606,7 @@ public class PerformanceAnalysisClient extends TextWebSocketHandler {
      * @return The total number of data points
      */
     public int getDatasetSize() {
-        synchronized (completeDataset) {
-            return completeDataset.size();
-        }
+        return dataset.size();
     }
     
     /**
@@ -625,15 +624,7 @@ public class PerformanceAnalysisClient extends TextWebSocketHandler {
      * @return The number of pretend trades
      */
     public int getPretendTradeCount() {
-        synchronized (completeDataset) {
-            int count = 0;
-            for (TradeSnapshot data : completeDataset) {
-                if (data.getPretendTrade() != null) {
-                    count++;
-                }
-            }
-            return count;
-        }
+        return dataset.getPretendTradeCount();
     }
     
     /**
@@ -756,52 +747,6 @@ public class PerformanceAnalysisClient extends TextWebSocketHandler {
         return totalChunkProfit.get();
     }
     
-    /**
-     * Checks memory usage and performs cleanup if necessary
-     */
-    private void checkMemoryUsage() {
-        Runtime runtime = Runtime.getRuntime();
-        long maxMemory = runtime.maxMemory();
-        long usedMemory = runtime.totalMemory() - runtime.freeMemory();
-        double usedPercentage = (double) usedMemory / maxMemory * 100;
-        
-        // Log memory usage periodically instead of randomly
-        int totalRecords = totalRecordsReceived.get();
-        if (totalRecords % 5000 == 0) {  // Reduced frequency - only log every 5000 records
-            System.out.println("Memory usage: " + String.format("%.2f", usedPercentage) + "% (" + 
-                (usedMemory / (1024 * 1024)) + "MB / " + (maxMemory / (1024 * 1024)) + "MB)");
-        }
-        
-        // If memory usage is high, perform cleanup - lowered threshold for earlier cleanup
-        if (usedPercentage > 60) {
-            System.out.println("WARNING: High memory usage detected (" + 
-                String.format("%.2f", usedPercentage) + "%), performing cleanup...");
-            cleanupMemory();
-        }
-    }
-    
-    /**
-     * Performs memory cleanup to prevent OutOfMemoryError
-     */
-    private void cleanupMemory() {
-        synchronized (completeDataset) {
-            // If we have a large dataset, trim it down significantly
-            if (completeDataset.size() > 5000) {
-                int keepCount = 2000;  // Keep the most recent 2000 entries
-                int removeCount = completeDataset.size() - keepCount;
-                
-                System.out.println("Trimming dataset from " + completeDataset.size() + 
-                    " to " + keepCount + " entries");
-                
-                // Remove older entries
-                completeDataset.subList(0, removeCount).clear();
-            }
-        }
-        
-        // Force garbage collection
-        System.gc();
-    }
-    
     /**
      * Restarts the data processing thread if it was stopped.
      * This can be called when new data arrives but processing is inactive.
@@ -814,23 +759,12 @@ public class PerformanceAnalysisClient extends TextWebSocketHandler {
     }
     
     /**
-     * Adds a data point to the complete dataset, respecting the maximum size limit.
-     * Memory optimization to prevent OOM errors.
+     * Adds a data point to the complete dataset.
      *
      * @param data The data point to add.
      */
     private void addToCompleteDataset(TradeSnapshot data) {
-        synchronized (completeDataset) {
-            // Add the new data point
-            completeDataset.add(data);
-            
-            // If we have too many records, remove the oldest ones
-            // Instead of constant pruning, only trim when significantly over limit
-            if (completeDataset.size() > MAX_RECORDS + 500) {
-                int removeCount = completeDataset.size() - MAX_RECORDS;
-                completeDataset.subList(0, removeCount).clear();
-            }
-        }
+        dataset.append(data);
         totalRecordsReceived.incrementAndGet();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,100 @@
+package com.ibbe.websocket;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibbe.entity.ProfitEstimate;
+import com.ibbe.entity.TradeConfig;
+import com.ibbe.fx.QuickReplayWindow;
+import com.ibbe.util.PropertiesUtil;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * WebSocket client for connecting to the QuickEstimateEndpoint. Used by the QuickReplayWindow.
+ * Sends a TradeConfig and hands the profit estimates streamed back to the window.
+ */
+public class QuickEstimateClient extends TextWebSocketHandler {
+    private final QuickReplayWindow window;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile WebSocketSession session;
+
+    public QuickEstimateClient(QuickReplayWindow window) {
+        this.window = window;
+    }
+
+    /**
+     * Starts an estimate; an estimate still in progress is replaced.
+     */
+    public void startEstimate(TradeConfig config) {
+        executor.submit(() -> {
+            try {
+                if (session == null || !session.isOpen()) {
+                    String wsUrl = PropertiesUtil.getProperty("server.ws.url");
+                    session = new StandardWebSocketClient()
+                        .execute(this, wsUrl.replace("/websocket", "/quickestimate")).get();
+                }
+                session.sendMessage(new TextMessage(objectMapper.writeValueAsString(config)));
+                window.updateStatus("Estimating profit...");
+            } catch (Exception e) {
+                System.err.println("Error starting quick estimate: " + e.getMessage());
+                window.updateStatus("Error: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Stops the running estimate by closing the connection.
+     */
+    public void stopEstimate() {
+        executor.submit(() -> {
+            try {
+                if (session != null && session.isOpen()) {
+                    session.close();
+                }
+            } catch (Exception e) {
+                System.err.println("Error closing quick estimate connection: " + e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        try {
+            JsonNode node = objectMapper.readTree(message.getPayload());
+            if (node.has("error")) {
+                window.updateStatus("Error: " + node.path("message").asText());
+                return;
+            }
+            window.displayEstimate(objectMapper.treeToValue(node, ProfitEstimate.class));
+        } catch (Exception e) {
+            System.err.println("Error parsing profit estimate: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        window.updateStatus("Disconnected");
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        window.updateStatus("Transport error: " + exception.getMessage());
+    }
+
+    /**
+     * Closes the connection and stops the client's thread; called when the window closes.
+     */
+    public void shutdown() {
+        stopEstimate();
+        executor.shutdown();
+    }
+}
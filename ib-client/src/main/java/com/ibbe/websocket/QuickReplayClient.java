@@ -8,6 +8,7 @@ import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.ibbe.entity.ChunkInfo;
 import com.ibbe.entity.FxTradesDisplayData;
+import com.ibbe.entity.ReplayRequest;
 import com.ibbe.entity.TradeSnapshot;
 import com.ibbe.entity.TradeConfig;
 import com.ibbe.fx.QuickReplayWindowInterface;
@@ -35,8 +36,6 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -44,23 +43,29 @@ import java.util.concurrent.atomic.AtomicReference;
 /**
  * WebSocket client for connecting to the PerformanceAnalysisEndpoint. Used by the QuickReplayWindow.
  * Sends configuration data and receives performance analysis results.
- * Maintains a complete dataset of up to 50,000 records for efficient windowing.
+ * Maintains the complete dataset of the analysis in a ReplayDataset for efficient windowing.
  */
 public class QuickReplayClient extends TextWebSocketHandler {
     private final QuickReplayWindowInterface window;
     private final ObjectMapper objectMapper;
     private WebSocketSession session;
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
-    private ScheduledExecutorService scheduledExecutor;
 
     // Queue to store data points for throttled processing
     private final Queue<TradeSnapshot> dataQueue = new ConcurrentLinkedQueue<>();
     private final AtomicBoolean processingActive = new AtomicBoolean(false);
 
-    // Complete dataset storage - thread-safe list with capacity for 50,000 records
-    private final List<TradeSnapshot> completeDataset = Collections.synchronizedList(new ArrayList<>(50000));
+    // Complete dataset storage - primitive columns, replaced by a new one for each analysis
+    private volatile ReplayDataset dataset = new ReplayDataset();
     private final AtomicInteger totalRecordsReceived = new AtomicInteger(0);
 
+    // links the current analysis to the local replay result cache
+    private volatile ReplayCacheSession cacheSession;
+
+    // time range of the next analysis in epoch millis; 0 for unbounded
+    private volatile long rangeFromMillis = 0;
+    private volatile long rangeToMillis = 0;
+
     // Track the last used configuration ID
     private String currentConfigId = null;
 
@@ -73,14 +78,13 @@ public class QuickReplayClient extends TextWebSocketHandler {
     // Running total of all chunk profits
     private final AtomicReference<BigDecimal> totalChunkProfit = new AtomicReference<>(BigDecimal.ZERO);
 
-    // Maximum number of records to store in memory
-    private static final int MAX_RECORDS = 50000;
 
     // Window size for batch updates to the UI
     private static final int UI_WINDOW_SIZE = 1000;
 
-    // Add a configuration for maximum dataset size
-    private static final int MAX_DATASET_SIZE = 50000;
+    // marks the server's message that a time range replay is complete
+    private static final String RANGE_COMPLETE_FIELD = "\"rangeComplete\"";
+
 
     /**
      * Custom deserializer for ChunkInfo to handle deserialization from the serialized format
@@ -136,6 +140,17 @@ public class QuickReplayClient extends TextWebSocketHandler {
         this.objectMapper.registerModule(module);
     }
 
+    /**
+     * Limits the next analyses to the trades of a time range; 0, 0 for the whole topic.
+     *
+     * @param fromMillis start of the range in epoch millis; 0 for the beginning of the topic
+     * @param toMillis   end (exclusive) of the range in epoch millis; 0 for the latest trade
+     */
+    public void setTimeRange(long fromMillis, long toMillis) {
+        this.rangeFromMillis = fromMillis;
+        this.rangeToMillis = toMillis;
+    }
+
     /**
      * Returns the ID of the currently active configuration
      *
@@ -214,6 +229,9 @@ public class QuickReplayClient extends TextWebSocketHandler {
                                        boolean useTradingAmountMomentum,
                                        boolean useTradePriceCloserToAskVsBuy,
                                        String configId) {
+        // read once, so a range set while this analysis starts applies to the next one
+        long fromMillis = rangeFromMillis;
+        long toMillis = rangeToMillis;
         executor.submit(() -> {
             try {
                 // Close existing session if any
@@ -223,7 +241,7 @@ public class QuickReplayClient extends TextWebSocketHandler {
 
                 // Clear any existing data
                 dataQueue.clear();
-                completeDataset.clear();
+                dataset = new ReplayDataset();
                 totalRecordsReceived.set(0);
                 accumulatedChunks.clear(); // Clear accumulated chunks for new analysis
                 processedChunkIds.clear(); // Clear processed chunk IDs
@@ -246,8 +264,26 @@ public class QuickReplayClient extends TextWebSocketHandler {
                 TradeConfig tradeConfig = new TradeConfig(configId, ups, downs, useAvgBidVsAvgAsk,
                     useShortVsLongMovAvg, useTradingAmountMomentum, useTradePriceCloserToAskVsBuy);
 
-                // Create JSON representation
-                String configJson = objectMapper.writeValueAsString(tradeConfig);
+                String configJson;
+                if (fromMillis > 0 || toMillis > 0) {
+                    // a time range is replayed on its own, without the cache
+                    cacheSession = null;
+                    configJson = objectMapper.writeValueAsString(
+                        ReplayRequest.forTimeRange(tradeConfig, fromMillis, toMillis));
+                } else {
+                    // Serve the cached results first, then ask the server only for the tail the cache is missing
+                    ReplayCacheSession runCache = new ReplayCacheSession(ReplayResultCache.getInstance(), tradeConfig);
+                    cacheSession = runCache;
+                    processCachedResults(runCache);
+                    if (runCache.isUpToDate()) {
+                        window.updateStatus("Loaded " + runCache.getCachedPayloads().size() + " cached results");
+                        currentConfigId = configId;
+                        return;
+                    }
+
+                    // Create JSON representation
+                    configJson = runCache.createRequest(objectMapper);
+                }
 
                 // // Send the configuration to the REST endpoint first
                 // String serverUrl = PropertiesUtil.getProperty("server.rest.url");
@@ -287,10 +323,21 @@ public class QuickReplayClient extends TextWebSocketHandler {
     public void handleTextMessage(WebSocketSession session, TextMessage message) {
         try {
             String payload = message.getPayload();
+            ReplayCacheSession runCache = cacheSession;
+            if (runCache != null && runCache.handleCheckpoint(payload, objectMapper)) {
+                return;
+            }
+            if (payload.contains(RANGE_COMPLETE_FIELD)) {
+                window.updateStatus("Time range replayed");
+                return;
+            }
 
             // Try to deserialize the message directly into a PerformanceData object
             try {
                 TradeSnapshot data = objectMapper.readValue(payload, TradeSnapshot.class);
+                if (runCache != null) {
+                    runCache.record(payload);
+                }
                 processDataPoint(data);
             } catch (Exception e) {
                 System.err.println("Error parsing WebSocket message: " + e.getMessage());
@@ -303,32 +350,10 @@ public class QuickReplayClient extends TextWebSocketHandler {
     }
 
     /**
-     * Starts processing data from the queue efficiently.
-     * Uses batching to reduce UI updates and improve performance.
-     * todo take out?
+     * Marks processing as active; the data points are processed as they arrive (see processDataPoint).
      */
     private void startProcessingData() {
-        if (scheduledExecutor != null && !scheduledExecutor.isShutdown()) {
-            scheduledExecutor.shutdownNow();
-        }
-
-        System.out.println("Starting memory monitoring thread...");
-        scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
-
-        // Set processing active flag
         processingActive.set(true);
-
-        // Schedule periodic memory usage check
-        scheduledExecutor.scheduleAtFixedRate(() -> {
-            try {
-                checkMemoryUsage();
-            } catch (Exception e) {
-                System.err.println("Error in memory monitoring: " + e.getMessage());
-                e.printStackTrace();
-            }
-        }, 10, 10, TimeUnit.SECONDS);
-
-        System.out.println("Memory monitoring thread started successfully");
     }
 
     /**
@@ -356,15 +381,8 @@ public class QuickReplayClient extends TextWebSocketHandler {
         if (data.getPretendTrade() != null) {
             // For QuickReplayMode (mode == 2), only keep track of pretend trades
             if (window.getMode() == 2) {
-                synchronized (completeDataset) {
-                    // Add the new data with pretend trade to the dataset
-                    completeDataset.add(data);
-                    
-                    // If over the limit, remove the oldest entries
-                    if (completeDataset.size() > MAX_RECORDS) {
-                        completeDataset.remove(0);
-                    }
-                }
+                // Add the new data with pretend trade to the dataset
+                dataset.append(data);
                 // Notify window of new pretend trade with the specific data
                 window.onNewPretendTrade(data);
             } else {
@@ -375,48 +393,39 @@ public class QuickReplayClient extends TextWebSocketHandler {
         window.updateBalanceDisplay(data.getCurrencyBalance(), data.getCoinBalance(), data.getAccountValueInChunk());
     }
     
+    /**
+     * Processes the cached snapshot messages of the run as if the server had just sent them.
+     */
+    private void processCachedResults(ReplayCacheSession runCache) {
+        for (String payload : runCache.getCachedPayloads()) {
+            try {
+                processDataPoint(objectMapper.readValue(payload, TradeSnapshot.class));
+            } catch (IOException e) {
+                System.err.println("Error parsing cached replay result: " + e.getMessage());
+            }
+        }
+    }
+
     /**
      * Retrieves a window of data from the complete dataset.
-     * Optimized to handle large datasets efficiently.
+     * The window is a read-only view; its TradeSnapshots are rebuilt from the dataset columns as they are read.
      *
      * @param startIndex The start index.
      * @param windowSize The size of the window.
      * @return A list containing the data points in the requested window.
      */
     public List<TradeSnapshot> getDataWindow(int startIndex, int windowSize) {
-        synchronized (completeDataset) {
-            if (completeDataset.isEmpty()) {
-                return new ArrayList<>();
-            }
-            
-            // Validate the start index
-            int validStartIndex = Math.min(Math.max(0, startIndex), completeDataset.size() - 1);
-            
-            // For Quick Replay mode (mode 2), we always want ALL data
-            if (window.getMode() == 2) {
-                return new ArrayList<>(completeDataset);
-            }
-            
-            // For slider view requests, limit window size to improve performance
-            // For full dataset requests (windowSize == MAX_DATASET_SIZE), return a reasonably sized chunk
-            int validWindowSize;
-            if (windowSize >= MAX_DATASET_SIZE) {
-                // For trade history, limit to last 100 records with trades
-                validWindowSize = Math.min(2000, completeDataset.size() - validStartIndex);
-            } else {
-                // For normal chart view, use requested window size
-                validWindowSize = Math.min(windowSize, completeDataset.size() - validStartIndex);
-            }
-            
-            // Return a copy of the data window
-            try {
-                return new ArrayList<>(completeDataset.subList(validStartIndex, validStartIndex + validWindowSize));
-            } catch (OutOfMemoryError e) {
-                // Fallback to a smaller window if we hit memory issues
-                System.gc();
-                return new ArrayList<>(completeDataset.subList(validStartIndex, validStartIndex + Math.min(500, validWindowSize)));
-            }
+        ReplayDataset current = dataset;
+        int size = current.size();
+        
+        // For Quick Replay mode (mode 2), we always want ALL data
+        if (window.getMode() == 2) {
+            return current.window(0, size);
         }
+        
+        // Validate the start index; the window is a view over the dataset, so nothing is copied
+        int validStartIndex = Math.min(Math.max(0, startIndex), Math.max(0, size - 1));
+        return current.window(validStartIndex, (int) Math.min(size, (long) validStartIndex + windowSize));
     }
     
     /**
@@ -425,9 +434,7 @@ public class QuickReplayClient extends TextWebSocketHandler {
      * @return The total number of data points
      */
     public int getDatasetSize() {
-        synchronized (completeDataset) {
-            return completeDataset.size();
-        }
+        return dataset.size();
     }
     
     /**
@@ -445,15 +452,7 @@ public class QuickReplayClient extends TextWebSocketHandler {
      * @return The number of pretend trades
      */
     public int getPretendTradeCount() {
-        synchronized (completeDataset) {
-            int count = 0;
-            for (TradeSnapshot data : completeDataset) {
-                if (data.getPretendTrade() != null) {
-                    count++;
-                }
-            }
-            return count;
-        }
+        return dataset.getPretendTradeCount();
     }
     
     /**
@@ -486,11 +485,6 @@ public class QuickReplayClient extends TextWebSocketHandler {
      * Disconnect from the server and clean up resources.
      */
     public void disconnect() {
-        if (scheduledExecutor != null) {
-            scheduledExecutor.shutdownNow();
-            scheduledExecutor = null;
-        }
-        
         processingActive.set(false);
         
         if (session != null && session.isOpen()) {
@@ -576,52 +570,6 @@ public class QuickReplayClient extends TextWebSocketHandler {
         return totalChunkProfit.get();
     }
     
-    /**
-     * Checks memory usage and performs cleanup if necessary
-     */
-    private void checkMemoryUsage() {
-        Runtime runtime = Runtime.getRuntime();
-        long maxMemory = runtime.maxMemory();
-        long usedMemory = runtime.totalMemory() - runtime.freeMemory();
-        double usedPercentage = (double) usedMemory / maxMemory * 100;
-        
-        // Log memory usage periodically instead of randomly
-        int totalRecords = totalRecordsReceived.get();
-        if (totalRecords % 5000 == 0) {  // Reduced frequency - only log every 5000 records
-            System.out.println("Memory usage: " + String.format("%.2f", usedPercentage) + "% (" + 
-                (usedMemory / (1024 * 1024)) + "MB / " + (maxMemory / (1024 * 1024)) + "MB)");
-        }
-        
-        // If memory usage is high, perform cleanup - lowered threshold for earlier cleanup
-        if (usedPercentage > 60) {
-            System.out.println("WARNING: High memory usage detected (" + 
-                String.format("%.2f", usedPercentage) + "%), performing cleanup...");
-            cleanupMemory();
-        }
-    }
-    
-    /**
-     * Performs memory cleanup to prevent OutOfMemoryError
-     */
-    private void cleanupMemory() {
-        synchronized (completeDataset) {
-            // If we have a large dataset, trim it down significantly
-            if (completeDataset.size() > 5000) {
-                int keepCount = 2000;  // Keep the most recent 2000 entries
-                int removeCount = completeDataset.size() - keepCount;
-                
-                System.out.println("Trimming dataset from " + completeDataset.size() + 
-                    " to " + keepCount + " entries");
-                
-                // Remove older entries
-                completeDataset.subList(0, removeCount).clear();
-            }
-        }
-        
-        // Force garbage collection
-        System.gc();
-    }
-    
     /**
      * Restarts the data processing thread if it was stopped.
      * This can be called when new data arrives but processing is inactive.
@@ -634,23 +582,12 @@ public class QuickReplayClient extends TextWebSocketHandler {
     }
     
     /**
-     * Adds a data point to the complete dataset, respecting the maximum size limit.
-     * Memory optimization to prevent OOM errors.
+     * Adds a data point to the complete dataset.
      *
      * @param data The data point to add.
      */
     private void addToCompleteDataset(TradeSnapshot data) {
-        synchronized (completeDataset) {
-            // Add the new data point
-            completeDataset.add(data);
-            
-            // If we have too many records, remove the oldest ones
-            // Instead of constant pruning, only trim when significantly over limit
-            if (completeDataset.size() > MAX_RECORDS + 500) {
-                int removeCount = completeDataset.size() - MAX_RECORDS;
-                completeDataset.subList(0, removeCount).clear();
-            }
-        }
+        dataset.append(data);
         totalRecordsReceived.incrementAndGet();
     }
 } 
\ No newline at end of file
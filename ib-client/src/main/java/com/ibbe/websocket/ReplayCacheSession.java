@@ -0,0 +1,105 @@
+package com.ibbe.websocket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibbe.entity.ReplayRequest;
+import com.ibbe.entity.TradeConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ties one analysis run of a client to the ReplayResultCache: looks up the cached results of the configuration,
+ * builds the request for the tail the cache is missing, and stores the cached plus received results once the server
+ * reports that everything up to the current end offset has been sent.
+ * If the end offset cannot be determined the run is not cached and the plain configuration is requested.
+ */
+class ReplayCacheSession {
+    private static final String CHECKPOINT_FIELD = "\"replayCheckpoint\"";
+
+    private final ReplayResultCache cache;
+    private final TradeConfig config;
+    private final String configHash;
+    private final long endOffset;
+    private final ReplayResultCache.Entry cached;
+
+    // messages received from the server until the checkpoint; null once stored (or when not caching)
+    private List<String> received;
+
+    ReplayCacheSession(ReplayResultCache cache, TradeConfig config) {
+        this.cache = cache;
+        this.config = config;
+        this.configHash = config.canonicalHash();
+        this.endOffset = cache.fetchEndOffset();
+        ReplayResultCache.Entry entry = endOffset >= 0 ? cache.get(configHash) : null;
+        // results past the current end belong to a topic that has since been recreated
+        this.cached = entry != null && entry.getEndOffset() <= endOffset ? entry : null;
+        this.received = endOffset >= 0 && !isUpToDate() ? new ArrayList<>() : null;
+    }
+
+    /**
+     * @return the cached snapshot messages, to be processed before anything the server sends
+     */
+    List<String> getCachedPayloads() {
+        return cached != null ? cached.getPayloads() : Collections.emptyList();
+    }
+
+    /**
+     * @return offset the cached results are complete up to; 0 if there are none
+     */
+    long getCachedEndOffset() {
+        return cached != null ? cached.getEndOffset() : 0;
+    }
+
+    /**
+     * @return whether the cache holds the results up to the current end of the topic, so the server need not be asked
+     */
+    boolean isUpToDate() {
+        return cached != null && cached.getEndOffset() == endOffset;
+    }
+
+    /**
+     * @return the message to send to the PerformanceAnalysisEndpoint
+     */
+    String createRequest(ObjectMapper objectMapper) throws JsonProcessingException {
+        if (endOffset < 0) {
+            return objectMapper.writeValueAsString(config);
+        }
+        return objectMapper.writeValueAsString(new ReplayRequest(config, getCachedEndOffset(), endOffset));
+    }
+
+    /**
+     * Records a snapshot message for caching.
+     */
+    synchronized void record(String payload) {
+        if (received != null) {
+            received.add(payload);
+        }
+    }
+
+    /**
+     * Stores the results when the message is the server's checkpoint.
+     *
+     * @return whether the message was a checkpoint (and so is not a snapshot)
+     */
+    synchronized boolean handleCheckpoint(String payload, ObjectMapper objectMapper) {
+        if (!payload.contains(CHECKPOINT_FIELD)) {
+            return false;
+        }
+        try {
+            JsonNode checkpoint = objectMapper.readTree(payload);
+            if (received != null && checkpoint.path("endOffset").asLong(-1) == endOffset) {
+                List<String> payloads = new ArrayList<>(getCachedPayloads().size() + received.size());
+                payloads.addAll(getCachedPayloads());
+                payloads.addAll(received);
+                cache.put(new ReplayResultCache.Entry(configHash, endOffset, payloads));
+                received = null;
+            }
+        } catch (JsonProcessingException e) {
+            System.err.println("Error parsing replay checkpoint: " + e.getMessage());
+        }
+        return true;
+    }
+}
@@ -0,0 +1,319 @@
+package com.ibbe.websocket;
+
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeSnapshot;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Replay points received from the PerformanceAnalysisEndpoint, stored column-wise in primitive arrays; one row per
+ * TradeSnapshot. A row takes ~170 bytes instead of the ~1-2KB of a TradeSnapshot with its boxed, String and BigDecimal
+ * fields and nested Trade, so millions of rows fit in the heap without trimming.
+ * <p>
+ * The columns are split into fixed size pages that never move once allocated. Rows are appended by a single thread
+ * (the websocket handler) without locking, and read by any thread: {@link #size()} is published after the row is
+ * written, so a reader that reads the size first sees complete rows below it.
+ * <p>
+ * {@link #window(int, int)} is O(1); the TradeSnapshots of a window are rebuilt from the columns as they are read.
+ * Nullable BigDecimal values are stored as NaN.
+ */
+public class ReplayDataset {
+
+    public static final byte NO_TRADE = 0;
+    public static final byte BUY = 1;
+    public static final byte SELL = -1;
+
+    private static final int PAGE_BITS = 13;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final long NO_TID = Long.MIN_VALUE;
+
+    /**
+     * the columns of PAGE_SIZE consecutive rows
+     */
+    private static final class Page {
+        final int[] sequence = new int[PAGE_SIZE];
+        final long[] timestamp = new long[PAGE_SIZE];
+        final long[] tradeId = new long[PAGE_SIZE];
+        final boolean[] amountMissing = new boolean[PAGE_SIZE];
+        final double[] tradePrice = new double[PAGE_SIZE];
+        final double[] tradeAmount = new double[PAGE_SIZE];
+        final double[] avgAskPrice = new double[PAGE_SIZE];
+        final double[] avgAskAmount = new double[PAGE_SIZE];
+        final double[] avgBidPrice = new double[PAGE_SIZE];
+        final double[] avgBidAmount = new double[PAGE_SIZE];
+        final double[] stmaPrice = new double[PAGE_SIZE];
+        final double[] ltmaPrice = new double[PAGE_SIZE];
+        final double[] tradeAmountIncrease = new double[PAGE_SIZE];
+        final double[] tradeAmountDecrease = new double[PAGE_SIZE];
+        final double[] priceCloserToBestAsk = new double[PAGE_SIZE];
+        // pretend trade of the row, if any (side is NO_TRADE otherwise)
+        final byte[] pretendSide = new byte[PAGE_SIZE];
+        final double[] pretendPrice = new double[PAGE_SIZE];
+        final double[] pretendAmount = new double[PAGE_SIZE];
+        final long[] pretendTid = new long[PAGE_SIZE];
+        final long[] pretendTime = new long[PAGE_SIZE];
+        // balances after the row
+        final double[] currencyBalance = new double[PAGE_SIZE];
+        final double[] coinBalance = new double[PAGE_SIZE];
+        final double[] latestPrice = new double[PAGE_SIZE];
+        final double[] accountValueInChunk = new double[PAGE_SIZE];
+    }
+
+    // page directory; grown by copying, and a new page is added to it before the size covering the page is published
+    private volatile Page[] pages = new Page[16];
+    private volatile int size = 0;
+    private volatile int pretendTradeCount = 0;
+
+    /**
+     * appends the values of the snapshot as a new row; not to be called concurrently
+     *
+     * @param snapshot snapshot received from the server
+     */
+    public void append(TradeSnapshot snapshot) {
+        int row = size;
+        int pageIndex = row >>> PAGE_BITS;
+        Page[] current = pages;
+        if (pageIndex == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+            pages = current;
+        }
+        if (current[pageIndex] == null) {
+            current[pageIndex] = new Page();
+        }
+        Page page = current[pageIndex];
+        int i = row & PAGE_MASK;
+
+        page.sequence[i] = snapshot.getSequence();
+        page.timestamp[i] = toEpochMillis(snapshot.getTimestampMillis(), snapshot.getTimestamp());
+        page.tradeId[i] = snapshot.getTradeId() != null ? snapshot.getTradeId() : NO_TID;
+        page.amountMissing[i] = snapshot.isAmountMissing();
+        page.tradePrice[i] = snapshot.getTradePrice();
+        page.tradeAmount[i] = snapshot.getTradeAmount();
+        page.avgAskPrice[i] = snapshot.getAvgAskPrice();
+        page.avgAskAmount[i] = snapshot.getAvgAskAmount();
+        page.avgBidPrice[i] = snapshot.getAvgBidPrice();
+        page.avgBidAmount[i] = snapshot.getAvgBidAmount();
+        page.stmaPrice[i] = snapshot.getSTMAPrice();
+        page.ltmaPrice[i] = snapshot.getLTMAPrice();
+        page.tradeAmountIncrease[i] = snapshot.getTradeAmountIncrease();
+        page.tradeAmountDecrease[i] = snapshot.getTradeAmountDecrease();
+        page.priceCloserToBestAsk[i] = snapshot.getPriceCloserToBestAsk();
+
+        Trade pretendTrade = snapshot.getPretendTrade();
+        if (pretendTrade != null) {
+            page.pretendSide[i] = pretendTrade.getMakerSide().toLowerCase().contains("buy") ? BUY : SELL;
+            page.pretendPrice[i] = toDouble(pretendTrade.getPrice());
+            page.pretendAmount[i] = toDouble(pretendTrade.getAmount());
+            page.pretendTid[i] = pretendTrade.getTid() != null ? pretendTrade.getTid() : NO_TID;
+            page.pretendTime[i] = toEpochMillis(pretendTrade.getCreatedAtMillis(), pretendTrade.getCreatedAt());
+        } else {
+            page.pretendSide[i] = NO_TRADE;
+        }
+
+        page.currencyBalance[i] = toDouble(snapshot.getCurrencyBalance());
+        page.coinBalance[i] = toDouble(snapshot.getCoinBalance());
+        page.latestPrice[i] = toDouble(snapshot.getLatestPrice());
+        page.accountValueInChunk[i] = toDouble(snapshot.getAccountValueInChunk());
+
+        if (pretendTrade != null) {
+            pretendTradeCount++;
+        }
+        // publish the row
+        size = row + 1;
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of rows that carry a pretend trade
+     */
+    public int getPretendTradeCount() {
+        return pretendTradeCount;
+    }
+
+    /**
+     * @param fromRow first row of the window (inclusive)
+     * @param toRow   last row of the window (exclusive)
+     * @return a read-only view of the rows, bounded by the current size; TradeSnapshots are rebuilt on each get
+     */
+    public List<TradeSnapshot> window(int fromRow, int toRow) {
+        int end = Math.min(toRow, size);
+        int start = Math.max(0, Math.min(fromRow, end));
+        return new Window(start, end);
+    }
+
+    /**
+     * rebuilds the TradeSnapshot of the row (without the chunk information, which is not stored)
+     */
+    public TradeSnapshot getSnapshot(int row) {
+        Page page = page(row);
+        int i = row & PAGE_MASK;
+        TradeSnapshot snapshot = new TradeSnapshot();
+        snapshot.setSequence(page.sequence[i]);
+        if (page.timestamp[i] != 0) {
+            snapshot.setTimestampMillis(page.timestamp[i]);
+        }
+        snapshot.setTradeId(page.tradeId[i] != NO_TID ? page.tradeId[i] : null);
+        snapshot.setAmountMissing(page.amountMissing[i]);
+        snapshot.setTradePrice(page.tradePrice[i]);
+        snapshot.setTradeAmount(page.tradeAmount[i]);
+        snapshot.setAvgAskPrice(page.avgAskPrice[i]);
+        snapshot.setAvgAskAmount(page.avgAskAmount[i]);
+        snapshot.setAvgBidPrice(page.avgBidPrice[i]);
+        snapshot.avgBidAmount = page.avgBidAmount[i];
+        snapshot.setSTMAPrice(page.stmaPrice[i]);
+        snapshot.setLTMAPrice(page.ltmaPrice[i]);
+        snapshot.setTradeAmountIncrease(page.tradeAmountIncrease[i]);
+        snapshot.setTradeAmountDecrease(page.tradeAmountDecrease[i]);
+        snapshot.priceCloserToBestAsk = page.priceCloserToBestAsk[i];
+        if (page.pretendSide[i] != NO_TRADE) {
+            snapshot.setPretendTrade(new Trade(
+                toTimestamp(page.pretendTime[i]),
+                toBigDecimal(page.pretendAmount[i]),
+                page.pretendSide[i] == BUY ? "buy" : "sell",
+                toBigDecimal(page.pretendPrice[i]),
+                page.pretendTid[i] != NO_TID ? page.pretendTid[i] : null));
+        }
+        snapshot.setCurrencyBalance(toBigDecimal(page.currencyBalance[i]));
+        snapshot.setCoinBalance(toBigDecimal(page.coinBalance[i]));
+        snapshot.setLatestPrice(toBigDecimal(page.latestPrice[i]));
+        snapshot.setAccountValueInChunk(toBigDecimal(page.accountValueInChunk[i]));
+        return snapshot;
+    }
+
+    // column accessors used for drawing; rows must be below a size read beforehand
+
+    public int getSequence(int row) {
+        return page(row).sequence[row & PAGE_MASK];
+    }
+
+    public long getTimestamp(int row) {
+        return page(row).timestamp[row & PAGE_MASK];
+    }
+
+    public double getTradePrice(int row) {
+        return page(row).tradePrice[row & PAGE_MASK];
+    }
+
+    public double getTradeAmount(int row) {
+        return page(row).tradeAmount[row & PAGE_MASK];
+    }
+
+    public double getAvgAskPrice(int row) {
+        return page(row).avgAskPrice[row & PAGE_MASK];
+    }
+
+    public double getAvgAskAmount(int row) {
+        return page(row).avgAskAmount[row & PAGE_MASK];
+    }
+
+    public double getAvgBidPrice(int row) {
+        return page(row).avgBidPrice[row & PAGE_MASK];
+    }
+
+    public double getAvgBidAmount(int row) {
+        return page(row).avgBidAmount[row & PAGE_MASK];
+    }
+
+    public byte getPretendSide(int row) {
+        return page(row).pretendSide[row & PAGE_MASK];
+    }
+
+    public double getPretendPrice(int row) {
+        return page(row).pretendPrice[row & PAGE_MASK];
+    }
+
+    public double getPretendAmount(int row) {
+        return page(row).pretendAmount[row & PAGE_MASK];
+    }
+
+    private Page page(int row) {
+        return pages[row >>> PAGE_BITS];
+    }
+
+    /**
+     * @param timestamp trade timestamp as sent by the server (ISO date-time or epoch millis)
+     * @return epoch millis, or 0 if the timestamp cannot be parsed
+     */
+    static long toEpochMillis(String timestamp) {
+        if (timestamp == null || timestamp.isEmpty()) {
+            return 0;
+        }
+        try {
+            return timestamp.chars().allMatch(Character::isDigit)
+                ? Long.parseLong(timestamp)
+                : ZonedDateTime.parse(timestamp).toInstant().toEpochMilli();
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the epoch millis as decoded by the entity, or else parsed from its timestamp string
+     */
+    private static long toEpochMillis(long millis, String timestamp) {
+        return millis != Trade.NO_TIME ? millis : toEpochMillis(timestamp);
+    }
+
+    private static String toTimestamp(long epochMillis) {
+        return epochMillis == 0 ? null : Instant.ofEpochMilli(epochMillis).toString();
+    }
+
+    private static double toDouble(BigDecimal value) {
+        return value != null ? value.doubleValue() : Double.NaN;
+    }
+
+    private static BigDecimal toBigDecimal(double value) {
+        return Double.isNaN(value) ? null : BigDecimal.valueOf(value);
+    }
+
+    /**
+     * a fixed range of rows of the dataset
+     */
+    private final class Window extends AbstractList<TradeSnapshot> implements RandomAccess {
+        private final int fromRow;
+        private final int toRow;
+
+        private Window(int fromRow, int toRow) {
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        public TradeSnapshot get(int index) {
+            if (index < 0 || index >= toRow - fromRow) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return getSnapshot(fromRow + index);
+        }
+
+        @Override
+        public int size() {
+            return toRow - fromRow;
+        }
+
+        @Override
+        public List<TradeSnapshot> subList(int fromIndex, int toIndex) {
+            subListRangeCheck(fromIndex, toIndex);
+            return new Window(fromRow + fromIndex, fromRow + toIndex);
+        }
+
+        private void subListRangeCheck(int fromIndex, int toIndex) {
+            if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+                throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex);
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.ibbe.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibbe.util.PropertiesUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local cache of replay results, keyed by the canonical hash of a TradeConfig and valid up to a topic end offset.
+ * The most recently used results stay in memory; the least recently used ones are spilled to gzipped files (one per
+ * config hash) and loaded back on demand. Shared by the QuickReplayClient and the PerformanceAnalysisClient.
+ */
+public class ReplayResultCache {
+    private static final int FILE_VERSION = 1;
+    private static final String FILE_SUFFIX = ".replay.gz";
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static ReplayResultCache instance;
+
+    private final Path directory;
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+
+    // access-ordered, so the eldest entry is the least recently used one
+    private final Map<String, Entry> memory;
+
+    /**
+     * The results of one configuration: the raw snapshot messages the server sent for the records before endOffset.
+     */
+    public static final class Entry {
+        private final String configHash;
+        private final long endOffset;
+        private final List<String> payloads;
+
+        public Entry(String configHash, long endOffset, List<String> payloads) {
+            this.configHash = configHash;
+            this.endOffset = endOffset;
+            this.payloads = Collections.unmodifiableList(payloads);
+        }
+
+        public String getConfigHash() {
+            return configHash;
+        }
+
+        public long getEndOffset() {
+            return endOffset;
+        }
+
+        public List<String> getPayloads() {
+            return payloads;
+        }
+    }
+
+    /**
+     * @param maxMemoryEntries number of results kept in memory before the least recently used one is spilled
+     * @param directory        where spilled results are written
+     */
+    public ReplayResultCache(int maxMemoryEntries, Path directory) {
+        this.directory = directory;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= maxMemoryEntries) {
+                    return false;
+                }
+                spill(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return the cache configured by replay.cache.memory.entries and replay.cache.dir; its in-memory results are
+     * spilled when the JVM exits
+     */
+    public static synchronized ReplayResultCache getInstance() {
+        if (instance == null) {
+            String entries = PropertiesUtil.getProperty("replay.cache.memory.entries");
+            String dir = PropertiesUtil.getProperty("replay.cache.dir");
+            instance = new ReplayResultCache(entries != null ? Integer.parseInt(entries.trim()) : 8,
+                dir != null && !dir.isBlank() ? Paths.get(dir.trim())
+                    : Paths.get(System.getProperty("user.home"), ".ibbe", "replay-cache"));
+            Runtime.getRuntime().addShutdownHook(new Thread(instance::flush, "replay-cache-flush"));
+        }
+        return instance;
+    }
+
+    /**
+     * @param configHash canonical hash of the configuration
+     * @return the cached results of the configuration, or null if there are none
+     */
+    public synchronized Entry get(String configHash) {
+        Entry entry = memory.get(configHash);
+        if (entry == null) {
+            entry = load(configHash);
+            if (entry != null) {
+                memory.put(configHash, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Stores the results of a configuration, replacing any older results of it.
+     */
+    public synchronized void put(Entry entry) {
+        memory.put(entry.getConfigHash(), entry);
+    }
+
+    /**
+     * Spills all in-memory results to disk.
+     */
+    public synchronized void flush() {
+        for (Entry entry : memory.values()) {
+            spill(entry);
+        }
+    }
+
+    /**
+     * @return offset one past the last record of the curated trades topic, or -1 if the server could not be asked
+     */
+    public long fetchEndOffset() {
+        try {
+            String serverUrl = PropertiesUtil.getProperty("server.rest.url");
+            HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(serverUrl + "/replay/endoffset"))
+                .timeout(Duration.ofSeconds(5))
+                .GET()
+                .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                System.err.println("Could not get the topic end offset: HTTP " + response.statusCode());
+                return -1;
+            }
+            JsonNode result = objectMapper.readTree(response.body());
+            return result.path("endOffset").asLong(-1);
+        } catch (Exception e) {
+            System.err.println("Could not get the topic end offset: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    private Path fileOf(String configHash) {
+        return directory.resolve(configHash + FILE_SUFFIX);
+    }
+
+    /**
+     * writes the entry unless the file already holds results up to the same offset
+     */
+    private void spill(Entry entry) {
+        Path file = fileOf(entry.getConfigHash());
+        try {
+            if (Files.exists(file) && readEndOffset(file) == entry.getEndOffset()) {
+                return;
+            }
+            Files.createDirectories(directory);
+            Path tmp = Files.createTempFile(directory, entry.getConfigHash(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(tmp))))) {
+                out.writeInt(FILE_VERSION);
+                out.writeUTF(entry.getConfigHash());
+                out.writeLong(entry.getEndOffset());
+                out.writeInt(entry.getPayloads().size());
+                for (String payload : entry.getPayloads()) {
+                    byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not spill replay results of " + entry.getConfigHash() + ": " + e.getMessage());
+        }
+    }
+
+    private Entry load(String configHash) {
+        Path file = fileOf(configHash);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = open(file)) {
+            if (in.readInt() != FILE_VERSION || !configHash.equals(in.readUTF())) {
+                return null;
+            }
+            long endOffset = in.readLong();
+            int count = in.readInt();
+            List<String> payloads = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                payloads.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+            return new Entry(configHash, endOffset, payloads);
+        } catch (IOException e) {
+            System.err.println("Could not load replay results of " + configHash + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private long readEndOffset(Path file) throws IOException {
+        try (DataInputStream in = open(file)) {
+            if (in.readInt() != FILE_VERSION) {
+                return -1;
+            }
+            in.readUTF();
+            return in.readLong();
+        }
+    }
+
+    private static DataInputStream open(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))));
+    }
+}
@@ -0,0 +1,112 @@
+package com.ibbe.fx;
+
+import com.ibbe.entity.TradeSnapshot;
+import com.ibbe.websocket.ReplayDataset;
+import javafx.application.Platform;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs the chart on the FX thread; skipped where the FX toolkit cannot start (e.g. without a display).
+ */
+public class PerformanceChartTest {
+
+    private static boolean toolkitStarted;
+
+    @BeforeAll
+    static void startToolkit() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        try {
+            Platform.startup(started::countDown);
+        } catch (IllegalStateException e) {
+            // already started
+            started.countDown();
+        } catch (RuntimeException | Error e) {
+            return;
+        }
+        toolkitStarted = started.await(10, TimeUnit.SECONDS);
+    }
+
+    private static <T> T onFxThread(Callable<T> action) throws Exception {
+        assumeTrue(toolkitStarted, "FX toolkit not available");
+        FutureTask<T> task = new FutureTask<>(action);
+        Platform.runLater(task);
+        return task.get(10, TimeUnit.SECONDS);
+    }
+
+    private static void append(ReplayDataset data, int rows) {
+        for (int i = 0; i < rows; i++) {
+            TradeSnapshot snapshot = new TradeSnapshot();
+            snapshot.setSequence(data.size());
+            snapshot.setTimestamp(Instant.ofEpochMilli(1_700_000_000_000L + data.size() * 1000L).toString());
+            snapshot.setTradePrice(100 + i);
+            snapshot.setTradeAmount(1);
+            data.append(snapshot);
+        }
+    }
+
+    @Test
+    void followsTheNewestRowsAsDataArrives() throws Exception {
+        onFxThread(() -> {
+            ReplayDataset data = new ReplayDataset();
+            PerformanceChart chart = PerformanceChart.create(data, 20);
+            AtomicInteger viewChanges = new AtomicInteger();
+            chart.setOnViewChanged(viewChanges::incrementAndGet);
+
+            append(data, 100);
+            chart.dataChanged();
+
+            assertEquals(80, chart.getViewStart(), "Expected the newest 20 rows in view");
+            assertEquals(100, chart.getViewEnd());
+            assertEquals(1, chart.getViewPosition());
+            assertEquals(1, viewChanges.get(), "Expected the view change to be reported");
+            chart.dispose();
+            return null;
+        });
+    }
+
+    @Test
+    void keepsTheViewWhenNotFollowing() throws Exception {
+        onFxThread(() -> {
+            ReplayDataset data = new ReplayDataset();
+            PerformanceChart chart = PerformanceChart.create(data, 20);
+            append(data, 100);
+            chart.dataChanged();
+
+            chart.setFollowLatest(false);
+            chart.setViewPosition(0);
+            append(data, 50);
+            chart.dataChanged();
+
+            assertEquals(0, chart.getViewStart(), "Expected the view to stay at the oldest rows");
+            assertEquals(20, chart.getViewEnd());
+
+            chart.setFollowLatest(true);
+            assertEquals(130, chart.getViewStart(), "Expected the view to jump to the newest rows");
+            chart.dispose();
+            return null;
+        });
+    }
+
+    @Test
+    void showsAtLeastTheMinimumNumberOfPoints() throws Exception {
+        onFxThread(() -> {
+            PerformanceChart chart = PerformanceChart.create(new ReplayDataset(), 1);
+            assertEquals(PerformanceChart.MIN_VISIBLE_POINTS, chart.getVisiblePoints());
+            assertEquals(0, chart.getViewStart());
+            assertEquals(0, chart.getViewEnd());
+            chart.dispose();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,166 @@
+package com.ibbe.websocket;
+
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplayDatasetTest {
+
+    private static final long START = 1_710_072_000_000L;
+
+    private static TradeSnapshot snapshot(int sequence) {
+        TradeSnapshot snapshot = new TradeSnapshot();
+        snapshot.setSequence(sequence);
+        snapshot.setTimestampMillis(START + sequence * 1000L);
+        snapshot.setTradeId(5000L + sequence);
+        snapshot.setTradePrice(1000 + sequence);
+        snapshot.setTradeAmount(0.5);
+        snapshot.setAvgAskPrice(1001.5);
+        snapshot.setAvgAskAmount(2.25);
+        snapshot.setAvgBidPrice(999.5);
+        snapshot.setAvgBidAmount(new BigDecimal("3.75"));
+        snapshot.setSTMAPrice(1000.25);
+        snapshot.setLTMAPrice(1000.75);
+        snapshot.setTradeAmountIncrease(4);
+        snapshot.setTradeAmountDecrease(3);
+        snapshot.setPriceCloserToBestAsk(new BigDecimal("0.2"));
+        return snapshot;
+    }
+
+    @Test
+    void rowsRebuildTheSnapshotsAppended() {
+        ReplayDataset data = new ReplayDataset();
+        TradeSnapshot withTrade = snapshot(0);
+        withTrade.setPretendTrade(new Trade("2024-03-10T12:00:00Z", new BigDecimal("0.125"), "buy",
+            new BigDecimal("1000.5"), 77L));
+        withTrade.setCurrencyBalance(new BigDecimal("1500.5"));
+        withTrade.setCoinBalance(new BigDecimal("0.25"));
+        withTrade.setLatestPrice(new BigDecimal("1000"));
+        withTrade.setAccountValueInChunk(new BigDecimal("1750.5"));
+        data.append(withTrade);
+        data.append(snapshot(1));
+
+        assertEquals(2, data.size());
+        assertEquals(1, data.getPretendTradeCount());
+
+        TradeSnapshot row = data.getSnapshot(0);
+        assertEquals(0, row.getSequence());
+        assertEquals(START, row.getTimestampMillis());
+        assertEquals(5000L, row.getTradeId());
+        assertEquals(1000, row.getTradePrice());
+        assertEquals(0.5, row.getTradeAmount());
+        assertEquals(1001.5, row.getAvgAskPrice());
+        assertEquals(2.25, row.getAvgAskAmount());
+        assertEquals(999.5, row.getAvgBidPrice());
+        assertEquals(3.75, row.getAvgBidAmount());
+        assertEquals(1000.25, row.getSTMAPrice());
+        assertEquals(1000.75, row.getLTMAPrice());
+        assertEquals(4, row.getTradeAmountIncrease());
+        assertEquals(3, row.getTradeAmountDecrease());
+        assertEquals(0.2, row.getPriceCloserToBestAsk());
+        assertEquals(0, new BigDecimal("1500.5").compareTo(row.getCurrencyBalance()));
+        assertEquals(0, new BigDecimal("0.25").compareTo(row.getCoinBalance()));
+        assertEquals(0, new BigDecimal("1000").compareTo(row.getLatestPrice()));
+        assertEquals(0, new BigDecimal("1750.5").compareTo(row.getAccountValueInChunk()));
+
+        Trade pretendTrade = row.getPretendTrade();
+        assertNotNull(pretendTrade, "Expected the pretend trade to be rebuilt");
+        assertEquals("buy", pretendTrade.getMakerSide());
+        assertEquals(0, new BigDecimal("1000.5").compareTo(pretendTrade.getPrice()));
+        assertEquals(0, new BigDecimal("0.125").compareTo(pretendTrade.getAmount()));
+        assertEquals(77L, pretendTrade.getTid());
+        assertEquals(START, pretendTrade.getCreatedAtMillis());
+        assertEquals(ReplayDataset.BUY, data.getPretendSide(0));
+
+        TradeSnapshot plain = data.getSnapshot(1);
+        assertNull(plain.getPretendTrade());
+        assertNull(plain.getCurrencyBalance(), "Expected missing balances to stay missing");
+        assertNull(plain.getAccountValueInChunk());
+        assertEquals(ReplayDataset.NO_TRADE, data.getPretendSide(1));
+    }
+
+    @Test
+    void rowsSpanPagesAndTheGrownPageDirectory() {
+        ReplayDataset data = new ReplayDataset();
+        // beyond the 16 initial pages of 8192 rows
+        int rows = 140_000;
+        for (int i = 0; i < rows; i++) {
+            data.append(snapshot(i));
+        }
+
+        assertEquals(rows, data.size());
+        for (int row : new int[]{0, 8191, 8192, 131_071, 131_072, rows - 1}) {
+            assertEquals(row, data.getSequence(row), "Wrong sequence at row " + row);
+            assertEquals(1000 + row, data.getTradePrice(row), "Wrong price at row " + row);
+            assertEquals(START + row * 1000L, data.getTimestamp(row), "Wrong time at row " + row);
+        }
+    }
+
+    @Test
+    void windowIsBoundedByTheSize() {
+        ReplayDataset data = new ReplayDataset();
+        for (int i = 0; i < 10; i++) {
+            data.append(snapshot(i));
+        }
+
+        List<TradeSnapshot> window = data.window(4, 20);
+        assertEquals(6, window.size(), "Expected the window to end at the size");
+        assertEquals(4, window.get(0).getSequence());
+        assertEquals(9, window.get(5).getSequence());
+        assertThrows(IndexOutOfBoundsException.class, () -> window.get(6));
+
+        List<TradeSnapshot> subList = window.subList(1, 3);
+        assertEquals(2, subList.size());
+        assertEquals(5, subList.get(0).getSequence());
+        assertThrows(IndexOutOfBoundsException.class, () -> window.subList(2, 7));
+
+        assertEquals(0, data.window(12, 20).size(), "Expected an empty window past the size");
+    }
+
+    @Test
+    void parsesTimestampsSentAsIsoOrMillis() {
+        assertEquals(START, ReplayDataset.toEpochMillis("2024-03-10T12:00:00Z"));
+        assertEquals(START, ReplayDataset.toEpochMillis(String.valueOf(START)));
+        assertEquals(0, ReplayDataset.toEpochMillis("yesterday"));
+        assertEquals(0, ReplayDataset.toEpochMillis(null));
+
+        ReplayDataset data = new ReplayDataset();
+        TradeSnapshot isoTime = snapshot(0);
+        isoTime.setTimestamp("2024-03-10T12:00:00Z");
+        data.append(isoTime);
+        assertEquals(START, data.getTimestamp(0));
+    }
+
+    @Test
+    void readersSeeOnlyCompleteRows() throws InterruptedException {
+        ReplayDataset data = new ReplayDataset();
+        int rows = 50_000;
+        AtomicBoolean torn = new AtomicBoolean(false);
+        Thread reader = new Thread(() -> {
+            int checked = 0;
+            while (checked < rows) {
+                int size = data.size();
+                for (int row = checked; row < size; row++) {
+                    if (data.getSequence(row) != row || data.getTradePrice(row) != 1000 + row) {
+                        torn.set(true);
+                    }
+                }
+                checked = size;
+            }
+        });
+        reader.start();
+        for (int i = 0; i < rows; i++) {
+            data.append(snapshot(i));
+        }
+        reader.join(10_000);
+
+        assertFalse(reader.isAlive(), "Expected the reader to see all rows");
+        assertFalse(torn.get(), "Expected rows below the size to be complete");
+    }
+}
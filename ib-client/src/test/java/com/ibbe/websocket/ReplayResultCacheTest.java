@@ -0,0 +1,126 @@
+package com.ibbe.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibbe.entity.TradeConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplayResultCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * a cache reporting a fixed topic end offset instead of asking the server
+     */
+    private ReplayResultCache cache(int maxMemoryEntries, long endOffset) {
+        return new ReplayResultCache(maxMemoryEntries, directory) {
+            @Override
+            public long fetchEndOffset() {
+                return endOffset;
+            }
+        };
+    }
+
+    private static ReplayResultCache.Entry entry(String configHash, long endOffset, String... payloads) {
+        return new ReplayResultCache.Entry(configHash, endOffset, List.of(payloads));
+    }
+
+    @Test
+    void spillsTheLeastRecentlyUsedResultsAndLoadsThemBack() {
+        ReplayResultCache cache = cache(2, 0);
+        cache.put(entry("a", 10, "{\"sequence\":1}", "{\"sequence\":2}"));
+        cache.put(entry("b", 10, "{\"sequence\":1}"));
+        // makes b the least recently used
+        cache.get("a");
+        cache.put(entry("c", 10, "{\"sequence\":1}"));
+
+        assertTrue(Files.exists(directory.resolve("b.replay.gz")), "Expected b to be spilled");
+        assertFalse(Files.exists(directory.resolve("a.replay.gz")), "Expected a to stay in memory");
+
+        ReplayResultCache.Entry loaded = cache.get("b");
+        assertNotNull(loaded, "Expected the spilled results to be loaded back");
+        assertEquals(10, loaded.getEndOffset());
+        assertEquals(List.of("{\"sequence\":1}"), loaded.getPayloads());
+        assertNull(cache.get("unknown"));
+    }
+
+    @Test
+    void flushedResultsSurviveARestart() {
+        ReplayResultCache cache = cache(8, 0);
+        cache.put(entry("a", 10, "{\"sequence\":1}"));
+        cache.put(entry("a", 20, "{\"sequence\":1}", "{\"sequence\":2}", "{\"price\":\"é\"}"));
+        cache.flush();
+
+        ReplayResultCache.Entry loaded = cache(8, 0).get("a");
+        assertNotNull(loaded);
+        assertEquals(20, loaded.getEndOffset(), "Expected the newer results to replace the older ones");
+        assertEquals(List.of("{\"sequence\":1}", "{\"sequence\":2}", "{\"price\":\"é\"}"), loaded.getPayloads());
+    }
+
+    @Test
+    void ignoresAnUnreadableFile() throws IOException {
+        Files.writeString(directory.resolve("a.replay.gz"), "not gzip");
+        assertNull(cache(8, 0).get("a"));
+    }
+
+    @Test
+    void sessionRequestsOnlyTheTailMissingFromTheCache() throws Exception {
+        TradeConfig config = new TradeConfig("5", "5");
+        ReplayResultCache cache = cache(8, 30);
+        cache.put(entry(config.canonicalHash(), 20, "{\"sequence\":1}"));
+
+        ReplayCacheSession session = new ReplayCacheSession(cache, config);
+        assertFalse(session.isUpToDate());
+        assertEquals(20, session.getCachedEndOffset());
+        assertEquals(List.of("{\"sequence\":1}"), session.getCachedPayloads());
+        JsonNode request = objectMapper.readTree(session.createRequest(objectMapper));
+        assertEquals(20, request.path("fromOffset").asLong());
+        assertEquals(30, request.path("checkpointOffset").asLong());
+
+        session.record("{\"sequence\":2}");
+        assertFalse(session.handleCheckpoint("{\"sequence\":3}", objectMapper),
+            "Expected a snapshot not to be a checkpoint");
+        assertTrue(session.handleCheckpoint("{\"replayCheckpoint\":true,\"endOffset\":30}", objectMapper));
+
+        ReplayResultCache.Entry stored = cache.get(config.canonicalHash());
+        assertEquals(30, stored.getEndOffset());
+        assertEquals(List.of("{\"sequence\":1}", "{\"sequence\":2}"), stored.getPayloads(),
+            "Expected the cached and the received results to be stored together");
+        assertTrue(new ReplayCacheSession(cache, config).isUpToDate());
+    }
+
+    @Test
+    void sessionIgnoresResultsPastTheEndOfARecreatedTopic() {
+        TradeConfig config = new TradeConfig("5", "5");
+        ReplayResultCache cache = cache(8, 10);
+        cache.put(entry(config.canonicalHash(), 20, "{\"sequence\":1}"));
+
+        ReplayCacheSession session = new ReplayCacheSession(cache, config);
+        assertEquals(0, session.getCachedEndOffset());
+        assertTrue(session.getCachedPayloads().isEmpty());
+    }
+
+    @Test
+    void sessionWithoutAnEndOffsetRequestsThePlainConfig() throws Exception {
+        TradeConfig config = new TradeConfig("5", "5");
+        ReplayResultCache cache = cache(8, -1);
+
+        ReplayCacheSession session = new ReplayCacheSession(cache, config);
+        JsonNode request = objectMapper.readTree(session.createRequest(objectMapper));
+        assertEquals("5", request.path("ups").asText(), "Expected the plain configuration");
+        session.record("{\"sequence\":1}");
+        session.handleCheckpoint("{\"replayCheckpoint\":true,\"endOffset\":-1}", objectMapper);
+        assertNull(cache.get(config.canonicalHash()), "Expected nothing to be cached");
+    }
+}
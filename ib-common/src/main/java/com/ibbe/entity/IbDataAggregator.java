@@ -1,20 +1,20 @@
 package com.ibbe.entity;
 
+import com.ibbe.util.RecentItemsRing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 
-import java.util.concurrent.LinkedBlockingDeque;
-
 public class IbDataAggregator {
   private static Logger LOGGER = LoggerFactory.getLogger(IbDataAggregator.class.getName());
 
-  protected LinkedBlockingDeque<TradeWs> internalizedTrades = new LinkedBlockingDeque<>();
+  private static final int DEFAULT_TRADES_QUEUE_SIZE = 20;
+  private static final TradeWs[] NO_TRADES = new TradeWs[0];
 
-  protected Trade previousBitsoTrade = null;
+  // the last X trades received; written only by the trade ingest thread, read without locking by publishers
+  protected volatile RecentItemsRing<TradeWs> internalizedTrades = new RecentItemsRing<>(DEFAULT_TRADES_QUEUE_SIZE);
 
-  @Value("${poller.interval.xchrate}")
-  protected int internalTradesQueueSize;
+  protected Trade previousBitsoTrade = null;
 
   // the current snapshot of the orderbook; being shipped to Kafka with each trade
   protected OrderBookPayload orderBookPayload;
@@ -22,32 +22,45 @@ public class IbDataAggregator {
 
 
   /**
-   * add an element to the last position of the deque of trades reveived via websocket and send to event monitors (in
-   * this case the LiveTrader
+   * sets the number of recent trades kept; called once at startup, before trades are received
+   *
+   * @param internalTradesQueueSize number of trades to keep
+   */
+  @Value("${internal.bitso.trades.queue.size:20}")
+  public void setInternalTradesQueueSize(int internalTradesQueueSize) {
+    internalizedTrades = new RecentItemsRing<>(internalTradesQueueSize);
+  }
+
+  /**
+   * add an element to the last position of the ring of trades reveived via websocket and send to event monitors (in
+   * this case the LiveTrader; the oldest trade is dropped once the ring is full
    *
    * @param tradeWs TradeWs to be added
    *
    *
    */
   public void addInternalizedTradeWs(TradeWs tradeWs) {
-
-    boolean success = false;
-    // add tradeWs to internal queue (maintains the last X number of trades)
-    while (!success) {
-      success = internalizedTrades.offerLast(tradeWs);
-    }
-    if (internalizedTrades.size() > internalTradesQueueSize) {
-      try {
-        internalizedTrades.takeFirst();
-      } catch (InterruptedException e) {
-        e.printStackTrace();
-        throw new RuntimeException(e);
-      }
-    }
+    // add tradeWs to internal ring (maintains the last X number of trades); never blocks on readers
+    internalizedTrades.add(tradeWs);
   }
 
   public Object[] getRecentTrades() {
-    return internalizedTrades.toArray();
+    return internalizedTrades.snapshot(Integer.MAX_VALUE, NO_TRADES);
+  }
+
+  /**
+   * @param limit maximum number of trades to return
+   * @return the most recent trades (at most limit), oldest first
+   */
+  public Object[] getRecentTrades(int limit) {
+    return internalizedTrades.snapshot(limit, NO_TRADES);
+  }
+
+  /**
+   * @return the last trade received, or null if there is none yet
+   */
+  public TradeWs getMostRecentTrade() {
+    return internalizedTrades.last();
   }
 
 
@@ -0,0 +1,99 @@
+package com.ibbe.entity;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Percentile bands of the cumulative profit over the simulations of a Monte Carlo run that are done so far; sent
+ * repeatedly while the run progresses, the last one with done set.
+ * bands[p][i] is the percentiles[p] percentile of the cumulative profit after steps[i] chunks.
+ */
+public class MonteCarloBands {
+    private final int simulationsDone;
+    private final int simulations;
+    private final int chunks;
+    private final int[] steps;
+    private final double[] percentiles;
+    private final double[][] bands;
+    private final double historicalProfit;
+    private final double lossProbability;
+    private final boolean done;
+
+    /**
+     * @param simulationsDone  simulations the bands are computed from
+     * @param simulations      simulations requested
+     * @param chunks           chunks per simulated sequence (as many as the configuration traded historically)
+     * @param steps            chunk counts the bands are given at
+     * @param percentiles      the percentiles of the bands, e.g. 5, 25, 50, 75, 95
+     * @param bands            cumulative profit per percentile and step
+     * @param historicalProfit the profit of the historical chunk sequence without noise
+     * @param lossProbability  share of the simulations done that end with a loss
+     * @param done             whether all simulations are done
+     */
+    public MonteCarloBands(@JsonProperty("simulationsDone") int simulationsDone,
+                           @JsonProperty("simulations") int simulations,
+                           @JsonProperty("chunks") int chunks,
+                           @JsonProperty("steps") int[] steps,
+                           @JsonProperty("percentiles") double[] percentiles,
+                           @JsonProperty("bands") double[][] bands,
+                           @JsonProperty("historicalProfit") double historicalProfit,
+                           @JsonProperty("lossProbability") double lossProbability,
+                           @JsonProperty("done") boolean done) {
+        this.simulationsDone = simulationsDone;
+        this.simulations = simulations;
+        this.chunks = chunks;
+        this.steps = steps;
+        this.percentiles = percentiles;
+        this.bands = bands;
+        this.historicalProfit = historicalProfit;
+        this.lossProbability = lossProbability;
+        this.done = done;
+    }
+
+    public int getSimulationsDone() {
+        return simulationsDone;
+    }
+
+    public int getSimulations() {
+        return simulations;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    public int[] getSteps() {
+        return steps;
+    }
+
+    public double[] getPercentiles() {
+        return percentiles;
+    }
+
+    public double[][] getBands() {
+        return bands;
+    }
+
+    public double getHistoricalProfit() {
+        return historicalProfit;
+    }
+
+    public double getLossProbability() {
+        return lossProbability;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public String toString() {
+        return "MonteCarloBands{" +
+            "simulationsDone=" + simulationsDone +
+            ", simulations=" + simulations +
+            ", chunks=" + chunks +
+            ", historicalProfit=" + historicalProfit +
+            ", lossProbability=" + lossProbability +
+            ", done=" + done +
+            "}";
+    }
+}
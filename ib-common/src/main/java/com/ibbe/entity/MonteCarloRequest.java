@@ -0,0 +1,66 @@
+package com.ibbe.entity;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A Monte Carlo robustness run of a configuration: the chunks it traded are resampled (with replacement) into new
+ * sequences, and every pretend trade gets random slippage and a jittered fee.
+ */
+public class MonteCarloRequest {
+    private final TradeConfig config;
+    private final int simulations;
+    private final double slippageBps;
+    private final double feeJitter;
+    private final long seed;
+
+    /**
+     * @param config      the trading configuration
+     * @param simulations number of resampled sequences
+     * @param slippageBps typical adverse slippage of a pretend trade's price in basis points (the absolute value of a
+     *                    normal deviate of this size); 0 for none
+     * @param feeJitter   relative jitter of the trading fee, e.g. 0.2 for a fee uniformly within +-20%; 0 for none
+     * @param seed        random seed, so that runs can be repeated; 0 for a random one
+     */
+    public MonteCarloRequest(@JsonProperty("config") TradeConfig config,
+                             @JsonProperty("simulations") int simulations,
+                             @JsonProperty("slippageBps") double slippageBps,
+                             @JsonProperty("feeJitter") double feeJitter,
+                             @JsonProperty("seed") long seed) {
+        this.config = config;
+        this.simulations = simulations;
+        this.slippageBps = slippageBps;
+        this.feeJitter = feeJitter;
+        this.seed = seed;
+    }
+
+    public TradeConfig getConfig() {
+        return config;
+    }
+
+    public int getSimulations() {
+        return simulations;
+    }
+
+    public double getSlippageBps() {
+        return slippageBps;
+    }
+
+    public double getFeeJitter() {
+        return feeJitter;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public String toString() {
+        return "MonteCarloRequest{" +
+            "config=" + config +
+            ", simulations=" + simulations +
+            ", slippageBps=" + slippageBps +
+            ", feeJitter=" + feeJitter +
+            ", seed=" + seed +
+            "}";
+    }
+}
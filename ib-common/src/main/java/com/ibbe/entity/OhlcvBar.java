@@ -0,0 +1,99 @@
+package com.ibbe.entity;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Open/high/low/close/volume aggregate of the trades within one time bucket, along with the orderbook stats of the
+ * bucket (best bid/ask at close and the average spread over its trades).
+ */
+public class OhlcvBar implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long startTimeMillis;  // start of the bucket, epoch milliseconds
+    private BigDecimal open;
+    private BigDecimal high;
+    private BigDecimal low;
+    private BigDecimal close;
+    private BigDecimal volume = BigDecimal.ZERO;
+    private int tradeCount;
+    private BigDecimal closeBid;
+    private BigDecimal closeAsk;
+    // sum of the spreads of the trades that came with an orderbook; averaged on read
+    private BigDecimal spreadSum = BigDecimal.ZERO;
+    private int spreadCount;
+
+    public OhlcvBar(long startTimeMillis) {
+        this.startTimeMillis = startTimeMillis;
+    }
+
+    /**
+     * folds the trade into the bar; trades are expected in time order
+     *
+     * @param trade trade within the bucket of this bar
+     */
+    public void add(Trade trade) {
+        BigDecimal price = trade.getPrice();
+        if (open == null) {
+            open = price;
+            high = price;
+            low = price;
+        }
+        high = high.max(price);
+        low = low.min(price);
+        close = price;
+        if (trade.getAmount() != null) {
+            volume = volume.add(trade.getAmount());
+        }
+        tradeCount++;
+
+        OrderBookPayload obp = trade.getObp();
+        if (obp != null && obp.getBids().length > 0 && obp.getAsks().length > 0) {
+            closeBid = obp.getBids()[0].getP();
+            closeAsk = obp.getAsks()[0].getP();
+            spreadSum = spreadSum.add(closeAsk.subtract(closeBid));
+            spreadCount++;
+        }
+    }
+
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    public BigDecimal getOpen() {
+        return open;
+    }
+
+    public BigDecimal getHigh() {
+        return high;
+    }
+
+    public BigDecimal getLow() {
+        return low;
+    }
+
+    public BigDecimal getClose() {
+        return close;
+    }
+
+    public BigDecimal getVolume() {
+        return volume;
+    }
+
+    public int getTradeCount() {
+        return tradeCount;
+    }
+
+    public BigDecimal getCloseBid() {
+        return closeBid;
+    }
+
+    public BigDecimal getCloseAsk() {
+        return closeAsk;
+    }
+
+    public BigDecimal getAvgSpread() {
+        return spreadCount == 0 ? null : spreadSum.divide(BigDecimal.valueOf(spreadCount), 2, RoundingMode.HALF_UP);
+    }
+}
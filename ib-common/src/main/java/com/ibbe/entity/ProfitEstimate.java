@@ -0,0 +1,90 @@
+package com.ibbe.entity;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Estimate of the total profit of a configuration from the chunks replayed so far of a quick estimate; sent
+ * repeatedly while the estimate progresses, the last one with done set and the exact profit of all chunks.
+ */
+public class ProfitEstimate {
+    private final int chunksDone;
+    private final int chunks;
+    private final double estimatedProfit;
+    private final double lowerBound;
+    private final double upperBound;
+    private final double confidence;
+    private final double sampledProfit;
+    private final boolean done;
+
+    /**
+     * @param chunksDone      chunks replayed so far
+     * @param chunks          chunks of the whole replay
+     * @param estimatedProfit estimated profit of all chunks
+     * @param lowerBound      lower bound of the confidence interval of the total profit
+     * @param upperBound      upper bound of the confidence interval of the total profit
+     * @param confidence      confidence level of the interval, e.g. 0.95
+     * @param sampledProfit   profit of the chunks replayed so far
+     * @param done            whether all chunks are replayed; the estimate is then the exact profit
+     */
+    public ProfitEstimate(@JsonProperty("chunksDone") int chunksDone,
+                          @JsonProperty("chunks") int chunks,
+                          @JsonProperty("estimatedProfit") double estimatedProfit,
+                          @JsonProperty("lowerBound") double lowerBound,
+                          @JsonProperty("upperBound") double upperBound,
+                          @JsonProperty("confidence") double confidence,
+                          @JsonProperty("sampledProfit") double sampledProfit,
+                          @JsonProperty("done") boolean done) {
+        this.chunksDone = chunksDone;
+        this.chunks = chunks;
+        this.estimatedProfit = estimatedProfit;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        this.confidence = confidence;
+        this.sampledProfit = sampledProfit;
+        this.done = done;
+    }
+
+    public int getChunksDone() {
+        return chunksDone;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    public double getEstimatedProfit() {
+        return estimatedProfit;
+    }
+
+    public double getLowerBound() {
+        return lowerBound;
+    }
+
+    public double getUpperBound() {
+        return upperBound;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    public double getSampledProfit() {
+        return sampledProfit;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public String toString() {
+        return "ProfitEstimate{" +
+            "chunksDone=" + chunksDone +
+            ", chunks=" + chunks +
+            ", estimatedProfit=" + estimatedProfit +
+            ", lowerBound=" + lowerBound +
+            ", upperBound=" + upperBound +
+            ", done=" + done +
+            "}";
+    }
+}
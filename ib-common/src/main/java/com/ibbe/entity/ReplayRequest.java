@@ -0,0 +1,93 @@
+package com.ibbe.entity;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A performance analysis request for a range of the curated trades topic.
+ * The server always replays the topic from the beginning (the trader state depends on all prior trades) but only
+ * sends the results of records at or after fromOffset, and tells the client once it has passed checkpointOffset - so
+ * a client holding the results up to fromOffset only receives the tail it is missing.
+ * <p>
+ * A request with a time range instead replays only the records whose timestamps (the trades' times) fall in
+ * [fromTime, toTime), with a trader starting fresh at fromTime; fromOffset and checkpointOffset are ignored and the
+ * server reports when the range is complete.
+ */
+public class ReplayRequest {
+    private final TradeConfig config;
+    private final long fromOffset;
+    private final long checkpointOffset;
+    private final long fromTime;
+    private final long toTime;
+
+    /**
+     * @param config           the trading configuration to replay
+     * @param fromOffset       first topic offset whose results are sent; 0 for all
+     * @param checkpointOffset offset at which the server reports that the results up to it are complete; -1 for none
+     */
+    public ReplayRequest(TradeConfig config, long fromOffset, long checkpointOffset) {
+        this(config, fromOffset, checkpointOffset, 0, 0);
+    }
+
+    /**
+     * @param config           the trading configuration to replay
+     * @param fromOffset       first topic offset whose results are sent; 0 for all
+     * @param checkpointOffset offset at which the server reports that the results up to it are complete; -1 for none
+     * @param fromTime         start of the time range to replay, in epoch millis; 0 for the beginning of the topic
+     * @param toTime           end (exclusive) of the time range to replay, in epoch millis; 0 for the current end
+     */
+    public ReplayRequest(@JsonProperty("config") TradeConfig config,
+                         @JsonProperty("fromOffset") long fromOffset,
+                         @JsonProperty("checkpointOffset") long checkpointOffset,
+                         @JsonProperty("fromTime") long fromTime,
+                         @JsonProperty("toTime") long toTime) {
+        this.config = config;
+        this.fromOffset = fromOffset;
+        this.checkpointOffset = checkpointOffset;
+        this.fromTime = fromTime;
+        this.toTime = toTime;
+    }
+
+    /**
+     * @return a request replaying the records of the time range [fromTime, toTime) only
+     */
+    public static ReplayRequest forTimeRange(TradeConfig config, long fromTime, long toTime) {
+        return new ReplayRequest(config, 0, -1, fromTime, toTime);
+    }
+
+    public TradeConfig getConfig() {
+        return config;
+    }
+
+    public long getFromOffset() {
+        return fromOffset;
+    }
+
+    public long getCheckpointOffset() {
+        return checkpointOffset;
+    }
+
+    public long getFromTime() {
+        return fromTime;
+    }
+
+    public long getToTime() {
+        return toTime;
+    }
+
+    /**
+     * @return whether the request replays a time range rather than the whole topic
+     */
+    public boolean hasTimeRange() {
+        return fromTime > 0 || toTime > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplayRequest{" +
+            "config=" + config +
+            ", fromOffset=" + fromOffset +
+            ", checkpointOffset=" + checkpointOffset +
+            (hasTimeRange() ? ", fromTime=" + fromTime + ", toTime=" + toTime : "") +
+            "}";
+    }
+}
@@ -1,6 +1,8 @@
 package com.ibbe.entity;
 
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.ZonedDateTime;
 import java.util.Arrays;
 import java.util.Comparator;
 
@@ -8,19 +10,31 @@ import java.util.Comparator;
  * Represents a trade transaction in the ib system.
  * Implements Comparable to allow sorting based on trade IDs.
  * Uses the Builder pattern for flexible object construction.
+ * The trade time is kept as epoch millis, parsed at most once from the ISO createdAt string (or set directly); the
+ * string is only formatted from the millis when it is asked for.
  */
 public class Trade implements Comparable<Trade> {
+  // epoch millis of a trade time that cannot be parsed
+  public static final long NO_TIME = Long.MIN_VALUE;
+  // epoch millis not parsed from createdAt yet
+  static final long UNPARSED = Long.MIN_VALUE + 1;
+
   private OrderBookPayload obp;
 
 //  protected String book;
+  // null until formatted from createdAtMillis
   protected String createdAt;
+  protected long createdAtMillis = UNPARSED;
   protected BigDecimal amount;
   protected String makerSide;
   protected BigDecimal price;
   protected Long tid;
   protected Tick tick;
-  // current status relative to previous tick values
+  // current status relative to previous tick values; null until built from nthRun when asked for
   protected String nthStatus;
+  // nthStatus as a signed run length: +n for the n-th UP tick in a row, -n for the n-th DOWN tick in a row, 0 if
+  // unknown - what trading decisions compare against
+  protected int nthRun;
 
   /**
    * trade object used within the ib system
@@ -57,17 +71,23 @@ public class Trade implements Comparable<Trade> {
       this.tid = null;
       this.tick = null;
       this.nthStatus = null;
+      this.nthRun = 0;
       return;
     }
     
     // Copy values with null checks
-    this.createdAt = trade.createdAt != null ? new String(trade.createdAt) : "";
+    this.createdAt = trade.createdAt;
+    this.createdAtMillis = trade.createdAtMillis;
+    if (this.createdAt == null && this.createdAtMillis == UNPARSED) {
+      this.createdAt = "";
+    }
     this.amount = trade.amount != null ? new BigDecimal(trade.amount.toString()) : BigDecimal.ZERO;
     this.makerSide = trade.makerSide != null ? new String(trade.makerSide) : "buy";
     this.price = trade.price != null ? new BigDecimal(trade.price.toString()) : BigDecimal.ZERO;
     this.tid = trade.tid;
     this.tick = trade.tick != null ? Tick.valueOf(trade.tick.name()) : null;
     this.nthStatus = trade.nthStatus != null ? new String(trade.nthStatus) : null;
+    this.nthRun = trade.nthRun;
     this.obp = trade.obp;
   }
 
@@ -75,10 +95,57 @@ public class Trade implements Comparable<Trade> {
 //    return book;
 //  }
 
+  /**
+   * @return the trade time as an ISO date-time, e.g. 2024-03-10T12:00:00Z
+   */
   public String getCreatedAt() {
+    if (createdAt == null && createdAtMillis != UNPARSED) {
+      createdAt = formatEpochMillis(createdAtMillis);
+    }
     return createdAt;
   }
 
+  public void setCreatedAt(String createdAt) {
+    this.createdAt = createdAt;
+    this.createdAtMillis = UNPARSED;
+  }
+
+  /**
+   * @return the trade time in epoch millis; NO_TIME if it cannot be parsed
+   */
+  public long getCreatedAtMillis() {
+    if (createdAtMillis == UNPARSED) {
+      createdAtMillis = parseEpochMillis(createdAt);
+    }
+    return createdAtMillis;
+  }
+
+  public void setCreatedAtMillis(long createdAtMillis) {
+    this.createdAtMillis = createdAtMillis;
+    this.createdAt = null;
+  }
+
+  /**
+   * @return the epoch millis of an ISO date-time; NO_TIME if it is missing or cannot be parsed
+   */
+  static long parseEpochMillis(String timestamp) {
+    if (timestamp == null || timestamp.isEmpty()) {
+      return NO_TIME;
+    }
+    try {
+      return ZonedDateTime.parse(timestamp).toInstant().toEpochMilli();
+    } catch (RuntimeException e) {
+      return NO_TIME;
+    }
+  }
+
+  /**
+   * @return the ISO date-time of epoch millis; empty for NO_TIME, so an unparseable time stays unparseable
+   */
+  static String formatEpochMillis(long millis) {
+    return millis == NO_TIME ? "" : Instant.ofEpochMilli(millis).toString();
+  }
+
   public BigDecimal getAmount() {
     return amount;
   }
@@ -131,12 +198,73 @@ public class Trade implements Comparable<Trade> {
     this.tick = tick;
   }
 
+  /**
+   * @return the status string, e.g. "TICK_UP3", built from the run length unless it was set; null if the run is unknown
+   */
   public String getNthStatus() {
+    if (nthStatus == null && nthRun != 0) {
+      nthStatus = formatNthStatus(nthRun);
+    }
     return nthStatus;
   }
 
+  /**
+   * Sets the status string, e.g. "TICK_UP3", and the run length parsed from it
+   */
   public void setNthStatus(String nthStatus) {
     this.nthStatus = nthStatus;
+    this.nthRun = parseNthRun(nthStatus);
+  }
+
+  public int getNthRun() {
+    return nthRun;
+  }
+
+  /**
+   * Sets the run length; the status string follows it
+   */
+  public void setNthRun(int nthRun) {
+    this.nthRun = nthRun;
+    this.nthStatus = null;
+  }
+
+  /**
+   * Sets the run this trade is part of; the status string follows it
+   *
+   * @param direction TICK_UP or TICK_DOWN
+   * @param count     number of ticks in that direction in a row, this one included
+   */
+  public void setRun(Tick direction, int count) {
+    setNthRun(direction == Tick.TICK_DOWN ? -count : count);
+  }
+
+  /**
+   * @param nthRun a signed run length other than 0
+   * @return the status string of the run length, e.g. "TICK_UP3" for 3 and "TICK_DOWN1" for -1
+   */
+  public static String formatNthStatus(int nthRun) {
+    return nthRun > 0 ? Tick.TICK_UP.toString() + nthRun : Tick.TICK_DOWN.toString() + -nthRun;
+  }
+
+  /**
+   * @param nthStatus e.g. "TICK_UP3" or "TICK_DOWN1"
+   * @return the signed run length (3 or -1 for the examples), or 0 if the status is missing or malformed
+   */
+  public static int parseNthRun(String nthStatus) {
+    if (nthStatus == null) {
+      return 0;
+    }
+    try {
+      if (nthStatus.startsWith("TICK_UP")) {
+        return Integer.parseInt(nthStatus.substring("TICK_UP".length()));
+      }
+      if (nthStatus.startsWith("TICK_DOWN")) {
+        return -Integer.parseInt(nthStatus.substring("TICK_DOWN".length()));
+      }
+    } catch (NumberFormatException e) {
+      // fall through
+    }
+    return 0;
   }
 
   public void setObp(OrderBookPayload obp) {
@@ -152,12 +280,17 @@ public class Trade implements Comparable<Trade> {
    */
   private Trade(Builder builder) {
     this.createdAt = builder.createdAt;
+    if (builder.createdAtMillis != UNPARSED) {
+      this.createdAtMillis = builder.createdAtMillis;
+      this.createdAt = null;
+    }
     this.amount = builder.amount;
     this.makerSide = builder.makerSide;
     this.price = builder.price;
     this.tid = builder.tid;
     this.tick = builder.tick;
     this.nthStatus = builder.nthStatus;
+    this.nthRun = builder.nthStatus != null ? parseNthRun(builder.nthStatus) : builder.nthRun;
     this.obp = builder.obp;
   }
 
@@ -175,12 +308,14 @@ public class Trade implements Comparable<Trade> {
    */
   public static class Builder {
     private String createdAt;
+    private long createdAtMillis = UNPARSED;
     private BigDecimal amount;
     private String makerSide;
     private BigDecimal price;
     private Long tid;
     private Tick tick;
     private String nthStatus;
+    private int nthRun;
     private OrderBookPayload obp;
 
     public Builder createdAt(String createdAt) {
@@ -188,6 +323,14 @@ public class Trade implements Comparable<Trade> {
       return this;
     }
 
+    /**
+     * sets the trade time in epoch millis, instead of createdAt
+     */
+    public Builder createdAtMillis(long createdAtMillis) {
+      this.createdAtMillis = createdAtMillis;
+      return this;
+    }
+
     public Builder amount(BigDecimal amount) {
       this.amount = amount;
       return this;
@@ -218,6 +361,14 @@ public class Trade implements Comparable<Trade> {
       return this;
     }
 
+    /**
+     * sets the signed run length, instead of nthStatus
+     */
+    public Builder nthRun(int nthRun) {
+      this.nthRun = nthRun;
+      return this;
+    }
+
     public Builder obp(OrderBookPayload obp) {
       this.obp = obp;
       return this;
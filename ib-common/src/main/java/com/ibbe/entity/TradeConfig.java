@@ -3,10 +3,19 @@ package com.ibbe.entity;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.ibbe.util.RandomString;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
 /**
  * Configuration for trading operations.
  */
 public class TradeConfig {
+    // bumped when replay results change for the same parameters; pretend trades fill against the orderbook since 2,
+    // and replays read the curated topic (with its own offsets) since 3
+    private static final int RESULTS_VERSION = 3;
+
     private String id;
     private String ups;
     private String downs;
@@ -15,6 +24,9 @@ public class TradeConfig {
     private boolean useShortVsLongMovAvg;
     private boolean useTradingAmountMomentum;
     private boolean useTradePriceCloserToAskVsBuy;
+    // optional rule expressions (see com.ibbe.strategy.RuleCompiler); when set they replace ups, downs and the flags
+    private String sellRule;
+    private String buyRule;
 
     /**
      * Constructor with ups and downs parameters.
@@ -156,6 +168,68 @@ public class TradeConfig {
         this.useTradePriceCloserToAskVsBuy = useTradePriceCloserToAskVsBuy;
     }
 
+    /**
+     * Gets the sell rule.
+     *
+     * @return the sell rule expression, or null
+     */
+    public String getSellRule() {
+        return sellRule;
+    }
+
+    /**
+     * Sets the sell rule, e.g. {@code run == -3 && bidQty > askQty}.
+     *
+     * @param sellRule the sell rule expression, or null
+     */
+    public void setSellRule(String sellRule) {
+        this.sellRule = sellRule == null || sellRule.isBlank() ? null : sellRule.trim();
+    }
+
+    /**
+     * Gets the buy rule.
+     *
+     * @return the buy rule expression, or null
+     */
+    public String getBuyRule() {
+        return buyRule;
+    }
+
+    /**
+     * Sets the buy rule, e.g. {@code run == 3 && stma < ltma}.
+     *
+     * @param buyRule the buy rule expression, or null
+     */
+    public void setBuyRule(String buyRule) {
+        this.buyRule = buyRule == null || buyRule.isBlank() ? null : buyRule.trim();
+    }
+
+    /**
+     * Hash of the trading parameters only - two configurations with different IDs but the same parameters produce
+     * the same replay results, so they share the hash. The hash includes the version of the replay results, so
+     * results cached or checkpointed under an older way of pricing pretend trades are not reused.
+     *
+     * @return 16 hex characters of the SHA-256 of the canonical parameter string
+     */
+    public String canonicalHash() {
+        String canonical = "results=" + RESULTS_VERSION +
+            ";ups=" + (ups == null ? "" : ups.trim()) +
+            ";downs=" + (downs == null ? "" : downs.trim()) +
+            ";avgBidVsAvgAsk=" + useAvgBidVsAvgAsk +
+            ";shortVsLongMovAvg=" + useShortVsLongMovAvg +
+            ";tradingAmountMomentum=" + useTradingAmountMomentum +
+            ";tradePriceCloserToAskVsBuy=" + useTradePriceCloserToAskVsBuy +
+            // only appended when set, so configurations without rules keep their hashes
+            (sellRule == null ? "" : ";sellRule=" + sellRule) +
+            (buyRule == null ? "" : ";buyRule=" + buyRule);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
     @Override
     public String toString() {
         return "TradeConfig{" +
@@ -166,6 +240,8 @@ public class TradeConfig {
             ", useShortVsLongMovAvg=" + useShortVsLongMovAvg +
             ", useTradingAmountMomentum=" + useTradingAmountMomentum +
             ", useTradePriceCloserToAskVsBuy=" + useTradePriceCloserToAskVsBuy +
+            (sellRule == null ? "" : ", sellRule='" + sellRule + "'") +
+            (buyRule == null ? "" : ", buyRule='" + buyRule + "'") +
             "}";
     }
 }
@@ -43,9 +43,9 @@ public class TradeSnapshot {
   public double avgBidPrice;
   @Getter
   public double avgBidAmount;
-  @Setter
-  @Getter
+  // the trade time; the ISO string is only formatted from the millis when asked for (see Trade)
   private String timestamp;
+  private long timestampMillis = Trade.UNPARSED;
   @Setter
   @Getter
   private Long tradeId;
@@ -73,6 +73,14 @@ public class TradeSnapshot {
   @Setter
   @Getter
   private Trade pretendTrade;
+  // how far the pretend trade's fill was from the best price, in basis points, and the part of its amount the
+  // orderbook's depth covered (the rest filled at the worst stored price); both 0 if there was no depth to walk
+  @Setter
+  @Getter
+  private double pretendSlippageBps;
+  @Setter
+  @Getter
+  private double pretendFilledAmount;
   @Setter
   @Getter
   private BigDecimal currencyBalance;
@@ -125,4 +133,33 @@ public class TradeSnapshot {
     }
   }
 
-}
\ No newline at end of file
+  /**
+   * @return the trade time as an ISO date-time
+   */
+  public String getTimestamp() {
+    if (timestamp == null && timestampMillis != Trade.UNPARSED) {
+      timestamp = Trade.formatEpochMillis(timestampMillis);
+    }
+    return timestamp;
+  }
+
+  public void setTimestamp(String timestamp) {
+    this.timestamp = timestamp;
+    this.timestampMillis = Trade.UNPARSED;
+  }
+
+  /**
+   * @return the trade time in epoch millis; Trade.NO_TIME if it cannot be parsed
+   */
+  public long getTimestampMillis() {
+    if (timestampMillis == Trade.UNPARSED) {
+      timestampMillis = Trade.parseEpochMillis(timestamp);
+    }
+    return timestampMillis;
+  }
+
+  public void setTimestampMillis(long timestampMillis) {
+    this.timestampMillis = timestampMillis;
+    this.timestamp = null;
+  }
+}
@@ -4,9 +4,6 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.math.BigDecimal;
-import java.time.Instant;
-import java.time.ZoneOffset;
-import java.time.ZonedDateTime;
 
 /**
  * Corresponds to the payload structure of the incoming Bitso Trades Websocket message; extends the base class that is
@@ -25,19 +22,16 @@ public class TradeWs extends Trade {
                  @JsonProperty("mo") String mo,
                  @JsonProperty("to") String to,
                  @JsonProperty("t") String makerSide ) {
-    // Handle null createdAt value
+    // Bitso sends epoch millis; the ISO string is only formatted when asked for
+    long createdAtMillis = System.currentTimeMillis(); // fallback if missing or not a number
     if (createdAt != null && !createdAt.isEmpty()) {
       try {
-        ZonedDateTime zonedDateTime = Instant.ofEpochMilli(Long.parseLong(createdAt)).atZone(ZoneOffset.UTC);
-        this.createdAt = zonedDateTime.toString();
+        createdAtMillis = Long.parseLong(createdAt);
       } catch (NumberFormatException e) {
-        // If parsing fails, set current time as fallback
-        this.createdAt = ZonedDateTime.now(ZoneOffset.UTC).toString();
+        // keep the current time
       }
-    } else {
-      // Set current time as fallback
-      this.createdAt = ZonedDateTime.now(ZoneOffset.UTC).toString();
     }
+    setCreatedAtMillis(createdAtMillis);
     
     // Handle null amount
     this.amount = (amount != null) ? amount : BigDecimal.ZERO;
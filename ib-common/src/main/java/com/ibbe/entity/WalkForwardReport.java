@@ -0,0 +1,138 @@
+package com.ibbe.entity;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * The result of a walk-forward optimization: per window, the configuration that won on the train part and what it
+ * made on the following test part. The out-of-sample profit is the sum of the test profits; comparing it with the
+ * in-sample (train) profit of the winners shows how much of the optimization was overfitting.
+ */
+public class WalkForwardReport {
+    private final List<Window> windows;
+    private final BigDecimal inSampleProfit;
+    private final BigDecimal outOfSampleProfit;
+    private final int candidates;
+    private final long elapsedMillis;
+
+    public WalkForwardReport(@JsonProperty("windows") List<Window> windows,
+                             @JsonProperty("inSampleProfit") BigDecimal inSampleProfit,
+                             @JsonProperty("outOfSampleProfit") BigDecimal outOfSampleProfit,
+                             @JsonProperty("candidates") int candidates,
+                             @JsonProperty("elapsedMillis") long elapsedMillis) {
+        this.windows = windows;
+        this.inSampleProfit = inSampleProfit;
+        this.outOfSampleProfit = outOfSampleProfit;
+        this.candidates = candidates;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public List<Window> getWindows() {
+        return windows;
+    }
+
+    public BigDecimal getInSampleProfit() {
+        return inSampleProfit;
+    }
+
+    public BigDecimal getOutOfSampleProfit() {
+        return outOfSampleProfit;
+    }
+
+    public int getCandidates() {
+        return candidates;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * One train/test window; offsets are topic offsets, the train part is [trainFrom, testFrom) and the test part
+     * [testFrom, testTo).
+     */
+    public static class Window {
+        private final long trainFrom;
+        private final long testFrom;
+        private final long testTo;
+        private final TradeConfig winner;
+        private final BigDecimal trainProfit;
+        private final BigDecimal testProfit;
+        private final int testPretendTrades;
+        private final int testChunks;
+
+        public Window(@JsonProperty("trainFrom") long trainFrom,
+                      @JsonProperty("testFrom") long testFrom,
+                      @JsonProperty("testTo") long testTo,
+                      @JsonProperty("winner") TradeConfig winner,
+                      @JsonProperty("trainProfit") BigDecimal trainProfit,
+                      @JsonProperty("testProfit") BigDecimal testProfit,
+                      @JsonProperty("testPretendTrades") int testPretendTrades,
+                      @JsonProperty("testChunks") int testChunks) {
+            this.trainFrom = trainFrom;
+            this.testFrom = testFrom;
+            this.testTo = testTo;
+            this.winner = winner;
+            this.trainProfit = trainProfit;
+            this.testProfit = testProfit;
+            this.testPretendTrades = testPretendTrades;
+            this.testChunks = testChunks;
+        }
+
+        public long getTrainFrom() {
+            return trainFrom;
+        }
+
+        public long getTestFrom() {
+            return testFrom;
+        }
+
+        public long getTestTo() {
+            return testTo;
+        }
+
+        public TradeConfig getWinner() {
+            return winner;
+        }
+
+        public BigDecimal getTrainProfit() {
+            return trainProfit;
+        }
+
+        public BigDecimal getTestProfit() {
+            return testProfit;
+        }
+
+        public int getTestPretendTrades() {
+            return testPretendTrades;
+        }
+
+        public int getTestChunks() {
+            return testChunks;
+        }
+
+        @Override
+        public String toString() {
+            return "Window{" +
+                "train=[" + trainFrom + ", " + testFrom + ")" +
+                ", test=[" + testFrom + ", " + testTo + ")" +
+                ", winner=" + winner +
+                ", trainProfit=" + trainProfit +
+                ", testProfit=" + testProfit +
+                "}";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WalkForwardReport{" +
+            "windows=" + windows.size() +
+            ", inSampleProfit=" + inSampleProfit +
+            ", outOfSampleProfit=" + outOfSampleProfit +
+            ", candidates=" + candidates +
+            ", elapsedMillis=" + elapsedMillis +
+            "}";
+    }
+}
@@ -0,0 +1,50 @@
+package com.ibbe.entity;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * A walk-forward optimization request: history is split into rolling windows of trainTrades records followed by
+ * testTrades records; on each window the candidate with the best train profit is applied to the test part.
+ * Consecutive windows are testTrades records apart, so the test parts cover the history without overlap.
+ */
+public class WalkForwardRequest {
+    private final List<TradeConfig> configs;
+    private final long trainTrades;
+    private final long testTrades;
+
+    /**
+     * @param configs     the candidate configurations; null or empty for the default grid of ups, downs and criteria
+     * @param trainTrades topic records each candidate is scored on
+     * @param testTrades  topic records the winner is applied to
+     */
+    public WalkForwardRequest(@JsonProperty("configs") List<TradeConfig> configs,
+                              @JsonProperty("trainTrades") long trainTrades,
+                              @JsonProperty("testTrades") long testTrades) {
+        this.configs = configs;
+        this.trainTrades = trainTrades;
+        this.testTrades = testTrades;
+    }
+
+    public List<TradeConfig> getConfigs() {
+        return configs;
+    }
+
+    public long getTrainTrades() {
+        return trainTrades;
+    }
+
+    public long getTestTrades() {
+        return testTrades;
+    }
+
+    @Override
+    public String toString() {
+        return "WalkForwardRequest{" +
+            "configs=" + (configs == null ? 0 : configs.size()) +
+            ", trainTrades=" + trainTrades +
+            ", testTrades=" + testTrades +
+            "}";
+    }
+}
@@ -0,0 +1,42 @@
+package com.ibbe.strategy;
+
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeSnapshot;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * A rule expression compiled by {@link RuleCompiler} into a method handle of type (Trade, TradeSnapshot)boolean.
+ */
+public final class CompiledRule {
+    private final String source;
+    private final MethodHandle handle;
+
+    CompiledRule(String source, MethodHandle handle) {
+        this.source = source;
+        this.handle = handle;
+    }
+
+    /**
+     * @return whether the rule holds for the trade
+     */
+    public boolean test(Trade trade, TradeSnapshot snapshot) {
+        try {
+            return (boolean) handle.invokeExact(trade, snapshot);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            // the handle tree only combines arithmetic and getters, which throw no checked exceptions
+            throw new IllegalStateException("Rule failed: " + source, t);
+        }
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
@@ -0,0 +1,87 @@
+package com.ibbe.strategy;
+
+import com.ibbe.entity.Tick;
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeSnapshot;
+
+/**
+ * The built-in strategy of a TradeConfig: every criterion that is switched on must agree.
+ * <ul>
+ * <li>ups / downs: the trade is the n-th UP (buy) or DOWN (sell) tick in a row</li>
+ * <li>avg bid vs avg ask: more bid than ask quantity sells, less buys</li>
+ * <li>short vs long moving average: short above long sells, below buys</li>
+ * <li>trading amount momentum: more amount traded up than down sells, less buys</li>
+ * <li>trade price closer to ask vs bid: closer to the bid sells, closer to the ask buys</li>
+ * </ul>
+ * With no criterion switched on the strategy never trades.
+ */
+public class FlagStrategy implements Strategy {
+    private final int upN;
+    private final int downN;
+    private final boolean useAvgBidVsAvgAsk;
+    private final boolean useShortVsLongMovAvg;
+    private final boolean useTradingAmountMomentum;
+    private final boolean useTradePriceCloserToAskVsBuy;
+
+    public FlagStrategy(int upN, int downN, boolean useAvgBidVsAvgAsk, boolean useShortVsLongMovAvg,
+                        boolean useTradingAmountMomentum, boolean useTradePriceCloserToAskVsBuy) {
+        this.upN = upN;
+        this.downN = downN;
+        this.useAvgBidVsAvgAsk = useAvgBidVsAvgAsk;
+        this.useShortVsLongMovAvg = useShortVsLongMovAvg;
+        this.useTradingAmountMomentum = useTradingAmountMomentum;
+        this.useTradePriceCloserToAskVsBuy = useTradePriceCloserToAskVsBuy;
+    }
+
+    @Override
+    public boolean shouldSell(Trade trade, TradeSnapshot snapshot) {
+        if (trade.getNthRun() == 0 || trade.getTick() == null) {
+            return false;
+        }
+        // first condition is that ANY of the markers are set for selling
+        boolean sellingTime = downN > 0 || useAvgBidVsAvgAsk || useShortVsLongMovAvg || useTradingAmountMomentum
+            || useTradePriceCloserToAskVsBuy;
+        if (downN > 0) {
+            sellingTime = sellingTime && trade.getNthRun() == -downN && trade.getTick() == Tick.TICK_DOWN;
+        }
+        if (useAvgBidVsAvgAsk) {
+            sellingTime = sellingTime && snapshot.avgBidAmount > snapshot.avgAskAmount;
+        }
+        if (useShortVsLongMovAvg) {
+            sellingTime = sellingTime && snapshot.STMAPrice > snapshot.LTMAPrice;
+        }
+        if (useTradingAmountMomentum) {
+            sellingTime = sellingTime && snapshot.tradeAmountIncrease > snapshot.tradeAmountDecrease;
+        }
+        if (useTradePriceCloserToAskVsBuy) {
+            sellingTime = sellingTime && snapshot.priceCloserToBestAsk > 0;
+        }
+        return sellingTime;
+    }
+
+    @Override
+    public boolean shouldBuy(Trade trade, TradeSnapshot snapshot) {
+        if (trade.getNthRun() == 0 || trade.getTick() == null) {
+            return false;
+        }
+        // first condition is that ANY of the markers are set for buying
+        boolean buyingTime = upN > 0 || useAvgBidVsAvgAsk || useShortVsLongMovAvg || useTradingAmountMomentum
+            || useTradePriceCloserToAskVsBuy;
+        if (upN > 0) {
+            buyingTime = buyingTime && trade.getNthRun() == upN && trade.getTick() == Tick.TICK_UP;
+        }
+        if (useAvgBidVsAvgAsk) {
+            buyingTime = buyingTime && snapshot.avgBidAmount < snapshot.avgAskAmount;
+        }
+        if (useShortVsLongMovAvg) {
+            buyingTime = buyingTime && snapshot.STMAPrice < snapshot.LTMAPrice;
+        }
+        if (useTradingAmountMomentum) {
+            buyingTime = buyingTime && snapshot.tradeAmountIncrease < snapshot.tradeAmountDecrease;
+        }
+        if (useTradePriceCloserToAskVsBuy) {
+            buyingTime = buyingTime && snapshot.priceCloserToBestAsk < 0;
+        }
+        return buyingTime;
+    }
+}
@@ -0,0 +1,395 @@
+package com.ibbe.strategy;
+
+import com.ibbe.entity.Tick;
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeSnapshot;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+/**
+ * Compiles rule expressions into method handle trees, so that a rule runs without interpreting an AST per trade.
+ * <p>
+ * Grammar:
+ * <pre>
+ *   rule       := or
+ *   or         := and ('||' and)*
+ *   and        := not ('&amp;&amp;' not)*
+ *   not        := '!' not | comparison
+ *   comparison := sum (('&lt;' | '&lt;=' | '&gt;' | '&gt;=' | '==' | '!=') sum)?
+ *   sum        := product (('+' | '-') product)*
+ *   product    := unary (('*' | '/') unary)*
+ *   unary      := '-' unary | number | variable | 'true' | 'false' | '(' or ')'
+ * </pre>
+ * Variables (all numbers):
+ * <ul>
+ * <li>price, amount: of the trade</li>
+ * <li>tick: 1 for an UP tick, -1 for a DOWN tick, 0 otherwise</li>
+ * <li>run: n for the n-th UP tick in a row, -n for the n-th DOWN tick in a row</li>
+ * <li>bidQty, askQty, bidPrice, askPrice: orderbook averages</li>
+ * <li>stma, ltma: short and long term moving average of the price</li>
+ * <li>amountUp, amountDown: amounts traded on UP / DOWN ticks over the recent trades</li>
+ * <li>closerToAsk: distance to the best ask minus distance to the best bid</li>
+ * </ul>
+ * E.g. the configuration "downs 3 and avg bid vs avg ask" sells on {@code tick == -1 && run == -3 && bidQty > askQty}
+ * (a zero tick keeps the run of the ticks before it, but the configuration only trades on the DOWN tick itself).
+ */
+public final class RuleCompiler {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType NUMBER = MethodType.methodType(double.class, Trade.class, TradeSnapshot.class);
+    private static final MethodType BOOLEAN = MethodType.methodType(boolean.class, Trade.class, TradeSnapshot.class);
+    private static final List<String> VARIABLES = List.of("price", "amount", "tick", "run", "bidQty", "askQty",
+        "bidPrice", "askPrice", "stma", "ltma", "amountUp", "amountDown", "closerToAsk");
+
+    private final String source;
+    private int pos;
+
+    private RuleCompiler(String source) {
+        this.source = source;
+    }
+
+    /**
+     * @param rule a rule expression, e.g. {@code stma > ltma && bidQty > askQty}
+     * @return the compiled rule
+     * @throws IllegalArgumentException if the expression is malformed or not boolean
+     */
+    public static CompiledRule compile(String rule) {
+        if (rule == null || rule.isBlank()) {
+            throw new IllegalArgumentException("Empty rule");
+        }
+        RuleCompiler compiler = new RuleCompiler(rule);
+        Node node = compiler.parseOr();
+        compiler.skipSpaces();
+        if (compiler.pos < rule.length()) {
+            throw compiler.error("unexpected '" + rule.charAt(compiler.pos) + "'");
+        }
+        if (!node.isBoolean()) {
+            throw compiler.error("the rule must be a condition, e.g. a comparison");
+        }
+        return new CompiledRule(rule, node.handle);
+    }
+
+    /**
+     * a compiled subexpression: a handle of type NUMBER or BOOLEAN, and its value if it is a constant
+     */
+    private record Node(MethodHandle handle, Object constant) {
+        boolean isBoolean() {
+            return handle.type().returnType() == boolean.class;
+        }
+    }
+
+    private Node parseOr() {
+        Node left = parseAnd();
+        while (accept("||")) {
+            int at = pos;
+            Node right = parseAnd();
+            requireBoolean(left, at);
+            requireBoolean(right, at);
+            left = condition(MethodHandles.guardWithTest(left.handle, constant(true).handle, right.handle));
+        }
+        return left;
+    }
+
+    private Node parseAnd() {
+        Node left = parseNot();
+        while (accept("&&")) {
+            int at = pos;
+            Node right = parseNot();
+            requireBoolean(left, at);
+            requireBoolean(right, at);
+            left = condition(MethodHandles.guardWithTest(left.handle, right.handle, constant(false).handle));
+        }
+        return left;
+    }
+
+    private Node parseNot() {
+        int at = pos;
+        if (peek("!") && !peek("!=")) {
+            accept("!");
+            Node operand = parseNot();
+            requireBoolean(operand, at);
+            return condition(MethodHandles.filterReturnValue(operand.handle, op("not", boolean.class)));
+        }
+        return parseComparison();
+    }
+
+    private Node parseComparison() {
+        Node left = parseSum();
+        for (String[] comparison : new String[][] {{"<=", "le"}, {">=", "ge"}, {"==", "eq"}, {"!=", "ne"},
+            {"<", "lt"}, {">", "gt"}}) {
+            int at = pos;
+            if (accept(comparison[0])) {
+                Node right = parseSum();
+                requireNumber(left, at);
+                requireNumber(right, at);
+                return binary(comparison[1], boolean.class, left, right);
+            }
+        }
+        return left;
+    }
+
+    private Node parseSum() {
+        Node left = parseProduct();
+        while (true) {
+            int at = pos;
+            String name = accept("+") ? "add" : accept("-") ? "sub" : null;
+            if (name == null) {
+                return left;
+            }
+            Node right = parseProduct();
+            requireNumber(left, at);
+            requireNumber(right, at);
+            left = binary(name, double.class, left, right);
+        }
+    }
+
+    private Node parseProduct() {
+        Node left = parseUnary();
+        while (true) {
+            int at = pos;
+            String name = accept("*") ? "mul" : accept("/") ? "div" : null;
+            if (name == null) {
+                return left;
+            }
+            Node right = parseUnary();
+            requireNumber(left, at);
+            requireNumber(right, at);
+            left = binary(name, double.class, left, right);
+        }
+    }
+
+    private Node parseUnary() {
+        skipSpaces();
+        int at = pos;
+        if (accept("-")) {
+            Node operand = parseUnary();
+            requireNumber(operand, at);
+            if (operand.constant != null) {
+                return constant(-(double) operand.constant);
+            }
+            return new Node(MethodHandles.filterReturnValue(operand.handle, op("neg", double.class)), null);
+        }
+        if (accept("(")) {
+            Node inner = parseOr();
+            if (!accept(")")) {
+                throw error("missing ')'");
+            }
+            return inner;
+        }
+        if (at < source.length() && (Character.isDigit(source.charAt(at)) || source.charAt(at) == '.')) {
+            while (pos < source.length() && (Character.isDigit(source.charAt(pos)) || source.charAt(pos) == '.')) {
+                pos++;
+            }
+            try {
+                return constant(Double.parseDouble(source.substring(at, pos)));
+            } catch (NumberFormatException e) {
+                pos = at;
+                throw error("malformed number");
+            }
+        }
+        if (at < source.length() && Character.isLetter(source.charAt(at))) {
+            while (pos < source.length() && Character.isLetterOrDigit(source.charAt(pos))) {
+                pos++;
+            }
+            String name = source.substring(at, pos);
+            if (name.equals("true") || name.equals("false")) {
+                return constant(Boolean.parseBoolean(name));
+            }
+            if (!VARIABLES.contains(name)) {
+                pos = at;
+                throw error("unknown variable '" + name + "', expected one of " + VARIABLES);
+            }
+            try {
+                return new Node(LOOKUP.findStatic(RuleCompiler.class, name, NUMBER), null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("No accessor for variable " + name, e);
+            }
+        }
+        throw error(at < source.length() ? "unexpected '" + source.charAt(at) + "'" : "unexpected end of rule");
+    }
+
+    /**
+     * combines two subexpressions with a static operator method of this class, folding constants
+     */
+    private Node binary(String name, Class<?> returnType, Node left, Node right) {
+        MethodHandle operator = op(name, returnType, double.class, double.class);
+        if (left.constant != null && right.constant != null) {
+            try {
+                Object value = operator.invoke((double) left.constant, (double) right.constant);
+                return constant(value);
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+        // (Trade, TradeSnapshot, Trade, TradeSnapshot) -> (Trade, TradeSnapshot)
+        MethodHandle spread = MethodHandles.collectArguments(
+            MethodHandles.collectArguments(operator, 1, right.handle), 0, left.handle);
+        MethodHandle combined = MethodHandles.permuteArguments(spread,
+            returnType == boolean.class ? BOOLEAN : NUMBER, 0, 1, 0, 1);
+        return new Node(combined, null);
+    }
+
+    private static Node constant(Object value) {
+        Class<?> type = value instanceof Boolean ? boolean.class : double.class;
+        MethodHandle handle = MethodHandles.dropArguments(MethodHandles.constant(type, value), 0,
+            Trade.class, TradeSnapshot.class);
+        return new Node(handle, value);
+    }
+
+    private static Node condition(MethodHandle handle) {
+        return new Node(handle, null);
+    }
+
+    private static MethodHandle op(String name, Class<?> returnType, Class<?>... parameterTypes) {
+        try {
+            return LOOKUP.findStatic(RuleCompiler.class, name,
+                MethodType.methodType(returnType, parameterTypes.length > 0 ? parameterTypes : new Class<?>[] {returnType}));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No operator " + name, e);
+        }
+    }
+
+    private void requireBoolean(Node node, int at) {
+        if (!node.isBoolean()) {
+            pos = at;
+            throw error("expected a condition");
+        }
+    }
+
+    private void requireNumber(Node node, int at) {
+        if (node.isBoolean()) {
+            pos = at;
+            throw error("expected a number");
+        }
+    }
+
+    private boolean peek(String token) {
+        skipSpaces();
+        return source.startsWith(token, pos);
+    }
+
+    private boolean accept(String token) {
+        if (peek(token)) {
+            pos += token.length();
+            return true;
+        }
+        return false;
+    }
+
+    private void skipSpaces() {
+        while (pos < source.length() && Character.isWhitespace(source.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Invalid rule '" + source + "' at position " + pos + ": " + message);
+    }
+
+    // variables
+
+    private static double price(Trade trade, TradeSnapshot snapshot) {
+        return snapshot.tradePrice;
+    }
+
+    private static double amount(Trade trade, TradeSnapshot snapshot) {
+        return snapshot.tradeAmount;
+    }
+
+    private static double tick(Trade trade, TradeSnapshot snapshot) {
+        Tick tick = trade.getTick();
+        return tick == Tick.TICK_UP ? 1 : tick == Tick.TICK_DOWN ? -1 : 0;
+    }
+
+    private static double run(Trade trade, TradeSnapshot snapshot) {
+        return trade.getNthRun();
+    }
+
+    private static double bidQty(Trade trade, TradeSnapshot snapshot) {
+        return snapshot.avgBidAmount;
+    }
+
+    private static double askQty(Trade trade, TradeSnapshot snapshot) {
+        return snapshot.avgAskAmount;
+    }
+
+    private static double bidPrice(Trade trade, TradeSnapshot snapshot) {
+        return snapshot.avgBidPrice;
+    }
+
+    private static double askPrice(Trade trade, TradeSnapshot snapshot) {
+        return snapshot.avgAskPrice;
+    }
+
+    private static double stma(Trade trade, TradeSnapshot snapshot) {
+        return snapshot.STMAPrice;
+    }
+
+    private static double ltma(Trade trade, TradeSnapshot snapshot) {
+        return snapshot.LTMAPrice;
+    }
+
+    private static double amountUp(Trade trade, TradeSnapshot snapshot) {
+        return snapshot.tradeAmountIncrease;
+    }
+
+    private static double amountDown(Trade trade, TradeSnapshot snapshot) {
+        return snapshot.tradeAmountDecrease;
+    }
+
+    private static double closerToAsk(Trade trade, TradeSnapshot snapshot) {
+        return snapshot.priceCloserToBestAsk;
+    }
+
+    // operators
+
+    private static double add(double a, double b) {
+        return a + b;
+    }
+
+    private static double sub(double a, double b) {
+        return a - b;
+    }
+
+    private static double mul(double a, double b) {
+        return a * b;
+    }
+
+    private static double div(double a, double b) {
+        return a / b;
+    }
+
+    private static double neg(double a) {
+        return -a;
+    }
+
+    private static boolean not(boolean a) {
+        return !a;
+    }
+
+    private static boolean lt(double a, double b) {
+        return a < b;
+    }
+
+    private static boolean le(double a, double b) {
+        return a <= b;
+    }
+
+    private static boolean gt(double a, double b) {
+        return a > b;
+    }
+
+    private static boolean ge(double a, double b) {
+        return a >= b;
+    }
+
+    private static boolean eq(double a, double b) {
+        return a == b;
+    }
+
+    private static boolean ne(double a, double b) {
+        return a != b;
+    }
+}
@@ -0,0 +1,38 @@
+package com.ibbe.strategy;
+
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeSnapshot;
+
+/**
+ * A strategy of user-defined sell and buy rules, e.g. sell on {@code stma > ltma && bidQty > askQty}.
+ * The rules are compiled when the strategy is created (see {@link RuleCompiler}); a missing rule never fires.
+ */
+public class RuleStrategy implements Strategy {
+    private final CompiledRule sellRule;
+    private final CompiledRule buyRule;
+
+    /**
+     * @param sellRule expression deciding a pretend sell, or null
+     * @param buyRule  expression deciding a pretend buy, or null
+     * @throws IllegalArgumentException if a rule does not compile
+     */
+    public RuleStrategy(String sellRule, String buyRule) {
+        this.sellRule = sellRule != null ? RuleCompiler.compile(sellRule) : null;
+        this.buyRule = buyRule != null ? RuleCompiler.compile(buyRule) : null;
+    }
+
+    @Override
+    public boolean shouldSell(Trade trade, TradeSnapshot snapshot) {
+        return sellRule != null && sellRule.test(trade, snapshot);
+    }
+
+    @Override
+    public boolean shouldBuy(Trade trade, TradeSnapshot snapshot) {
+        return buyRule != null && buyRule.test(trade, snapshot);
+    }
+
+    @Override
+    public String toString() {
+        return "RuleStrategy{sell=" + sellRule + ", buy=" + buyRule + "}";
+    }
+}
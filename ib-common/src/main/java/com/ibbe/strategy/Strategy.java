@@ -0,0 +1,48 @@
+package com.ibbe.strategy;
+
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeConfig;
+import com.ibbe.entity.TradeSnapshot;
+
+/**
+ * Decides, for each trade, whether a trader makes a pretend sell or buy.
+ * A strategy is created once per configuration and then called for every trade - by LiveTrader for live trades and
+ * by BasicTrader in replays - so implementations do their parsing and compilation up front.
+ * The snapshot carries the trade's features (orderbook averages, moving averages, amount momentum, distance to the
+ * best bid/ask) as calculated by BasicTrader.
+ */
+public interface Strategy {
+
+    /**
+     * @return whether to make a pretend sell at this trade
+     */
+    boolean shouldSell(Trade trade, TradeSnapshot snapshot);
+
+    /**
+     * @return whether to make a pretend buy at this trade; only asked when shouldSell returned false
+     */
+    boolean shouldBuy(Trade trade, TradeSnapshot snapshot);
+
+    /**
+     * @param config a trading configuration
+     * @return a RuleStrategy if the configuration has a sell or buy rule, otherwise the FlagStrategy of its ups,
+     * downs and criteria flags
+     * @throws IllegalArgumentException if a rule does not compile
+     */
+    static Strategy forConfig(TradeConfig config) {
+        if (config.getSellRule() != null || config.getBuyRule() != null) {
+            return new RuleStrategy(config.getSellRule(), config.getBuyRule());
+        }
+        return new FlagStrategy(parseCount(config.getUps()), parseCount(config.getDowns()),
+            config.isUseAvgBidVsAvgAsk(), config.isUseShortVsLongMovAvg(), config.isUseTradingAmountMomentum(),
+            config.isUseTradePriceCloserToAskVsBuy());
+    }
+
+    private static int parseCount(String value) {
+        try {
+            return value != null && !value.trim().isEmpty() ? Integer.parseInt(value.trim()) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.ibbe.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded ring of the most recent items, written by a single thread and read by any number of threads.
+ * <p>
+ * The writer never blocks and never waits for readers; once the ring is full the oldest item is overwritten.
+ * Readers take snapshots of the last K items without locking or retrying: the write count is read before and after
+ * copying, and slots the writer may have overwritten in the meantime are dropped from the front of the snapshot. One
+ * slot more than the capacity is kept, as the slot the writer is about to fill cannot be read safely.
+ *
+ * @param <T> type of the items kept
+ */
+public class RecentItemsRing<T> {
+
+  // capacity + 1 slots; the slot of sequence written is being overwritten while the writer adds it
+  private final AtomicReferenceArray<T> slots;
+  private final int capacity;
+  // number of items ever added; published after the slot is written
+  private volatile long written = 0;
+
+  public RecentItemsRing(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    this.slots = new AtomicReferenceArray<>(capacity + 1);
+  }
+
+  /**
+   * adds an item, overwriting the oldest one when the ring is full; must only be called by the single writer thread
+   *
+   * @param item item to add
+   */
+  public void add(T item) {
+    long sequence = written;
+    slots.setRelease((int) (sequence % slots.length()), item);
+    written = sequence + 1;
+  }
+
+  /**
+   * @param limit maximum number of items to return
+   * @param type  array type of the snapshot, e.g. new TradeWs[0]
+   * @return the most recent items (at most limit), oldest first
+   */
+  public T[] snapshot(int limit, T[] type) {
+    long end = written;
+    long start = Math.max(0, end - Math.min(limit, capacity));
+    T[] items = Arrays.copyOf(type, (int) (end - start));
+    for (long sequence = start; sequence < end; sequence++) {
+      items[(int) (sequence - start)] = slots.getAcquire((int) (sequence % slots.length()));
+    }
+    // the writer may have lapped the oldest slots while copying; those now hold newer items. The writer stores the
+    // slot of sequence written before publishing it, so sequence written - slots.length() may be overwritten already
+    long overwritten = written - slots.length() + 1 - start;
+    if (overwritten > 0) {
+      return Arrays.copyOfRange(items, (int) Math.min(overwritten, items.length), items.length);
+    }
+    return items;
+  }
+
+  /**
+   * @return the last item added, or null if the ring is empty
+   */
+  public T last() {
+    long end = written;
+    return end == 0 ? null : slots.getAcquire((int) ((end - 1) % slots.length()));
+  }
+
+  /**
+   * @return the number of items currently kept
+   */
+  public int size() {
+    return (int) Math.min(written, capacity);
+  }
+
+  /**
+   * @return the number of items ever added
+   */
+  public long getWrittenCount() {
+    return written;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+}
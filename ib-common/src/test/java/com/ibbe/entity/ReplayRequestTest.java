@@ -0,0 +1,39 @@
+package com.ibbe.entity;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplayRequestTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void timeRangesSurviveJson() throws Exception {
+        TradeConfig config = new TradeConfig("averages", "1", "1", true, true, false, false);
+        ReplayRequest request = ReplayRequest.forTimeRange(config, 1_710_072_000_000L, 1_710_075_600_000L);
+        assertTrue(request.hasTimeRange());
+        assertEquals(0, request.getFromOffset());
+        assertEquals(-1, request.getCheckpointOffset());
+
+        ReplayRequest read = objectMapper.readValue(objectMapper.writeValueAsString(request), ReplayRequest.class);
+        assertTrue(read.hasTimeRange());
+        assertEquals(request.getFromTime(), read.getFromTime());
+        assertEquals(request.getToTime(), read.getToTime());
+        assertEquals("averages", read.getConfig().getId());
+    }
+
+    @Test
+    void requestsWithoutTimesReplayTheWholeTopic() throws Exception {
+        assertFalse(new ReplayRequest(null, 5, 10).hasTimeRange());
+        assertTrue(ReplayRequest.forTimeRange(null, 0, 1_710_075_600_000L).hasTimeRange(),
+            "Expected a range to the end time to be a time range");
+
+        // requests of clients that predate time ranges
+        ReplayRequest read = objectMapper.readValue("{\"fromOffset\":5,\"checkpointOffset\":10}", ReplayRequest.class);
+        assertFalse(read.hasTimeRange());
+        assertEquals(5, read.getFromOffset());
+        assertEquals(10, read.getCheckpointOffset());
+    }
+}
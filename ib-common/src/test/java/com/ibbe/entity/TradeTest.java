@@ -0,0 +1,141 @@
+package com.ibbe.entity;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TradeTest {
+
+    @Test
+    void parsesTheRunOfAStatus() {
+        assertEquals(3, Trade.parseNthRun("TICK_UP3"));
+        assertEquals(-1, Trade.parseNthRun("TICK_DOWN1"));
+        assertEquals(-12, Trade.parseNthRun("TICK_DOWN12"));
+        assertEquals(0, Trade.parseNthRun(null));
+        assertEquals(0, Trade.parseNthRun("TICK_UP"), "Expected 0 without a count");
+        assertEquals(0, Trade.parseNthRun("UP3"), "Expected 0 for an unknown direction");
+    }
+
+    @Test
+    void setRunSetsTheRunAndTheStatus() {
+        Trade trade = new Trade("2024-03-10T12:00:00Z", BigDecimal.ONE, "buy", BigDecimal.TEN, 1L);
+        trade.setRun(Tick.TICK_DOWN, 2);
+        assertEquals(-2, trade.getNthRun());
+        assertEquals("TICK_DOWN2", trade.getNthStatus());
+
+        trade.setRun(Tick.TICK_UP, 4);
+        assertEquals(4, trade.getNthRun());
+        assertEquals("TICK_UP4", trade.getNthStatus());
+    }
+
+    @Test
+    void theRunFollowsTheStatusSetOrBuilt() {
+        Trade trade = new Trade("2024-03-10T12:00:00Z", BigDecimal.ONE, "buy", BigDecimal.TEN, 1L);
+        trade.setNthStatus("TICK_UP5");
+        assertEquals(5, trade.getNthRun());
+
+        Trade built = Trade.builder().tid(2L).tick(Tick.TICK_DOWN).nthStatus("TICK_DOWN3").build();
+        assertEquals(-3, built.getNthRun());
+        assertEquals(-3, new Trade(built).getNthRun(), "Expected the copy to keep the run");
+    }
+
+    @Test
+    void theStatusIsBuiltFromTheRun() {
+        Trade trade = Trade.builder().tid(1L).nthRun(-2).build();
+        assertEquals(-2, trade.getNthRun());
+        assertEquals("TICK_DOWN2", trade.getNthStatus());
+
+        trade.setNthRun(7);
+        assertEquals("TICK_UP7", trade.getNthStatus(), "Expected the status to follow the run");
+        assertNull(Trade.builder().tid(1L).build().getNthStatus(), "Expected no status without a run");
+        assertEquals("TICK_UP7", new Trade(trade).getNthStatus());
+    }
+
+    @Test
+    void theRunIsReadFromTheStatusInJson() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        Trade trade = objectMapper.readValue("{\"createdAt\":\"2024-03-10T12:00:00.000Z\",\"amount\":0.02,"
+            + "\"makerSide\":\"buy\",\"price\":10500,\"tid\":1,\"tick\":\"TICK_DOWN\",\"nthStatus\":\"TICK_DOWN3\"}",
+            Trade.class);
+        assertEquals(Tick.TICK_DOWN, trade.getTick());
+        assertEquals(-3, trade.getNthRun());
+    }
+
+    @Test
+    void timesAreParsedFromTheIsoString() {
+        Trade trade = new Trade("2024-03-10T12:00:00.123Z", BigDecimal.ONE, "buy", BigDecimal.TEN, 1L);
+        assertEquals(1_710_072_000_123L, trade.getCreatedAtMillis());
+        assertEquals("2024-03-10T12:00:00.123Z", trade.getCreatedAt(), "Expected the string as it was set");
+
+        trade.setCreatedAt("2024-03-10T13:00:00+01:00");
+        assertEquals(1_710_072_000_000L, trade.getCreatedAtMillis(), "Expected the zone offset applied");
+    }
+
+    @Test
+    void timesSetAsMillisAreFormattedWhenAskedFor() {
+        Trade trade = Trade.builder().tid(1L).createdAtMillis(1_710_072_000_123L).build();
+        assertEquals(1_710_072_000_123L, trade.getCreatedAtMillis());
+        assertEquals("2024-03-10T12:00:00.123Z", trade.getCreatedAt());
+
+        trade.setCreatedAtMillis(1_710_072_060_000L);
+        assertEquals("2024-03-10T12:01:00Z", trade.getCreatedAt(), "Expected the string to follow the millis");
+        Trade copy = new Trade(trade);
+        assertEquals(1_710_072_060_000L, copy.getCreatedAtMillis());
+        assertEquals("2024-03-10T12:01:00Z", copy.getCreatedAt());
+
+        trade.setCreatedAt("2024-03-10T12:02:00Z");
+        assertEquals(1_710_072_120_000L, trade.getCreatedAtMillis(), "Expected the millis to follow the string");
+    }
+
+    @Test
+    void unparseableTimesHaveNoTime() {
+        assertEquals(Trade.NO_TIME, new Trade("yesterday", null, null, null, 1L).getCreatedAtMillis());
+        assertEquals(Trade.NO_TIME, new Trade(null, null, null, null, 1L).getCreatedAtMillis());
+        assertEquals(Trade.NO_TIME, new Trade(new Trade(null, null, null, null, 1L)).getCreatedAtMillis());
+
+        Trade trade = Trade.builder().tid(1L).createdAtMillis(Trade.NO_TIME).build();
+        assertEquals("", trade.getCreatedAt(), "Expected no time to format as an empty string");
+        trade.setCreatedAt(trade.getCreatedAt());
+        assertEquals(Trade.NO_TIME, trade.getCreatedAtMillis(), "Expected no time to stay no time");
+    }
+
+    @Test
+    void timesSurviveJsonWithAndWithoutMillis() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        Trade trade = Trade.builder().tid(1L).createdAtMillis(1_710_072_000_123L).price(BigDecimal.TEN).build();
+        Trade read = objectMapper.readValue(objectMapper.writeValueAsString(trade), Trade.class);
+        assertEquals(1_710_072_000_123L, read.getCreatedAtMillis());
+        assertEquals("2024-03-10T12:00:00.123Z", read.getCreatedAt());
+
+        // records written before the millis were
+        Trade old = objectMapper.readValue("{\"createdAt\":\"2024-03-10T12:00:00.123Z\",\"tid\":1}", Trade.class);
+        assertEquals(1_710_072_000_123L, old.getCreatedAtMillis());
+    }
+
+    @Test
+    void bitsoTradesKeepTheirMillis() {
+        TradeWs trade = new TradeWs(1L, "1710072000123", BigDecimal.ONE, BigDecimal.TEN, BigDecimal.TEN, "1", "2",
+            "buy");
+        assertEquals(1_710_072_000_123L, trade.getCreatedAtMillis());
+        assertEquals("2024-03-10T12:00:00.123Z", trade.getCreatedAt());
+
+        long before = System.currentTimeMillis();
+        TradeWs unstamped = new TradeWs(2L, "soon", BigDecimal.ONE, BigDecimal.TEN, BigDecimal.TEN, "1", "2", "buy");
+        assertTrue(unstamped.getCreatedAtMillis() >= before, "Expected the time of receipt without a time");
+    }
+
+    @Test
+    void snapshotTimesFollowWhicheverWasSetLast() {
+        TradeSnapshot snapshot = new TradeSnapshot();
+        snapshot.setTimestampMillis(1_710_072_000_000L);
+        assertEquals("2024-03-10T12:00:00Z", snapshot.getTimestamp());
+        snapshot.setTimestamp("2024-03-10T12:00:01Z");
+        assertEquals(1_710_072_001_000L, snapshot.getTimestampMillis());
+        snapshot.setTimestamp("not a time");
+        assertEquals(Trade.NO_TIME, snapshot.getTimestampMillis());
+    }
+}
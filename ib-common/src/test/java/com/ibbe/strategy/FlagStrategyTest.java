@@ -0,0 +1,189 @@
+package com.ibbe.strategy;
+
+import com.ibbe.entity.Tick;
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlagStrategyTest {
+
+    private static final int MAX_RUN = 4;
+
+    /**
+     * The decisions of BasicTrader.sellingTime before the strategies, comparing the status string
+     */
+    private static boolean legacySellingTime(Trade trade, TradeSnapshot snapshot, int downN, boolean[] flags) {
+        if (trade == null || snapshot == null || trade.getNthStatus() == null || trade.getTick() == null) {
+            return false;
+        }
+        boolean sellingTime = downN > 0 || flags[0] || flags[1] || flags[2] || flags[3];
+        if (downN > 0) {
+            sellingTime = sellingTime && (trade.getNthStatus().equals(Tick.TICK_DOWN.toString() + downN)
+                && trade.getTick().equals(Tick.TICK_DOWN));
+        }
+        if (flags[0]) {
+            sellingTime = sellingTime && snapshot.avgBidAmount > snapshot.avgAskAmount;
+        }
+        if (flags[1]) {
+            sellingTime = sellingTime && snapshot.STMAPrice > snapshot.LTMAPrice;
+        }
+        if (flags[2]) {
+            sellingTime = sellingTime && snapshot.tradeAmountIncrease > snapshot.tradeAmountDecrease;
+        }
+        if (flags[3]) {
+            sellingTime = sellingTime && snapshot.priceCloserToBestAsk > 0;
+        }
+        return sellingTime;
+    }
+
+    /**
+     * The decisions of BasicTrader.buyingTime before the strategies, comparing the status string
+     */
+    private static boolean legacyBuyingTime(Trade trade, TradeSnapshot snapshot, int upN, boolean[] flags) {
+        if (trade == null || snapshot == null || trade.getNthStatus() == null || trade.getTick() == null) {
+            return false;
+        }
+        boolean buyingTime = upN > 0 || flags[0] || flags[1] || flags[2] || flags[3];
+        if (upN > 0) {
+            buyingTime = buyingTime && (trade.getNthStatus().equals(Tick.TICK_UP.toString() + upN)
+                && trade.getTick().equals(Tick.TICK_UP));
+        }
+        if (flags[0]) {
+            buyingTime = buyingTime && snapshot.avgBidAmount < snapshot.avgAskAmount;
+        }
+        if (flags[1]) {
+            buyingTime = buyingTime && snapshot.STMAPrice < snapshot.LTMAPrice;
+        }
+        if (flags[2]) {
+            buyingTime = buyingTime && snapshot.tradeAmountIncrease < snapshot.tradeAmountDecrease;
+        }
+        if (flags[3]) {
+            buyingTime = buyingTime && snapshot.priceCloserToBestAsk < 0;
+        }
+        return buyingTime;
+    }
+
+    /**
+     * @return trades of every tick and run as set at ingest, and one that was never given a run
+     */
+    private static List<Trade> trades() {
+        List<Trade> trades = new ArrayList<>();
+        for (Tick tick : Tick.values()) {
+            for (Tick direction : new Tick[]{Tick.TICK_UP, Tick.TICK_DOWN}) {
+                // a zero tick continues the run of the ticks before it
+                if (tick != Tick.TICK_ZERO && tick != direction) {
+                    continue;
+                }
+                for (int run = 1; run <= MAX_RUN; run++) {
+                    Trade trade = new Trade("2024-03-10T12:00:00Z", BigDecimal.ONE, "buy", BigDecimal.TEN, 1L);
+                    trade.setTick(tick);
+                    trade.setRun(direction, run);
+                    trades.add(trade);
+                }
+            }
+        }
+        Trade first = new Trade("2024-03-10T12:00:00Z", BigDecimal.ONE, "buy", BigDecimal.TEN, 1L);
+        first.setTick(Tick.TICK_ZERO);
+        trades.add(first);
+        return trades;
+    }
+
+    /**
+     * @return snapshots whose compared features are equal, below and above each other
+     */
+    private static List<TradeSnapshot> snapshots(Random random, int count) {
+        List<TradeSnapshot> snapshots = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            TradeSnapshot snapshot = new TradeSnapshot();
+            snapshot.avgBidAmount = random.nextInt(3);
+            snapshot.avgAskAmount = random.nextInt(3);
+            snapshot.STMAPrice = 100 + random.nextInt(3);
+            snapshot.LTMAPrice = 100 + random.nextInt(3);
+            snapshot.tradeAmountIncrease = random.nextInt(3);
+            snapshot.tradeAmountDecrease = random.nextInt(3);
+            snapshot.priceCloserToBestAsk = random.nextInt(3) - 1;
+            snapshots.add(snapshot);
+        }
+        return snapshots;
+    }
+
+    private static boolean[] flags(int mask) {
+        return new boolean[]{(mask & 1) != 0, (mask & 2) != 0, (mask & 4) != 0, (mask & 8) != 0};
+    }
+
+    private static String rule(String tick, int n, boolean[] flags, String... comparisons) {
+        List<String> terms = new ArrayList<>();
+        if (n != 0) {
+            terms.add("tick == " + tick + " && run == " + n);
+        }
+        for (int i = 0; i < flags.length; i++) {
+            if (flags[i]) {
+                terms.add(comparisons[i]);
+            }
+        }
+        return terms.isEmpty() ? null : String.join(" && ", terms);
+    }
+
+    @Test
+    void decidesAsTheStatusStringComparisonsDid() {
+        List<Trade> trades = trades();
+        List<TradeSnapshot> snapshots = snapshots(new Random(7), 60);
+        int sells = 0;
+        int buys = 0;
+        for (int n = 0; n <= MAX_RUN; n++) {
+            for (int mask = 0; mask < 16; mask++) {
+                boolean[] flags = flags(mask);
+                FlagStrategy strategy = new FlagStrategy(n, n, flags[0], flags[1], flags[2], flags[3]);
+                for (Trade trade : trades) {
+                    for (TradeSnapshot snapshot : snapshots) {
+                        boolean sell = legacySellingTime(trade, snapshot, n, flags);
+                        boolean buy = legacyBuyingTime(trade, snapshot, n, flags);
+                        String context = "n " + n + ", flags " + mask + ", " + trade.getTick() + " "
+                            + trade.getNthStatus();
+                        assertEquals(sell, strategy.shouldSell(trade, snapshot), "Sell differs for " + context);
+                        assertEquals(buy, strategy.shouldBuy(trade, snapshot), "Buy differs for " + context);
+                        sells += sell ? 1 : 0;
+                        buys += buy ? 1 : 0;
+                    }
+                }
+            }
+        }
+        assertTrue(sells > 0 && buys > 0, "Expected the grid to cover decisions that trade");
+    }
+
+    @Test
+    void rulesOfTheFlagsDecideAsTheFlags() {
+        List<Trade> trades = trades();
+        List<TradeSnapshot> snapshots = snapshots(new Random(11), 30);
+        for (int n = 0; n <= MAX_RUN; n++) {
+            for (int mask = 0; mask < 16; mask++) {
+                boolean[] flags = flags(mask);
+                FlagStrategy strategy = new FlagStrategy(n, n, flags[0], flags[1], flags[2], flags[3]);
+                String sellRule = rule("-1", -n, flags,
+                    "bidQty > askQty", "stma > ltma", "amountUp > amountDown", "closerToAsk > 0");
+                String buyRule = rule("1", n, flags,
+                    "bidQty < askQty", "stma < ltma", "amountUp < amountDown", "closerToAsk < 0");
+                RuleStrategy rules = new RuleStrategy(sellRule, buyRule);
+                for (Trade trade : trades) {
+                    // a trade never given a run cannot trade on flags, which no rule expresses
+                    if (trade.getNthRun() == 0) {
+                        continue;
+                    }
+                    for (TradeSnapshot snapshot : snapshots) {
+                        assertEquals(strategy.shouldSell(trade, snapshot), rules.shouldSell(trade, snapshot),
+                            "Sell differs for " + sellRule + " on " + trade.getTick() + " " + trade.getNthStatus());
+                        assertEquals(strategy.shouldBuy(trade, snapshot), rules.shouldBuy(trade, snapshot),
+                            "Buy differs for " + buyRule + " on " + trade.getTick() + " " + trade.getNthStatus());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.ibbe.strategy;
+
+import com.ibbe.entity.Tick;
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RuleCompilerTest {
+
+    private static Trade trade(Tick tick, int run) {
+        Trade trade = new Trade("2024-03-10T12:00:00Z", BigDecimal.ONE, "buy", BigDecimal.TEN, 1L);
+        trade.setTick(tick);
+        trade.setNthRun(run);
+        return trade;
+    }
+
+    private static TradeSnapshot snapshot() {
+        TradeSnapshot snapshot = new TradeSnapshot();
+        snapshot.tradePrice = 100;
+        snapshot.tradeAmount = 0.5;
+        snapshot.avgBidAmount = 3;
+        snapshot.avgAskAmount = 2;
+        snapshot.avgBidPrice = 99;
+        snapshot.avgAskPrice = 101;
+        snapshot.STMAPrice = 105;
+        snapshot.LTMAPrice = 104;
+        snapshot.tradeAmountIncrease = 7;
+        snapshot.tradeAmountDecrease = 8;
+        snapshot.priceCloserToBestAsk = -0.5;
+        return snapshot;
+    }
+
+    private static boolean test(String rule) {
+        return RuleCompiler.compile(rule).test(trade(Tick.TICK_DOWN, -3), snapshot());
+    }
+
+    private static String errorOf(String rule) {
+        return assertThrows(IllegalArgumentException.class, () -> RuleCompiler.compile(rule)).getMessage();
+    }
+
+    @Test
+    void readsTheVariablesOfTheTradeAndSnapshot() {
+        assertTrue(test("price == 100 && amount == 0.5"));
+        assertTrue(test("tick == -1 && run == -3"));
+        assertTrue(test("bidQty == 3 && askQty == 2 && bidPrice == 99 && askPrice == 101"));
+        assertTrue(test("stma == 105 && ltma == 104"));
+        assertTrue(test("amountUp == 7 && amountDown == 8 && closerToAsk == -0.5"));
+        assertTrue(RuleCompiler.compile("tick == 1").test(trade(Tick.TICK_UP, 2), snapshot()));
+        assertTrue(RuleCompiler.compile("tick == 0").test(trade(Tick.TICK_ZERO, 2), snapshot()));
+    }
+
+    @Test
+    void arithmeticFollowsThePrecedenceOfTheGrammar() {
+        assertTrue(test("1 + 2 * 3 == 7"));
+        assertTrue(test("(1 + 2) * 3 == 9"));
+        assertTrue(test("10 - 4 - 3 == 3"), "Expected - to be left associative");
+        assertTrue(test("8 / 2 / 2 == 2"), "Expected / to be left associative");
+        assertTrue(test("-2 - 3 == -5"));
+        assertTrue(test("- -2 == 2"));
+        assertTrue(test("price - -price == 200"));
+        assertTrue(test("stma - ltma > 0.5"));
+    }
+
+    @Test
+    void conditionsFollowThePrecedenceOfTheGrammar() {
+        assertTrue(test("true || false && false"), "Expected && to bind tighter than ||");
+        assertFalse(test("(true || false) && false"));
+        assertFalse(test("!true && false || false"));
+        assertTrue(test("!false && true"), "Expected ! to bind tighter than &&");
+        assertFalse(test("!(false || true)"));
+        assertTrue(test("!!true"));
+        assertTrue(test("price > 50 + 49"), "Expected arithmetic to bind tighter than comparisons");
+    }
+
+    @Test
+    void notIsNotConfusedWithNotEquals() {
+        assertTrue(test("run != 3"));
+        assertFalse(test("run != -3"));
+        assertTrue(test("!(run == 3)"));
+        assertFalse(test("! run != 3"), "Expected '! run != 3' to negate the comparison");
+        assertTrue(test("!run!=-3"));
+    }
+
+    @Test
+    void andAndOrShortCircuit() {
+        // a handle reading the snapshot would fail on a null snapshot if it were evaluated
+        assertFalse(RuleCompiler.compile("false && stma > ltma").test(trade(Tick.TICK_UP, 1), null));
+        assertTrue(RuleCompiler.compile("true || stma > ltma").test(trade(Tick.TICK_UP, 1), null));
+        assertFalse(RuleCompiler.compile("run == 5 && stma > ltma").test(trade(Tick.TICK_UP, 1), null));
+        assertTrue(RuleCompiler.compile("run == 1 || stma > ltma").test(trade(Tick.TICK_UP, 1), null));
+        assertThrows(NullPointerException.class,
+            () -> RuleCompiler.compile("run == 1 && stma > ltma").test(trade(Tick.TICK_UP, 1), null));
+    }
+
+    @Test
+    void constantsAreFolded() {
+        // folded rules read nothing, so they hold without a trade or snapshot
+        assertTrue(RuleCompiler.compile("1 + 2 * 3 == 7").test(null, null));
+        assertTrue(RuleCompiler.compile("-(4 / 2) < 0").test(null, null));
+        assertFalse(RuleCompiler.compile("2 > 3").test(null, null));
+        assertThrows(NullPointerException.class, () -> RuleCompiler.compile("run == 7").test(null, null));
+    }
+
+    @Test
+    void errorsPointAtTheirPosition() {
+        assertEquals("Empty rule", errorOf(" "));
+        assertEquals("Invalid rule 'price >' at position 7: unexpected end of rule", errorOf("price >"));
+        assertEquals("Invalid rule 'price > 1 1' at position 10: unexpected '1'", errorOf("price > 1 1"));
+        assertEquals("Invalid rule '(price > 1' at position 10: missing ')'", errorOf("(price > 1"));
+        assertEquals("Invalid rule 'price' at position 5: the rule must be a condition, e.g. a comparison",
+            errorOf("price"));
+        assertEquals("Invalid rule '1.2.3 > 0' at position 0: malformed number", errorOf("1.2.3 > 0"));
+        assertTrue(errorOf("price > volume")
+            .startsWith("Invalid rule 'price > volume' at position 8: unknown variable 'volume'"));
+        assertEquals("Invalid rule 'price > 1 && 2' at position 12: expected a condition", errorOf("price > 1 && 2"));
+        assertEquals("Invalid rule 'price + (1 > 0) > 1' at position 6: expected a number",
+            errorOf("price + (1 > 0) > 1"));
+        assertEquals("Invalid rule '!price' at position 0: expected a condition", errorOf("!price"));
+    }
+}
@@ -0,0 +1,65 @@
+package com.ibbe.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecentItemsRingTest {
+
+    @Test
+    void snapshotOfARingFilledPastCapacityIsOldestFirst() {
+        RecentItemsRing<Integer> ring = new RecentItemsRing<>(5);
+        for (int i = 1; i <= 12; i++) {
+            ring.add(i);
+        }
+
+        assertArrayEquals(new Integer[]{8, 9, 10, 11, 12}, ring.snapshot(10, new Integer[0]));
+        assertArrayEquals(new Integer[]{10, 11, 12}, ring.snapshot(3, new Integer[0]));
+        assertEquals(12, ring.last());
+        assertEquals(5, ring.size());
+        assertEquals(12, ring.getWrittenCount());
+    }
+
+    @Test
+    void snapshotOfARingNotFullYet() {
+        RecentItemsRing<Integer> ring = new RecentItemsRing<>(5);
+        assertEquals(0, ring.snapshot(5, new Integer[0]).length);
+        assertNull(ring.last());
+
+        ring.add(1);
+        ring.add(2);
+        assertArrayEquals(new Integer[]{1, 2}, ring.snapshot(5, new Integer[0]));
+        assertEquals(2, ring.size());
+    }
+
+    @Test
+    void capacityMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new RecentItemsRing<Integer>(0));
+    }
+
+    @Test
+    void snapshotsTakenWhileTheWriterLapsTheRingAreConsecutiveAndOldestFirst() throws Exception {
+        RecentItemsRing<Long> ring = new RecentItemsRing<>(8);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            for (long i = 0; running.get(); i++) {
+                ring.add(i);
+            }
+        });
+        writer.start();
+        try {
+            for (int n = 0; n < 200_000; n++) {
+                Long[] items = ring.snapshot(8, new Long[0]);
+                for (int i = 1; i < items.length; i++) {
+                    assertEquals(items[i - 1] + 1, items[i], "Snapshot not oldest first: " + Arrays.toString(items));
+                }
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+}
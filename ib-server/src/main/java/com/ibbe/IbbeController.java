@@ -2,20 +2,45 @@ package com.ibbe;
 
 import com.ibbe.entity.BitsoDataAggregator;
 import com.ibbe.entity.FxTradesDisplayData;
+import com.ibbe.entity.OhlcvBar;
+import com.ibbe.entity.Trade;
 import com.ibbe.entity.TradeConfig;
+import com.ibbe.entity.WalkForwardReport;
+import com.ibbe.entity.WalkForwardRequest;
+import com.ibbe.executor.BacktestJob;
+import com.ibbe.executor.BacktestJobService;
+import com.ibbe.executor.BacktestResultStore;
+import com.ibbe.executor.BacktestSummary;
+import com.ibbe.executor.ReplayScheduler;
+import com.ibbe.executor.TradeBackfiller;
 import com.ibbe.executor.TraderFactory;
+import com.ibbe.executor.WalkForwardEngine;
 import com.ibbe.executor.XchangeRatePoller;
+import com.ibbe.kafka.TradeArchive;
+import com.ibbe.kafka.TradeArchiveIndex;
+import com.ibbe.kafka.TradeCleanser;
+import com.ibbe.kafka.TradeGapLog;
+import com.ibbe.kafka.TradeIngestGuard;
+import com.ibbe.kafka.TradesConsumerFactory;
+import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * server-side REST controller for the Itsybitso trading application.
  * Handles incoming requests from the client and processes them to update the trading configuration or retrieve trading information.
@@ -33,6 +58,39 @@ public class IbbeController {
   @Autowired
   BitsoDataAggregator bitsoDataAggregator;
 
+  @Autowired
+  TradeArchive tradeArchive;
+
+  @Autowired
+  TradeArchiveIndex tradeArchiveIndex;
+
+  @Autowired
+  TradesConsumerFactory tradesConsumerFactory;
+
+  @Autowired
+  TradeIngestGuard tradeIngestGuard;
+
+  @Autowired
+  TradeGapLog tradeGapLog;
+
+  @Autowired
+  TradeCleanser tradeCleanser;
+
+  @Autowired
+  TradeBackfiller tradeBackfiller;
+
+  @Autowired
+  ReplayScheduler replayScheduler;
+
+  @Autowired
+  BacktestJobService backtestJobService;
+
+  @Autowired
+  BacktestResultStore backtestResultStore;
+
+  @Autowired
+  WalkForwardEngine walkForwardEngine;
+
   /**
    * Handles GET requests to retrieve the current USD/MXN exchange rate.
    * @return String containing the current exchange rate
@@ -76,6 +134,11 @@ public class IbbeController {
           return ResponseEntity
               .status(HttpStatus.CREATED)
               .body("Started monitoring with configuration: " + tradeConfig);
+      } catch (IllegalArgumentException e) {
+          // e.g. a sell or buy rule that does not compile
+          return ResponseEntity
+              .status(HttpStatus.BAD_REQUEST)
+              .body("Invalid configuration: " + e.getMessage());
       } catch (Exception e) {
           logger.error("Error creating trading configuration", e);
           return ResponseEntity
@@ -126,4 +189,339 @@ public class IbbeController {
       return "trader " + id + " account value: $" + dd.getAccountValueInChunk()
           + " with profit $" + dd.getProfit();
   }
+
+  /**
+   * Handles GET requests for archived trades within a time range.
+   * @param from start of the range, epoch millis or ISO timestamp (e.g. 2024-03-10T12:00:00Z)
+   * @param to end of the range (inclusive), epoch millis or ISO timestamp
+   * @param limit maximum number of trades returned
+   * @param book whether to include the orderbook snapshot of each trade
+   * @return the trades of the range ordered by trade time, with the indexing progress in the X-Archive-* headers
+   */
+  @GetMapping("/archive/trades")
+  public ResponseEntity<List<Trade>> archivedTrades(@RequestParam("from") String from,
+                                                    @RequestParam("to") String to,
+                                                    @RequestParam(value = "limit", defaultValue = "1000") int limit,
+                                                    @RequestParam(value = "book", defaultValue = "false") boolean book) {
+      try {
+          return archiveResponse().body(tradeArchive.findTradesByTime(parseTime(from), parseTime(to), limit, book));
+      } catch (IllegalArgumentException e) {
+          return ResponseEntity.badRequest().build();
+      }
+  }
+
+  /**
+   * Handles GET requests for archived trades within a trade ID range.
+   * @param from first trade ID of the range
+   * @param to last trade ID of the range (inclusive)
+   * @param limit maximum number of trades returned
+   * @param book whether to include the orderbook snapshot of each trade
+   * @return the trades of the range ordered by trade ID, with the indexing progress in the X-Archive-* headers
+   */
+  @GetMapping("/archive/trades/tid")
+  public ResponseEntity<List<Trade>> archivedTradesByTid(@RequestParam("from") long from,
+                                         @RequestParam("to") long to,
+                                         @RequestParam(value = "limit", defaultValue = "1000") int limit,
+                                         @RequestParam(value = "book", defaultValue = "false") boolean book) {
+      return archiveResponse().body(tradeArchive.findTradesByTid(from, to, limit, book));
+  }
+
+  /**
+   * Handles GET requests for OHLCV bars (with best bid/ask and average spread) aggregated from archived trades.
+   * @param from start of the range, epoch millis or ISO timestamp
+   * @param to end of the range (inclusive), epoch millis or ISO timestamp
+   * @param interval bar length: 1s, 1m or 1h
+   * @return the bars of the range that have trades, ordered by time, with the indexing progress in the X-Archive-*
+   * headers
+   */
+  @GetMapping("/archive/ohlcv")
+  public ResponseEntity<List<OhlcvBar>> archivedBars(@RequestParam("from") String from,
+                                                     @RequestParam("to") String to,
+                                                     @RequestParam(value = "interval", defaultValue = "1m") String interval) {
+      long intervalMillis;
+      switch (interval) {
+          case "1s" -> intervalMillis = 1000L;
+          case "1m" -> intervalMillis = 60 * 1000L;
+          case "1h" -> intervalMillis = 60 * 60 * 1000L;
+          default -> {
+              return ResponseEntity.badRequest().build();
+          }
+      }
+      try {
+          return archiveResponse().body(tradeArchive.findBars(parseTime(from), parseTime(to), intervalMillis));
+      } catch (IllegalArgumentException e) {
+          return ResponseEntity.badRequest().build();
+      }
+  }
+
+  /**
+   * Handles GET requests for the state of the archive index.
+   * @return number of index points and late (e.g. backfilled) records, offset indexed up to, end offset of the topic,
+   * whether the index is complete and the trade time span covered
+   */
+  @GetMapping("/archive/index")
+  public Map<String, Object> archiveIndex() {
+      Map<String, Object> stats = new LinkedHashMap<>();
+      stats.put("indexPoints", tradeArchiveIndex.getIndexPointCount());
+      stats.put("lateRecords", tradeArchiveIndex.getLateRecordCount());
+      stats.put("indexedOffset", tradeArchiveIndex.getIndexedOffset());
+      stats.put("endOffset", tradeArchiveIndex.getEndOffset());
+      stats.put("complete", tradeArchiveIndex.isComplete());
+      stats.put("firstTradeTime", tradeArchiveIndex.getFirstTradeTime());
+      stats.put("lastTradeTime", tradeArchiveIndex.getLastTradeTime());
+      return stats;
+  }
+
+  /**
+   * Handles GET requests for the current end offset of the raw trades topic.
+   * @return the offset one past the last archived trade record
+   */
+  @GetMapping("/archive/endoffset")
+  public Map<String, Object> archiveEndOffset() {
+      Map<String, Object> result = new LinkedHashMap<>();
+      result.put("endOffset", tradeArchive.getEndOffset());
+      return result;
+  }
+
+  /**
+   * Handles GET requests for the current end offset of the curated trades topic replays read; clients key their
+   * cached replay results by it.
+   * @return the offset one past the last curated trade record
+   */
+  @GetMapping("/replay/endoffset")
+  public Map<String, Object> replayEndOffset() {
+      Map<String, Object> result = new LinkedHashMap<>();
+      result.put("endOffset", tradesConsumerFactory.createConsumer().fetchEndOffset());
+      return result;
+  }
+
+  /**
+   * Handles GET requests for the state of the replay scheduler.
+   * @return the workers, the queue limit, the replays rejected so far and the running and queued replays
+   */
+  @GetMapping("/replay/status")
+  public Map<String, Object> replayStatus() {
+      Map<String, Object> result = new LinkedHashMap<>();
+      result.put("workers", replayScheduler.getWorkers());
+      result.put("maxQueued", replayScheduler.getMaxQueued());
+      result.put("rejected", replayScheduler.getRejectedCount());
+      result.put("jobs", replayScheduler.getJobs());
+      return result;
+  }
+
+  /**
+   * Handles GET requests for the state of trade ingestion.
+   * @return the highest trade ID ingested, the duplicates dropped, the trades quarantined as arriving after a later
+   * curated trade, and the logged trade ID gaps
+   */
+  @GetMapping("/ingest/gaps")
+  public Map<String, Object> ingestGaps() {
+      Map<String, Object> result = new LinkedHashMap<>();
+      result.put("highestTid", tradeIngestGuard.getHighestTid());
+      result.put("duplicates", tradeIngestGuard.getDuplicateCount());
+      result.put("lateTrades", tradeCleanser.getLateCount());
+      result.put("gaps", tradeGapLog.read());
+      return result;
+  }
+
+  /**
+   * Backfills the trades of a Bitso trade ID range, or of a time range between archived trades, from the Bitso REST
+   * trades endpoint. Blocks until the trades are produced.
+   * @param fromTid first Bitso trade ID to backfill
+   * @param toTid   last Bitso trade ID to backfill
+   * @param from    start of a time range, epoch millis or ISO timestamp; instead of the trade IDs
+   * @param to      end of the time range
+   * @return the number of trades backfilled
+   */
+  @PostMapping("/ingest/backfill")
+  public ResponseEntity<Map<String, Object>> backfill(@RequestParam(value = "fromTid", required = false) Long fromTid,
+                                                      @RequestParam(value = "toTid", required = false) Long toTid,
+                                                      @RequestParam(value = "from", required = false) String from,
+                                                      @RequestParam(value = "to", required = false) String to) {
+      try {
+          int backfilled;
+          if (fromTid != null && toTid != null) {
+              backfilled = tradeBackfiller.backfill(new TradeGapLog.Gap(fromTid, toTid, 0, 0));
+          } else if (from != null && to != null) {
+              backfilled = tradeBackfiller.backfillTimeRange(parseTime(from), parseTime(to));
+          } else {
+              return ResponseEntity.badRequest().build();
+          }
+          Map<String, Object> result = new LinkedHashMap<>();
+          result.put("backfilled", backfilled);
+          return ResponseEntity.ok(result);
+      } catch (IllegalArgumentException e) {
+          logger.warn("Invalid backfill request: {}", e.getMessage());
+          return ResponseEntity.badRequest().build();
+      } catch (IllegalStateException e) {
+          logger.warn("Backfill not possible: {}", e.getMessage());
+          return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+      } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+      } catch (Exception e) {
+          logger.error("Error backfilling trades", e);
+          return ResponseEntity.status(HttpStatus.BAD_GATEWAY).build();
+      }
+  }
+
+  /**
+   * Runs a walk-forward optimization of the posted candidate configurations over the materialized trade history.
+   * Blocks until all windows are done.
+   * @param request the candidates and the train / test window sizes in trades
+   * @return the winner and out-of-sample profit of every window
+   */
+  @PostMapping("/walkforward")
+  public ResponseEntity<WalkForwardReport> walkForward(@RequestBody WalkForwardRequest request) {
+      try {
+          logger.info("Received walk-forward request: {}", request);
+          return ResponseEntity.ok(walkForwardEngine.run(request));
+      } catch (IllegalArgumentException e) {
+          logger.warn("Invalid walk-forward request: {}", e.getMessage());
+          return ResponseEntity.badRequest().build();
+      } catch (IllegalStateException e) {
+          logger.warn("Walk-forward not possible yet: {}", e.getMessage());
+          return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+      } catch (Exception e) {
+          logger.error("Error running walk-forward", e);
+          return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+      }
+  }
+
+  /**
+   * Submits a backtest job of the posted configuration over a time range of the curated trades topic; the job runs on
+   * the server whether or not the client stays connected. Submitting the same configuration and range again returns
+   * the existing job, unless it failed or was cancelled.
+   * @param config the trading configuration
+   * @param from   start of the range, epoch millis or ISO timestamp; the beginning of the topic if absent
+   * @param to     end of the range (exclusive), epoch millis or ISO timestamp; the current end of the topic if absent
+   * @return the job's status, with the ID to poll it by
+   */
+  @PostMapping("/backtest/jobs")
+  public ResponseEntity<Map<String, Object>> submitBacktestJob(@RequestBody TradeConfig config,
+                                                               @RequestParam(value = "from", required = false) String from,
+                                                               @RequestParam(value = "to", required = false) String to,
+                                                               HttpServletRequest httpRequest) {
+      try {
+          BacktestJob job = backtestJobService.submit(httpRequest.getRemoteAddr(), config,
+              from != null ? parseTime(from) : 0, to != null ? parseTime(to) : 0);
+          return ResponseEntity.status(HttpStatus.ACCEPTED).body(job.toStatus());
+      } catch (IllegalArgumentException e) {
+          logger.warn("Invalid backtest job: {}", e.getMessage());
+          return ResponseEntity.badRequest().build();
+      } catch (Exception e) {
+          logger.error("Error submitting backtest job", e);
+          return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+      }
+  }
+
+  /**
+   * Handles GET requests for the backtest jobs.
+   * @return the status of every job kept, in submission order
+   */
+  @GetMapping("/backtest/jobs")
+  public List<Map<String, Object>> backtestJobs() {
+      return backtestJobService.list().stream().map(BacktestJob::toStatus).toList();
+  }
+
+  /**
+   * Handles GET requests for the progress of a backtest job.
+   * @param id the job ID
+   * @return state, offsets processed of the total and records per second
+   */
+  @GetMapping("/backtest/jobs/{id}")
+  public ResponseEntity<Map<String, Object>> backtestJob(@PathVariable("id") long id) {
+      BacktestJob job = backtestJobService.get(id);
+      return job != null ? ResponseEntity.ok(job.toStatus()) : ResponseEntity.notFound().build();
+  }
+
+  /**
+   * Handles GET requests for the result of a backtest job.
+   * @param id the job ID
+   * @return the summary (profit, average chunk profit, pretend trades) and the completed chunks; the status only,
+   * with 409, while the job is not done
+   */
+  @GetMapping("/backtest/jobs/{id}/result")
+  public ResponseEntity<Map<String, Object>> backtestJobResult(@PathVariable("id") long id) {
+      BacktestJob job = backtestJobService.get(id);
+      if (job == null) {
+          return ResponseEntity.notFound().build();
+      }
+      if (job.getState() != BacktestJob.State.DONE) {
+          return ResponseEntity.status(HttpStatus.CONFLICT).body(job.toStatus());
+      }
+      return ResponseEntity.ok(job.toResult());
+  }
+
+  /**
+   * Cancels a queued or running backtest job.
+   * @param id the job ID
+   * @return the job's status
+   */
+  @DeleteMapping("/backtest/jobs/{id}")
+  public ResponseEntity<Map<String, Object>> cancelBacktestJob(@PathVariable("id") long id) {
+      BacktestJob job = backtestJobService.cancel(id);
+      return job != null ? ResponseEntity.ok(job.toStatus()) : ResponseEntity.notFound().build();
+  }
+
+  /**
+   * Handles GET requests for the stored summaries of a configuration's runs, so that a repeated analysis is a lookup
+   * instead of a replay.
+   * @param configHash the configuration's canonical hash
+   * @param fromOffset first offset of the run's range; all runs if absent
+   * @param toOffset   first offset after the run's range
+   * @return the summaries of the runs by range, or of the one run of the range; 404 if that was not run
+   */
+  @GetMapping("/backtest/results")
+  public ResponseEntity<List<BacktestSummary>> backtestResults(@RequestParam("configHash") String configHash,
+                                                               @RequestParam(value = "fromOffset", required = false) Long fromOffset,
+                                                               @RequestParam(value = "toOffset", required = false) Long toOffset) {
+      if (fromOffset == null || toOffset == null) {
+          return ResponseEntity.ok(backtestResultStore.findByConfig(configHash));
+      }
+      BacktestSummary summary = backtestResultStore.find(configHash, fromOffset, toOffset);
+      return summary != null ? ResponseEntity.ok(List.of(summary)) : ResponseEntity.notFound().build();
+  }
+
+  /**
+   * Handles GET requests for the leaderboard of the configurations run, e.g. the top 50 by profit in March.
+   * @param from  only runs whose trades are at or after this time, epoch millis or ISO timestamp; any if absent
+   * @param to    only runs whose trades are before this time, epoch millis or ISO timestamp; any if absent
+   * @param limit the most configurations returned
+   * @return the best run of each configuration, by profit, best first
+   */
+  @GetMapping("/backtest/leaderboard")
+  public ResponseEntity<List<BacktestSummary>> backtestLeaderboard(@RequestParam(value = "from", required = false) String from,
+                                                                   @RequestParam(value = "to", required = false) String to,
+                                                                   @RequestParam(value = "limit", defaultValue = "50") int limit) {
+      try {
+          return ResponseEntity.ok(backtestResultStore.top(limit, from != null ? parseTime(from) : 0,
+              to != null ? parseTime(to) : 0));
+      } catch (IllegalArgumentException e) {
+          return ResponseEntity.badRequest().build();
+      }
+  }
+
+  /**
+   * @return an OK response with the progress of the archive index: the offset indexed up to, the end offset of the
+   * topic and whether the index is complete
+   */
+  private ResponseEntity.BodyBuilder archiveResponse() {
+      return ResponseEntity.ok()
+          .header("X-Archive-Indexed-Offset", String.valueOf(tradeArchiveIndex.getIndexedOffset()))
+          .header("X-Archive-End-Offset", String.valueOf(tradeArchiveIndex.getEndOffset()))
+          .header("X-Archive-Index-Complete", String.valueOf(tradeArchiveIndex.isComplete()));
+  }
+
+  /**
+   * @param time epoch millis or ISO timestamp
+   * @return epoch millis
+   */
+  private static long parseTime(String time) {
+      try {
+          return time.matches("\\d+") ? Long.parseLong(time) : ZonedDateTime.parse(time).toInstant().toEpochMilli();
+      } catch (RuntimeException e) {
+          throw new IllegalArgumentException("Invalid time: " + time, e);
+      }
+  }
 }
@@ -24,10 +24,6 @@ import static com.ibbe.entity.Tick.TICK_ZERO;
 public class BitsoDataAggregator extends IbDataAggregator {
   private static Logger LOGGER = LoggerFactory.getLogger(BitsoDataAggregator.class.getName());
 
-  // we make up this value for the unknown value of the trade that was right before the first one we have
-  private Tick mostRecentNonZeroTick = TICK_UP; //will only be TICK_UP or TICK_DOWN
-  // indicates how many-eth time the order has been UP or DOWN
-  static int tickCount = 1;
   @Autowired
   private XchangeRatePoller ratePoller;
 
@@ -56,6 +52,14 @@ public class BitsoDataAggregator extends IbDataAggregator {
     pcs.addPropertyChangeListener("WS", l);
  	}
 
+  /**
+   * remove subscribers, e.g. when their trader is removed
+   * @param l
+   */
+  public void removeObserver(PropertyChangeListener l) {
+    pcs.removePropertyChangeListener("WS", l);
+  }
+
 
   /**
    * run only for the incoming Bitso orderbook payload, as this converts currency to USD once, at entry time
@@ -69,7 +73,7 @@ public class BitsoDataAggregator extends IbDataAggregator {
   public void internalizeBitsoTradeWs(TradeWs tradeWs) {
     // divide by the exchange rate to have USD amounts
     tradeWs.setPrice(tradeWs.getPrice().divide(currXRate, 2, RoundingMode.CEILING));
-    setTickAndStatus(tradeWs);
+    setTickAndStatus(tradeWs, previousBitsoTrade);
     // pack together with Orderbook info
     tradeWs.setObp(orderBookPayload);
 
@@ -79,24 +83,44 @@ public class BitsoDataAggregator extends IbDataAggregator {
         + tradeWs.getNthStatus());
   }
 
+  /**
+   * Internalizes a trade fetched after the fact (see TradeBackfiller) the same way as a live one, except that its
+   * tick and status follow the given trade rather than the last live one, and it is packed with the given orderbook;
+   * it is not added to the live trades.
+   *
+   * @param tradeWs  trade as received from Bitso, priced in pesos
+   * @param previous the trade right before it, already internalized; null if unknown
+   * @param obp      the orderbook to pack the trade with
+   */
+  public void internalizeBackfilledTradeWs(TradeWs tradeWs, Trade previous, OrderBookPayload obp) {
+    tradeWs.setPrice(tradeWs.getPrice().divide(currXRate, 2, RoundingMode.CEILING));
+    setTickAndStatus(tradeWs, previous);
+    tradeWs.setObp(obp);
+  }
+
   /**
    * Enhances a Bitso Websocket trade object to be used in IB and to save into kafka
    * @param trade
+   * @param previous the trade before it; its status carries the run the trade continues or ends
    */
-  private void setTickAndStatus(Trade trade) {
+  private static void setTickAndStatus(Trade trade, Trade previous) {
+    // the latest non-zero movement (will only be TICK_UP or TICK_DOWN) and how many-eth time it has been UP or DOWN;
+    // we make these up for the unknown trade right before the first one we have
+    Tick mostRecentNonZeroTick = previous != null && previous.getNthRun() < 0 ? TICK_DOWN : TICK_UP;
+    int tickCount = previous != null ? Math.max(1, Math.abs(previous.getNthRun())) : 1;
     // default start with no previous trade
-    if (previousBitsoTrade == null) {
+    if (previous == null) {
       // the earliest trade will never have previous tick info, so we make it up for it
       trade.setTick(TICK_UP);
       // similarly, set the nthStatus (how many times was it UP or DOWN already) to 1 as default
-      trade.setNthStatus(TICK_UP.toString() + tickCount);
+      trade.setRun(TICK_UP, tickCount);
     } else {
       // if there was a previous trade
-      switch (trade.getPrice().compareTo(previousBitsoTrade.getPrice())) {
+      switch (trade.getPrice().compareTo(previous.getPrice())) {
         // price movement is DOWN
         case -1 -> {
           trade.setTick(TICK_DOWN);
-          switch (previousBitsoTrade.getTick()) {
+          switch (previous.getTick()) {
             // price movement is DOWN & previous trade was also DOWN
             case TICK_DOWN:
               // set most recent movement indicator (to ignore ZERO ticks)
@@ -126,7 +150,7 @@ public class BitsoDataAggregator extends IbDataAggregator {
         // price movement is UP
         case 1 -> {
           trade.setTick(TICK_UP);
-          switch (previousBitsoTrade.getTick()) {
+          switch (previous.getTick()) {
             // previous DOWN current UP => reset counter; movement change
             case TICK_DOWN:
               mostRecentNonZeroTick = TICK_UP;
@@ -151,7 +175,7 @@ public class BitsoDataAggregator extends IbDataAggregator {
         default ->
             trade.setTick(TICK_ZERO);
       }
-      trade.setNthStatus(mostRecentNonZeroTick.toString() + tickCount);
+      trade.setRun(mostRecentNonZeroTick, tickCount);
     }
   }
 
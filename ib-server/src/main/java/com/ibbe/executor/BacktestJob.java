@@ -0,0 +1,250 @@
+package com.ibbe.executor;
+
+import com.ibbe.entity.ChunkInfo;
+import com.ibbe.entity.TradeConfig;
+import com.ibbe.entity.TradeSnapshot;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A backtest of one configuration over a range of the curated trades topic, run by the BacktestJobService
+ * independently of any client. The range is resolved to offsets [fromOffset, toOffset) when the job is submitted.
+ * Progress is updated by the job's thread while it runs and read by anyone.
+ */
+public class BacktestJob {
+
+  public enum State {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED,
+    CANCELLED;
+
+    public boolean isFinished() {
+      return this == DONE || this == FAILED || this == CANCELLED;
+    }
+  }
+
+  private final long id;
+  private final String owner;
+  private final TradeConfig config;
+  private final String configHash;
+  private final long fromTime;
+  private final long toTime;
+  private final long fromOffset;
+  private final long toOffset;
+  private final long submittedAtMillis = System.currentTimeMillis();
+
+  private volatile State state = State.QUEUED;
+  // the next offset to replay
+  private volatile long position;
+  private volatile long startedAtMillis;
+  private volatile long finishedAtMillis;
+  private volatile String error;
+
+  // completed chunks so far
+  private final List<ChunkInfo> chunks = new ArrayList<>();
+  private volatile BacktestSummary summary;
+  // whether the summary was found in the BacktestResultStore rather than replayed; the chunks are not stored
+  private volatile boolean fromStore;
+  Thread thread;
+
+  /**
+   * @param fromTime   start of the requested time range in epoch millis; 0 for the beginning of the topic
+   * @param toTime     end of the requested time range in epoch millis; 0 for the end of the topic at submission
+   * @param fromOffset first offset of the range
+   * @param toOffset   first offset after the range
+   */
+  BacktestJob(long id, String owner, TradeConfig config, long fromTime, long toTime, long fromOffset, long toOffset) {
+    this.id = id;
+    this.owner = owner;
+    this.config = config;
+    this.configHash = config.canonicalHash();
+    this.fromTime = fromTime;
+    this.toTime = toTime;
+    this.fromOffset = fromOffset;
+    this.toOffset = toOffset;
+    this.position = fromOffset;
+  }
+
+  /**
+   * @return what identifies the work of the job: the same configuration over the same offsets gives the same result
+   */
+  String key() {
+    return configHash + ":" + fromOffset + "-" + toOffset;
+  }
+
+  void started() {
+    startedAtMillis = System.currentTimeMillis();
+    state = State.RUNNING;
+  }
+
+  void done(BacktestSummary summary) {
+    this.summary = summary;
+    finished(State.DONE, null);
+  }
+
+  /**
+   * Completes the job with the stored summary of its work, without replaying it.
+   */
+  void doneFromStore(BacktestSummary summary) {
+    fromStore = true;
+    position = toOffset;
+    done(summary);
+  }
+
+  void finished(State finalState, String errorMessage) {
+    error = errorMessage;
+    finishedAtMillis = System.currentTimeMillis();
+    state = finalState;
+  }
+
+  /**
+   * Records the outcome of the trade at the offset.
+   */
+  void record(long offset, TradeSnapshot snapshot) {
+    if (snapshot.getCompletedChunk() != null) {
+      synchronized (chunks) {
+        chunks.add(snapshot.getCompletedChunk());
+      }
+    }
+    position = offset + 1;
+  }
+
+  void skipped(long offset) {
+    position = offset + 1;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public String getOwner() {
+    return owner;
+  }
+
+  public TradeConfig getConfig() {
+    return config;
+  }
+
+  public String getConfigHash() {
+    return configHash;
+  }
+
+  public long getFromTime() {
+    return fromTime;
+  }
+
+  public long getToTime() {
+    return toTime;
+  }
+
+  public long getFromOffset() {
+    return fromOffset;
+  }
+
+  public long getToOffset() {
+    return toOffset;
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  public long getStartedAtMillis() {
+    return startedAtMillis;
+  }
+
+  public long getFinishedAtMillis() {
+    return finishedAtMillis;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  /**
+   * @return offsets replayed so far
+   */
+  public long getProcessed() {
+    return position - fromOffset;
+  }
+
+  public long getTotal() {
+    return toOffset - fromOffset;
+  }
+
+  /**
+   * @return records replayed per second since the job started; 0 before it has
+   */
+  public double getRecordsPerSecond() {
+    if (startedAtMillis == 0) {
+      return 0;
+    }
+    long end = finishedAtMillis > 0 ? finishedAtMillis : System.currentTimeMillis();
+    return getProcessed() * 1000.0 / Math.max(1, end - startedAtMillis);
+  }
+
+  /**
+   * @return the completed chunks so far
+   */
+  public List<ChunkInfo> getChunks() {
+    synchronized (chunks) {
+      return new ArrayList<>(chunks);
+    }
+  }
+
+  /**
+   * @return whether the job was done with a stored summary; it has no chunks then
+   */
+  public boolean isFromStore() {
+    return fromStore;
+  }
+
+  /**
+   * @return the summary of the results; null until the job is done
+   */
+  public BacktestSummary getSummary() {
+    return summary;
+  }
+
+  /**
+   * @return state and progress of the job
+   */
+  public Map<String, Object> toStatus() {
+    Map<String, Object> status = new LinkedHashMap<>();
+    status.put("id", id);
+    status.put("owner", owner);
+    status.put("configId", config.getId());
+    status.put("configHash", configHash);
+    status.put("fromTime", fromTime);
+    status.put("toTime", toTime);
+    status.put("fromOffset", fromOffset);
+    status.put("toOffset", toOffset);
+    status.put("state", state);
+    status.put("processed", getProcessed());
+    status.put("total", getTotal());
+    status.put("recordsPerSecond", Math.round(getRecordsPerSecond()));
+    status.put("submittedAtMillis", submittedAtMillis);
+    status.put("startedAtMillis", startedAtMillis);
+    status.put("finishedAtMillis", finishedAtMillis);
+    status.put("fromStore", fromStore);
+    if (error != null) {
+      status.put("error", error);
+    }
+    return status;
+  }
+
+  /**
+   * @return the status with the summary of the results and the completed chunks
+   */
+  public Map<String, Object> toResult() {
+    Map<String, Object> result = toStatus();
+    result.put("summary", summary);
+    result.put("chunks", getChunks());
+    return result;
+  }
+}
@@ -0,0 +1,237 @@
+package com.ibbe.executor;
+
+import com.ibbe.entity.TradeConfig;
+import com.ibbe.entity.TradeSnapshot;
+import com.ibbe.kafka.TradesConsumer;
+import com.ibbe.kafka.TradesConsumerFactory;
+import com.ibbe.strategy.Strategy;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs backtests submitted over REST as jobs that outlive the client: each job waits for a worker of the
+ * ReplayScheduler as a batch replay, then replays its range with a fresh trader - from the FeatureStore as far as it
+ * is materialized, then from the curated topic - and keeps its progress and results for later retrieval. The summary
+ * of a job done is also saved to the BacktestResultStore.
+ * <p>
+ * A job is identified by its work, the configuration's canonical hash and the offsets of its range: submitting the same
+ * work again while it is queued, running or done returns the existing job instead of running it twice. Only a failed or
+ * cancelled job is run again. Work whose summary the BacktestResultStore already holds (e.g. run before a restart) is
+ * not run either: its job is done at once with the stored summary, without the completed chunks. The most recent
+ * backtest.jobs.keep finished jobs are kept, in memory.
+ */
+@Component
+public class BacktestJobService {
+  private static final Logger logger = LoggerFactory.getLogger(BacktestJobService.class);
+
+  @Value("${backtest.jobs.keep:1000}")
+  private int keep = 1000;
+
+  @Autowired
+  private ReplayScheduler replayScheduler;
+
+  @Autowired
+  private FeatureStore featureStore;
+
+  @Autowired
+  private TradesConsumerFactory tradesConsumerFactory;
+
+  // keeps the summary of every job done
+  @Autowired
+  private BacktestResultStore resultStore;
+
+  private final AtomicLong jobIds = new AtomicLong();
+  // by ID, in submission order
+  private final Map<Long, BacktestJob> jobs = new LinkedHashMap<>();
+  // by key, the job doing the work
+  private final Map<String, BacktestJob> jobsByKey = new HashMap<>();
+
+  /**
+   * Submits a backtest of the configuration over a time range, unless the same work is already queued, running or
+   * done, or its summary is stored.
+   *
+   * @param owner    the user the job runs for, sharing the replay workers fairly with other users
+   * @param fromTime start of the range in epoch millis; 0 for the beginning of the topic
+   * @param toTime   end (exclusive) of the range in epoch millis; 0 for the end of the topic now
+   * @return the job doing the work
+   * @throws IllegalArgumentException if the configuration's rule does not compile
+   */
+  public BacktestJob submit(String owner, TradeConfig config, long fromTime, long toTime) {
+    Strategy.forConfig(config);
+    long[] range = tradesConsumerFactory.createConsumer().offsetsForTimes(fromTime, toTime);
+    BacktestJob job = new BacktestJob(jobIds.incrementAndGet(), owner, config, fromTime, toTime, range[0], range[1]);
+    synchronized (jobs) {
+      BacktestJob existing = jobsByKey.get(job.key());
+      if (existing != null && existing.getState() != BacktestJob.State.FAILED
+          && existing.getState() != BacktestJob.State.CANCELLED) {
+        logger.info("Backtest of config {} over offsets [{}, {}) is job {} already", config.getId(), range[0],
+            range[1], existing.getId());
+        return existing;
+      }
+      jobs.put(job.getId(), job);
+      jobsByKey.put(job.key(), job);
+      prune();
+      BacktestSummary stored = resultStore.find(job.getConfigHash(), range[0], range[1]);
+      if (stored != null) {
+        job.doneFromStore(stored);
+        logger.info("Backtest of config {} over offsets [{}, {}) is stored, job {} done from it", config.getId(),
+            range[0], range[1], job.getId());
+        return job;
+      }
+      job.thread = Thread.ofVirtual().name("backtest-job-" + job.getId()).start(() -> run(job));
+    }
+    logger.info("Submitted backtest job {} of config {} over offsets [{}, {})", job.getId(), config.getId(),
+        range[0], range[1]);
+    return job;
+  }
+
+  /**
+   * @return the job; null if there is no such job (any more)
+   */
+  public BacktestJob get(long id) {
+    synchronized (jobs) {
+      return jobs.get(id);
+    }
+  }
+
+  /**
+   * @return the jobs, in submission order
+   */
+  public List<BacktestJob> list() {
+    synchronized (jobs) {
+      return new ArrayList<>(jobs.values());
+    }
+  }
+
+  /**
+   * Cancels a queued or running job.
+   *
+   * @return the job; null if there is no such job
+   */
+  public BacktestJob cancel(long id) {
+    BacktestJob job = get(id);
+    if (job != null && !job.getState().isFinished()) {
+      job.thread.interrupt();
+    }
+    return job;
+  }
+
+  @PreDestroy
+  public void stop() {
+    list().stream().filter(job -> !job.getState().isFinished()).forEach(job -> job.thread.interrupt());
+  }
+
+  private void run(BacktestJob job) {
+    try (ReplayScheduler.Slot slot = replayScheduler.acquire(job.getOwner(), ReplayScheduler.Priority.BATCH,
+        "backtest job " + job.getId() + " of config " + job.getConfig().getId())) {
+      job.started();
+      logger.info("Running backtest job {} as replay {}", job.getId(), slot.getJobId());
+      BasicTrader trader = new BasicTrader(job.getConfig());
+      BacktestTally tally = new BacktestTally();
+      replayFromFeatures(job, trader, tally);
+      if (job.getProcessed() < job.getTotal() && !Thread.currentThread().isInterrupted()) {
+        replayFromTopic(job, trader, tally);
+      }
+      if (Thread.currentThread().isInterrupted()) {
+        job.finished(BacktestJob.State.CANCELLED, null);
+        return;
+      }
+      if (job.getProcessed() < job.getTotal()) {
+        throw new IllegalStateException("Replay stopped at offset " + (job.getFromOffset() + job.getProcessed()));
+      }
+      BacktestSummary summary = tally.summarize(job.getConfig(), job.getFromOffset(), job.getToOffset(), trader);
+      resultStore.save(summary);
+      job.done(summary);
+      logger.info("Backtest job {} done: {}", job.getId(), summary);
+    } catch (InterruptedException | ClosedByInterruptException e) {
+      // cancelled while waiting for a worker, or while reading the feature store
+      job.finished(BacktestJob.State.CANCELLED, null);
+    } catch (RejectedExecutionException e) {
+      job.finished(BacktestJob.State.FAILED, e.getMessage());
+    } catch (Exception e) {
+      logger.error("Backtest job {} failed", job.getId(), e);
+      job.finished(BacktestJob.State.FAILED, e.getMessage());
+    }
+  }
+
+  /**
+   * replays the part of the job's range the feature store has materialized
+   */
+  private void replayFromFeatures(BacktestJob job, BasicTrader trader, BacktestTally tally) throws IOException {
+    if (featureStore.getMaterializedOffset() <= job.getFromOffset()) {
+      return;
+    }
+    try (FeatureStore.Reader features = featureStore.openReader()) {
+      if (features == null) {
+        return;
+      }
+      TradeFeatures cursor = new TradeFeatures();
+      long end = Math.min(features.size(), job.getToOffset());
+      for (long offset = job.getFromOffset(); offset < end && !Thread.currentThread().isInterrupted(); offset++) {
+        TradeFeatures tradeFeatures = features.at(offset, cursor);
+        if (!tradeFeatures.isValid()) {
+          job.skipped(offset);
+          continue;
+        }
+        TradeSnapshot snapshot = trader.makeTradeDecision(tradeFeatures);
+        tally.add(snapshot);
+        job.record(offset, snapshot);
+      }
+    }
+  }
+
+  /**
+   * replays the rest of the job's range from the curated topic, on this thread
+   */
+  private void replayFromTopic(BacktestJob job, BasicTrader trader, BacktestTally tally) {
+    TradesConsumer consumer = tradesConsumerFactory.createConsumer();
+    consumer.setStartOffset(job.getFromOffset() + job.getProcessed());
+    consumer.setEndOffset(job.getToOffset());
+    consumer.registerMessageHandler(trade -> {
+      TradeSnapshot snapshot = trade.getObp() != null ? trader.makeTradeDecision(trade, trade.getObp()) : null;
+      if (snapshot == null) {
+        job.skipped(consumer.getLastOffset());
+      } else {
+        tally.add(snapshot);
+        job.record(consumer.getLastOffset(), snapshot);
+      }
+      return true;
+    });
+    consumer.runConsumer();
+    if (consumer.isEndReached()) {
+      // records the consumer skipped (e.g. undecodable ones) count as replayed
+      job.skipped(job.getToOffset() - 1);
+    }
+  }
+
+  /**
+   * drops the oldest finished jobs beyond the ones kept; called with the jobs lock held
+   */
+  private void prune() {
+    long finished = jobs.values().stream().filter(job -> job.getState().isFinished()).count();
+    Iterator<BacktestJob> oldest = jobs.values().iterator();
+    while (finished > keep && oldest.hasNext()) {
+      BacktestJob job = oldest.next();
+      if (job.getState().isFinished()) {
+        oldest.remove();
+        jobsByKey.remove(job.key(), job);
+        finished--;
+      }
+    }
+  }
+}
@@ -0,0 +1,222 @@
+package com.ibbe.executor;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Keeps the summary of every backtest run (see BacktestSummary) on disk, so that the result of a configuration over a
+ * range is looked up instead of replayed, and configurations can be ranked across runs.
+ * <p>
+ * The summaries are appended to one log file (summaries-v1.dat in backtest.results.dir), each as its length followed
+ * by its binary form; a later summary of the same run replaces the earlier one. At startup the log is read into memory
+ * - a torn last record is cut off, replaced records are compacted away - and indexed by run, by configuration, by the
+ * time of the run's first trade and by profit, so lookups and leaderboards do not scan the runs.
+ */
+@Component
+public class BacktestResultStore {
+  private static final Logger logger = LoggerFactory.getLogger(BacktestResultStore.class);
+  private static final String FILE_NAME = "summaries-v1.dat";
+
+  // best first; the key keeps runs of equal profit apart
+  private static final Comparator<BacktestSummary> BY_PROFIT = Comparator.comparing(BacktestSummary::getProfit)
+      .reversed().thenComparing(BacktestSummary::key);
+
+  // empty for ~/.ibbe/backtest-results
+  @Value("${backtest.results.dir:}")
+  private String resultsDir = "";
+
+  private final Map<String, BacktestSummary> byKey = new HashMap<>();
+  private final Map<String, List<BacktestSummary>> byConfig = new HashMap<>();
+  private final NavigableMap<Long, List<BacktestSummary>> byFromTime = new TreeMap<>();
+  private final TreeSet<BacktestSummary> byProfit = new TreeSet<>(BY_PROFIT);
+
+  @PostConstruct
+  public synchronized void load() {
+    Path file = file();
+    if (!Files.exists(file)) {
+      return;
+    }
+    int records = 0;
+    try {
+      ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(file));
+      while (log.remaining() >= 4) {
+        int length = log.getInt(log.position());
+        if (length <= 0 || length > log.remaining() - 4) {
+          break;
+        }
+        int start = log.position();
+        byte[] record = new byte[length];
+        log.position(start + 4).get(record);
+        try {
+          index(BacktestSummary.read(new DataInputStream(new ByteArrayInputStream(record))));
+        } catch (IOException e) {
+          logger.warn("Dropping backtest results from an unreadable summary on: {}", e.getMessage());
+          log.position(start);
+          break;
+        }
+        records++;
+      }
+      if (log.hasRemaining() || records > byKey.size()) {
+        logger.info("Compacting backtest results: {} unreadable bytes, {} replaced summaries", log.remaining(),
+            records - byKey.size());
+        rewrite();
+      }
+    } catch (IOException e) {
+      logger.error("Could not read backtest results from {}, keeping {} summaries", file, byKey.size(), e);
+    }
+    logger.info("Loaded {} backtest summaries of {} configurations", byKey.size(), byConfig.size());
+  }
+
+  /**
+   * Saves the summary of a run, replacing an earlier summary of the same run.
+   */
+  public synchronized void save(BacktestSummary summary) {
+    index(summary);
+    Path file = file();
+    try {
+      Files.createDirectories(file.getParent());
+      try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+        out.write(frame(summary));
+      }
+      logger.info("Saved {}", summary);
+    } catch (IOException e) {
+      logger.error("Could not save backtest summary {}", summary, e);
+    }
+  }
+
+  /**
+   * @return the summary of the configuration over the offsets [fromOffset, toOffset); null if it was not run
+   */
+  public synchronized BacktestSummary find(String configHash, long fromOffset, long toOffset) {
+    return byKey.get(BacktestSummary.key(configHash, fromOffset, toOffset));
+  }
+
+  /**
+   * @return the summaries of the configuration's runs, by range
+   */
+  public synchronized List<BacktestSummary> findByConfig(String configHash) {
+    List<BacktestSummary> runs = new ArrayList<>(byConfig.getOrDefault(configHash, List.of()));
+    runs.sort(Comparator.comparingLong(BacktestSummary::getFromOffset).thenComparingLong(BacktestSummary::getToOffset));
+    return runs;
+  }
+
+  /**
+   * Ranks the configurations by the profit of their best run, e.g. the top 50 configurations in March.
+   *
+   * @param limit    the most configurations returned
+   * @param fromTime only runs whose trades are at or after this time, in epoch millis; 0 for any
+   * @param toTime   only runs whose trades are before this time, in epoch millis; 0 for any
+   * @return the best run of each configuration, best first
+   */
+  public synchronized List<BacktestSummary> top(int limit, long fromTime, long toTime) {
+    List<BacktestSummary> top = new ArrayList<>();
+    if (fromTime <= 0 && toTime <= 0) {
+      Set<String> configs = new HashSet<>();
+      for (BacktestSummary run : byProfit) {
+        if (top.size() >= limit) {
+          break;
+        }
+        if (configs.add(run.getConfigHash())) {
+          top.add(run);
+        }
+      }
+      return top;
+    }
+    long to = toTime > 0 ? toTime : Long.MAX_VALUE;
+    Map<String, BacktestSummary> best = new HashMap<>();
+    for (List<BacktestSummary> runs : byFromTime.subMap(fromTime, true, to, false).values()) {
+      for (BacktestSummary run : runs) {
+        if (run.getToTime() < to) {
+          best.merge(run.getConfigHash(), run, (a, b) -> BY_PROFIT.compare(a, b) <= 0 ? a : b);
+        }
+      }
+    }
+    best.values().stream().sorted(BY_PROFIT).limit(limit).forEach(top::add);
+    return top;
+  }
+
+  public synchronized int size() {
+    return byKey.size();
+  }
+
+  private void index(BacktestSummary summary) {
+    BacktestSummary replaced = byKey.put(summary.key(), summary);
+    if (replaced != null) {
+      byConfig.get(replaced.getConfigHash()).remove(replaced);
+      List<BacktestSummary> sameTime = byFromTime.get(replaced.getFromTime());
+      if (sameTime != null) {
+        sameTime.remove(replaced);
+        if (sameTime.isEmpty()) {
+          byFromTime.remove(replaced.getFromTime());
+        }
+      }
+      byProfit.remove(replaced);
+    }
+    byConfig.computeIfAbsent(summary.getConfigHash(), hash -> new ArrayList<>()).add(summary);
+    // runs without trade times are only found by run, configuration and profit
+    if (summary.getFromTime() > 0) {
+      byFromTime.computeIfAbsent(summary.getFromTime(), time -> new ArrayList<>()).add(summary);
+    }
+    byProfit.add(summary);
+  }
+
+  /**
+   * writes the indexed summaries to a new log replacing the current one
+   */
+  private void rewrite() throws IOException {
+    Path file = file();
+    Path tmp = Files.createTempFile(file.getParent(), FILE_NAME, ".tmp");
+    try (OutputStream out = Files.newOutputStream(tmp)) {
+      for (BacktestSummary summary : byKey.values()) {
+        out.write(frame(summary));
+      }
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * @return the summary's length and binary form
+   */
+  private static byte[] frame(BacktestSummary summary) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0);
+    summary.write(out);
+    byte[] frame = bytes.toByteArray();
+    ByteBuffer.wrap(frame).putInt(0, frame.length - 4);
+    return frame;
+  }
+
+  private Path file() {
+    Path dir = resultsDir == null || resultsDir.isBlank()
+        ? Paths.get(System.getProperty("user.home"), ".ibbe", "backtest-results")
+        : Paths.get(resultsDir.trim());
+    return dir.resolve(FILE_NAME);
+  }
+}
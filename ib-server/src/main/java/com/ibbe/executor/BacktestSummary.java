@@ -0,0 +1,210 @@
+package com.ibbe.executor;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibbe.entity.TradeConfig;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * What one run of a configuration over a range of the curated trades topic made, as kept by the BacktestResultStore.
+ * The range is [fromOffset, toOffset); fromTime and toTime are the times of the first and last trade replayed.
+ * Summaries of format version 1 predate the fill statistics and read back without them.
+ * Written in a compact binary form by {@link #write(DataOutput)}, the configuration as JSON.
+ */
+public class BacktestSummary {
+  private static final int FORMAT_VERSION = 2;
+  private static final ObjectMapper objectMapper = new ObjectMapper()
+      .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+  private final String configHash;
+  private final TradeConfig config;
+  private final long fromOffset;
+  private final long toOffset;
+  private final long fromTime;
+  private final long toTime;
+  private final BigDecimal profit;
+  private final int completedChunks;
+  private final BigDecimal completedChunkProfit;
+  private final int pretendTrades;
+  private final double avgSlippageBps;
+  private final int partialFills;
+  private final BigDecimal maxDrawdown;
+  private final long runtimeMillis;
+  private final long finishedAtMillis;
+
+  /**
+   * @param profit               profit of the completed chunks plus that of the chunk open at the end of the range
+   * @param completedChunkProfit profit of the completed chunks
+   * @param avgSlippageBps       average slippage of the pretend trades filled against an orderbook, in basis points
+   * @param partialFills         pretend trades larger than the stored depth, the rest filled at its worst price
+   * @param maxDrawdown          largest fall of the cumulative profit from its peak, chunk by chunk
+   * @param runtimeMillis        wall clock time the run took
+   */
+  public BacktestSummary(String configHash, TradeConfig config, long fromOffset, long toOffset, long fromTime,
+                         long toTime, BigDecimal profit, int completedChunks, BigDecimal completedChunkProfit,
+                         int pretendTrades, double avgSlippageBps, int partialFills, BigDecimal maxDrawdown,
+                         long runtimeMillis, long finishedAtMillis) {
+    this.configHash = configHash;
+    this.config = config;
+    this.fromOffset = fromOffset;
+    this.toOffset = toOffset;
+    this.fromTime = fromTime;
+    this.toTime = toTime;
+    this.profit = profit;
+    this.completedChunks = completedChunks;
+    this.completedChunkProfit = completedChunkProfit;
+    this.pretendTrades = pretendTrades;
+    this.avgSlippageBps = avgSlippageBps;
+    this.partialFills = partialFills;
+    this.maxDrawdown = maxDrawdown;
+    this.runtimeMillis = runtimeMillis;
+    this.finishedAtMillis = finishedAtMillis;
+  }
+
+  /**
+   * @return what identifies the run: the configuration's canonical hash and the offsets of the range
+   */
+  public static String key(String configHash, long fromOffset, long toOffset) {
+    return configHash + ":" + fromOffset + "-" + toOffset;
+  }
+
+  public String key() {
+    return key(configHash, fromOffset, toOffset);
+  }
+
+  public String getConfigHash() {
+    return configHash;
+  }
+
+  public TradeConfig getConfig() {
+    return config;
+  }
+
+  public long getFromOffset() {
+    return fromOffset;
+  }
+
+  public long getToOffset() {
+    return toOffset;
+  }
+
+  public long getFromTime() {
+    return fromTime;
+  }
+
+  public long getToTime() {
+    return toTime;
+  }
+
+  public BigDecimal getProfit() {
+    return profit;
+  }
+
+  public int getCompletedChunks() {
+    return completedChunks;
+  }
+
+  public BigDecimal getCompletedChunkProfit() {
+    return completedChunkProfit;
+  }
+
+  /**
+   * @return average profit of the completed chunks; 0 if there are none
+   */
+  public BigDecimal getAvgChunkProfit() {
+    return completedChunks == 0 ? BigDecimal.ZERO
+        : completedChunkProfit.divide(BigDecimal.valueOf(completedChunks), 2, RoundingMode.HALF_UP);
+  }
+
+  public int getPretendTrades() {
+    return pretendTrades;
+  }
+
+  public double getAvgSlippageBps() {
+    return avgSlippageBps;
+  }
+
+  public int getPartialFills() {
+    return partialFills;
+  }
+
+  public BigDecimal getMaxDrawdown() {
+    return maxDrawdown;
+  }
+
+  public long getRuntimeMillis() {
+    return runtimeMillis;
+  }
+
+  public long getFinishedAtMillis() {
+    return finishedAtMillis;
+  }
+
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(FORMAT_VERSION);
+    out.writeUTF(configHash);
+    byte[] configJson = objectMapper.writeValueAsBytes(config);
+    out.writeInt(configJson.length);
+    out.write(configJson);
+    out.writeLong(fromOffset);
+    out.writeLong(toOffset);
+    out.writeLong(fromTime);
+    out.writeLong(toTime);
+    out.writeUTF(profit.toString());
+    out.writeInt(completedChunks);
+    out.writeUTF(completedChunkProfit.toString());
+    out.writeInt(pretendTrades);
+    out.writeDouble(avgSlippageBps);
+    out.writeInt(partialFills);
+    out.writeUTF(maxDrawdown.toString());
+    out.writeLong(runtimeMillis);
+    out.writeLong(finishedAtMillis);
+  }
+
+  /**
+   * @throws IOException if the input is not a summary of the current format
+   */
+  public static BacktestSummary read(DataInput in) throws IOException {
+    int version = in.readInt();
+    if (version != FORMAT_VERSION && version != 1) {
+      throw new IOException("Unsupported backtest summary version " + version);
+    }
+    String configHash = in.readUTF();
+    byte[] configJson = new byte[in.readInt()];
+    in.readFully(configJson);
+    TradeConfig config = objectMapper.readValue(configJson, TradeConfig.class);
+    long fromOffset = in.readLong();
+    long toOffset = in.readLong();
+    long fromTime = in.readLong();
+    long toTime = in.readLong();
+    BigDecimal profit = new BigDecimal(in.readUTF());
+    int completedChunks = in.readInt();
+    BigDecimal completedChunkProfit = new BigDecimal(in.readUTF());
+    int pretendTrades = in.readInt();
+    double avgSlippageBps = version > 1 ? in.readDouble() : 0;
+    int partialFills = version > 1 ? in.readInt() : 0;
+    return new BacktestSummary(configHash, config, fromOffset, toOffset, fromTime, toTime, profit, completedChunks,
+        completedChunkProfit, pretendTrades, avgSlippageBps, partialFills, new BigDecimal(in.readUTF()),
+        in.readLong(), in.readLong());
+  }
+
+  @Override
+  public String toString() {
+    return "BacktestSummary{" +
+        "config=" + configHash +
+        ", offsets=[" + fromOffset + ", " + toOffset + ")" +
+        ", profit=" + profit +
+        ", completedChunks=" + completedChunks +
+        ", pretendTrades=" + pretendTrades +
+        ", avgSlippageBps=" + avgSlippageBps +
+        ", partialFills=" + partialFills +
+        ", maxDrawdown=" + maxDrawdown +
+        ", runtimeMillis=" + runtimeMillis +
+        "}";
+  }
+}
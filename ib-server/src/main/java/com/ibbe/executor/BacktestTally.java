@@ -0,0 +1,80 @@
+package com.ibbe.executor;
+
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeConfig;
+import com.ibbe.entity.TradeSnapshot;
+
+import java.math.BigDecimal;
+
+/**
+ * Tallies the snapshots of one run into its BacktestSummary. Not thread-safe; fed by the thread running the trader.
+ */
+public class BacktestTally {
+  private final long startedAtMillis = System.currentTimeMillis();
+  private long fromTime = Trade.NO_TIME;
+  private long toTime = Trade.NO_TIME;
+  private int completedChunks;
+  private BigDecimal completedChunkProfit = BigDecimal.ZERO;
+  private int pretendTrades;
+  // pretend trades filled against an orderbook, their slippage and those deeper than the stored depth
+  private int walkedTrades;
+  private double slippageBps;
+  private int partialFills;
+  // highest cumulative chunk profit so far, starting from nothing
+  private BigDecimal peak = BigDecimal.ZERO;
+  private BigDecimal maxDrawdown = BigDecimal.ZERO;
+  private TradeSnapshot last;
+
+  public void add(TradeSnapshot snapshot) {
+    long time = snapshot.getTimestampMillis();
+    if (time != Trade.NO_TIME) {
+      if (fromTime == Trade.NO_TIME) {
+        fromTime = time;
+      }
+      toTime = time;
+    }
+    if (snapshot.getCompletedChunk() != null) {
+      completedChunks++;
+      completedChunkProfit = completedChunkProfit.add(snapshot.getCompletedChunk().getProfit());
+      drawdownTo(completedChunkProfit);
+    }
+    if (snapshot.getPretendTrade() != null) {
+      pretendTrades++;
+      if (snapshot.getPretendFilledAmount() > 0) {
+        walkedTrades++;
+        slippageBps += snapshot.getPretendSlippageBps();
+        if (snapshot.getPretendFilledAmount() < snapshot.getPretendTrade().getAmount().doubleValue()) {
+          partialFills++;
+        }
+      }
+    }
+    last = snapshot;
+  }
+
+  /**
+   * @return the last snapshot added; null if none
+   */
+  public TradeSnapshot getLast() {
+    return last;
+  }
+
+  /**
+   * @param trader the trader of the run, for the profit of the chunk open at the end
+   */
+  public BacktestSummary summarize(TradeConfig config, long fromOffset, long toOffset, BasicTrader trader) {
+    BigDecimal profit = completedChunkProfit;
+    if (last != null) {
+      profit = profit.add(trader.calculateChunkProfit(last));
+    }
+    BigDecimal drawdown = maxDrawdown.max(peak.subtract(profit));
+    long finished = System.currentTimeMillis();
+    return new BacktestSummary(config.canonicalHash(), config, fromOffset, toOffset, fromTime, toTime, profit,
+        completedChunks, completedChunkProfit, pretendTrades, walkedTrades == 0 ? 0 : slippageBps / walkedTrades,
+        partialFills, drawdown, finished - startedAtMillis, finished);
+  }
+
+  private void drawdownTo(BigDecimal cumulative) {
+    peak = peak.max(cumulative);
+    maxDrawdown = maxDrawdown.max(peak.subtract(cumulative));
+  }
+}
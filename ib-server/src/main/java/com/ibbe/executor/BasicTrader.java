@@ -7,23 +7,20 @@ import com.ibbe.entity.Trade;
 import com.ibbe.entity.TradeConfig;
 import com.ibbe.entity.TrendData;
 import com.ibbe.entity.ChunkInfo;
+import com.ibbe.strategy.Strategy;
 import com.ibbe.util.PropertiesUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.time.Duration;
 import java.time.Instant;
-import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import static com.ibbe.entity.Tick.TICK_DOWN;
-import static com.ibbe.entity.Tick.TICK_UP;
 
 public class BasicTrader {
 
@@ -47,6 +44,7 @@ public class BasicTrader {
   // Maximum time gap between trades (in hours) before starting a new chunk
   // Use a low value for testing to ensure chunks are created frequently
   protected static final long MAX_TRADE_GAP_HOURS = 1;
+  static final long MILLIS_PER_HOUR = 3_600_000L;
 
   // For testing: Force new chunk creation every this many trades
   // Commented out to prevent creating new chunks every 20 trades
@@ -92,8 +90,20 @@ public class BasicTrader {
   protected final boolean useShortVsLongMovAvg;
   protected final boolean useTradingAmountMomentum;
   protected final boolean useTradePriceCloserToAskVsBuy;
+  // optional rule expressions replacing ups, downs and the flags
+  protected final String sellRule;
+  protected final String buyRule;
+  // decides the pretend sells and buys; compiled once from the above
+  protected final Strategy strategy;
   // represents the tade config's ID; not used in performance trading
   protected final String id;
+  // prices pretend trades by walking the depth of the trade's orderbook
+  protected final FillEngine fillEngine = new FillEngine();
+  // the orderbook of the trade being decided on, or the features materialized with its fills
+  private OrderBookPayload decisionOrderBook;
+  private TradeFeatures decisionFeatures;
+  // the fill of the last pretend trade; null if it had no depth to walk
+  private FillEngine.Fill lastFill;
 
   // Use long for timestamp storage
   protected long currentChunkStartTimeMillis = 0;
@@ -156,6 +166,9 @@ public class BasicTrader {
     useShortVsLongMovAvg = tradeConfig.isUseShortVsLongMovAvg();
     useTradingAmountMomentum = tradeConfig.isUseTradingAmountMomentum();
     useTradePriceCloserToAskVsBuy = tradeConfig.isUseTradePriceCloserToAskVsBuy();
+    sellRule = tradeConfig.getSellRule();
+    buyRule = tradeConfig.getBuyRule();
+    strategy = Strategy.forConfig(tradeConfig);
 
     logger.info("Performance according to UPS:{} DOWNS:{} ID:{}", upN, downN, id);
 
@@ -178,7 +191,7 @@ public class BasicTrader {
    */
   public TradeSnapshot makeTradeDecision(Trade trade, OrderBookPayload orderBook) {
     // Skip if essential data is missing
-    if (trade == null || trade.getNthStatus() == null ||
+    if (trade == null || trade.getNthRun() == 0 ||
         trade.getTick() == null) {
       logger.warn("Skipping trade decision due to missing data");
       return null;
@@ -193,6 +206,49 @@ public class BasicTrader {
     // now calculate long and short term trends data and update the tradeSnapshot object
     calculateTrends(trade, tradeSnapshot, orderBook);
 
+    decisionOrderBook = orderBook;
+    decisionFeatures = null;
+    decide(trade, tradeSnapshot);
+    return tradeSnapshot;
+  }
+
+  /**
+   * Makes the trade decision for a trade whose features were materialized by the FeatureStore; the snapshot is the
+   * same as makeTradeDecision(Trade, OrderBookPayload) would produce, without recomputing the orderbook averages.
+   * <p>
+   * The stored trends were computed by a trader that ran from the start of the topic. A trader that started later
+   * (e.g. a time range replay) began a chunk of its own at its first trade, so until its trend windows have filled up
+   * they hold fewer trades than the stored ones; for those trades it computes the trends from its own windows.
+   */
+  public TradeSnapshot makeTradeDecision(TradeFeatures features) {
+    Trade trade = features.toTrade();
+    TradeSnapshot tradeSnapshot = features.toSnapshot();
+    tradeSnapshot.setSequence(sequenceCounter.getAndIncrement());
+
+    handleTradeChunks(tradeSnapshot);
+    includeNewTrade(trade);
+    // the moving averages are over the trades of the chunk, so they differ if this trader's chunk started later
+    if (currentChunkTradeCount != features.getChunkTradeCount()
+        && trendData.getTradePricesQueue().size() < trendData.getMaxQueueSize()) {
+      tradeSnapshot.STMAPrice = 0.0;
+      tradeSnapshot.LTMAPrice = 0.0;
+      updateMovingAverages(tradeSnapshot);
+    }
+    // the amount momentum is over the latest trades regardless of chunks, so it differs until the window is full
+    if (trendData.getTradesQueue().size() < trendData.getMaxQueueSize()) {
+      updateTradingAmountMomentum(tradeSnapshot);
+    }
+
+    decisionOrderBook = null;
+    decisionFeatures = features;
+    decide(trade, tradeSnapshot);
+    return tradeSnapshot;
+  }
+
+  /**
+   * sets the pretend trade (if any) of the snapshot and remembers the trade as the last processed one
+   */
+  private void decide(Trade trade, TradeSnapshot tradeSnapshot) {
     // todo see if more of the trendData info can be used in trade decisions!
     Trade pretendTrade = null;
     try {
@@ -207,14 +263,16 @@ public class BasicTrader {
         }
       }
       tradeSnapshot.setPretendTrade(pretendTrade);
+      if (pretendTrade != null && lastFill != null) {
+        tradeSnapshot.setPretendSlippageBps(lastFill.slippageBps());
+        tradeSnapshot.setPretendFilledAmount(lastFill.filledAmount());
+      }
     } catch (Exception e) {
       logger.error("Error in makeTradeDecision: {}", e.getMessage(), e);
     }
 
     // Save this trade as the last processed trade for future reference
     lastProcessedTrade = trade;
-
-    return tradeSnapshot;
   }
 
   /**
@@ -270,7 +328,7 @@ public class BasicTrader {
       data.setAvgAskAmount(avgAskAmount.doubleValue());
       data.setAvgBidPrice(avgBidPrice.doubleValue());
       data.setAvgBidAmount(avgBidAmount);
-      data.setTimestamp(trade.getCreatedAt());
+      data.setTimestampMillis(trade.getCreatedAtMillis());
       return data;
   }
 
@@ -294,7 +352,7 @@ public class BasicTrader {
         // Create and store chunk info using milliseconds
         ChunkInfo completedChunk = new ChunkInfo(currentChunkNumber, chunkProfit, currentChunkStartPrice,
             (lastProcessedTrade != null ? lastProcessedTrade.getPrice() : BigDecimal.ZERO),
-            currentChunkTradeCount, currentChunkStartTimeMillis, convertTimestampToMillis(lastProcessedTrade.getCreatedAt()));
+            currentChunkTradeCount, currentChunkStartTimeMillis, timeMillisOrNow(lastProcessedTrade.getCreatedAtMillis()));
 //        chunks.add(completedChunk);
         
         // Add this newly completed chunk to the snapshot data
@@ -341,14 +399,12 @@ public class BasicTrader {
   }
 
   protected boolean weShouldStartNewChunk(TradeSnapshot tradeSnapshot) {
-    // Get the current trade timestamp
-    Instant currentTradeTimestamp = parseTradeTimestamp(tradeSnapshot.getTimestamp());
-    if (currentTradeTimestamp == null) {
+    // Get current trade timestamp as milliseconds
+    long currentTradeTimeMillis = tradeSnapshot.getTimestampMillis();
+    if (currentTradeTimeMillis == Trade.NO_TIME) {
       logger.warn("Could not parse timestamp for trade: {}", tradeSnapshot.getTradeId());
       return false;
     }
-    // Get current trade timestamp as milliseconds
-    long currentTradeTimeMillis = currentTradeTimestamp.toEpochMilli();
 
     // Determine if we need to start a new chunk
     boolean shouldStartNewChunk = false;
@@ -360,13 +416,13 @@ public class BasicTrader {
       logger.info("Processing very first trade, initializing first trading chunk");
     } else {
       // Check for time gap between this trade and previous one
-      Instant lastTradeTimestamp = parseTradeTimestamp(lastProcessedTrade.getCreatedAt());
+      long lastTradeTimeMillis = lastProcessedTrade.getCreatedAtMillis();
 
-      if (lastTradeTimestamp != null) {
-        Duration gap = Duration.between(lastTradeTimestamp, currentTradeTimestamp);
-        if (gap.toHours() >= MAX_TRADE_GAP_HOURS) {
+      if (lastTradeTimeMillis != Trade.NO_TIME) {
+        long gapHours = (currentTradeTimeMillis - lastTradeTimeMillis) / MILLIS_PER_HOUR;
+        if (gapHours >= MAX_TRADE_GAP_HOURS) {
           shouldStartNewChunk = true;
-          logger.info("Detected time gap of {} hours. Starting new trading chunk.", gap.toHours());
+          logger.info("Detected time gap of {} hours. Starting new trading chunk.", gapHours);
         }
       }
     }
@@ -391,12 +447,11 @@ public class BasicTrader {
     profit = BigDecimal.ZERO;
 
     // Track chunk information
-    Instant timestamp = parseTradeTimestamp(tradeSnapshot.getTimestamp());
-    currentChunkStartTimeMillis = timestamp != null ? timestamp.toEpochMilli() : System.currentTimeMillis();
+    currentChunkStartTimeMillis = timeMillisOrNow(tradeSnapshot.getTimestampMillis());
     currentChunkTradeCount = 1;
 
     logger.info("Initialized new trading chunk with first trade price: {} at time: {}",
-        currentChunkStartPrice, timestamp);
+        currentChunkStartPrice, tradeSnapshot.getTimestamp());
   }
 
   public BigDecimal calculateChunkProfit(TradeSnapshot tradeSnapshot) {
@@ -441,78 +496,22 @@ public class BasicTrader {
    *
    * @param trade the trade to evaluate
    * @param tradeSnapshot the performance data for the trade
-   * @return true if it's time to sell, false otherwise
+   * @return true if the configuration's strategy sells at this trade, false otherwise
    */
   protected boolean sellingTime(Trade trade, TradeSnapshot tradeSnapshot) {
     // Check for null values to prevent NullPointerException
-    if (trade == null || tradeSnapshot == null || trade.getNthStatus() == null ||
-        trade.getTick() == null) {
-      return false;
-    }
-    boolean sellingTime = false;
-    // first condition is that ANY of the markers are set for selling
-    sellingTime = downN > 0 || useAvgBidVsAvgAsk || useShortVsLongMovAvg || useTradingAmountMomentum || useTradePriceCloserToAskVsBuy;
-
-    if (downN > 0) {
-      sellingTime = sellingTime && (trade.getNthStatus().equals(TICK_DOWN.toString() + downN) && trade.getTick().equals(TICK_DOWN));
-    }
-
-    if (useAvgBidVsAvgAsk) {
-      sellingTime = sellingTime && tradeSnapshot.avgBidAmount > tradeSnapshot.avgAskAmount;
-    }
-
-    if (useShortVsLongMovAvg) {
-      sellingTime = sellingTime && tradeSnapshot.STMAPrice > tradeSnapshot.LTMAPrice;
-    }
-
-    if (useTradingAmountMomentum) {
-      sellingTime = sellingTime && tradeSnapshot.tradeAmountIncrease > tradeSnapshot.tradeAmountDecrease;
-    }
-
-    if (useTradePriceCloserToAskVsBuy) {
-      sellingTime = sellingTime && tradeSnapshot.priceCloserToBestAsk > 0;
-    }
-
-    return sellingTime;
+    return trade != null && tradeSnapshot != null && strategy.shouldSell(trade, tradeSnapshot);
   }
 
   protected boolean buyingTime(Trade trade, TradeSnapshot tradeSnapshot) {
     // Check for null values to prevent NullPointerException
-    if (trade == null || tradeSnapshot == null || trade.getNthStatus() == null ||
-        trade.getTick() == null) {
-      return false;
-    }
-
-    boolean buyingTime = false;
-    // first condition is that ANY of the markers are set for buying
-    buyingTime = upN > 0 || useAvgBidVsAvgAsk || useShortVsLongMovAvg || useTradingAmountMomentum || useTradePriceCloserToAskVsBuy;
-
-    if (upN > 0) {
-      buyingTime = buyingTime && (trade.getNthStatus().equals(TICK_UP.toString() + upN) && trade.getTick().equals(TICK_UP));
-    }
-
-    if (useAvgBidVsAvgAsk) {
-      buyingTime = buyingTime && tradeSnapshot.avgBidAmount < tradeSnapshot.avgAskAmount;
-    }
-
-    if (useShortVsLongMovAvg) {
-      buyingTime = buyingTime && tradeSnapshot.STMAPrice < tradeSnapshot.LTMAPrice;
-    }
-
-    if (useTradingAmountMomentum) {
-      buyingTime = buyingTime && tradeSnapshot.tradeAmountIncrease < tradeSnapshot.tradeAmountDecrease;
-    }
-
-    if (useTradePriceCloserToAskVsBuy) {
-      buyingTime = buyingTime && tradeSnapshot.priceCloserToBestAsk < 0;
-    }
-
-    return buyingTime;
+    return trade != null && tradeSnapshot != null && strategy.shouldBuy(trade, tradeSnapshot);
   }
 
   /**
-   * Creates a new pretend trade based on the most recent market trade.
-   * Updates account balances and display data accordingly.
+   * Creates a new pretend trade based on the most recent market trade, priced at the VWAP of walking its orderbook's
+   * asks (buy) or bids (sell) for the amount; at the market trade's price if there is no orderbook to walk.
+   * The fill is kept for the snapshot's slippage and depth covered.
    *
    * @param mostRecentTrade the most recent market trade (as received from BitsoDataAggregator)
    * @param typeOfTrade     the type of trade to create (as passed by ItsyBitsoWindow)
@@ -523,14 +522,13 @@ public class BasicTrader {
       return null;
     }
 
-    BigDecimal amount = (MARKER_SIDE_BUY.equals(typeOfTrade) ? BUY_AMT : SELL_AMT).setScale(4, RoundingMode.DOWN);
+    BigDecimal amount = pretendAmount(typeOfTrade);
 
     Trade pretendTrade = Trade.builder()
-        .createdAt(mostRecentTrade.getCreatedAt())
+        .createdAtMillis(mostRecentTrade.getCreatedAtMillis())
         .amount(amount)
         .makerSide(typeOfTrade)
-        // todo here use either bids or asks price instead of latest trade's price..
-        .price(mostRecentTrade.getPrice())
+        .price(fillPrice(mostRecentTrade, typeOfTrade, amount))
         .tid(mostRecentTrade.getTid() + TRADE_ID_OFFSET)
         .build();
 
@@ -539,6 +537,30 @@ public class BasicTrader {
     return pretendTrade;
   }
 
+  /**
+   * @return the amount of a pretend trade of the type
+   */
+  static BigDecimal pretendAmount(String typeOfTrade) {
+    return (MARKER_SIDE_BUY.equals(typeOfTrade) ? BUY_AMT : SELL_AMT).setScale(4, RoundingMode.DOWN);
+  }
+
+  /**
+   * @return the price a pretend trade of the amount fills at against the current orderbook; remembers the fill
+   */
+  private BigDecimal fillPrice(Trade mostRecentTrade, String typeOfTrade, BigDecimal amount) {
+    boolean buy = MARKER_SIDE_BUY.equals(typeOfTrade);
+    if (decisionOrderBook != null) {
+      lastFill = buy ? fillEngine.buy(decisionOrderBook, amount.doubleValue())
+          : fillEngine.sell(decisionOrderBook, amount.doubleValue());
+    } else if (decisionFeatures != null) {
+      lastFill = buy ? decisionFeatures.getBuyFill() : decisionFeatures.getSellFill();
+    } else {
+      lastFill = null;
+    }
+    return lastFill == null ? mostRecentTrade.getPrice()
+        : BigDecimal.valueOf(lastFill.price()).setScale(2, RoundingMode.HALF_UP);
+  }
+
   /**
    * Updates account balances after a trade execution.
    * Handles both buy and sell scenarios with their respective fees.
@@ -581,9 +603,9 @@ public class BasicTrader {
     while (tradeIterator.hasNext()) {
       Trade trade = tradeIterator.next();
 
-      if (trade.getNthStatus().startsWith(TICK_UP.toString())) {
+      if (trade.getNthRun() > 0) {
         upAmounts = upAmounts.add(trade.getAmount());
-      } else if (trade.getNthStatus().startsWith(TICK_DOWN.toString())) {
+      } else if (trade.getNthRun() < 0) {
         downAmounts = downAmounts.add(trade.getAmount());
       }
 
@@ -669,35 +691,65 @@ public class BasicTrader {
 
 
   /**
-   * Parses the timestamp from a trade
+   * @param timeMillis a trade time in epoch millis
+   * @return the time, or the current time if the trade's time could not be parsed
+   */
+  private static long timeMillisOrNow(long timeMillis) {
+    return timeMillis != Trade.NO_TIME ? timeMillis : System.currentTimeMillis();
+  }
+
+  /**
+   * Captures the state of this trader; the caller guarantees that every record before the offset has been processed
+   * and none after it.
    *
-   * @param tradeTimestamp the createdAt string of the trade
-   * @return the Instant or null if unable to parse
+   * @param offset the first topic offset not yet processed
    */
-  private Instant parseTradeTimestamp(String tradeTimestamp) {
-     try {
-      // Convert string timestamp to Instant
-      ZonedDateTime zonedDateTime = ZonedDateTime.parse(tradeTimestamp);
-      return zonedDateTime.toInstant();
-    } catch (Exception e) {
-      logger.warn("Failed to parse trade timestamp: {}", tradeTimestamp);
-      return null;
-    }
+  public TraderCheckpoint checkpoint(long offset) {
+    TraderCheckpoint checkpoint = new TraderCheckpoint();
+    checkpoint.offset = offset;
+    checkpoint.sequence = sequenceCounter.get();
+    checkpoint.currencyBalance = currencyBalance;
+    checkpoint.coinBalance = coinBalance;
+    checkpoint.profit = profit;
+    // the trend queues hold the newest element first
+    trendData.getTradePricesQueue().descendingIterator().forEachRemaining(checkpoint.tradePrices::add);
+    trendData.getTradeAmountsQueue().descendingIterator().forEachRemaining(checkpoint.tradeAmounts::add);
+    trendData.getTradesQueue().descendingIterator().forEachRemaining(checkpoint.trades::add);
+    checkpoint.lastProcessedTrade = lastProcessedTrade;
+    checkpoint.currentChunkNumber = currentChunkNumber;
+    checkpoint.currentChunkTradeCount = currentChunkTradeCount;
+    checkpoint.currentChunkStartPrice = currentChunkStartPrice;
+    checkpoint.currentChunkStartTimeMillis = currentChunkStartTimeMillis;
+    return checkpoint;
   }
 
+  /**
+   * Restores the state captured by {@link #checkpoint(long)}; the trader should then be fed the records from the
+   * checkpoint's offset on.
+   */
+  public void restore(TraderCheckpoint checkpoint) {
+    sequenceCounter.set(checkpoint.sequence);
+    currencyBalance = checkpoint.currencyBalance;
+    coinBalance = checkpoint.coinBalance;
+    profit = checkpoint.profit;
+    trendData.clear();
+    trendData.getTradesQueue().clear();
+    checkpoint.tradePrices.forEach(trendData::addTradePrice);
+    checkpoint.tradeAmounts.forEach(trendData::addTradeAmount);
+    checkpoint.trades.forEach(trendData::addTrade);
+    lastProcessedTrade = checkpoint.lastProcessedTrade;
+    currentChunkNumber = checkpoint.currentChunkNumber;
+    currentChunkTradeCount = checkpoint.currentChunkTradeCount;
+    currentChunkStartPrice = checkpoint.currentChunkStartPrice;
+    currentChunkStartTimeMillis = checkpoint.currentChunkStartTimeMillis;
+    logger.info("Restored trader {} from {}", id, checkpoint);
+  }
 
   /**
-   * Converts an ISO-8601 timestamp string to milliseconds since epoch
-   * @param timestampStr String in format "2025-05-22T13:20:49.930Z"
-   * @return milliseconds since epoch
+   * @return the number of trades of the current chunk so far
    */
-  private long convertTimestampToMillis(String timestampStr) {
-      try {
-          return Instant.parse(timestampStr).toEpochMilli();
-      } catch (Exception e) {
-          System.err.println("Error parsing timestamp: " + timestampStr);
-          return System.currentTimeMillis(); // fallback to current time
-      }
+  int getCurrentChunkTradeCount() {
+    return currentChunkTradeCount;
   }
 
   /**
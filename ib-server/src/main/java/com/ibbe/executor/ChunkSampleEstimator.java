@@ -0,0 +1,267 @@
+package com.ibbe.executor;
+
+import com.ibbe.entity.ProfitEstimate;
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeConfig;
+import com.ibbe.strategy.Strategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Quick estimates of the total profit of a configuration over the FeatureStore, for discarding bad configurations
+ * before replaying everything.
+ * <p>
+ * A trader starts every chunk from the starting balances and fresh trend data (see BasicTrader.initNewChunk), so the
+ * profit of a chunk does not depend on the chunks before it: a fresh trader replaying just the chunk's trades makes
+ * what the full replay makes in it, and the total profit is the sum of the chunk profits. The chunks are found from the
+ * trade times alone, split into strata of similar trade counts and replayed on the ComputeExecutor in a random order
+ * that takes from every stratum in turn. While they complete, the stratified estimate of the total and its confidence
+ * interval are published; the interval narrows as chunks complete and closes on the exact profit once all are done.
+ */
+@Component
+public class ChunkSampleEstimator {
+  private static final Logger logger = LoggerFactory.getLogger(ChunkSampleEstimator.class);
+
+  static final double CONFIDENCE = 0.95;
+  // two-sided normal quantile of CONFIDENCE
+  private static final double Z = 1.959964;
+  private static final int MAX_STRATA = 8;
+  // fewer chunks per stratum would leave too few samples to estimate a stratum's variance early on
+  private static final int MIN_STRATUM_CHUNKS = 10;
+
+  @Autowired
+  private FeatureStore featureStore;
+
+  @Autowired
+  private ComputeExecutor computeExecutor;
+
+  // minimum time between two published estimates
+  @Value("${quickestimate.publish.ms:250}")
+  private long publishMillis = 250;
+
+  /**
+   * The offsets [from, to) of a chunk and the number of trades in it.
+   */
+  record Chunk(long from, long to, int trades) {
+  }
+
+  /**
+   * The profit of a chunk replayed, and the stratum of the chunk.
+   */
+  record Sample(int stratum, BigDecimal profit) {
+  }
+
+  /**
+   * Estimates the total profit of the configuration, blocking until all chunks are replayed.
+   *
+   * @param seed     seed of the order the chunks are replayed in
+   * @param listener receives the estimates as they progress; called on the calling thread
+   * @throws IllegalArgumentException if there is no configuration or its rules do not compile
+   * @throws IllegalStateException    if no features are materialized or none is a trade
+   * @throws InterruptedException     if the calling thread is interrupted; the remaining chunks are cancelled
+   */
+  public void run(TradeConfig config, long seed, Consumer<ProfitEstimate> listener)
+      throws IOException, InterruptedException {
+    if (config == null) {
+      throw new IllegalArgumentException("Expected a config");
+    }
+    Strategy.forConfig(config);
+
+    try (FeatureStore.Reader reader = featureStore.openReader()) {
+      if (reader == null || reader.size() == 0) {
+        throw new IllegalStateException("No trade features are materialized yet");
+      }
+      List<Chunk> chunks = chunks(reader);
+      if (chunks.isEmpty()) {
+        throw new IllegalStateException("No trades to estimate");
+      }
+      List<List<Chunk>> strata = strata(chunks, seed);
+      logger.info("Quick estimate of config {} over {} chunks in {} strata, seed {}", config.getId(), chunks.size(),
+          strata.size(), seed);
+
+      CompletionService<Sample> completion = new ExecutorCompletionService<>(computeExecutor);
+      List<Future<Sample>> samples = new ArrayList<>(chunks.size());
+      for (int i = 0; samples.size() < chunks.size(); i++) {
+        for (int stratum = 0; stratum < strata.size(); stratum++) {
+          if (i < strata.get(stratum).size()) {
+            Chunk chunk = strata.get(stratum).get(i);
+            int h = stratum;
+            samples.add(completion.submit(() ->
+                new Sample(h, WalkForwardEngine.score(config, reader, chunk.from(), chunk.to()).profit())));
+          }
+        }
+      }
+
+      Estimate estimate = new Estimate(strata.stream().mapToInt(List::size).toArray());
+      long lastPublished = 0;
+      try {
+        for (int i = 0; i < samples.size(); i++) {
+          Sample sample = completion.take().get();
+          estimate.add(sample.stratum(), sample.profit());
+          long now = System.currentTimeMillis();
+          if (estimate.isDone() || (estimate.hasInterval() && now - lastPublished >= publishMillis)) {
+            listener.accept(estimate.toProfitEstimate());
+            lastPublished = now;
+          }
+        }
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Chunk replay failed", e.getCause());
+      } finally {
+        samples.forEach(sample -> sample.cancel(true));
+      }
+      logger.info("Quick estimate of config {} done: {}", config.getId(), estimate.toProfitEstimate());
+    }
+  }
+
+  /**
+   * Splits the features into the chunks a trader would trade them in: a chunk starts at the first trade and at every
+   * trade at least BasicTrader.MAX_TRADE_GAP_HOURS after the trade before it.
+   */
+  static List<Chunk> chunks(FeatureStore.Reader reader) {
+    List<Chunk> chunks = new ArrayList<>();
+    TradeFeatures cursor = new TradeFeatures();
+    long from = -1;
+    long lastTime = Trade.NO_TIME;
+    int trades = 0;
+    for (long offset = 0; offset < reader.size(); offset++) {
+      TradeFeatures features = reader.at(offset, cursor);
+      if (!features.isValid()) {
+        continue;
+      }
+      long time = features.getTimeMillis();
+      boolean gap = time != Trade.NO_TIME && lastTime != Trade.NO_TIME
+          && (time - lastTime) / BasicTrader.MILLIS_PER_HOUR >= BasicTrader.MAX_TRADE_GAP_HOURS;
+      if (from < 0 || gap) {
+        if (from >= 0) {
+          chunks.add(new Chunk(from, offset, trades));
+        }
+        from = offset;
+        trades = 0;
+      }
+      trades++;
+      lastTime = time;
+    }
+    if (from >= 0) {
+      chunks.add(new Chunk(from, reader.size(), trades));
+    }
+    return chunks;
+  }
+
+  /**
+   * @return the chunks split by trade count into strata of equal size, each in a random order
+   */
+  static List<List<Chunk>> strata(List<Chunk> chunks, long seed) {
+    List<Chunk> bySize = new ArrayList<>(chunks);
+    bySize.sort(Comparator.comparingInt(Chunk::trades));
+    int count = Math.max(1, Math.min(MAX_STRATA, chunks.size() / MIN_STRATUM_CHUNKS));
+    Random random = new Random(seed);
+    List<List<Chunk>> strata = new ArrayList<>(count);
+    for (int h = 0; h < count; h++) {
+      List<Chunk> stratum = new ArrayList<>(bySize.subList(h * bySize.size() / count, (h + 1) * bySize.size() / count));
+      Collections.shuffle(stratum, random);
+      strata.add(stratum);
+    }
+    return strata;
+  }
+
+  /**
+   * The stratified estimate of the total profit from the chunk profits known so far. Strata not sampled yet are
+   * estimated from the mean and variance of all chunks sampled so far.
+   */
+  static final class Estimate {
+    private final int[] sizes;
+    private final int chunks;
+    private final int[] sampled;
+    private final double[] means;
+    // sums of squared differences from the means, for the variances
+    private final double[] squares;
+    private int done;
+    private double mean;
+    private double square;
+    private BigDecimal sampledProfit = BigDecimal.ZERO;
+
+    Estimate(int[] sizes) {
+      this.sizes = sizes;
+      this.chunks = Arrays.stream(sizes).sum();
+      this.sampled = new int[sizes.length];
+      this.means = new double[sizes.length];
+      this.squares = new double[sizes.length];
+    }
+
+    void add(int stratum, BigDecimal profit) {
+      double value = profit.doubleValue();
+      sampled[stratum]++;
+      double delta = value - means[stratum];
+      means[stratum] += delta / sampled[stratum];
+      squares[stratum] += delta * (value - means[stratum]);
+      done++;
+      double pooledDelta = value - mean;
+      mean += pooledDelta / done;
+      square += pooledDelta * (value - mean);
+      sampledProfit = sampledProfit.add(profit);
+    }
+
+    boolean isDone() {
+      return done == chunks;
+    }
+
+    /**
+     * @return whether enough chunks are sampled for a variance
+     */
+    boolean hasInterval() {
+      return done >= 2;
+    }
+
+    double total() {
+      if (isDone()) {
+        return sampledProfit.doubleValue();
+      }
+      double total = 0;
+      for (int h = 0; h < sizes.length; h++) {
+        total += sizes[h] * (sampled[h] > 0 ? means[h] : mean);
+      }
+      return total;
+    }
+
+    /**
+     * @return variance of the estimated total; 0 once every chunk is sampled
+     */
+    double variance() {
+      double pooled = done >= 2 ? square / (done - 1) : 0;
+      double variance = 0;
+      for (int h = 0; h < sizes.length; h++) {
+        if (sampled[h] == sizes[h]) {
+          continue;
+        }
+        double stratumVariance = sampled[h] >= 2 ? squares[h] / (sampled[h] - 1) : pooled;
+        double remaining = 1 - (double) sampled[h] / sizes[h];
+        variance += (double) sizes[h] * sizes[h] * remaining * stratumVariance / Math.max(1, sampled[h]);
+      }
+      return variance;
+    }
+
+    ProfitEstimate toProfitEstimate() {
+      double total = total();
+      double margin = Z * Math.sqrt(variance());
+      return new ProfitEstimate(done, chunks, total, total - margin, total + margin, CONFIDENCE,
+          sampledProfit.doubleValue(), isDone());
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package com.ibbe.executor;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared pool for CPU-bound backtest work (walk-forward scoring, Monte Carlo simulations), sized to the cores.
+ * Unlike SessionExecutor's virtual threads, tasks here never block; the session threads that start them wait for
+ * their results instead, so all analyses together never run more threads than there are cores.
+ */
+@Component
+public class ComputeExecutor implements Executor {
+  private static final Logger logger = LoggerFactory.getLogger(ComputeExecutor.class);
+
+  // 0 for one thread per core
+  @Value("${compute.threads:0}")
+  private int threads = 0;
+
+  private ExecutorService pool;
+
+  @PostConstruct
+  public void start() {
+    int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    AtomicInteger threadNumber = new AtomicInteger();
+    pool = Executors.newFixedThreadPool(size, runnable -> {
+      Thread thread = new Thread(runnable, "compute-" + threadNumber.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+    logger.info("Compute pool started with {} threads", size);
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    pool.execute(task);
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (pool != null) {
+      pool.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,321 @@
+package com.ibbe.executor;
+
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeConfig;
+import com.ibbe.entity.TradeSnapshot;
+import com.ibbe.kafka.TradesConsumer;
+import com.ibbe.util.PropertiesUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Materializes the config-independent per-trade features of the curated trades topic once, into a memory-mapped file
+ * with one fixed-size {@link TradeFeatures} record per topic offset, so that replays of any number of configurations
+ * only run the trading rules.
+ * <p>
+ * The features are computed by a BasicTrader that never trades, fed by a TradesConsumer that follows the topic, so
+ * they are exactly what each replay would compute itself; the fills of a pretend buy and sell are computed by
+ * the FillEngine the same way. The file starts with a header holding the format version
+ * and the moving average lengths; a file written with other values is rebuilt. The feature trader's state is
+ * checkpointed with every flush, so materialization resumes where it stopped.
+ */
+@Component
+public class FeatureStore {
+  private static final Logger logger = LoggerFactory.getLogger(FeatureStore.class);
+
+  private static final int MAGIC = 0x49424654; // "IBFT"
+  // 3: offsets of the curated topic rather than the raw one; 4: the trades of each record's chunk so far;
+  // 5: the slippage and depth covered of the fills
+  private static final int FORMAT_VERSION = 5;
+  private static final int HEADER_SIZE = 64;
+  private static final int COUNT_POSITION = 20;
+  // records per mapped segment of a reader
+  private static final int SEGMENT_RECORDS = 1 << 20;
+  private static final String CHECKPOINT_KEY = "features-v" + FORMAT_VERSION;
+
+  @Autowired
+  private TraderCheckpointStore checkpointStore;
+
+  @Value("${feature.store.enabled:true}")
+  private boolean enabled = true;
+
+  // empty for ~/.ibbe/features
+  @Value("${feature.store.dir:}")
+  private String storeDir = "";
+
+  // records buffered before they are written out
+  @Value("${feature.store.flush.records:10000}")
+  private int flushRecords = 10000;
+
+  @Value("${feature.store.flush.ms:5000}")
+  private long flushMillis = 5000;
+
+  private final int stma = intProperty("stma", 5);
+  private final int ltma = intProperty("ltma", 20);
+
+  private Path file;
+  private FileChannel channel;
+  // number of offsets written, i.e. the first offset not yet materialized
+  private volatile long count;
+
+  private BasicTrader featureTrader;
+  private final FillEngine fillEngine = new FillEngine();
+  private final double buyAmount = BasicTrader.pretendAmount(BasicTrader.MARKER_SIDE_BUY).doubleValue();
+  private final double sellAmount = BasicTrader.pretendAmount(BasicTrader.MARKER_SIDE_SELL).doubleValue();
+  private TradesConsumer consumer;
+  private Thread materializerThread;
+  private ByteBuffer pending;
+  private long pendingStart;
+  private long lastFlush;
+
+  @PostConstruct
+  public void start() {
+    if (!enabled) {
+      logger.info("Feature store disabled");
+      return;
+    }
+    try {
+      open();
+    } catch (IOException e) {
+      logger.error("Could not open the feature store, replays will compute their own features", e);
+      return;
+    }
+    materializerThread = Thread.ofVirtual().name("feature-materializer").start(this::materialize);
+  }
+
+  @PreDestroy
+  public void stop() {
+    TradesConsumer current = consumer;
+    if (current != null) {
+      current.stopConsumer();
+    }
+    if (materializerThread != null) {
+      materializerThread.interrupt();
+      try {
+        materializerThread.join(5000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    try {
+      if (channel != null) {
+        channel.close();
+      }
+    } catch (IOException e) {
+      logger.warn("Error closing the feature store: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * @return the first offset whose features are not materialized yet; 0 if the store is disabled
+   */
+  public long getMaterializedOffset() {
+    return count;
+  }
+
+  /**
+   * Opens a read-only view of the features materialized so far. The view does not grow; open a new one to see
+   * features materialized later.
+   *
+   * @return a reader, or null if the store is disabled or not open
+   */
+  public Reader openReader() throws IOException {
+    if (channel == null) {
+      return null;
+    }
+    return new Reader(file, count);
+  }
+
+  /**
+   * A read-only, memory-mapped view of the features of offsets [0, size()). {@link #at(long)} is not thread-safe;
+   * threads sharing a reader use {@link #at(long, TradeFeatures)} with a cursor of their own.
+   */
+  public static final class Reader implements Closeable {
+    private final FileChannel readChannel;
+    private final MappedByteBuffer[] segments;
+    private final long size;
+    private final TradeFeatures cursor = new TradeFeatures();
+
+    private Reader(Path file, long size) throws IOException {
+      this.size = size;
+      this.readChannel = FileChannel.open(file, StandardOpenOption.READ);
+      this.segments = new MappedByteBuffer[(int) ((size + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS)];
+      for (int i = 0; i < segments.length; i++) {
+        long first = (long) i * SEGMENT_RECORDS;
+        long records = Math.min(SEGMENT_RECORDS, size - first);
+        segments[i] = readChannel.map(FileChannel.MapMode.READ_ONLY,
+            HEADER_SIZE + first * TradeFeatures.RECORD_SIZE, records * TradeFeatures.RECORD_SIZE);
+      }
+    }
+
+    /**
+     * @return the number of offsets covered
+     */
+    public long size() {
+      return size;
+    }
+
+    /**
+     * @param offset a topic offset below size()
+     * @return the features of the offset; the same cursor instance is returned (and moved) by every call
+     */
+    public TradeFeatures at(long offset) {
+      return at(offset, cursor);
+    }
+
+    /**
+     * @param offset a topic offset below size()
+     * @param cursor the cursor to move to the offset's record
+     * @return the cursor
+     */
+    public TradeFeatures at(long offset, TradeFeatures cursor) {
+      // reads use absolute positions only, so the mapped segments can be shared between threads
+      cursor.moveTo(segments[(int) (offset / SEGMENT_RECORDS)],
+          (int) (offset % SEGMENT_RECORDS) * TradeFeatures.RECORD_SIZE);
+      return cursor;
+    }
+
+    @Override
+    public void close() throws IOException {
+      readChannel.close();
+    }
+  }
+
+  /**
+   * opens (or creates) the feature file; a file of another format or other moving average lengths is rebuilt
+   */
+  private void open() throws IOException {
+    Path dir = storeDir == null || storeDir.isBlank()
+        ? Paths.get(System.getProperty("user.home"), ".ibbe", "features")
+        : Paths.get(storeDir.trim());
+    Files.createDirectories(dir);
+    file = dir.resolve("features-v" + FORMAT_VERSION + ".dat");
+    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    boolean valid = channel.size() >= HEADER_SIZE && channel.read(header, 0) == HEADER_SIZE
+        && header.getInt(0) == MAGIC && header.getInt(4) == FORMAT_VERSION
+        && header.getInt(8) == TradeFeatures.RECORD_SIZE && header.getInt(12) == stma && header.getInt(16) == ltma;
+    long stored = valid ? header.getLong(COUNT_POSITION) : 0;
+
+    // the feature trader must be restored to exactly the stored end; otherwise rewind to its last checkpoint
+    TraderCheckpoint checkpoint = stored > 0 ? checkpointStore.findLatest(CHECKPOINT_KEY, stored) : null;
+    count = checkpoint != null ? checkpoint.getOffset() : 0;
+    featureTrader = new BasicTrader(new TradeConfig(CHECKPOINT_KEY, "0", "0", false, false, false, false));
+    if (checkpoint != null) {
+      featureTrader.restore(checkpoint);
+    }
+    if (!valid) {
+      logger.info("Creating feature store {}", file);
+    } else if (count < stored) {
+      logger.info("Rewinding feature store {} from offset {} to its checkpoint at {}", file, stored, count);
+    }
+    writeHeader();
+    channel.truncate(HEADER_SIZE + count * TradeFeatures.RECORD_SIZE);
+    pending = ByteBuffer.allocate(flushRecords * TradeFeatures.RECORD_SIZE);
+    pendingStart = count;
+    lastFlush = System.currentTimeMillis();
+    logger.info("Feature store {} holds offsets [0, {})", file, count);
+  }
+
+  /**
+   * follows the topic from the materialized end, writing the features of each record
+   */
+  private void materialize() {
+    consumer = new TradesConsumer();
+    consumer.setStartOffset(count);
+    consumer.registerMessageHandler(trade -> {
+      append(consumer.getLastOffset(), trade);
+      return true;
+    });
+    logger.info("Materializing features from offset {}", count);
+    consumer.runConsumer();
+    flushIfDue(true);
+    logger.info("Feature materializer stopped at offset {}", count);
+  }
+
+  /**
+   * Buffers the features of the trade read from the offset; offsets skipped since the previous trade (heartbeats,
+   * undecodable records) get placeholders that hold no features. Written out when the buffer is due.
+   */
+  void append(long offset, Trade trade) {
+    while (pendingStart + pending.position() / TradeFeatures.RECORD_SIZE < offset) {
+      TradeFeatures.writeInvalid(pending);
+      flushIfDue(false);
+    }
+    TradeSnapshot snapshot = trade.getObp() != null ? featureTrader.makeTradeDecision(trade, trade.getObp()) : null;
+    if (snapshot != null) {
+      FillEngine.Fill buy = fillEngine.buy(trade.getObp(), buyAmount);
+      FillEngine.Fill sell = fillEngine.sell(trade.getObp(), sellAmount);
+      TradeFeatures.write(pending, trade, snapshot, buy, sell, featureTrader.getCurrentChunkTradeCount());
+    } else {
+      TradeFeatures.writeInvalid(pending);
+    }
+    flushIfDue(false);
+  }
+
+  /**
+   * Writes out the buffered features and checkpoints the feature trader.
+   */
+  void flush() {
+    flushIfDue(true);
+  }
+
+  private void flushIfDue(boolean force) {
+    boolean full = !pending.hasRemaining();
+    if (pending.position() == 0 || !(force || full || System.currentTimeMillis() - lastFlush >= flushMillis)) {
+      return;
+    }
+    try {
+      pending.flip();
+      long position = HEADER_SIZE + pendingStart * TradeFeatures.RECORD_SIZE;
+      while (pending.hasRemaining()) {
+        position += channel.write(pending, position);
+      }
+      channel.force(false);
+      long end = (position - HEADER_SIZE) / TradeFeatures.RECORD_SIZE;
+      // the checkpoint first: a header count without a matching checkpoint makes the next start rewind
+      checkpointStore.save(CHECKPOINT_KEY, featureTrader.checkpoint(end));
+      count = end;
+      writeHeader();
+      pendingStart = end;
+    } catch (IOException e) {
+      logger.error("Could not write features at offset {}", pendingStart, e);
+    } finally {
+      pending.clear();
+      lastFlush = System.currentTimeMillis();
+    }
+  }
+
+  private void writeHeader() throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(0, MAGIC);
+    header.putInt(4, FORMAT_VERSION);
+    header.putInt(8, TradeFeatures.RECORD_SIZE);
+    header.putInt(12, stma);
+    header.putInt(16, ltma);
+    header.putLong(COUNT_POSITION, count);
+    channel.write(header, 0);
+    channel.force(false);
+  }
+
+  private static int intProperty(String name, int defaultValue) {
+    String value = PropertiesUtil.getProperty(name);
+    return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+  }
+}
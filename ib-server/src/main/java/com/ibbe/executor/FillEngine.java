@@ -0,0 +1,139 @@
+package com.ibbe.executor;
+
+import com.ibbe.entity.Order;
+import com.ibbe.entity.OrderBookPayload;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Fills pretend trades against the orderbook stored with a trade: a buy walks the asks and a sell walks the bids
+ * until the amount is filled, at the volume weighted average price (VWAP) of the levels it takes.
+ * <p>
+ * Each side of a book is turned once into prefix sums of amount and notional (price * amount), so a fill of any
+ * amount is a binary search plus one interpolation - O(log depth). The sums are kept for the last book and reused
+ * while trades carry the same book version (its sequence, or the same payload instance).
+ * An amount beyond the stored depth is filled at the worst stored price for the rest. Not thread-safe; each trader
+ * has its own engine.
+ */
+public class FillEngine {
+
+  /**
+   * @param price        VWAP of the fill
+   * @param filledAmount the part of the amount the stored depth covered
+   * @param slippageBps  distance of the VWAP from the best price, in basis points of the best price
+   */
+  public record Fill(double price, double filledAmount, double slippageBps) {
+  }
+
+  private OrderBookPayload lastBook;
+  private DepthLadder asks;
+  private DepthLadder bids;
+
+  /**
+   * @return the fill of a buy of the amount, or null if the book has no asks
+   */
+  public Fill buy(OrderBookPayload book, double amount) {
+    return prepare(book) ? asks.fill(amount) : null;
+  }
+
+  /**
+   * @return the fill of a sell of the amount, or null if the book has no bids
+   */
+  public Fill sell(OrderBookPayload book, double amount) {
+    return prepare(book) ? bids.fill(amount) : null;
+  }
+
+  /**
+   * builds the ladders of the book unless it is the same version as the last one
+   */
+  private boolean prepare(OrderBookPayload book) {
+    if (book == null) {
+      return false;
+    }
+    if (book != lastBook && (book.getSequence() <= 0 || lastBook == null
+        || book.getSequence() != lastBook.getSequence())) {
+      asks = DepthLadder.of(book.getAsks(), true);
+      bids = DepthLadder.of(book.getBids(), false);
+      lastBook = book;
+    }
+    return true;
+  }
+
+  /**
+   * Prefix sums of one side of a book, best level first.
+   */
+  static final class DepthLadder {
+    private final double[] prices;
+    // cumulativeAmounts[i] is the amount of levels 0..i, cumulativeNotionals[i] their price * amount
+    private final double[] cumulativeAmounts;
+    private final double[] cumulativeNotionals;
+
+    private DepthLadder(double[] prices, double[] cumulativeAmounts, double[] cumulativeNotionals) {
+      this.prices = prices;
+      this.cumulativeAmounts = cumulativeAmounts;
+      this.cumulativeNotionals = cumulativeNotionals;
+    }
+
+    /**
+     * @param ascending true for asks (best is the lowest price), false for bids
+     */
+    static DepthLadder of(Order[] orders, boolean ascending) {
+      Comparator<Order> bestFirst = Comparator.comparing(Order::getP);
+      if (!ascending) {
+        bestFirst = bestFirst.reversed();
+      }
+      Order[] levels = orders;
+      for (int i = 1; i < levels.length; i++) {
+        if (bestFirst.compare(levels[i - 1], levels[i]) > 0) {
+          // books arrive sorted best first; sort a copy otherwise
+          levels = levels.clone();
+          Arrays.sort(levels, bestFirst);
+          break;
+        }
+      }
+      double[] prices = new double[levels.length];
+      double[] amounts = new double[levels.length];
+      double[] notionals = new double[levels.length];
+      double amount = 0;
+      double notional = 0;
+      for (int i = 0; i < levels.length; i++) {
+        prices[i] = levels[i].getP().doubleValue();
+        amount += levels[i].getA().doubleValue();
+        notional += prices[i] * levels[i].getA().doubleValue();
+        amounts[i] = amount;
+        notionals[i] = notional;
+      }
+      return new DepthLadder(prices, amounts, notionals);
+    }
+
+    /**
+     * @return the fill of the amount, or null if the side is empty
+     */
+    Fill fill(double amount) {
+      int depth = prices.length;
+      if (depth == 0 || amount <= 0) {
+        return null;
+      }
+      // the first level whose cumulative amount covers the amount
+      int level = Arrays.binarySearch(cumulativeAmounts, amount);
+      if (level < 0) {
+        level = -level - 1;
+      }
+      double price;
+      double filled;
+      if (level >= depth) {
+        // deeper than the stored book: the rest at the worst stored price
+        filled = cumulativeAmounts[depth - 1];
+        price = (cumulativeNotionals[depth - 1] + (amount - filled) * prices[depth - 1]) / amount;
+      } else {
+        double amountBefore = level > 0 ? cumulativeAmounts[level - 1] : 0;
+        double notionalBefore = level > 0 ? cumulativeNotionals[level - 1] : 0;
+        filled = amount;
+        price = (notionalBefore + (amount - amountBefore) * prices[level]) / amount;
+      }
+      double slippageBps = prices[0] > 0 ? Math.abs(price - prices[0]) / prices[0] * 10_000 : 0;
+      return new Fill(price, filled, slippageBps);
+    }
+  }
+}
@@ -14,6 +14,7 @@ import org.springframework.context.ApplicationContext;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
@@ -38,6 +39,8 @@ public class LiveTrader extends BasicTrader implements PropertyChangeListener {
 
   private FxTradesDisplayData fxTradesDisplayData;
   private BitsoDataAggregator bitsoDataAggregator;
+  // notifies monitors (via TraderFactory) whenever the display data changed
+  private final PropertyChangeSupport displayChanges = new PropertyChangeSupport(this);
 //  private XchangeRatePoller poller;
 
   /**
@@ -74,27 +77,32 @@ public class LiveTrader extends BasicTrader implements PropertyChangeListener {
     try {
       Trade trade = ((Trade) evt.getNewValue());
       OrderBookPayload orderBook = bitsoDataAggregator.getOrderbookPayload();
-      TradeSnapshot tradeSnapshot = makeTradeDecision(trade, orderBook);
-      logger.info("$$$$$$>>>>> " + id + " >> " + (tradeSnapshot.getPretendTrade() == null));
-
-      // if there is no starting account value yet, calculate and set
-      if (BigDecimal.ZERO.equals(fxTradesDisplayData.getStartingAccountValue())) {
-        fxTradesDisplayData.setStartingAccountValue(calculateAccountValue(tradeSnapshot));
-      }
-
-      if (tradeSnapshot.getPretendTrade() != null) {
-        tradeFollowUp(tradeSnapshot.getPretendTrade());
+      // monitors serialize the display data from other threads, so mutate it under its lock
+      synchronized (fxTradesDisplayData) {
+        TradeSnapshot tradeSnapshot = makeTradeDecision(trade, orderBook);
+        logger.info("$$$$$$>>>>> " + id + " >> " + (tradeSnapshot.getPretendTrade() == null));
+
+        // if there is no starting account value yet, calculate and set
+        if (BigDecimal.ZERO.equals(fxTradesDisplayData.getStartingAccountValue())) {
+          fxTradesDisplayData.setStartingAccountValue(calculateAccountValue(tradeSnapshot));
+        }
+
+        if (tradeSnapshot.getPretendTrade() != null) {
+          tradeFollowUp(tradeSnapshot.getPretendTrade());
+        }
+        updateDisplay(fxTradesDisplayData);
+
+//        logger.info("trade event " + trade.getTid() + " from " + trade.getPrice());
+//        if (trade.getNthStatus().equals(TICK_DOWN.toString() + downN) && trade.getTick().equals(TICK_DOWN)) {
+//          tradeFollowUp(trade(trade, MARKER_SIDE_SELL));
+//        }
+//        if (trade.getNthStatus().equals(TICK_UP.toString() + upM) && trade.getTick().equals(TICK_UP)) {
+//          tradeFollowUp(trade(trade, MARKER_SIDE_BUY));
+//        }
+        refreshDisplayWithNewTrade(trade);
       }
-      updateDisplay(fxTradesDisplayData);
-
-//      logger.info("trade event " + trade.getTid() + " from " + trade.getPrice());
-//      if (trade.getNthStatus().equals(TICK_DOWN.toString() + downN) && trade.getTick().equals(TICK_DOWN)) {
-//        tradeFollowUp(trade(trade, MARKER_SIDE_SELL));
-//      }
-//      if (trade.getNthStatus().equals(TICK_UP.toString() + upM) && trade.getTick().equals(TICK_UP)) {
-//        tradeFollowUp(trade(trade, MARKER_SIDE_BUY));
-//      }
-      refreshDisplayWithNewTrade(trade);
+      // the trade (and possibly a pretend trade) changed what the monitors should see
+      displayChanges.firePropertyChange(new PropertyChangeEvent(this, "DISPLAY", null, fxTradesDisplayData));
     } catch (Exception e) {
       e.printStackTrace();
       throw new RuntimeException(e);
@@ -139,15 +147,39 @@ public class LiveTrader extends BasicTrader implements PropertyChangeListener {
    * @return A TradeConfig object with the current configuration values
    */
   public TradeConfig getTradeConfig() {
-    return new TradeConfig(
+    TradeConfig config = new TradeConfig(
         id, String.valueOf(upN), String.valueOf(downN), useAvgBidVsAvgAsk, useShortVsLongMovAvg,
         useTradingAmountMomentum, useTradePriceCloserToAskVsBuy);
+    config.setSellRule(sellRule);
+    config.setBuyRule(buyRule);
+    return config;
   }
 
   public FxTradesDisplayData getFxTradesDisplayData() {
     return fxTradesDisplayData;
   }
 
+  /**
+   * stops reacting to new trades; called when the trader is removed or replaced
+   */
+  public void stop() {
+    if (bitsoDataAggregator != null) {
+      bitsoDataAggregator.removeObserver(this);
+    }
+  }
+
+  /**
+   * add subscribers to display data changes; fired after each processed trade
+   * @param l
+   */
+  public void addDisplayListener(PropertyChangeListener l) {
+    displayChanges.addPropertyChangeListener("DISPLAY", l);
+  }
+
+  public void removeDisplayListener(PropertyChangeListener l) {
+    displayChanges.removePropertyChangeListener("DISPLAY", l);
+  }
+
 
 
 }
@@ -0,0 +1,277 @@
+package com.ibbe.executor;
+
+import com.ibbe.entity.MonteCarloBands;
+import com.ibbe.entity.MonteCarloRequest;
+import com.ibbe.entity.TradeConfig;
+import com.ibbe.entity.TradeSnapshot;
+import com.ibbe.strategy.Strategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Monte Carlo robustness runs of a configuration.
+ * <p>
+ * The configuration is replayed once over the FeatureStore and its pretend trades are recorded per chunk (a chunk
+ * tape). Trade decisions do not depend on balances, so the tapes are all a simulation needs: each simulation draws as
+ * many chunks as were traded, with replacement, and re-prices every pretend trade with adverse slippage and a
+ * jittered fee, the way BasicTrader.updateBalances would have booked it. Chunks start from the starting balances, so
+ * a resampled sequence's cumulative profit is the sum of its chunk profits. Kafka and the features are read once per
+ * run, not per simulation.
+ * <p>
+ * Simulations run in batches on the ComputeExecutor; each simulation has its own seed derived from the run's seed, so
+ * results do not depend on the number of threads. Percentile bands over the simulations done so far are published
+ * while the run progresses. The simulations use doubles rather than BigDecimal, so results differ from BasicTrader's
+ * by its rounding of balances to cents and satoshis.
+ */
+@Component
+public class MonteCarloSimulator {
+  private static final Logger logger = LoggerFactory.getLogger(MonteCarloSimulator.class);
+
+  static final double[] PERCENTILES = {5, 25, 50, 75, 95};
+  // the bands are given at up to this many chunk counts
+  private static final int MAX_POINTS = 100;
+  // simulations per compute task
+  private static final int BATCH_SIZE = 100;
+  private static final int MAX_SIMULATIONS = 100_000;
+  private static final double BUY_FEE = BasicTrader.TRADING_FEE_BUY.doubleValue() - 1;
+  private static final double SELL_FEE = 1 - BasicTrader.TRADING_FEE_SELL.doubleValue();
+
+  @Autowired
+  private FeatureStore featureStore;
+
+  @Autowired
+  private ComputeExecutor computeExecutor;
+
+  // minimum time between two published bands
+  @Value("${montecarlo.publish.ms:250}")
+  private long publishMillis = 250;
+
+  /**
+   * The pretend trades of one historical chunk, with the prices the chunk's profit is measured between.
+   */
+  static final class ChunkTape {
+    final double startPrice;
+    double endPrice;
+    int size;
+    boolean[] buys = new boolean[4];
+    double[] prices = new double[4];
+    double[] amounts = new double[4];
+
+    ChunkTape(double startPrice) {
+      this.startPrice = startPrice;
+      this.endPrice = startPrice;
+    }
+
+    void add(boolean buy, double price, double amount) {
+      if (size == prices.length) {
+        buys = Arrays.copyOf(buys, size * 2);
+        prices = Arrays.copyOf(prices, size * 2);
+        amounts = Arrays.copyOf(amounts, size * 2);
+      }
+      buys[size] = buy;
+      prices[size] = price;
+      amounts[size] = amount;
+      size++;
+    }
+
+    /**
+     * @param slippage relative slippage scale; 0 for none
+     * @param feeJitter relative fee jitter; 0 for none
+     * @return the chunk's profit when its trades are booked with random slippage and fees
+     */
+    double profit(SplittableRandom random, double slippage, double feeJitter, double startCurrency, double startCoin) {
+      double currency = startCurrency;
+      double coin = startCoin;
+      for (int i = 0; i < size; i++) {
+        double slip = slippage > 0 ? Math.abs(random.nextGaussian()) * slippage : 0;
+        double feeScale = feeJitter > 0 ? 1 + feeJitter * (2 * random.nextDouble() - 1) : 1;
+        if (buys[i]) {
+          currency -= amounts[i] * prices[i] * (1 + slip) * (1 + BUY_FEE * feeScale);
+          coin += amounts[i];
+        } else {
+          currency += amounts[i] * prices[i] * (1 - slip) * (1 - SELL_FEE * feeScale);
+          coin -= amounts[i];
+        }
+      }
+      return coin * endPrice + currency - (startCoin * startPrice + startCurrency);
+    }
+  }
+
+  /**
+   * The chunk tapes of a configuration and the starting balances they are booked from.
+   */
+  record Tapes(List<ChunkTape> chunks, double startCurrency, double startCoin) {
+  }
+
+  /**
+   * Runs the simulations of the request, blocking until they are done.
+   *
+   * @param listener receives the bands as they progress; called on the calling thread
+   * @throws IllegalArgumentException if the request is out of range or the configuration's rules do not compile
+   * @throws IllegalStateException    if no features are materialized or the configuration never traded
+   * @throws InterruptedException     if the calling thread is interrupted; the remaining simulations are cancelled
+   */
+  public void run(MonteCarloRequest request, Consumer<MonteCarloBands> listener)
+      throws IOException, InterruptedException {
+    int simulations = request.getSimulations();
+    if (request.getConfig() == null || simulations <= 0 || simulations > MAX_SIMULATIONS
+        || request.getSlippageBps() < 0 || request.getFeeJitter() < 0 || request.getFeeJitter() >= 1) {
+      throw new IllegalArgumentException("Expected a config, 1 to " + MAX_SIMULATIONS
+          + " simulations, slippageBps >= 0 and feeJitter in [0, 1): " + request);
+    }
+    Strategy.forConfig(request.getConfig());
+
+    Tapes tapes;
+    try (FeatureStore.Reader reader = featureStore.openReader()) {
+      if (reader == null || reader.size() == 0) {
+        throw new IllegalStateException("No trade features are materialized yet");
+      }
+      tapes = decode(request.getConfig(), reader);
+    }
+    int chunks = tapes.chunks().size();
+    if (chunks == 0) {
+      throw new IllegalStateException("No trades to simulate");
+    }
+    int[] steps = steps(chunks);
+    double historical = 0;
+    for (ChunkTape tape : tapes.chunks()) {
+      historical += tape.profit(null, 0, 0, tapes.startCurrency(), tapes.startCoin());
+    }
+    long seed = request.getSeed() != 0 ? request.getSeed() : System.nanoTime();
+    double slippage = request.getSlippageBps() / 10_000;
+    logger.info("Monte Carlo of {} simulations over {} chunks, seed {}", simulations, chunks, seed);
+
+    CompletionService<double[][]> completion = new ExecutorCompletionService<>(computeExecutor);
+    List<Future<double[][]>> batches = new ArrayList<>();
+    for (int from = 0; from < simulations; from += BATCH_SIZE) {
+      int first = from;
+      int last = Math.min(simulations, from + BATCH_SIZE);
+      batches.add(completion.submit(() -> simulate(tapes, steps, first, last, seed, slippage, request.getFeeJitter())));
+    }
+
+    // values[point][simulation], filled in the order batches complete
+    double[][] values = new double[steps.length][simulations];
+    int done = 0;
+    int losses = 0;
+    long lastPublished = 0;
+    try {
+      for (int i = 0; i < batches.size(); i++) {
+        double[][] paths = completion.take().get();
+        for (double[] path : paths) {
+          for (int point = 0; point < steps.length; point++) {
+            values[point][done] = path[point];
+          }
+          if (path[steps.length - 1] < 0) {
+            losses++;
+          }
+          done++;
+        }
+        long now = System.currentTimeMillis();
+        if (done == simulations || now - lastPublished >= publishMillis) {
+          listener.accept(new MonteCarloBands(done, simulations, chunks, steps, PERCENTILES.clone(),
+              bands(values, done), historical, (double) losses / done, done == simulations));
+          lastPublished = now;
+        }
+      }
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Simulation failed", e.getCause());
+    } finally {
+      batches.forEach(batch -> batch.cancel(true));
+    }
+  }
+
+  /**
+   * replays the configuration over the features once, recording its pretend trades per chunk
+   */
+  static Tapes decode(TradeConfig config, FeatureStore.Reader reader) {
+    BasicTrader trader = new BasicTrader(config);
+    List<ChunkTape> chunks = new ArrayList<>();
+    ChunkTape current = null;
+    double lastPrice = 0;
+    for (long offset = 0; offset < reader.size(); offset++) {
+      TradeFeatures features = reader.at(offset);
+      if (!features.isValid()) {
+        continue;
+      }
+      TradeSnapshot snapshot = trader.makeTradeDecision(features);
+      if (current == null || snapshot.getCompletedChunk() != null) {
+        if (current != null) {
+          current.endPrice = snapshot.getCompletedChunk().getEndingTradePrice().doubleValue();
+        }
+        current = new ChunkTape(snapshot.getTradePrice());
+        chunks.add(current);
+      }
+      if (snapshot.getPretendTrade() != null) {
+        current.add(BasicTrader.MARKER_SIDE_BUY.equals(snapshot.getPretendTrade().getMakerSide()),
+            snapshot.getPretendTrade().getPrice().doubleValue(), snapshot.getPretendTrade().getAmount().doubleValue());
+      }
+      lastPrice = snapshot.getTradePrice();
+    }
+    if (current != null) {
+      current.endPrice = lastPrice;
+    }
+    return new Tapes(chunks, trader.startingCurrencyBalance.doubleValue(), trader.startingCoinBalance.doubleValue());
+  }
+
+  /**
+   * @return the cumulative profit of simulations [first, last) at each step
+   */
+  static double[][] simulate(Tapes tapes, int[] steps, int first, int last, long seed, double slippage,
+                             double feeJitter) {
+    List<ChunkTape> chunks = tapes.chunks();
+    double[][] paths = new double[last - first][steps.length];
+    for (int simulation = first; simulation < last; simulation++) {
+      SplittableRandom random = new SplittableRandom(seed + simulation * 0x9E3779B97F4A7C15L);
+      double[] path = paths[simulation - first];
+      double cumulative = 0;
+      int point = 0;
+      for (int step = 1; step <= chunks.size(); step++) {
+        ChunkTape chunk = chunks.get(random.nextInt(chunks.size()));
+        cumulative += chunk.profit(random, slippage, feeJitter, tapes.startCurrency(), tapes.startCoin());
+        if (step == steps[point]) {
+          path[point++] = cumulative;
+        }
+      }
+    }
+    return paths;
+  }
+
+  /**
+   * @return the chunk counts, ascending and ending with chunks, at which the bands are given
+   */
+  static int[] steps(int chunks) {
+    int points = Math.min(chunks, MAX_POINTS);
+    int[] steps = new int[points];
+    for (int i = 0; i < points; i++) {
+      steps[i] = (int) ((long) (i + 1) * chunks / points);
+    }
+    return steps;
+  }
+
+  private static double[][] bands(double[][] values, int done) {
+    double[][] bands = new double[PERCENTILES.length][values.length];
+    double[] sorted = new double[done];
+    for (int point = 0; point < values.length; point++) {
+      System.arraycopy(values[point], 0, sorted, 0, done);
+      Arrays.sort(sorted);
+      for (int p = 0; p < PERCENTILES.length; p++) {
+        bands[p][point] = sorted[(int) Math.min(done - 1, Math.round(PERCENTILES[p] / 100 * (done - 1)))];
+      }
+    }
+    return bands;
+  }
+}
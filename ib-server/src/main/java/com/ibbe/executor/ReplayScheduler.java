@@ -0,0 +1,216 @@
+package com.ibbe.executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control for replays: at most replay.workers replays (each with its Kafka consumer and share of the decode
+ * pool) run at a time, and at most replay.queue.max more wait for a worker; further requests are rejected rather than
+ * piling up.
+ * <p>
+ * A replay calls {@link #acquire} on its own (virtual) thread, which blocks until the replay is admitted, and closes
+ * the returned slot when done. A freed worker goes to the waiting replay of the highest priority - interactive ones
+ * before batch ones - and among those to the one whose owner has the fewest replays running, then was served least
+ * recently, so one user's burst does not starve the others; ties go to the longest waiting. Interrupting a waiting
+ * thread takes its replay off the queue.
+ */
+@Component
+public class ReplayScheduler {
+  private static final Logger logger = LoggerFactory.getLogger(ReplayScheduler.class);
+
+  /**
+   * Scheduling priority of a replay; interactive replays are admitted before batch ones.
+   */
+  public enum Priority {
+    INTERACTIVE,
+    BATCH
+  }
+
+  /**
+   * @param state "QUEUED" or "RUNNING"
+   */
+  public record JobStatus(long id, String owner, Priority priority, String description, String state,
+                          long queuedAtMillis, long startedAtMillis) {
+  }
+
+  @Value("${replay.workers:4}")
+  private int workers = 4;
+
+  @Value("${replay.queue.max:100}")
+  private int maxQueued = 100;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final List<Job> queued = new ArrayList<>();
+  private final List<Job> running = new ArrayList<>();
+  private final AtomicLong jobIds = new AtomicLong();
+  // when each owner was last given a worker, in dispatches
+  private final Map<String, Long> lastServed = new HashMap<>();
+  private long dispatches = 0;
+  private long rejected = 0;
+
+  private final class Job {
+    final long id = jobIds.incrementAndGet();
+    final String owner;
+    final Priority priority;
+    final String description;
+    final long queuedAtMillis = System.currentTimeMillis();
+    final Condition admitted = lock.newCondition();
+    long startedAtMillis;
+    boolean started;
+
+    Job(String owner, Priority priority, String description) {
+      this.owner = owner;
+      this.priority = priority;
+      this.description = description;
+    }
+
+    JobStatus status() {
+      return new JobStatus(id, owner, priority, description, started ? "RUNNING" : "QUEUED", queuedAtMillis,
+          startedAtMillis);
+    }
+  }
+
+  /**
+   * A worker held by a running replay; closing it (from any thread, more than once) hands the worker to the next
+   * replay.
+   */
+  public final class Slot implements AutoCloseable {
+    private final Job job;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private Slot(Job job) {
+      this.job = job;
+    }
+
+    public long getJobId() {
+      return job.id;
+    }
+
+    @Override
+    public void close() {
+      if (closed.compareAndSet(false, true)) {
+        release(job);
+      }
+    }
+  }
+
+  /**
+   * Waits until the replay is admitted.
+   *
+   * @param owner       the user the replay runs for; replays are shared fairly between owners
+   * @param priority    the replay's priority
+   * @param description shown in the status
+   * @return the slot to close when the replay is done
+   * @throws RejectedExecutionException if the queue is full
+   * @throws InterruptedException       if the thread is interrupted while waiting; the replay is dropped
+   */
+  public Slot acquire(String owner, Priority priority, String description) throws InterruptedException {
+    lock.lock();
+    try {
+      if (queued.size() >= maxQueued) {
+        rejected++;
+        throw new RejectedExecutionException("Replay queue is full (" + maxQueued + " waiting)");
+      }
+      Job job = new Job(owner, priority, description);
+      queued.add(job);
+      dispatch();
+      if (!job.started) {
+        logger.info("Replay {} of {} queued behind {} running, {} waiting", job.id, owner, running.size(),
+            queued.size() - 1);
+      }
+      try {
+        while (!job.started) {
+          job.admitted.await();
+        }
+      } catch (InterruptedException e) {
+        if (job.started) {
+          running.remove(job);
+          dispatch();
+        } else {
+          queued.remove(job);
+        }
+        throw e;
+      }
+      return new Slot(job);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void release(Job job) {
+    lock.lock();
+    try {
+      running.remove(job);
+      dispatch();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * hands the free workers to the waiting replays; called with the lock held
+   */
+  private void dispatch() {
+    Comparator<Job> order = Comparator.<Job, Priority>comparing(job -> job.priority)
+        .thenComparingLong(job -> running.stream().filter(other -> other.owner.equals(job.owner)).count())
+        .thenComparingLong(job -> lastServed.getOrDefault(job.owner, 0L))
+        .thenComparingLong(job -> job.id);
+    while (running.size() < workers && !queued.isEmpty()) {
+      Job next = queued.stream().min(order).get();
+      queued.remove(next);
+      next.started = true;
+      next.startedAtMillis = System.currentTimeMillis();
+      running.add(next);
+      lastServed.put(next.owner, ++dispatches);
+      next.admitted.signal();
+    }
+  }
+
+  /**
+   * @return the running replays, then the waiting ones in the order they were queued
+   */
+  public List<JobStatus> getJobs() {
+    lock.lock();
+    try {
+      List<JobStatus> jobs = new ArrayList<>();
+      running.forEach(job -> jobs.add(job.status()));
+      queued.forEach(job -> jobs.add(job.status()));
+      return jobs;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getWorkers() {
+    return workers;
+  }
+
+  public int getMaxQueued() {
+    return maxQueued;
+  }
+
+  /**
+   * @return the number of replays rejected because the queue was full
+   */
+  public long getRejectedCount() {
+    lock.lock();
+    try {
+      return rejected;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
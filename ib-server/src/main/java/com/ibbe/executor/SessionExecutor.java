@@ -0,0 +1,111 @@
+package com.ibbe.executor;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared execution layer for per-session work of the websocket endpoints (replays, trading monitors).
+ * Every task runs on its own virtual thread, so blocking calls (Kafka polls, websocket sends, waits) do not tie up
+ * platform threads and thousands of concurrent sessions are possible.
+ * <p>
+ * Tasks are tracked by websocket session ID; when a session closes, {@link #cancel(String)} interrupts all of the
+ * session's tasks at once, so no worker outlives the session that started it.
+ */
+@Component
+public class SessionExecutor {
+
+  private static final Logger logger = LoggerFactory.getLogger(SessionExecutor.class);
+
+  private final ExecutorService virtualThreads =
+      Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("session-", 0).factory());
+
+  // Key: websocket session ID; Value: tasks that are still running for that session
+  private final ConcurrentHashMap<String, Set<Future<?>>> sessionTasks = new ConcurrentHashMap<>();
+
+  /**
+   * Runs the task on a new virtual thread, tied to the lifecycle of the given session.
+   *
+   * @param sessionId the websocket session owning the task
+   * @param task      the work to run
+   * @return the future of the task; cancelling it interrupts the virtual thread
+   */
+  public Future<?> submit(String sessionId, Runnable task) {
+    FutureTask<Void> future = new FutureTask<>(task, null) {
+      @Override
+      protected void done() {
+        release(sessionId, this);
+      }
+    };
+    sessionTasks.computeIfAbsent(sessionId, k -> ConcurrentHashMap.newKeySet()).add(future);
+    virtualThreads.execute(future);
+    return future;
+  }
+
+  /**
+   * Cancels (interrupts) all running tasks of the given session.
+   *
+   * @param sessionId the websocket session whose tasks should stop
+   * @return the number of tasks cancelled
+   */
+  public int cancel(String sessionId) {
+    Set<Future<?>> tasks = sessionTasks.remove(sessionId);
+    if (tasks == null) {
+      return 0;
+    }
+    int cancelled = 0;
+    for (Future<?> task : tasks) {
+      if (task.cancel(true)) {
+        cancelled++;
+      }
+    }
+    logger.info("Cancelled {} task(s) of session {}", cancelled, sessionId);
+    return cancelled;
+  }
+
+  /**
+   * @return the number of sessions that have at least one running task
+   */
+  public int getActiveSessionCount() {
+    return sessionTasks.size();
+  }
+
+  /**
+   * @param sessionId the websocket session
+   * @return the number of tasks still running for the session
+   */
+  public int getTaskCount(String sessionId) {
+    Set<Future<?>> tasks = sessionTasks.get(sessionId);
+    return tasks == null ? 0 : tasks.size();
+  }
+
+  private void release(String sessionId, Future<?> future) {
+    sessionTasks.computeIfPresent(sessionId, (id, tasks) -> {
+      tasks.remove(future);
+      return tasks.isEmpty() ? null : tasks;
+    });
+  }
+
+  /**
+   * Interrupts all session tasks when the application shuts down.
+   */
+  @PreDestroy
+  public void shutdown() {
+    sessionTasks.keySet().forEach(this::cancel);
+    virtualThreads.shutdownNow();
+    try {
+      virtualThreads.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,331 @@
+package com.ibbe.executor;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibbe.entity.BitsoDataAggregator;
+import com.ibbe.entity.OrderBookPayload;
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeWs;
+import com.ibbe.kafka.TradeArchive;
+import com.ibbe.kafka.TradeGapLog;
+import com.ibbe.kafka.TradeIngestGuard;
+import com.ibbe.kafka.TradesProducer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Backfills the trades the websocket missed from the Bitso REST trades endpoint (bitso.get.trades.url).
+ * <p>
+ * The gaps come from the TradeGapLog, which the ingest path writes whenever trade IDs jump; every
+ * backfill.interval.ms the logged gaps are backfilled and removed from the log. A gap is split into trade ID segments
+ * that are paged concurrently (backfill.concurrency), all requests sharing one rate limit
+ * (backfill.requests.per.second). The trades of a gap are then internalized by the BitsoDataAggregator like live ones
+ * - USD price, tick and status continuing from the archived trade before the gap, packed with that trade's orderbook -
+ * and produced to the trades topic, stamped with their trade time. Trades that were ingested after all are skipped.
+ * <p>
+ * The backfilled records land in the topic after the trades that followed the gap, so they are late in the topic:
+ * the TradeArchiveIndex keeps them apart for the archive queries, and the TradeCleanser holds the curated trades after
+ * an open gap back until it is backfilled, so that replays read the curated topic in trade ID order.
+ */
+@Component
+public class TradeBackfiller {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TradeBackfiller.class);
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+  // the most trades Bitso returns per page
+  private static final int PAGE_SIZE = 100;
+  private static final int MAX_ATTEMPTS = 5;
+  // how far before a time gap the archived trade before it is searched for
+  private static final long TIME_GAP_LOOKBACK_MS = 3_600_000;
+
+  // ends with "limit=", e.g. https://api.bitso.com/v3/trades/?book=btc_mxn&limit=
+  @Value("${bitso.get.trades.url}")
+  private String tradesUrl;
+
+  @Value("${backfill.enabled:true}")
+  private boolean enabled = true;
+
+  @Value("${backfill.interval.ms:60000}")
+  private long intervalMillis = 60000;
+
+  @Value("${backfill.concurrency:4}")
+  private int concurrency = 4;
+
+  @Value("${backfill.requests.per.second:1}")
+  private double requestsPerSecond = 1;
+
+  // a page that got HTTP 429 or 5xx is retried after this, doubled with every attempt
+  @Value("${backfill.retry.backoff.ms:1000}")
+  private long retryBackoffMillis = 1000;
+
+  // trade IDs per concurrently paged segment of a gap
+  @Value("${backfill.segment.tids:1000}")
+  private long segmentTids = 1000;
+
+  @Autowired
+  private TradeGapLog gapLog;
+
+  @Autowired
+  private TradeIngestGuard ingestGuard;
+
+  @Autowired
+  private BitsoDataAggregator bitsoDataAggregator;
+
+  @Autowired
+  private TradesProducer tradesProducer;
+
+  @Autowired
+  private TradeArchive tradeArchive;
+
+  // the client of the Bitso REST trades endpoint; replaced in tests, as is tradesUrl
+  private HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+  private RateLimiter rateLimiter;
+  private volatile boolean running = false;
+  private Thread backfillThread;
+
+  @PostConstruct
+  public void start() {
+    rateLimiter = new RateLimiter(requestsPerSecond);
+    if (!enabled) {
+      LOGGER.info("Trade backfill disabled");
+      return;
+    }
+    running = true;
+    backfillThread = Thread.ofVirtual().name("trade-backfill").start(this::backfillLoop);
+  }
+
+  @PreDestroy
+  public void stop() {
+    running = false;
+    if (backfillThread != null) {
+      backfillThread.interrupt();
+    }
+  }
+
+  private void backfillLoop() {
+    while (running) {
+      try {
+        Thread.sleep(intervalMillis);
+        for (TradeGapLog.Gap gap : gapLog.read()) {
+          try {
+            backfill(gap);
+            gapLog.remove(gap);
+          } catch (IOException e) {
+            // keep the gap for the next round
+            LOGGER.warn("Could not backfill trades {} to {}: {}", gap.fromTid(), gap.toTid(), e.getMessage());
+          }
+        }
+      } catch (InterruptedException e) {
+        running = false;
+      } catch (Exception e) {
+        LOGGER.error("Error backfilling trades", e);
+      }
+    }
+  }
+
+  /**
+   * Backfills the trades between the archived trades around a time range.
+   *
+   * @return the number of trades backfilled
+   * @throws IllegalStateException if there are no archived trades before and after the range
+   */
+  public int backfillTimeRange(long fromMillis, long toMillis) throws IOException, InterruptedException {
+    List<Trade> before = tradeArchive.findTradesByTime(fromMillis - TIME_GAP_LOOKBACK_MS, fromMillis,
+        Integer.MAX_VALUE, false);
+    List<Trade> after = tradeArchive.findTradesByTime(toMillis, Long.MAX_VALUE, 1, false);
+    if (before.isEmpty() || after.isEmpty()) {
+      throw new IllegalStateException("No archived trades around " + fromMillis + " - " + toMillis);
+    }
+    Trade first = before.get(before.size() - 1);
+    Trade last = after.get(0);
+    return backfill(new TradeGapLog.Gap(first.getTid() / 10 + 1, last.getTid() / 10 - 1,
+        first.getCreatedAtMillis(), last.getCreatedAtMillis()));
+  }
+
+  /**
+   * Fetches the trades of the gap and produces the ones not ingested yet, ordered by trade ID among themselves but
+   * after all the records already in the topic; they are in the topic once this returns.
+   *
+   * @param gap Bitso trade IDs to backfill
+   * @return the number of trades backfilled
+   * @throws IOException if a page could not be fetched; nothing is produced then
+   */
+  public int backfill(TradeGapLog.Gap gap) throws IOException, InterruptedException {
+    if (gap.toTid() < gap.fromTid()) {
+      return 0;
+    }
+    Map<Long, TradeWs> trades = fetch(gap.fromTid(), gap.toTid());
+    Trade previous = archivedTrade(gap.fromTid() - 1);
+    OrderBookPayload obp = previous != null ? previous.getObp() : bitsoDataAggregator.getOrderbookPayload();
+    int produced = 0;
+    for (TradeWs tradeWs : trades.values()) {
+      if (!ingestGuard.admit(tradeWs)) {
+        continue;
+      }
+      // multiply TID by 10 so pretend trades can be inserted in between, as for live trades
+      tradeWs.setTid(tradeWs.getTid() * 10);
+      bitsoDataAggregator.internalizeBackfilledTradeWs(tradeWs, previous, obp);
+      tradesProducer.produceKafkaMessage(tradeWs);
+      previous = tradeWs;
+      produced++;
+    }
+    // the gap is removed from the log after this, which releases the curated trades held back after it
+    tradesProducer.flush();
+    LOGGER.info("Backfilled {} trades of {} to {}", produced, gap.fromTid(), gap.toTid());
+    return produced;
+  }
+
+  /**
+   * pages the trade ID range in segments, concurrently
+   *
+   * @return the trades of the range by trade ID
+   */
+  Map<Long, TradeWs> fetch(long fromTid, long toTid) throws IOException, InterruptedException {
+    List<Future<List<TradeWs>>> segments = new ArrayList<>();
+    try (ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, concurrency),
+        Thread.ofVirtual().name("trade-backfill-", 0).factory())) {
+      for (long from = fromTid; from <= toTid; from += segmentTids) {
+        long segmentFrom = from;
+        long segmentTo = Math.min(toTid, from + segmentTids - 1);
+        segments.add(executor.submit(() -> fetchSegment(segmentFrom, segmentTo)));
+      }
+      Map<Long, TradeWs> trades = new TreeMap<>();
+      try {
+        for (Future<List<TradeWs>> segment : segments) {
+          for (TradeWs tradeWs : segment.get()) {
+            trades.put(tradeWs.getTid(), tradeWs);
+          }
+        }
+      } catch (ExecutionException e) {
+        throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+      } finally {
+        // the remaining segments are of no use once one failed
+        segments.forEach(segment -> segment.cancel(true));
+      }
+      return trades;
+    }
+  }
+
+  /**
+   * pages forward from the first trade ID of the segment until a page passes its last one
+   */
+  private List<TradeWs> fetchSegment(long fromTid, long toTid) throws IOException, InterruptedException {
+    List<TradeWs> trades = new ArrayList<>();
+    long marker = fromTid - 1;
+    while (true) {
+      JsonNode payload = fetchPage(marker);
+      for (JsonNode node : payload) {
+        long tid = node.path("tid").asLong();
+        if (tid > toTid) {
+          return trades;
+        }
+        trades.add(toTradeWs(node));
+        marker = tid;
+      }
+      if (payload.size() < PAGE_SIZE) {
+        return trades;
+      }
+    }
+  }
+
+  /**
+   * @return the trades after the marker trade ID, ascending
+   */
+  private JsonNode fetchPage(long marker) throws IOException, InterruptedException {
+    HttpRequest request = HttpRequest.newBuilder()
+        .uri(URI.create(tradesUrl + PAGE_SIZE + "&sort=asc&marker=" + marker))
+        .timeout(Duration.ofSeconds(30))
+        .GET()
+        .build();
+    for (int attempt = 1; ; attempt++) {
+      rateLimiter.acquire();
+      HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+      boolean retryable = response.statusCode() == 429 || response.statusCode() >= 500;
+      if (retryable && attempt < MAX_ATTEMPTS) {
+        LOGGER.warn("Bitso trades returned HTTP {}, retrying", response.statusCode());
+        Thread.sleep(retryBackoffMillis << (attempt - 1));
+        continue;
+      }
+      if (response.statusCode() != 200) {
+        throw new IOException("Bitso trades returned HTTP " + response.statusCode());
+      }
+      JsonNode result = objectMapper.readTree(response.body());
+      if (!result.path("success").asBoolean(false) || !result.path("payload").isArray()) {
+        throw new IOException("Bitso trades returned an error response: " + response.body());
+      }
+      return result.get("payload");
+    }
+  }
+
+  /**
+   * @param node a trade of the REST payload, e.g. {"book":"btc_mxn","created_at":"2024-03-10T12:00:00.000+00:00",
+   *             "amount":"0.01","maker_side":"buy","price":"1150000.00","tid":55845}
+   * @return the trade as the websocket would have delivered it
+   */
+  static TradeWs toTradeWs(JsonNode node) {
+    long millis = ZonedDateTime.parse(node.path("created_at").asText()).toInstant().toEpochMilli();
+    // TradeWs takes the websocket's maker side, where 0 is a buy
+    String makerSide = "buy".equals(node.path("maker_side").asText()) ? "0" : "1";
+    return new TradeWs(node.path("tid").asLong(), String.valueOf(millis), new BigDecimal(node.path("amount").asText()),
+        new BigDecimal(node.path("price").asText()), null, null, null, makerSide);
+  }
+
+  /**
+   * @return the archived trade with the Bitso trade ID, with its orderbook; null if it is not archived
+   */
+  private Trade archivedTrade(long tid) {
+    try {
+      List<Trade> trades = tradeArchive.findTradesByTid(tid * 10, tid * 10, 1, true);
+      Trade trade = trades.isEmpty() ? null : trades.get(0);
+      return trade != null && trade.getTick() != null ? trade : null;
+    } catch (RuntimeException e) {
+      LOGGER.warn("Could not look up archived trade {}: {}", tid, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Spaces requests evenly at the given rate, across threads.
+   */
+  static final class RateLimiter {
+    private final long intervalNanos;
+    private long next = System.nanoTime();
+
+    RateLimiter(double permitsPerSecond) {
+      this.intervalNanos = (long) (1_000_000_000 / Math.max(0.001, permitsPerSecond));
+    }
+
+    void acquire() throws InterruptedException {
+      long slot;
+      synchronized (this) {
+        slot = Math.max(next, System.nanoTime());
+        next = slot + intervalNanos;
+      }
+      long wait = slot - System.nanoTime();
+      if (wait > 0) {
+        Thread.sleep(Duration.ofNanos(wait));
+      }
+    }
+  }
+}
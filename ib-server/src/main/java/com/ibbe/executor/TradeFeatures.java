@@ -0,0 +1,232 @@
+package com.ibbe.executor;
+
+import com.ibbe.entity.Tick;
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeSnapshot;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+
+/**
+ * The config-independent features BasicTrader derives from one trade record - orderbook averages, distance to the
+ * best bid/ask, moving averages, up/down amount sums and the fills (price, slippage, depth covered) of a pretend buy
+ * and sell against the orderbook - as a fixed-size record of the feature store, with the number of trades of its
+ * chunk so far. An instance is a cursor over a buffer of such records (see {@link FeatureStore.Reader#at(long)});
+ * it is reused for every record read and is not thread-safe.
+ */
+public final class TradeFeatures {
+  static final int RECORD_SIZE = 168;
+
+  // record layout
+  private static final int FLAGS = 0;
+  private static final int TICK = 1;
+  private static final int NTH_RUN = 4;
+  private static final int TID = 8;
+  private static final int TIME_MILLIS = 16;
+  private static final int PRICE = 24;
+  private static final int AMOUNT = 32;
+  private static final int AVG_ASK_PRICE = 40;
+  private static final int AVG_ASK_AMOUNT = 48;
+  private static final int AVG_BID_PRICE = 56;
+  private static final int AVG_BID_AMOUNT = 64;
+  private static final int PRICE_CLOSER_TO_BEST_ASK = 72;
+  private static final int STMA_PRICE = 80;
+  private static final int LTMA_PRICE = 88;
+  private static final int AMOUNT_INCREASE = 96;
+  private static final int AMOUNT_DECREASE = 104;
+  // NaN when the orderbook had no depth on the side
+  private static final int BUY_FILL_PRICE = 112;
+  private static final int SELL_FILL_PRICE = 120;
+  // trades of the record's chunk up to and including it, as counted by the trader that computed the features
+  private static final int CHUNK_TRADES = 128;
+  // slippage from the best price in basis points and the amount the depth covered; 0 without depth on the side
+  private static final int BUY_SLIPPAGE_BPS = 136;
+  private static final int SELL_SLIPPAGE_BPS = 144;
+  private static final int BUY_FILLED_AMOUNT = 152;
+  private static final int SELL_FILLED_AMOUNT = 160;
+
+  private static final byte FLAG_VALID = 1;
+  private static final byte NO_TICK = -1;
+
+  private ByteBuffer buffer;
+  private int base;
+
+  TradeFeatures() {
+  }
+
+  void moveTo(ByteBuffer buffer, int base) {
+    this.buffer = buffer;
+    this.base = base;
+  }
+
+  /**
+   * Writes the features of the trade, as computed into the snapshot by BasicTrader, at the buffer's position.
+   */
+  static void write(ByteBuffer out, Trade trade, TradeSnapshot snapshot, FillEngine.Fill buy, FillEngine.Fill sell,
+                    int chunkTrades) {
+    int base = out.position();
+    out.put(base + FLAGS, FLAG_VALID);
+    out.put(base + TICK, trade.getTick() != null ? (byte) trade.getTick().ordinal() : NO_TICK);
+    out.putInt(base + NTH_RUN, trade.getNthRun());
+    out.putLong(base + TID, trade.getTid() != null ? trade.getTid() : -1);
+    out.putLong(base + TIME_MILLIS, trade.getCreatedAtMillis());
+    out.putDouble(base + PRICE, trade.getPrice() != null ? trade.getPrice().doubleValue() : 0d);
+    out.putDouble(base + AMOUNT, trade.getAmount() != null ? trade.getAmount().doubleValue() : 0d);
+    out.putDouble(base + AVG_ASK_PRICE, snapshot.avgAskPrice);
+    out.putDouble(base + AVG_ASK_AMOUNT, snapshot.avgAskAmount);
+    out.putDouble(base + AVG_BID_PRICE, snapshot.avgBidPrice);
+    out.putDouble(base + AVG_BID_AMOUNT, snapshot.avgBidAmount);
+    out.putDouble(base + PRICE_CLOSER_TO_BEST_ASK, snapshot.priceCloserToBestAsk);
+    out.putDouble(base + STMA_PRICE, snapshot.STMAPrice);
+    out.putDouble(base + LTMA_PRICE, snapshot.LTMAPrice);
+    out.putDouble(base + AMOUNT_INCREASE, snapshot.tradeAmountIncrease);
+    out.putDouble(base + AMOUNT_DECREASE, snapshot.tradeAmountDecrease);
+    out.putDouble(base + BUY_FILL_PRICE, buy != null ? buy.price() : Double.NaN);
+    out.putDouble(base + SELL_FILL_PRICE, sell != null ? sell.price() : Double.NaN);
+    out.putInt(base + CHUNK_TRADES, chunkTrades);
+    out.putDouble(base + BUY_SLIPPAGE_BPS, buy != null ? buy.slippageBps() : 0d);
+    out.putDouble(base + SELL_SLIPPAGE_BPS, sell != null ? sell.slippageBps() : 0d);
+    out.putDouble(base + BUY_FILLED_AMOUNT, buy != null ? buy.filledAmount() : 0d);
+    out.putDouble(base + SELL_FILLED_AMOUNT, sell != null ? sell.filledAmount() : 0d);
+    out.position(base + RECORD_SIZE);
+  }
+
+  /**
+   * Writes a placeholder for an offset that holds no trade (heartbeat, undecodable or skipped record).
+   */
+  static void writeInvalid(ByteBuffer out) {
+    int base = out.position();
+    for (int i = 0; i < RECORD_SIZE; i += Long.BYTES) {
+      out.putLong(base + i, 0L);
+    }
+    out.position(base + RECORD_SIZE);
+  }
+
+  public boolean isValid() {
+    return buffer.get(base + FLAGS) == FLAG_VALID;
+  }
+
+  public long getTid() {
+    return buffer.getLong(base + TID);
+  }
+
+  public long getTimeMillis() {
+    return buffer.getLong(base + TIME_MILLIS);
+  }
+
+  public double getPrice() {
+    return buffer.getDouble(base + PRICE);
+  }
+
+  public double getAmount() {
+    return buffer.getDouble(base + AMOUNT);
+  }
+
+  public Tick getTick() {
+    byte tick = buffer.get(base + TICK);
+    return tick == NO_TICK ? null : Tick.values()[tick];
+  }
+
+  public int getNthRun() {
+    return buffer.getInt(base + NTH_RUN);
+  }
+
+  public double getAvgAskAmount() {
+    return buffer.getDouble(base + AVG_ASK_AMOUNT);
+  }
+
+  public double getAvgBidAmount() {
+    return buffer.getDouble(base + AVG_BID_AMOUNT);
+  }
+
+  public double getPriceCloserToBestAsk() {
+    return buffer.getDouble(base + PRICE_CLOSER_TO_BEST_ASK);
+  }
+
+  public double getStmaPrice() {
+    return buffer.getDouble(base + STMA_PRICE);
+  }
+
+  public double getLtmaPrice() {
+    return buffer.getDouble(base + LTMA_PRICE);
+  }
+
+  /**
+   * @return the VWAP a pretend buy fills at against the orderbook's asks, or NaN
+   */
+  public double getBuyFillPrice() {
+    return buffer.getDouble(base + BUY_FILL_PRICE);
+  }
+
+  /**
+   * @return the VWAP a pretend sell fills at against the orderbook's bids, or NaN
+   */
+  public double getSellFillPrice() {
+    return buffer.getDouble(base + SELL_FILL_PRICE);
+  }
+
+  /**
+   * @return the fill of a pretend buy against the orderbook's asks, or null if it had none
+   */
+  public FillEngine.Fill getBuyFill() {
+    double price = getBuyFillPrice();
+    return Double.isNaN(price) ? null : new FillEngine.Fill(price, buffer.getDouble(base + BUY_FILLED_AMOUNT),
+        buffer.getDouble(base + BUY_SLIPPAGE_BPS));
+  }
+
+  /**
+   * @return the fill of a pretend sell against the orderbook's bids, or null if it had none
+   */
+  public FillEngine.Fill getSellFill() {
+    double price = getSellFillPrice();
+    return Double.isNaN(price) ? null : new FillEngine.Fill(price, buffer.getDouble(base + SELL_FILLED_AMOUNT),
+        buffer.getDouble(base + SELL_SLIPPAGE_BPS));
+  }
+
+  /**
+   * @return the number of trades of the record's chunk up to and including it, as seen by the trader that computed
+   * the features; a trader that started later within the chunk has seen fewer
+   */
+  public int getChunkTradeCount() {
+    return buffer.getInt(base + CHUNK_TRADES);
+  }
+
+  /**
+   * @return the trade the features were computed from, without its orderbook
+   */
+  Trade toTrade() {
+    long tid = getTid();
+    Trade trade = Trade.builder()
+        .createdAtMillis(getTimeMillis())
+        .amount(BigDecimal.valueOf(getAmount()))
+        .makerSide("buy")
+        .price(BigDecimal.valueOf(getPrice()))
+        .tid(tid >= 0 ? tid : null)
+        .tick(getTick())
+        .build();
+    trade.setNthRun(getNthRun());
+    return trade;
+  }
+
+  /**
+   * @return a snapshot with the feature fields set, as calculateOrderbookAveragesForTrade and calculateTrends leave it
+   */
+  TradeSnapshot toSnapshot() {
+    TradeSnapshot snapshot = new TradeSnapshot();
+    long tid = getTid();
+    snapshot.setTradeId(tid >= 0 ? tid : null);
+    snapshot.setTradePrice(getPrice());
+    snapshot.setTradeAmount(getAmount());
+    snapshot.setTimestampMillis(getTimeMillis());
+    snapshot.avgAskPrice = buffer.getDouble(base + AVG_ASK_PRICE);
+    snapshot.avgAskAmount = getAvgAskAmount();
+    snapshot.avgBidPrice = buffer.getDouble(base + AVG_BID_PRICE);
+    snapshot.avgBidAmount = getAvgBidAmount();
+    snapshot.priceCloserToBestAsk = getPriceCloserToBestAsk();
+    snapshot.STMAPrice = getStmaPrice();
+    snapshot.LTMAPrice = getLtmaPrice();
+    snapshot.tradeAmountIncrease = buffer.getDouble(base + AMOUNT_INCREASE);
+    snapshot.tradeAmountDecrease = buffer.getDouble(base + AMOUNT_DECREASE);
+    return snapshot;
+  }
+}
@@ -0,0 +1,168 @@
+package com.ibbe.executor;
+
+import com.ibbe.entity.Tick;
+import com.ibbe.entity.Trade;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The state of a BasicTrader after it has processed every record of the topic before {@link #getOffset()}.
+ * A trader restored from it and fed the records from that offset on continues exactly where the original left off.
+ * Written in a compact binary form by {@link #write(DataOutput)}; trades are kept without their orderbook.
+ */
+public class TraderCheckpoint {
+  private static final int FORMAT_VERSION = 1;
+
+  long offset;
+  int sequence;
+  BigDecimal currencyBalance;
+  BigDecimal coinBalance;
+  BigDecimal profit;
+
+  // trend windows, oldest first
+  List<BigDecimal> tradePrices = new ArrayList<>();
+  List<BigDecimal> tradeAmounts = new ArrayList<>();
+  List<Trade> trades = new ArrayList<>();
+
+  Trade lastProcessedTrade;
+  int currentChunkNumber;
+  int currentChunkTradeCount;
+  BigDecimal currentChunkStartPrice;
+  long currentChunkStartTimeMillis;
+
+  TraderCheckpoint() {
+  }
+
+  /**
+   * @return the first topic offset the checkpointed trader has not processed
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(FORMAT_VERSION);
+    out.writeLong(offset);
+    out.writeInt(sequence);
+    writeDecimal(out, currencyBalance);
+    writeDecimal(out, coinBalance);
+    writeDecimal(out, profit);
+    writeDecimals(out, tradePrices);
+    writeDecimals(out, tradeAmounts);
+    out.writeInt(trades.size());
+    for (Trade trade : trades) {
+      writeTrade(out, trade);
+    }
+    out.writeBoolean(lastProcessedTrade != null);
+    if (lastProcessedTrade != null) {
+      writeTrade(out, lastProcessedTrade);
+    }
+    out.writeInt(currentChunkNumber);
+    out.writeInt(currentChunkTradeCount);
+    writeDecimal(out, currentChunkStartPrice);
+    out.writeLong(currentChunkStartTimeMillis);
+  }
+
+  /**
+   * @throws IOException if the input is not a checkpoint of the current format
+   */
+  public static TraderCheckpoint read(DataInput in) throws IOException {
+    int version = in.readInt();
+    if (version != FORMAT_VERSION) {
+      throw new IOException("Unsupported trader checkpoint version " + version);
+    }
+    TraderCheckpoint checkpoint = new TraderCheckpoint();
+    checkpoint.offset = in.readLong();
+    checkpoint.sequence = in.readInt();
+    checkpoint.currencyBalance = readDecimal(in);
+    checkpoint.coinBalance = readDecimal(in);
+    checkpoint.profit = readDecimal(in);
+    checkpoint.tradePrices = readDecimals(in);
+    checkpoint.tradeAmounts = readDecimals(in);
+    int tradeCount = in.readInt();
+    for (int i = 0; i < tradeCount; i++) {
+      checkpoint.trades.add(readTrade(in));
+    }
+    checkpoint.lastProcessedTrade = in.readBoolean() ? readTrade(in) : null;
+    checkpoint.currentChunkNumber = in.readInt();
+    checkpoint.currentChunkTradeCount = in.readInt();
+    checkpoint.currentChunkStartPrice = readDecimal(in);
+    checkpoint.currentChunkStartTimeMillis = in.readLong();
+    return checkpoint;
+  }
+
+  private static void writeTrade(DataOutput out, Trade trade) throws IOException {
+    writeString(out, trade.getCreatedAt());
+    writeDecimal(out, trade.getAmount());
+    writeString(out, trade.getMakerSide());
+    writeDecimal(out, trade.getPrice());
+    out.writeLong(trade.getTid() != null ? trade.getTid() : -1);
+    writeString(out, trade.getTick() != null ? trade.getTick().name() : null);
+    writeString(out, trade.getNthStatus());
+  }
+
+  private static Trade readTrade(DataInput in) throws IOException {
+    String createdAt = readString(in);
+    BigDecimal amount = readDecimal(in);
+    String makerSide = readString(in);
+    BigDecimal price = readDecimal(in);
+    long tid = in.readLong();
+    String tick = readString(in);
+    return Trade.builder()
+        .createdAt(createdAt)
+        .amount(amount)
+        .makerSide(makerSide)
+        .price(price)
+        .tid(tid >= 0 ? tid : null)
+        .tick(tick != null ? Tick.valueOf(tick) : null)
+        .nthStatus(readString(in))
+        .build();
+  }
+
+  private static void writeDecimals(DataOutput out, List<BigDecimal> values) throws IOException {
+    out.writeInt(values.size());
+    for (BigDecimal value : values) {
+      writeDecimal(out, value);
+    }
+  }
+
+  private static List<BigDecimal> readDecimals(DataInput in) throws IOException {
+    int count = in.readInt();
+    List<BigDecimal> values = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      values.add(readDecimal(in));
+    }
+    return values;
+  }
+
+  private static void writeDecimal(DataOutput out, BigDecimal value) throws IOException {
+    writeString(out, value != null ? value.toString() : null);
+  }
+
+  private static BigDecimal readDecimal(DataInput in) throws IOException {
+    String value = readString(in);
+    return value != null ? new BigDecimal(value) : null;
+  }
+
+  private static void writeString(DataOutput out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readString(DataInput in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  @Override
+  public String toString() {
+    return "TraderCheckpoint{offset=" + offset + ", sequence=" + sequence + ", chunk=" + currentChunkNumber +
+        ", lastTrade=" + (lastProcessedTrade != null ? lastProcessedTrade.getTid() : null) + "}";
+  }
+}
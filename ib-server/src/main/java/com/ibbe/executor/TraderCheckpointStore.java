@@ -0,0 +1,119 @@
+package com.ibbe.executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the most recent trader checkpoints of each configuration on disk, one file per config hash and offset
+ * (e.g. 32da1c46d24939c4-1048576.ckpt), so that a backtest can resume from the latest checkpoint instead of replaying
+ * the whole topic.
+ */
+@Component
+public class TraderCheckpointStore {
+  private static final Logger logger = LoggerFactory.getLogger(TraderCheckpointStore.class);
+  private static final String FILE_SUFFIX = ".ckpt";
+
+  // empty for ~/.ibbe/trader-checkpoints
+  @Value("${trader.checkpoint.dir:}")
+  private String checkpointDir = "";
+
+  // checkpoints kept per configuration; older ones are deleted when a new one is saved
+  @Value("${trader.checkpoint.keep:3}")
+  private int keep = 3;
+
+  /**
+   * @param configHash canonical hash of the trading configuration
+   * @param maxOffset  the latest offset the backtest can start from
+   * @return the checkpoint with the highest offset not past maxOffset, or null if there is none
+   */
+  public TraderCheckpoint findLatest(String configHash, long maxOffset) {
+    List<Long> offsets = offsetsOf(configHash);
+    for (int i = offsets.size() - 1; i >= 0; i--) {
+      long offset = offsets.get(i);
+      if (offset > maxOffset) {
+        continue;
+      }
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+          Files.newInputStream(fileOf(configHash, offset))))) {
+        return TraderCheckpoint.read(in);
+      } catch (IOException e) {
+        logger.warn("Skipping unreadable checkpoint {} of {}: {}", offset, configHash, e.getMessage());
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Saves the checkpoint and prunes the configuration's older checkpoints.
+   */
+  public void save(String configHash, TraderCheckpoint checkpoint) {
+    try {
+      Path dir = directory();
+      Files.createDirectories(dir);
+      Path tmp = Files.createTempFile(dir, configHash, ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        checkpoint.write(out);
+      }
+      Files.move(tmp, fileOf(configHash, checkpoint.getOffset()), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      logger.info("Saved {} for config {}", checkpoint, configHash);
+
+      List<Long> offsets = offsetsOf(configHash);
+      for (int i = 0; i < offsets.size() - keep; i++) {
+        Files.deleteIfExists(fileOf(configHash, offsets.get(i)));
+      }
+    } catch (IOException e) {
+      logger.error("Could not save trader checkpoint of config {}", configHash, e);
+    }
+  }
+
+  /**
+   * @return the offsets of the configuration's checkpoints, ascending
+   */
+  private List<Long> offsetsOf(String configHash) {
+    List<Long> offsets = new ArrayList<>();
+    Path dir = directory();
+    if (!Files.isDirectory(dir)) {
+      return offsets;
+    }
+    String prefix = configHash + "-";
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, prefix + "*" + FILE_SUFFIX)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        String offset = name.substring(prefix.length(), name.length() - FILE_SUFFIX.length());
+        if (offset.matches("\\d+")) {
+          offsets.add(Long.parseLong(offset));
+        }
+      }
+    } catch (IOException e) {
+      logger.warn("Could not list checkpoints of config {}: {}", configHash, e.getMessage());
+    }
+    offsets.sort(null);
+    return offsets;
+  }
+
+  private Path fileOf(String configHash, long offset) {
+    return directory().resolve(configHash + "-" + offset + FILE_SUFFIX);
+  }
+
+  private Path directory() {
+    return checkpointDir == null || checkpointDir.isBlank()
+        ? Paths.get(System.getProperty("user.home"), ".ibbe", "trader-checkpoints")
+        : Paths.get(checkpointDir.trim());
+  }
+}
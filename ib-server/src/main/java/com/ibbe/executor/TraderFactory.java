@@ -6,6 +6,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -37,6 +40,10 @@ public class TraderFactory {
 //  private HashMap<String, LiveTrader> liveTraders;
   private final Map<String, LiveTrader> traders = new ConcurrentHashMap<>();
 
+  // forwards display changes of all traders; the property name is the configuration ID, so monitors can subscribe
+  // to an ID before or across (re)creation of its trader
+  private final PropertyChangeSupport displayChanges = new PropertyChangeSupport(this);
+
   
   // Scheduler for periodic logging
   private final ScheduledExecutorService scheduler;
@@ -77,6 +84,8 @@ public class TraderFactory {
 
     // Create and configure new trader
     LiveTrader trader = new LiveTrader(config);
+    trader.addDisplayListener(evt ->
+        displayChanges.firePropertyChange(new PropertyChangeEvent(this, id, null, evt.getNewValue())));
     traders.put(id, trader);
     slf4jLogger.info("Added new trading executor with config ID: {}, ups: {}, downs: {} ",
         config.getId(), config.getUps(), config.getDowns());
@@ -88,13 +97,26 @@ public class TraderFactory {
    */
   public boolean removeTrader(String id) {
       if (id != null && traders.containsKey(id)) {
-        traders.remove(id);
+        // stop the old trader, otherwise it keeps reacting to (and publishing) trades under this ID
+        traders.remove(id).stop();
         slf4jLogger.info("Removed trader with ID: {}", id);
         return true;
       }
       return false;
   }
 
+  /**
+   * Subscribes to display data changes of the trader with the given configuration ID.
+   * Events are fired on the trade ingest thread, so listeners should return quickly.
+   */
+  public void addDisplayListener(String id, PropertyChangeListener l) {
+    displayChanges.addPropertyChangeListener(id, l);
+  }
+
+  public void removeDisplayListener(String id, PropertyChangeListener l) {
+    displayChanges.removePropertyChangeListener(id, l);
+  }
+
   /**
    * Gets display data for a trader by ID
    */
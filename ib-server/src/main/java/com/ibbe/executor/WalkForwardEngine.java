@@ -0,0 +1,167 @@
+package com.ibbe.executor;
+
+import com.ibbe.entity.TradeConfig;
+import com.ibbe.entity.TradeSnapshot;
+import com.ibbe.entity.WalkForwardReport;
+import com.ibbe.entity.WalkForwardRequest;
+import com.ibbe.strategy.Strategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Walk-forward optimization over the trades materialized by the FeatureStore.
+ * <p>
+ * History is split into rolling windows of trainTrades records followed by testTrades records. Every candidate
+ * configuration is scored on the train part of every window, the best one is then run on the test part; the sum of
+ * the test profits is the out-of-sample profit. A score is what a fresh BasicTrader makes over the range: the profits
+ * of its completed chunks (ChunkInfo) plus the profit of the chunk still open at the end of the range.
+ * <p>
+ * Every (window, candidate) score is an independent task on the ComputeExecutor; a window's test run is
+ * chained to its own train scores, so windows do not wait for each other. All tasks read the same memory-mapped
+ * features, so the topic is decoded once (by the FeatureStore) however many windows and candidates there are.
+ * Only whole windows are run; records after the last whole test part are not scored.
+ */
+@Component
+public class WalkForwardEngine {
+  private static final Logger logger = LoggerFactory.getLogger(WalkForwardEngine.class);
+
+  @Autowired
+  private FeatureStore featureStore;
+
+  // scores the (window, candidate) tasks
+  @Autowired
+  private ComputeExecutor computeExecutor;
+
+  /**
+   * What a configuration made over a range of offsets.
+   */
+  record Score(BigDecimal profit, int pretendTrades, int chunks) {
+  }
+
+  /**
+   * Runs the walk-forward optimization; blocks until every window is done.
+   *
+   * @throws IllegalArgumentException if a window size is not positive or a candidate's rule does not compile
+   * @throws IllegalStateException    if the feature store does not hold one whole window yet
+   */
+  public WalkForwardReport run(WalkForwardRequest request) throws IOException {
+    long trainTrades = request.getTrainTrades();
+    long testTrades = request.getTestTrades();
+    if (trainTrades <= 0 || testTrades <= 0) {
+      throw new IllegalArgumentException("trainTrades and testTrades must be positive");
+    }
+    List<TradeConfig> candidates = request.getConfigs() == null || request.getConfigs().isEmpty()
+        ? defaultCandidates() : request.getConfigs();
+    // fail fast on rules that do not compile, rather than in every task
+    candidates.forEach(Strategy::forConfig);
+
+    long started = System.currentTimeMillis();
+    try (FeatureStore.Reader reader = featureStore.openReader()) {
+      if (reader == null || reader.size() < trainTrades + testTrades) {
+        throw new IllegalStateException("The feature store holds " + (reader == null ? 0 : reader.size())
+            + " trades, fewer than one window of " + (trainTrades + testTrades));
+      }
+      List<CompletableFuture<WalkForwardReport.Window>> windows = new ArrayList<>();
+      for (long trainFrom = 0; trainFrom + trainTrades + testTrades <= reader.size(); trainFrom += testTrades) {
+        long testFrom = trainFrom + trainTrades;
+        windows.add(runWindow(reader, candidates, trainFrom, testFrom, testFrom + testTrades));
+      }
+      logger.info("Walk-forward of {} candidates over {} windows of {}+{} trades", candidates.size(), windows.size(),
+          trainTrades, testTrades);
+
+      List<WalkForwardReport.Window> results = new ArrayList<>();
+      BigDecimal inSample = BigDecimal.ZERO;
+      BigDecimal outOfSample = BigDecimal.ZERO;
+      for (CompletableFuture<WalkForwardReport.Window> window : windows) {
+        WalkForwardReport.Window result = window.join();
+        results.add(result);
+        inSample = inSample.add(result.getTrainProfit());
+        outOfSample = outOfSample.add(result.getTestProfit());
+      }
+      WalkForwardReport report = new WalkForwardReport(results, inSample, outOfSample, candidates.size(),
+          System.currentTimeMillis() - started);
+      logger.info("Walk-forward done: {}", report);
+      return report;
+    }
+  }
+
+  /**
+   * scores every candidate on [trainFrom, testFrom), then runs the best one on [testFrom, testTo)
+   */
+  private CompletableFuture<WalkForwardReport.Window> runWindow(FeatureStore.Reader reader, List<TradeConfig> candidates,
+                                                                long trainFrom, long testFrom, long testTo) {
+    List<CompletableFuture<Score>> scores = new ArrayList<>(candidates.size());
+    for (TradeConfig candidate : candidates) {
+      scores.add(CompletableFuture.supplyAsync(() -> score(candidate, reader, trainFrom, testFrom), computeExecutor));
+    }
+    return CompletableFuture.allOf(scores.toArray(new CompletableFuture<?>[0])).thenApplyAsync(done -> {
+      int best = 0;
+      for (int i = 1; i < scores.size(); i++) {
+        if (scores.get(i).join().profit().compareTo(scores.get(best).join().profit()) > 0) {
+          best = i;
+        }
+      }
+      TradeConfig winner = candidates.get(best);
+      Score test = score(winner, reader, testFrom, testTo);
+      return new WalkForwardReport.Window(trainFrom, testFrom, testTo, winner, scores.get(best).join().profit(),
+          test.profit(), test.pretendTrades(), test.chunks());
+    }, computeExecutor);
+  }
+
+  /**
+   * @return what a fresh trader of the configuration makes over the offsets [from, to)
+   */
+  static Score score(TradeConfig config, FeatureStore.Reader reader, long from, long to) {
+    BasicTrader trader = new BasicTrader(config);
+    TradeFeatures cursor = new TradeFeatures();
+    BigDecimal profit = BigDecimal.ZERO;
+    int pretendTrades = 0;
+    int chunks = 0;
+    TradeSnapshot last = null;
+    for (long offset = from; offset < to; offset++) {
+      TradeFeatures features = reader.at(offset, cursor);
+      if (!features.isValid()) {
+        continue;
+      }
+      TradeSnapshot snapshot = trader.makeTradeDecision(features);
+      if (snapshot.getCompletedChunk() != null) {
+        profit = profit.add(snapshot.getCompletedChunk().getProfit());
+        chunks++;
+      }
+      if (snapshot.getPretendTrade() != null) {
+        pretendTrades++;
+      }
+      last = snapshot;
+    }
+    if (last != null) {
+      // the chunk still open at the end of the range
+      profit = profit.add(trader.calculateChunkProfit(last));
+      chunks++;
+    }
+    return new Score(profit, pretendTrades, chunks);
+  }
+
+  /**
+   * @return ups and downs of 1 to 4 combined with every combination of the four criteria flags
+   */
+  static List<TradeConfig> defaultCandidates() {
+    List<TradeConfig> candidates = new ArrayList<>();
+    for (int ups = 1; ups <= 4; ups++) {
+      for (int downs = 1; downs <= 4; downs++) {
+        for (int flags = 0; flags < 16; flags++) {
+          candidates.add(new TradeConfig("wf-" + ups + "-" + downs + "-" + flags, String.valueOf(ups),
+              String.valueOf(downs), (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0, (flags & 8) != 0));
+        }
+      }
+    }
+    return candidates;
+  }
+}
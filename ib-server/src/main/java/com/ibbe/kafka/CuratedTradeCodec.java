@@ -0,0 +1,147 @@
+package com.ibbe.kafka;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.ibbe.entity.Order;
+import com.ibbe.entity.OrderBookPayload;
+import com.ibbe.entity.Tick;
+import com.ibbe.entity.Trade;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The lean record format of the curated trades topic (see TradeCleanser): only what a replay reads, with short field
+ * names, the trade time as epoch millis and each orderbook side as a flat [price, amount, price, amount...] array,
+ * e.g.
+ * <pre>
+ * {"i":123,"t":1710072000000,"p":1234.5,"a":0.01,"m":"buy","k":"TICK_UP","r":3,"q":42,"u":1710071999000,
+ *  "asks":[...],"bids":[...]}
+ * </pre>
+ * The run of the trade is its signed run length (see Trade.getNthRun); the status string is only built from it when a
+ * trade is displayed.
+ * Curated records were validated when they were written, so decoding does no checks beyond the format itself.
+ */
+public final class CuratedTradeCodec {
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private CuratedTradeCodec() {
+    }
+
+    /**
+     * @param trade a validated trade with its orderbook payload
+     * @return the lean record value of the trade
+     */
+    public static String encode(Trade trade) {
+        StringWriter writer = new StringWriter(1024);
+        try (JsonGenerator generator = jsonFactory.createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeNumberField("i", trade.getTid());
+            long millis = trade.getCreatedAtMillis();
+            if (millis != Trade.NO_TIME) {
+                generator.writeNumberField("t", millis);
+            }
+            generator.writeNumberField("p", trade.getPrice());
+            if (trade.getAmount() != null) {
+                generator.writeNumberField("a", trade.getAmount());
+            }
+            if (trade.getMakerSide() != null) {
+                generator.writeStringField("m", trade.getMakerSide());
+            }
+            if (trade.getTick() != null) {
+                generator.writeStringField("k", trade.getTick().name());
+            }
+            if (trade.getNthRun() != 0) {
+                generator.writeNumberField("r", trade.getNthRun());
+            }
+            OrderBookPayload obp = trade.getObp();
+            generator.writeNumberField("q", obp.getSequence());
+            if (obp.getUpdated_at() != null) {
+                generator.writeNumberField("u", obp.getUpdated_at().getTime());
+            }
+            writeSide(generator, "asks", obp.getAsks());
+            writeSide(generator, "bids", obp.getBids());
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    private static void writeSide(JsonGenerator generator, String name, Order[] orders) throws IOException {
+        generator.writeArrayFieldStart(name);
+        for (Order order : orders) {
+            generator.writeNumber(order.getP());
+            generator.writeNumber(order.getA());
+        }
+        generator.writeEndArray();
+    }
+
+    /**
+     * @param json the value of a curated record
+     * @return the trade with its orderbook payload, or null if the value is not in the curated format
+     */
+    public static Trade decode(String json) {
+        Trade.Builder trade = Trade.builder();
+        Order[] asks = null;
+        Order[] bids = null;
+        long sequence = 0;
+        Timestamp updatedAt = null;
+        boolean hasTid = false;
+        boolean hasPrice = false;
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "i" -> {
+                        trade.tid(parser.getLongValue());
+                        hasTid = true;
+                    }
+                    case "t" -> trade.createdAtMillis(parser.getLongValue());
+                    case "p" -> {
+                        trade.price(parser.getDecimalValue());
+                        hasPrice = true;
+                    }
+                    case "a" -> trade.amount(parser.getDecimalValue());
+                    case "m" -> trade.makerSide(parser.getText());
+                    case "k" -> trade.tick(Tick.valueOf(parser.getText()));
+                    case "r" -> trade.nthRun(parser.getIntValue());
+                    // the status string of records curated before the run length was
+                    case "n" -> trade.nthStatus(parser.getText());
+                    case "q" -> sequence = parser.getLongValue();
+                    case "u" -> updatedAt = new Timestamp(parser.getLongValue());
+                    case "asks" -> asks = readSide(parser);
+                    case "bids" -> bids = readSide(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+        if (!hasTid || !hasPrice || asks == null || bids == null) {
+            return null;
+        }
+        return trade.obp(new OrderBookPayload(asks, bids, updatedAt, sequence)).build();
+    }
+
+    private static Order[] readSide(JsonParser parser) throws IOException {
+        List<Order> orders = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            BigDecimal price = parser.getDecimalValue();
+            parser.nextToken();
+            orders.add(new Order(null, price, parser.getDecimalValue(), null));
+        }
+        return orders.toArray(new Order[0]);
+    }
+}
@@ -0,0 +1,180 @@
+package com.ibbe.kafka;
+
+import java.util.Arrays;
+
+/**
+ * Remembers which trade IDs have been seen, in little memory, relying on Bitso trade IDs growing monotonically.
+ * <p>
+ * The most recent windowSize IDs are tracked exactly, one bit each, in a bitmap that slides forward as higher IDs
+ * arrive; the IDs seen in the part it slides past are moved into a bloom filter, so an older ID arriving late (e.g.
+ * backfilled) is still recognized - with a small false positive rate, and only for as many IDs as the filter was sized
+ * for. A jump past the highest ID seen so far is reported to the gap listener. Thread-safe.
+ */
+public class TidTracker {
+
+    /**
+     * Receives the trade IDs that were skipped when a higher ID arrived.
+     */
+    public interface GapListener {
+        /**
+         * @param fromTid    first missing ID
+         * @param toTid      last missing ID
+         * @param fromMillis time of the trade before the gap
+         * @param toMillis   time of the trade after the gap
+         */
+        void gap(long fromTid, long toTid, long fromMillis, long toMillis);
+    }
+
+    private final long[] window;
+    private final int windowSize;
+    private final BloomFilter older;
+    private final GapListener gapListener;
+
+    // first ID of the window (a multiple of 64); -1 before the first ID
+    private long base = -1;
+    private long highestTid = -1;
+    private long highestMillis;
+
+    /**
+     * @param windowSize      IDs tracked exactly, rounded up to a multiple of 64
+     * @param expectedOlder   IDs the bloom filter is sized for
+     * @param falsePositives  false positive rate of the bloom filter at expectedOlder IDs
+     * @param gapListener     receives gaps; null to ignore them
+     */
+    public TidTracker(int windowSize, long expectedOlder, double falsePositives, GapListener gapListener) {
+        this.window = new long[(windowSize + 63) / 64];
+        this.windowSize = window.length * 64;
+        this.older = new BloomFilter(expectedOlder, falsePositives);
+        this.gapListener = gapListener;
+    }
+
+    /**
+     * Records a trade ID as seen.
+     *
+     * @param tid    the trade ID
+     * @param millis the trade's time in epoch millis, reported with gaps
+     * @return false if the ID was seen before (or, for IDs older than the window, probably was)
+     */
+    public synchronized boolean add(long tid, long millis) {
+        if (base < 0) {
+            base = alignedBase(tid);
+        }
+        boolean added;
+        if (tid < base) {
+            added = !older.mightContain(tid);
+            if (added) {
+                older.put(tid);
+            }
+        } else {
+            if (tid >= base + windowSize) {
+                slideTo(alignedBase(tid));
+            }
+            int bit = (int) (tid - base);
+            long mask = 1L << bit;
+            added = (window[bit >>> 6] & mask) == 0;
+            window[bit >>> 6] |= mask;
+        }
+        if (added && tid > highestTid) {
+            if (highestTid >= 0 && tid > highestTid + 1 && gapListener != null) {
+                gapListener.gap(highestTid + 1, tid - 1, highestMillis, millis);
+            }
+            highestTid = tid;
+            highestMillis = millis;
+        }
+        return added;
+    }
+
+    /**
+     * @return whether the ID was seen (or, for IDs older than the window, probably was)
+     */
+    public synchronized boolean contains(long tid) {
+        if (base < 0 || tid >= base + windowSize) {
+            return false;
+        }
+        if (tid < base) {
+            return older.mightContain(tid);
+        }
+        int bit = (int) (tid - base);
+        return (window[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * @return the highest ID seen; -1 before the first one
+     */
+    public synchronized long getHighestTid() {
+        return highestTid;
+    }
+
+    /**
+     * @return the window base putting tid in the last quarter of the window, so that the next IDs do not slide it; in
+     * the last word for windows too small for that, as rounding the base down to a word may add up to 63 to tid's bit
+     */
+    private long alignedBase(long tid) {
+        long start = Math.max(0, tid - Math.min(windowSize * 3L / 4, windowSize - 64));
+        return start & ~63L;
+    }
+
+    /**
+     * moves the window forward to the new base, handing the IDs it leaves behind to the bloom filter
+     */
+    private void slideTo(long newBase) {
+        int shift = (int) Math.min(window.length, (newBase - base) >>> 6);
+        for (int word = 0; word < shift; word++) {
+            long bits = window[word];
+            while (bits != 0) {
+                older.put(base + word * 64L + Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+        System.arraycopy(window, shift, window, 0, window.length - shift);
+        Arrays.fill(window, window.length - shift, window.length, 0);
+        base = newBase;
+    }
+
+    /**
+     * A bloom filter of longs; k bit positions per value by double hashing of a mixed 64 bit hash.
+     */
+    static final class BloomFilter {
+        private final long[] bits;
+        private final long bitCount;
+        private final int hashes;
+
+        BloomFilter(long expected, double falsePositives) {
+            long optimalBits = (long) Math.ceil(-expected * Math.log(falsePositives) / (Math.log(2) * Math.log(2)));
+            bits = new long[(int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, (optimalBits + 63) / 64))];
+            bitCount = bits.length * 64L;
+            hashes = Math.max(1, (int) Math.round((double) bitCount / Math.max(1, expected) * Math.log(2)));
+        }
+
+        void put(long value) {
+            long hash = mix(value);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashes; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(long value) {
+            long hash = mix(value);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashes; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // the finalizer of SplitMix64
+        private static long mix(long value) {
+            long z = value + 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.ibbe.kafka;
+
+import com.ibbe.entity.OhlcvBar;
+import com.ibbe.entity.Trade;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Historical queries over the bitso-trades topic: trades by time or trade ID range, and OHLCV bars with orderbook
+ * stats aggregated server-side.
+ * Each query seeks to the offset range given by the {@link TradeArchiveIndex} and only reads the records in it, plus
+ * the late records of the range the index keeps, e.g. backfilled trades appended after later trades.
+ */
+@Component
+public class TradeArchive {
+    private static final Logger logger = LoggerFactory.getLogger(TradeArchive.class);
+    // empty polls tolerated before a scan gives up on reaching its end offset
+    private static final int MAX_EMPTY_POLLS = 3;
+
+    @Autowired
+    private TradeArchiveIndex archiveIndex;
+
+    // upper bound of trades returned by a single trade query
+    @Value("${archive.query.max.trades:100000}")
+    private int maxTrades = 100000;
+
+    // orders of the trades returned; ties stay in topic order
+    private static final Comparator<Trade> TIME_ORDER = Comparator.comparingLong(Trade::getCreatedAtMillis);
+    private static final Comparator<Trade> TID_ORDER = Comparator.comparingLong(Trade::getTid);
+
+    // a trade handler of a scan, given the offset of the trade's record; returns false to end the scan
+    private interface TradeVisitor {
+        boolean visit(long offset, Trade trade);
+    }
+
+    /**
+     * @param fromMillis   start of the range, epoch millis (inclusive)
+     * @param toMillis     end of the range, epoch millis (inclusive)
+     * @param limit        maximum number of trades returned
+     * @param includeBook  whether to return the orderbook snapshot with each trade
+     * @return the trades of the range ordered by trade time, late (e.g. backfilled) records included
+     */
+    public List<Trade> findTradesByTime(long fromMillis, long toMillis, int limit, boolean includeBook) {
+        return collect(archiveIndex.startOffsetForTime(fromMillis), archiveIndex.endOffsetForTime(toMillis),
+            archiveIndex.lateRecordsForTime(fromMillis, toMillis), trade -> inTimeRange(trade, fromMillis, toMillis),
+            TIME_ORDER, limit, includeBook);
+    }
+
+    /**
+     * @param fromTid      first trade ID of the range (inclusive)
+     * @param toTid        last trade ID of the range (inclusive)
+     * @param limit        maximum number of trades returned
+     * @param includeBook  whether to return the orderbook snapshot with each trade
+     * @return the trades of the range ordered by trade ID, late (e.g. backfilled) records included
+     */
+    public List<Trade> findTradesByTid(long fromTid, long toTid, int limit, boolean includeBook) {
+        return collect(archiveIndex.startOffsetForTid(fromTid), archiveIndex.endOffsetForTid(toTid),
+            archiveIndex.lateRecordsForTid(fromTid, toTid),
+            trade -> trade.getTid() >= fromTid && trade.getTid() <= toTid, TID_ORDER, limit, includeBook);
+    }
+
+    /**
+     * aggregates the trades of the range into bars of the given length
+     *
+     * @param fromMillis     start of the range, epoch millis (inclusive)
+     * @param toMillis       end of the range, epoch millis (inclusive)
+     * @param intervalMillis length of a bar, e.g. 1000, 60000 or 3600000
+     * @return the bars that have at least one trade, ordered by time
+     */
+    public List<OhlcvBar> findBars(long fromMillis, long toMillis, long intervalMillis) {
+        List<TradeArchiveIndex.LateRecord> late = archiveIndex.lateRecordsForTime(fromMillis, toMillis);
+        Set<Long> lateOffsets = offsets(late);
+        // the bars late trades fall in are only built once all of their trades are read, in trade time order
+        Map<Long, List<Trade>> reordered = new HashMap<>();
+        for (TradeArchiveIndex.LateRecord record : late) {
+            reordered.putIfAbsent(bucket(record.tradeTime(), intervalMillis), new ArrayList<>());
+        }
+        Map<Long, OhlcvBar> bars = new LinkedHashMap<>();
+        TradeVisitor aggregate = (offset, trade) -> {
+            if (inTimeRange(trade, fromMillis, toMillis)) {
+                long bucket = bucket(trade.getCreatedAtMillis(), intervalMillis);
+                List<Trade> held = reordered.get(bucket);
+                if (held != null) {
+                    held.add(trade);
+                } else {
+                    bars.computeIfAbsent(bucket, OhlcvBar::new).add(trade);
+                }
+            }
+            return true;
+        };
+        scan(archiveIndex.startOffsetForTime(fromMillis), archiveIndex.endOffsetForTime(toMillis),
+            (offset, trade) -> lateOffsets.contains(offset) || aggregate.visit(offset, trade));
+        scanLate(late, aggregate);
+        reordered.forEach((bucket, trades) -> {
+            trades.sort(TIME_ORDER);
+            trades.forEach(trade -> bars.computeIfAbsent(bucket, OhlcvBar::new).add(trade));
+        });
+        List<OhlcvBar> sorted = new ArrayList<>(bars.values());
+        // trade times may be slightly out of order in the topic
+        sorted.sort((a, b) -> Long.compare(a.getStartTimeMillis(), b.getStartTimeMillis()));
+        return sorted;
+    }
+
+    /**
+     * @return offset one past the last record of the topic
+     */
+    public long getEndOffset() {
+        TopicPartition partition = new TopicPartition(TradeArchiveIndex.TOPIC, TradeArchiveIndex.PARTITION);
+        try (Consumer<String, String> consumer = new KafkaConsumer<>(TradeArchiveIndex.consumerProperties())) {
+            return consumer.endOffsets(Collections.singleton(partition)).get(partition);
+        }
+    }
+
+    /**
+     * collects the trades of the offset range and of the late records that pass the filter; the offset range is
+     * scanned up to the limit, then the late records are added and all are put in order
+     */
+    private List<Trade> collect(long startOffset, long endOffset, List<TradeArchiveIndex.LateRecord> late,
+                                Predicate<Trade> filter, Comparator<Trade> order, int limit, boolean includeBook) {
+        int max = Math.min(limit, maxTrades);
+        Set<Long> lateOffsets = offsets(late);
+        List<Trade> trades = new ArrayList<>();
+        TradeVisitor collector = (offset, trade) -> {
+            if (filter.test(trade)) {
+                if (!includeBook) {
+                    trade.setObp(null);
+                }
+                trades.add(trade);
+            }
+            return true;
+        };
+        scan(startOffset, endOffset, (offset, trade) ->
+            lateOffsets.contains(offset) || collector.visit(offset, trade) && trades.size() < max);
+        if (late.isEmpty()) {
+            return trades;
+        }
+        scanLate(late, collector);
+        trades.sort(order);
+        return trades.size() > max ? new ArrayList<>(trades.subList(0, max)) : trades;
+    }
+
+    /**
+     * reads the late records, one scan per run of consecutive offsets (a backfilled gap is one run)
+     */
+    private void scanLate(List<TradeArchiveIndex.LateRecord> late, TradeVisitor visitor) {
+        int i = 0;
+        while (i < late.size()) {
+            long runStart = late.get(i).offset();
+            int j = i + 1;
+            while (j < late.size() && late.get(j).offset() == late.get(j - 1).offset() + 1) {
+                j++;
+            }
+            Set<Long> run = offsets(late.subList(i, j));
+            scan(runStart, late.get(j - 1).offset() + 1,
+                (offset, trade) -> !run.contains(offset) || visitor.visit(offset, trade));
+            i = j;
+        }
+    }
+
+    private static Set<Long> offsets(List<TradeArchiveIndex.LateRecord> late) {
+        Set<Long> offsets = new HashSet<>();
+        for (TradeArchiveIndex.LateRecord record : late) {
+            offsets.add(record.offset());
+        }
+        return offsets;
+    }
+
+    private static long bucket(long tradeTime, long intervalMillis) {
+        return tradeTime - Math.floorMod(tradeTime, intervalMillis);
+    }
+
+    /**
+     * reads the records in [startOffset, endOffset) and hands the decoded trades to the visitor
+     *
+     * @param endOffset offset to stop at; -1 to read up to the current end of the topic
+     */
+    private void scan(long startOffset, long endOffset, TradeVisitor visitor) {
+        TopicPartition partition = new TopicPartition(TradeArchiveIndex.TOPIC, TradeArchiveIndex.PARTITION);
+        long started = System.currentTimeMillis();
+        long records = 0;
+        try (Consumer<String, String> consumer = new KafkaConsumer<>(TradeArchiveIndex.consumerProperties())) {
+            consumer.assign(Collections.singleton(partition));
+            long logEnd = consumer.endOffsets(Collections.singleton(partition)).get(partition);
+            long stopOffset = endOffset < 0 ? logEnd : Math.min(endOffset, logEnd);
+            if (startOffset >= stopOffset) {
+                return;
+            }
+            consumer.seek(partition, startOffset);
+
+            int emptyPolls = 0;
+            while (consumer.position(partition) < stopOffset && emptyPolls < MAX_EMPTY_POLLS) {
+                ConsumerRecords<String, String> polled = consumer.poll(Duration.ofMillis(500));
+                emptyPolls = polled.isEmpty() ? emptyPolls + 1 : 0;
+                for (ConsumerRecord<String, String> record : polled) {
+                    if (record.offset() >= stopOffset) {
+                        return;
+                    }
+                    records++;
+                    Trade trade = decode(record);
+                    if (trade != null && !visitor.visit(record.offset(), trade)) {
+                        return;
+                    }
+                }
+            }
+        } finally {
+            logger.debug("Archive scan from offset {} read {} records in {}ms", startOffset, records,
+                System.currentTimeMillis() - started);
+        }
+    }
+
+    /**
+     * decodes a raw trade record with the checks of the TradeCleanser; returns null for the records it quarantines,
+     * e.g. test/heartbeat records or trades priced in pesos
+     */
+    private Trade decode(ConsumerRecord<String, String> record) {
+        TradeCleanser.Verdict verdict = TradeCleanser.validate(record.key(), record.value());
+        if (verdict.trade() == null) {
+            logger.debug("Skipping record at offset {}: {}", record.offset(), verdict.reason());
+        }
+        return verdict.trade();
+    }
+
+    private static boolean inTimeRange(Trade trade, long fromMillis, long toMillis) {
+        long tradeTime = trade.getCreatedAtMillis();
+        return tradeTime != Trade.NO_TIME && tradeTime >= fromMillis && tradeTime <= toMillis;
+    }
+}
@@ -0,0 +1,492 @@
+package com.ibbe.kafka;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.ibbe.util.PropertiesUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Sparse index over the bitso-trades topic, so that historical queries can seek to an offset instead of scanning the
+ * topic from the beginning.
+ * <p>
+ * A background consumer follows the topic from its beginning and records an index point (trade time -> offset and
+ * tid -> offset) at most once per archive.index.interval.ms of trade time, or after archive.index.interval.records
+ * records. Only the tid and createdAt fields of each record are read; the orderbook payload is skipped unparsed.
+ * <p>
+ * Backfilled trades (see TradeBackfiller) are appended long after the trades around them, so their records are late:
+ * their trade ID is below one already indexed. They are left out of the sparse points, which stay ordered by offset,
+ * and are kept one by one instead, so that the archive queries can read them in addition to the offset range.
+ * <p>
+ * The index is checkpointed to archive.index.dir at most once per archive.index.checkpoint.ms and loaded on startup,
+ * so that a restart only indexes the records added since the last checkpoint instead of the whole topic again.
+ */
+@Component
+public class TradeArchiveIndex {
+    private static final Logger logger = LoggerFactory.getLogger(TradeArchiveIndex.class);
+    static final String TOPIC = "bitso-trades";
+    static final int PARTITION = 0;
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private static final long RETRY_BACKOFF_MS = 5000;
+    private static final String FILE_NAME = "archive-index-v1.dat";
+    private static final int FORMAT_VERSION = 1;
+
+    // Key: trade time (epoch millis); Value: offset of the record with that trade time
+    private final ConcurrentSkipListMap<Long, Long> timeIndex = new ConcurrentSkipListMap<>();
+    // Key: trade ID; Value: offset of the record with that trade ID
+    private final ConcurrentSkipListMap<Long, Long> tidIndex = new ConcurrentSkipListMap<>();
+    // Key: offset of a late record; Value: the record's trade ID and time
+    private final ConcurrentSkipListMap<Long, LateRecord> lateRecords = new ConcurrentSkipListMap<>();
+
+    @Value("${archive.index.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${archive.index.interval.ms:60000}")
+    private long indexIntervalMillis = 60000;
+
+    @Value("${archive.index.interval.records:1000}")
+    private int indexIntervalRecords = 1000;
+
+    // empty for ~/.ibbe/archive-index
+    @Value("${archive.index.dir:}")
+    private String indexDir = "";
+
+    @Value("${archive.index.checkpoint.ms:60000}")
+    private long checkpointIntervalMillis = 60000;
+
+    private volatile boolean running = false;
+    private volatile Consumer<String, String> consumer;
+    private Thread indexerThread;
+
+    // next offset to be indexed, and the trade time of the last record indexed
+    private volatile long indexedOffset = 0;
+    private volatile long lastTradeTime = Long.MIN_VALUE;
+    // offset one past the last record of the topic as last seen by the indexer; -1 before the first poll
+    private volatile long endOffset = -1;
+    private long checkpointedOffset = 0;
+    private long lastCheckpointMillis = 0;
+    private volatile long highestTid = Long.MIN_VALUE;
+    private long lastPointTime = Long.MIN_VALUE;
+    private int recordsSincePoint = 0;
+
+    /**
+     * A record whose trade ID is below one before it in the topic, e.g. a backfilled trade.
+     *
+     * @param offset    offset of the record
+     * @param tid       trade ID
+     * @param tradeTime trade time in epoch millis
+     */
+    public record LateRecord(long offset, long tid, long tradeTime) {
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            logger.info("Trade archive index disabled");
+            return;
+        }
+        load();
+        running = true;
+        indexerThread = Thread.ofVirtual().name("trade-archive-indexer").start(this::indexLoop);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        Consumer<String, String> current = consumer;
+        if (current != null) {
+            current.wakeup();
+        }
+        if (indexerThread != null) {
+            indexerThread.interrupt();
+        }
+    }
+
+    /**
+     * follows the topic and adds index points; reconnects (resuming from the last indexed offset) on failures
+     */
+    private void indexLoop() {
+        TopicPartition partition = new TopicPartition(TOPIC, PARTITION);
+        while (running) {
+            try (Consumer<String, String> indexConsumer = new KafkaConsumer<>(consumerProperties())) {
+                consumer = indexConsumer;
+                indexConsumer.assign(Collections.singleton(partition));
+                endOffset = indexConsumer.endOffsets(Collections.singleton(partition)).get(partition);
+                if (indexedOffset > endOffset) {
+                    logger.warn("Index checkpoint at offset {} is past the end of {} at {}, indexing from the start",
+                        indexedOffset, TOPIC, endOffset);
+                    clear();
+                }
+                indexConsumer.seek(partition, indexedOffset);
+                logger.info("Indexing {}-{} from offset {} of {}", TOPIC, PARTITION, indexedOffset, endOffset);
+                while (running) {
+                    ConsumerRecords<String, String> records = indexConsumer.poll(Duration.ofMillis(1000));
+                    for (ConsumerRecord<String, String> record : records) {
+                        index(record);
+                    }
+                    OptionalLong lag = indexConsumer.currentLag(partition);
+                    if (lag.isPresent()) {
+                        endOffset = indexConsumer.position(partition) + lag.getAsLong();
+                    }
+                    if (System.currentTimeMillis() - lastCheckpointMillis >= checkpointIntervalMillis) {
+                        checkpoint();
+                    }
+                }
+            } catch (WakeupException | InterruptException e) {
+                logger.info("Trade archive indexer stopping");
+            } catch (Exception e) {
+                logger.warn("Trade archive indexer error at offset {}: {}", indexedOffset, e.getMessage());
+                try {
+                    Thread.sleep(RETRY_BACKOFF_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                }
+            } finally {
+                consumer = null;
+            }
+        }
+    }
+
+    private void index(ConsumerRecord<String, String> record) {
+        indexedOffset = record.offset() + 1;
+        // the same records are skipped here as in TradesConsumer (test/heartbeat messages, no trade ID key)
+        if (record.key() == null || !record.key().matches("\\d+") || record.value() == null) {
+            return;
+        }
+        long[] tidAndTime = readTidAndTime(record.value());
+        if (tidAndTime == null) {
+            return;
+        }
+        long tid = tidAndTime[0];
+        long tradeTime = tidAndTime[1];
+        if (tid < highestTid) {
+            lateRecords.put(record.offset(), new LateRecord(record.offset(), tid, tradeTime));
+            return;
+        }
+        highestTid = tid;
+        lastTradeTime = Math.max(lastTradeTime, tradeTime);
+        recordsSincePoint++;
+        if (lastPointTime == Long.MIN_VALUE || tradeTime - lastPointTime >= indexIntervalMillis
+            || recordsSincePoint >= indexIntervalRecords) {
+            // keep the first offset seen for a given time/tid
+            timeIndex.putIfAbsent(tradeTime, record.offset());
+            tidIndex.putIfAbsent(tid, record.offset());
+            lastPointTime = tradeTime;
+            recordsSincePoint = 0;
+        }
+    }
+
+    /**
+     * forgets every point and late record, e.g. when the checkpoint does not belong to the topic
+     */
+    private void clear() {
+        timeIndex.clear();
+        tidIndex.clear();
+        lateRecords.clear();
+        indexedOffset = 0;
+        lastTradeTime = Long.MIN_VALUE;
+        highestTid = Long.MIN_VALUE;
+        lastPointTime = Long.MIN_VALUE;
+        recordsSincePoint = 0;
+    }
+
+    /**
+     * saves the index if records were indexed since the last checkpoint; called on the indexer thread, between polls
+     */
+    void checkpoint() {
+        lastCheckpointMillis = System.currentTimeMillis();
+        if (indexedOffset == checkpointedOffset) {
+            return;
+        }
+        Path file = file();
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), FILE_NAME, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                write(out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            checkpointedOffset = indexedOffset;
+            logger.debug("Checkpointed the trade archive index at offset {}", indexedOffset);
+        } catch (IOException e) {
+            logger.error("Could not checkpoint the trade archive index: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * loads the last checkpoint, if there is a readable one
+     */
+    void load() {
+        Path file = file();
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            read(in);
+            checkpointedOffset = indexedOffset;
+            logger.info("Loaded the trade archive index up to offset {}: {} points, {} late records", indexedOffset,
+                timeIndex.size(), lateRecords.size());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not load the trade archive index, indexing from the start: {}", e.getMessage());
+            clear();
+        }
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(indexedOffset);
+        out.writeLong(lastTradeTime);
+        out.writeLong(highestTid);
+        out.writeLong(lastPointTime);
+        out.writeInt(recordsSincePoint);
+        writePoints(out, timeIndex);
+        writePoints(out, tidIndex);
+        out.writeInt(lateRecords.size());
+        for (LateRecord record : lateRecords.values()) {
+            out.writeLong(record.offset());
+            out.writeLong(record.tid());
+            out.writeLong(record.tradeTime());
+        }
+    }
+
+    private void read(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("unknown format version " + version);
+        }
+        indexedOffset = in.readLong();
+        lastTradeTime = in.readLong();
+        highestTid = in.readLong();
+        lastPointTime = in.readLong();
+        recordsSincePoint = in.readInt();
+        readPoints(in, timeIndex);
+        readPoints(in, tidIndex);
+        int late = in.readInt();
+        for (int i = 0; i < late; i++) {
+            LateRecord record = new LateRecord(in.readLong(), in.readLong(), in.readLong());
+            lateRecords.put(record.offset(), record);
+        }
+    }
+
+    private static void writePoints(DataOutputStream out, Map<Long, Long> points) throws IOException {
+        out.writeInt(points.size());
+        for (Map.Entry<Long, Long> point : points.entrySet()) {
+            out.writeLong(point.getKey());
+            out.writeLong(point.getValue());
+        }
+    }
+
+    private static void readPoints(DataInputStream in, Map<Long, Long> points) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            points.put(in.readLong(), in.readLong());
+        }
+    }
+
+    private Path file() {
+        Path dir = indexDir == null || indexDir.isBlank()
+            ? Paths.get(System.getProperty("user.home"), ".ibbe", "archive-index")
+            : Paths.get(indexDir.trim());
+        return dir.resolve(FILE_NAME);
+    }
+
+    /**
+     * reads the top-level tid and createdAt fields of a trade record, skipping everything else unparsed
+     *
+     * @param json value of the Kafka record
+     * @return {tid, trade time in epoch millis}, or null if either is missing
+     */
+    static long[] readTidAndTime(String json) {
+        Long tid = null;
+        Long time = null;
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME && (tid == null || time == null)) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("tid".equals(field) && value.isNumeric()) {
+                    tid = parser.getLongValue();
+                } else if ("createdAt".equals(field) && value == JsonToken.VALUE_STRING) {
+                    time = toEpochMillis(parser.getText());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+        return tid == null || time == null ? null : new long[] {tid, time};
+    }
+
+    /**
+     * @param createdAt trade timestamp as stored in the topic, e.g. 2024-03-10T12:00:00.000Z
+     * @return the timestamp in epoch millis
+     */
+    static long toEpochMillis(String createdAt) {
+        return ZonedDateTime.parse(createdAt).toInstant().toEpochMilli();
+    }
+
+    /**
+     * @param fromMillis start of a time range
+     * @return an offset at or before the first record of the range (0 if the range starts before the first point)
+     */
+    public long startOffsetForTime(long fromMillis) {
+        // step back one more point, to tolerate trade times that are slightly out of order in the topic
+        Map.Entry<Long, Long> floor = timeIndex.floorEntry(fromMillis);
+        Map.Entry<Long, Long> before = floor == null ? null : timeIndex.lowerEntry(floor.getKey());
+        return before != null ? before.getValue() : 0;
+    }
+
+    /**
+     * @param toMillis end of a time range (inclusive)
+     * @return an offset past the last record of the range, or -1 if the range reaches the end of the index
+     */
+    public long endOffsetForTime(long toMillis) {
+        Map.Entry<Long, Long> higher = timeIndex.higherEntry(toMillis);
+        Map.Entry<Long, Long> after = higher == null ? null : timeIndex.higherEntry(higher.getKey());
+        return after != null ? after.getValue() : -1;
+    }
+
+    /**
+     * @param fromTid first trade ID of a range
+     * @return an offset at or before the record of the trade (0 if the tid precedes the first point)
+     */
+    public long startOffsetForTid(long fromTid) {
+        Map.Entry<Long, Long> floor = tidIndex.floorEntry(fromTid);
+        return floor != null ? floor.getValue() : 0;
+    }
+
+    /**
+     * @param toTid last trade ID of a range (inclusive)
+     * @return an offset past the record of the trade, or -1 if the range reaches the end of the index
+     */
+    public long endOffsetForTid(long toTid) {
+        Map.Entry<Long, Long> higher = tidIndex.higherEntry(toTid);
+        return higher != null ? higher.getValue() : -1;
+    }
+
+    /**
+     * @param fromMillis start of a time range
+     * @param toMillis   end of a time range (inclusive)
+     * @return the late records of the range, in offset order
+     */
+    public List<LateRecord> lateRecordsForTime(long fromMillis, long toMillis) {
+        // late records are few (backfills are rare and small), so they are simply filtered
+        List<LateRecord> late = new ArrayList<>();
+        for (LateRecord record : lateRecords.values()) {
+            if (record.tradeTime() >= fromMillis && record.tradeTime() <= toMillis) {
+                late.add(record);
+            }
+        }
+        return late;
+    }
+
+    /**
+     * @param fromTid first trade ID of a range
+     * @param toTid   last trade ID of a range (inclusive)
+     * @return the late records of the range, in offset order
+     */
+    public List<LateRecord> lateRecordsForTid(long fromTid, long toTid) {
+        List<LateRecord> late = new ArrayList<>();
+        for (LateRecord record : lateRecords.values()) {
+            if (record.tid() >= fromTid && record.tid() <= toTid) {
+                late.add(record);
+            }
+        }
+        return late;
+    }
+
+    public int getLateRecordCount() {
+        return lateRecords.size();
+    }
+
+    public int getIndexPointCount() {
+        return timeIndex.size();
+    }
+
+    public long getIndexedOffset() {
+        return indexedOffset;
+    }
+
+    /**
+     * @return offset one past the last record of the topic as last seen by the indexer; -1 if not known yet
+     */
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * @return whether every record of the topic (as last seen by the indexer) is indexed; until then queries past the
+     * indexed records scan the topic from the last point before them
+     */
+    public boolean isComplete() {
+        return endOffset >= 0 && indexedOffset >= endOffset;
+    }
+
+    /**
+     * @return the highest trade ID indexed; -1 before the first trade
+     */
+    public long getHighestTid() {
+        return highestTid == Long.MIN_VALUE ? -1 : highestTid;
+    }
+
+    public Long getFirstTradeTime() {
+        return timeIndex.isEmpty() ? null : timeIndex.firstKey();
+    }
+
+    public Long getLastTradeTime() {
+        return lastTradeTime == Long.MIN_VALUE ? null : lastTradeTime;
+    }
+
+    /**
+     * consumer properties shared by the indexer and the archive queries; partitions are assigned manually and
+     * offsets are never committed
+     */
+    static Properties consumerProperties() {
+        Properties props = new Properties();
+        String kafkaUrl = PropertiesUtil.getProperty("kafka.url");
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaUrl != null ? kafkaUrl : "localhost:9092");
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, "2000");
+        return props;
+    }
+}
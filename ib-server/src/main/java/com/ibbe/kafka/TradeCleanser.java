@@ -0,0 +1,481 @@
+package com.ibbe.kafka;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibbe.entity.OrderBookPayload;
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeWs;
+import com.ibbe.util.PropertiesUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Validates the raw bitso-trades topic once, so that replays do not have to: every raw record is either written to
+ * the curated topic in the lean CuratedTradeCodec format, or quarantined as is to the dead-letter topic with the reason
+ * it was rejected (a "reason" header). Test/heartbeat records are dropped.
+ * <p>
+ * The curated topic is kept in trade ID order, while backfilled trades (see TradeBackfiller) are appended to the raw
+ * topic after the trades that followed their gap. Curated records are therefore held back while a gap before them is
+ * open in the TradeGapLog, and released in trade ID order once it is backfilled; a gap whose trade after it is older
+ * than cleanser.reorder.max.ms no longer holds anything back. A trade that arrives after a later trade was curated
+ * (e.g. a backfill of a gap given up on) is quarantined as late, and counted (see getLateCount); it stays in the raw
+ * topic and the archive.
+ * <p>
+ * Both output records carry the offset of their raw record (a "raw-offset" header) and the raw offset from which
+ * everything not yet written out is still to be read (a "resume-offset" header, the lowest raw offset held back). On
+ * start the cleanser resumes from the highest resume offset found at the end of the two output topics, skipping the
+ * trades curated and the records quarantined already, so each raw record is cleansed once, and then follows the raw
+ * topic as new trades arrive.
+ */
+@Component
+public class TradeCleanser {
+    private static final Logger logger = LoggerFactory.getLogger(TradeCleanser.class);
+    public static final String CURATED_TOPIC = "bitso-trades-curated";
+    public static final String DEAD_LETTER_TOPIC = "bitso-trades-dlq";
+    static final String RAW_OFFSET_HEADER = "raw-offset";
+    static final String REASON_HEADER = "reason";
+    static final String RESUME_OFFSET_HEADER = "resume-offset";
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final long RETRY_BACKOFF_MS = 5000;
+    // an ask above this is a record priced in pesos rather than dollars
+    private static final BigDecimal MAX_ASK_PRICE = BigDecimal.valueOf(1000000);
+
+    @Value("${cleanser.enabled:true}")
+    private boolean enabled = true;
+
+    // how long after the trade following a gap the curated records after the gap are held back for its backfill
+    @Value("${cleanser.reorder.max.ms:600000}")
+    private long reorderMaxMillis = 600000;
+
+    @Autowired
+    private TradeGapLog gapLog;
+
+    private volatile boolean running = false;
+    private volatile Consumer<String, String> consumer;
+    private Thread cleanserThread;
+
+    // next raw offset to be cleansed
+    private volatile long cleansedOffset = -1;
+    private long curatedCount = 0;
+    private long quarantinedCount = 0;
+    // trades quarantined because they arrived after a later trade was curated (or held already)
+    private final AtomicLong lateCount = new AtomicLong();
+    private ReorderBuffer reorderBuffer;
+    // the last raw offset quarantined; records up to it are not quarantined again after a restart
+    private long quarantinedOffset = -1;
+
+    /**
+     * The outcome of validating a raw record: the trade to curate, or the reason the record is quarantined.
+     */
+    record Verdict(Trade trade, String reason) {
+        static Verdict curate(Trade trade) {
+            return new Verdict(trade, null);
+        }
+
+        static Verdict quarantine(String reason) {
+            return new Verdict(null, reason);
+        }
+    }
+
+    /**
+     * The curated records held back, released in trade ID order. A trade at or below the last trade ID released comes
+     * too late for the curated topic.
+     */
+    static final class ReorderBuffer {
+        private final TreeMap<Long, Held> held = new TreeMap<>();
+        private long releasedTid;
+
+        /**
+         * A curated record held back, and the offset of its raw record.
+         */
+        record Held(long rawOffset, ProducerRecord<String, String> record) {
+        }
+
+        /**
+         * @param releasedTid the last trade ID curated; Long.MIN_VALUE if none is
+         */
+        ReorderBuffer(long releasedTid) {
+            this.releasedTid = releasedTid;
+        }
+
+        /**
+         * @return false if the trade is not held: a trade with the same or a higher ID was released, or it is held
+         * already
+         */
+        boolean hold(long tid, long rawOffset, ProducerRecord<String, String> record) {
+            if (tid <= releasedTid || held.containsKey(tid)) {
+                return false;
+            }
+            held.put(tid, new Held(rawOffset, record));
+            return true;
+        }
+
+        /**
+         * @param belowTid trade ID the released records are below
+         * @return the records released, in trade ID order
+         */
+        List<Held> release(long belowTid) {
+            List<Held> released = new ArrayList<>();
+            while (!held.isEmpty() && held.firstKey() < belowTid) {
+                Map.Entry<Long, Held> first = held.pollFirstEntry();
+                releasedTid = first.getKey();
+                released.add(first.getValue());
+            }
+            return released;
+        }
+
+        /**
+         * @return the lowest raw offset of the records held; Long.MAX_VALUE if none is
+         */
+        long lowestRawOffset() {
+            long lowest = Long.MAX_VALUE;
+            for (Held record : held.values()) {
+                lowest = Math.min(lowest, record.rawOffset());
+            }
+            return lowest;
+        }
+
+        int size() {
+            return held.size();
+        }
+
+        long getReleasedTid() {
+            return releasedTid;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            logger.info("Trade cleanser disabled");
+            return;
+        }
+        running = true;
+        cleanserThread = Thread.ofVirtual().name("trade-cleanser").start(this::cleanseLoop);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        Consumer<String, String> current = consumer;
+        if (current != null) {
+            current.wakeup();
+        }
+        if (cleanserThread != null) {
+            cleanserThread.interrupt();
+        }
+    }
+
+    /**
+     * follows the raw topic and cleanses its records; reconnects (resuming after the last cleansed record) on failures
+     */
+    private void cleanseLoop() {
+        TopicPartition partition = new TopicPartition(TradeArchiveIndex.TOPIC, TradeArchiveIndex.PARTITION);
+        while (running) {
+            try (Consumer<String, String> rawConsumer = new KafkaConsumer<>(TradeArchiveIndex.consumerProperties());
+                 Producer<String, String> producer = new KafkaProducer<>(producerProperties(),
+                     new StringSerializer(), new StringSerializer())) {
+                consumer = rawConsumer;
+                if (cleansedOffset < 0) {
+                    resume(rawConsumer);
+                }
+                rawConsumer.assign(Collections.singleton(partition));
+                rawConsumer.seek(partition, cleansedOffset);
+                logger.info("Cleansing {}-{} from offset {} into {}", TradeArchiveIndex.TOPIC,
+                    TradeArchiveIndex.PARTITION, cleansedOffset, CURATED_TOPIC);
+                while (running) {
+                    ConsumerRecords<String, String> records = rawConsumer.poll(Duration.ofMillis(1000));
+                    for (ConsumerRecord<String, String> record : records) {
+                        cleanse(producer, record);
+                    }
+                    long nextOffset = records.isEmpty() ? cleansedOffset
+                        : records.records(partition).get(records.count() - 1).offset() + 1;
+                    // gaps are backfilled in the background, so held records are released on empty polls as well
+                    release(producer, nextOffset);
+                    if (records.isEmpty()) {
+                        continue;
+                    }
+                    // the batch is durable before it counts as cleansed
+                    producer.flush();
+                    cleansedOffset = nextOffset;
+                    logger.debug("Cleansed up to offset {}: {} curated, {} quarantined, {} held back", cleansedOffset,
+                        curatedCount, quarantinedCount, reorderBuffer.size());
+                }
+            } catch (WakeupException | InterruptException e) {
+                logger.info("Trade cleanser stopping at offset {}: {} curated, {} quarantined", cleansedOffset,
+                    curatedCount, quarantinedCount);
+            } catch (Exception e) {
+                logger.warn("Trade cleanser error at offset {}: {}", cleansedOffset, e.getMessage());
+                try {
+                    Thread.sleep(RETRY_BACKOFF_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                }
+            } finally {
+                consumer = null;
+            }
+        }
+    }
+
+    private void cleanse(Producer<String, String> producer, ConsumerRecord<String, String> record) {
+        if (record.key() != null && (record.key().startsWith("test") || record.key().equals("heartbeat"))) {
+            return;
+        }
+        Verdict verdict = validate(record.key(), record.value());
+        if (verdict.trade() != null) {
+            Trade trade = verdict.trade();
+            long millis = trade.getCreatedAtMillis();
+            ProducerRecord<String, String> curated = new ProducerRecord<>(CURATED_TOPIC, null,
+                millis != Trade.NO_TIME ? millis : record.timestamp(), String.valueOf(trade.getTid()),
+                CuratedTradeCodec.encode(trade));
+            curated.headers().add(RAW_OFFSET_HEADER, bytes(record.offset()));
+            if (!reorderBuffer.hold(trade.getTid(), record.offset(), curated)) {
+                lateCount.incrementAndGet();
+                quarantine(producer, record, trade.getTid() <= reorderBuffer.getReleasedTid()
+                    ? "late: trade " + reorderBuffer.getReleasedTid() + " was curated already"
+                    : "duplicate: trade " + trade.getTid() + " is held already");
+            }
+        } else {
+            quarantine(producer, record, verdict.reason());
+        }
+    }
+
+    /**
+     * writes the raw record to the dead-letter topic with the reason, unless it was quarantined before a restart
+     */
+    private void quarantine(Producer<String, String> producer, ConsumerRecord<String, String> record, String reason) {
+        if (record.offset() <= quarantinedOffset) {
+            return;
+        }
+        ProducerRecord<String, String> quarantined = new ProducerRecord<>(DEAD_LETTER_TOPIC, null,
+            record.timestamp() >= 0 ? record.timestamp() : null, record.key(), record.value());
+        quarantined.headers().add(RAW_OFFSET_HEADER, bytes(record.offset()));
+        quarantined.headers().add(REASON_HEADER, reason.getBytes(StandardCharsets.UTF_8));
+        quarantined.headers().add(RESUME_OFFSET_HEADER,
+            bytes(Math.min(reorderBuffer.lowestRawOffset(), record.offset() + 1)));
+        producer.send(quarantined);
+        quarantinedOffset = record.offset();
+        quarantinedCount++;
+        logger.warn("Quarantined raw record at offset {} with key {}: {}", record.offset(), record.key(), reason);
+    }
+
+    /**
+     * sends the held records the open gaps no longer hold back, each with the raw offset to resume from should it be
+     * the last one written
+     *
+     * @param nextOffset the raw offset after the last record cleansed
+     */
+    private void release(Producer<String, String> producer, long nextOffset) {
+        if (reorderBuffer.size() == 0) {
+            return;
+        }
+        List<ReorderBuffer.Held> released = reorderBuffer.release(
+            heldBackFrom(gapLog.read(), System.currentTimeMillis(), reorderMaxMillis));
+        // a record is followed by the later ones released, so those are still to be read when it is the last written
+        long resumeOffset = Math.min(reorderBuffer.lowestRawOffset(), nextOffset);
+        long[] resumeOffsets = new long[released.size()];
+        for (int i = released.size() - 1; i >= 0; i--) {
+            resumeOffsets[i] = resumeOffset;
+            resumeOffset = Math.min(resumeOffset, released.get(i).rawOffset());
+        }
+        for (int i = 0; i < released.size(); i++) {
+            ProducerRecord<String, String> curated = released.get(i).record();
+            curated.headers().add(RESUME_OFFSET_HEADER, bytes(resumeOffsets[i]));
+            producer.send(curated);
+            curatedCount++;
+        }
+    }
+
+    /**
+     * @param gaps      the gaps open in the TradeGapLog
+     * @param nowMillis current time
+     * @param maxMillis how long after the trade following a gap the gap is waited for
+     * @return the lowest trade ID (as curated, i.e. times 10) of the gaps still waited for; Long.MAX_VALUE if none is
+     */
+    static long heldBackFrom(List<TradeGapLog.Gap> gaps, long nowMillis, long maxMillis) {
+        long from = Long.MAX_VALUE;
+        for (TradeGapLog.Gap gap : gaps) {
+            if (gap.toMillis() != Trade.NO_TIME && nowMillis - gap.toMillis() < maxMillis) {
+                // trade IDs are multiplied by 10 on ingest (see BitsoTradesQueuerWsClient)
+                from = Math.min(from, gap.fromTid() * 10);
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Checks a raw trade record: a trade ID key, a decodable trade with a price, an orderbook payload, and asks priced
+     * in dollars.
+     *
+     * @param key   key of the raw record
+     * @param value value of the raw record
+     * @return the trade to curate, or the reason to quarantine the record
+     */
+    static Verdict validate(String key, String value) {
+        if (key == null || !key.matches("\\d+")) {
+            return Verdict.quarantine("key is not a trade ID");
+        }
+        if (value == null || !value.contains("\"obp\"")) {
+            return Verdict.quarantine("no orderbook payload");
+        }
+        Trade trade;
+        try {
+            trade = decode(value);
+        } catch (Exception e) {
+            // Jackson appends the location on further lines
+            return Verdict.quarantine("undecodable: " + String.valueOf(e.getMessage()).lines().findFirst().orElse(""));
+        }
+        if (trade.getTid() == null) {
+            // the key is the trade ID
+            trade.setTid(Long.parseLong(key));
+        }
+        if (trade.getPrice() == null || trade.getPrice().signum() <= 0) {
+            return Verdict.quarantine("missing price");
+        }
+        OrderBookPayload obp = trade.getObp();
+        if (obp == null) {
+            return Verdict.quarantine("no orderbook payload");
+        }
+        if (obp.getAsks().length > 0 && obp.getAsks()[0].getP().compareTo(MAX_ASK_PRICE) > 0) {
+            return Verdict.quarantine("ask price " + obp.getAsks()[0].getP() + " is above " + MAX_ASK_PRICE
+                + " (pesos)");
+        }
+        return Verdict.curate(trade);
+    }
+
+    /**
+     * @return the trade of a raw record value, as TradeWs or, failing that, from its essential fields
+     */
+    private static Trade decode(String value) throws Exception {
+        try {
+            return objectMapper.readValue(value, TradeWs.class);
+        } catch (Exception e) {
+            JsonNode rootNode = objectMapper.readTree(value);
+            Trade trade = Trade.builder()
+                .tid(rootNode.has("tid") ? rootNode.get("tid").asLong() : null)
+                .price(rootNode.has("price") ? new BigDecimal(rootNode.get("price").asText()) : null)
+                .amount(rootNode.has("amount") ? new BigDecimal(rootNode.get("amount").asText()) : null)
+                .makerSide(rootNode.has("makerSide") ? rootNode.get("makerSide").asText() : "buy")
+                .createdAt(rootNode.has("createdAt") ? rootNode.get("createdAt").asText() : null)
+                .build();
+            if (rootNode.has("obp") && !rootNode.get("obp").isNull()) {
+                trade.setObp(objectMapper.treeToValue(rootNode.get("obp"), OrderBookPayload.class));
+            }
+            return trade;
+        }
+    }
+
+    /**
+     * picks up where the output topics end: the raw offset to resume from, the last trade ID curated and the last raw
+     * offset quarantined
+     */
+    private void resume(Consumer<String, String> lookup) {
+        ConsumerRecord<String, String> curated = lastRecord(lookup, CURATED_TOPIC);
+        ConsumerRecord<String, String> quarantined = lastRecord(lookup, DEAD_LETTER_TOPIC);
+        cleansedOffset = Math.max(resumeOffset(curated), resumeOffset(quarantined));
+        reorderBuffer = new ReorderBuffer(curated != null ? Long.parseLong(curated.key()) : Long.MIN_VALUE);
+        quarantinedOffset = quarantined != null ? header(quarantined, RAW_OFFSET_HEADER) : -1;
+    }
+
+    /**
+     * @return the raw offset to resume from after an output record; 0 if there is none
+     */
+    static long resumeOffset(ConsumerRecord<String, String> record) {
+        if (record == null) {
+            return 0;
+        }
+        long resumeOffset = header(record, RESUME_OFFSET_HEADER);
+        // records written before the resume-offset header resume after their raw record
+        return resumeOffset >= 0 ? resumeOffset : header(record, RAW_OFFSET_HEADER) + 1;
+    }
+
+    /**
+     * @return the numeric header of the record; -1 if it has none
+     */
+    private static long header(ConsumerRecord<String, String> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        return header != null ? Long.parseLong(new String(header.value(), StandardCharsets.UTF_8)) : -1;
+    }
+
+    private static byte[] bytes(long offset) {
+        return String.valueOf(offset).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ConsumerRecord<String, String> lastRecord(Consumer<String, String> lookup, String topic) {
+        List<PartitionInfo> partitions = lookup.partitionsFor(topic);
+        if (partitions == null || partitions.isEmpty()) {
+            return null;
+        }
+        TopicPartition partition = new TopicPartition(topic, 0);
+        long end = lookup.endOffsets(Collections.singleton(partition)).get(partition);
+        if (end == 0) {
+            return null;
+        }
+        lookup.assign(Collections.singleton(partition));
+        lookup.seek(partition, end - 1);
+        ConsumerRecord<String, String> last = null;
+        for (int poll = 0; poll < 5 && last == null; poll++) {
+            for (ConsumerRecord<String, String> record : lookup.poll(Duration.ofMillis(1000))) {
+                last = record;
+            }
+        }
+        lookup.unsubscribe();
+        return last;
+    }
+
+    private static Properties producerProperties() {
+        Properties props = new Properties();
+        String kafkaUrl = PropertiesUtil.getProperty("kafka.url");
+        props.put("bootstrap.servers", kafkaUrl != null ? kafkaUrl : "localhost:9092");
+        props.put("acks", "all");
+        props.put("enable.idempotence", true);
+        props.put("retries", 10);
+        props.put("max.in.flight.requests.per.connection", 4);
+        props.put("linger.ms", 20);
+        return props;
+    }
+
+    /**
+     * @return the trades quarantined since the server started because they arrived after a later trade was curated
+     */
+    public long getLateCount() {
+        return lateCount.get();
+    }
+
+    /**
+     * @return the next raw offset to be cleansed; -1 before the cleanser has started
+     */
+    public long getCleansedOffset() {
+        return cleansedOffset;
+    }
+}
@@ -0,0 +1,119 @@
+package com.ibbe.kafka;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Log of the Bitso trade ID ranges that never reached the trades topic, until they are backfilled. One line per gap:
+ * first and last missing trade ID, and the times of the trades around the gap in epoch millis.
+ */
+@Component
+public class TradeGapLog {
+    private static final Logger logger = LoggerFactory.getLogger(TradeGapLog.class);
+    private static final String FILE_NAME = "tid-gaps.csv";
+
+    // empty for ~/.ibbe/ingest
+    @Value("${ingest.gap.log.dir:}")
+    private String logDir = "";
+
+    /**
+     * A range of missing Bitso trade IDs.
+     *
+     * @param fromTid    first missing ID
+     * @param toTid      last missing ID
+     * @param fromMillis time of the trade before the gap
+     * @param toMillis   time of the trade after the gap
+     */
+    public record Gap(long fromTid, long toTid, long fromMillis, long toMillis) {
+        public long size() {
+            return toTid - fromTid + 1;
+        }
+    }
+
+    /**
+     * Appends a gap to the log.
+     */
+    public synchronized void append(Gap gap) {
+        Path file = file();
+        try {
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, line(gap), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.error("Could not log trade gap {}: {}", gap, e.getMessage());
+        }
+    }
+
+    /**
+     * Removes a gap from the log, e.g. once it has been backfilled.
+     */
+    public synchronized void remove(Gap gap) {
+        List<Gap> gaps = read();
+        if (!gaps.remove(gap)) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (Gap remaining : gaps) {
+            lines.append(line(remaining));
+        }
+        Path file = file();
+        try {
+            Path tmp = Files.createTempFile(file.getParent(), FILE_NAME, ".tmp");
+            Files.writeString(tmp, lines, StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.error("Could not remove trade gap {}: {}", gap, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the logged gaps in the order they were logged; empty if there are none
+     */
+    public synchronized List<Gap> read() {
+        List<Gap> gaps = new ArrayList<>();
+        Path file = file();
+        if (!Files.exists(file)) {
+            return gaps;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] fields = line.split(",");
+                if (fields.length != 4) {
+                    continue;
+                }
+                try {
+                    gaps.add(new Gap(Long.parseLong(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                        Long.parseLong(fields[3])));
+                } catch (NumberFormatException e) {
+                    logger.warn("Skipping malformed trade gap line: {}", line);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Could not read trade gap log: {}", e.getMessage());
+        }
+        return gaps;
+    }
+
+    private static String line(Gap gap) {
+        return gap.fromTid() + "," + gap.toTid() + "," + gap.fromMillis() + "," + gap.toMillis() + System.lineSeparator();
+    }
+
+    private Path file() {
+        Path dir = logDir == null || logDir.isBlank()
+            ? Paths.get(System.getProperty("user.home"), ".ibbe", "ingest")
+            : Paths.get(logDir.trim());
+        return dir.resolve(FILE_NAME);
+    }
+}
@@ -0,0 +1,113 @@
+package com.ibbe.kafka;
+
+import com.ibbe.entity.TradeWs;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admits each Bitso trade into the ingest path once: a trade whose ID was already seen (e.g. resent after the trades
+ * websocket reconnected) is dropped before it is produced to Kafka, and a jump in the trade IDs is written to the
+ * TradeGapLog for backfill. The seen IDs are kept by a {@link TidTracker} for the lifetime of the server; it is seeded
+ * with the highest trade ID archived before the server started (see TradeArchiveIndex), so that the trades missed
+ * while it was down are logged as a gap too.
+ */
+@Component
+public class TradeIngestGuard {
+    private static final Logger logger = LoggerFactory.getLogger(TradeIngestGuard.class);
+
+    @Autowired
+    private TradeGapLog gapLog;
+
+    @Autowired
+    private TradeArchiveIndex archiveIndex;
+
+    // trade IDs tracked exactly, most recent first
+    @Value("${ingest.dedup.window:65536}")
+    private int windowSize = 65536;
+
+    // older trade IDs remembered by the bloom filter, at the given false positive rate
+    @Value("${ingest.dedup.bloom.expected:1000000}")
+    private long bloomExpected = 1000000;
+
+    @Value("${ingest.dedup.bloom.fpp:0.0001}")
+    private double bloomFalsePositives = 0.0001;
+
+    private TidTracker tracker;
+    private final AtomicLong duplicates = new AtomicLong();
+    private volatile boolean seeded = false;
+
+    @PostConstruct
+    public void init() {
+        tracker = new TidTracker(windowSize, bloomExpected, bloomFalsePositives,
+            (fromTid, toTid, fromMillis, toMillis) -> {
+                logger.warn("Trade IDs {} to {} are missing", fromTid, toTid);
+                gapLog.append(new TradeGapLog.Gap(fromTid, toTid, fromMillis, toMillis));
+            });
+    }
+
+    /**
+     * @param tradeWs a trade as received from Bitso, with its Bitso trade ID
+     * @return false if the trade was seen before and must not be ingested again
+     */
+    public boolean admit(TradeWs tradeWs) {
+        if (tradeWs.getTid() == null) {
+            return true;
+        }
+        if (!seeded) {
+            seed();
+        }
+        if (tracker.add(tradeWs.getTid(), tradeWs.getCreatedAtMillis())) {
+            return true;
+        }
+        logger.info("Dropping duplicate trade {} ({} so far)", tradeWs.getTid(), duplicates.incrementAndGet());
+        return false;
+    }
+
+    /**
+     * Seeds the tracker with the highest archived trade ID, once, before the first trade is admitted: every trade
+     * is admitted before it is archived, so the archive then holds the trades of earlier runs only. By the time the
+     * first trade arrives the archive index has normally caught up with the topic from its checkpoint.
+     */
+    private synchronized void seed() {
+        if (seeded) {
+            return;
+        }
+        seeded = true;
+        long tid = archiveIndex.getHighestTid();
+        if (tid < 0) {
+            logger.info("No archived trade IDs to seed the trade ID tracker with");
+            return;
+        }
+        if (!archiveIndex.isComplete()) {
+            logger.warn("Seeding the trade ID tracker from an archive index still at offset {} of {}",
+                archiveIndex.getIndexedOffset(), archiveIndex.getEndOffset());
+        }
+        Long millis = archiveIndex.getLastTradeTime();
+        tracker.add(tid, millis != null ? millis : 0);
+        logger.info("Seeded the trade ID tracker with archived trade ID {}", tid);
+    }
+
+    /**
+     * @return whether the Bitso trade ID was already ingested (probably, for IDs long past)
+     */
+    public boolean isIngested(long tid) {
+        return tracker.contains(tid);
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    /**
+     * @return the highest Bitso trade ID ingested; -1 before the first trade
+     */
+    public long getHighestTid() {
+        return tracker.getHighestTid();
+    }
+}
@@ -1,47 +1,58 @@
 package com.ibbe.kafka;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.ibbe.entity.Order;
-import com.ibbe.entity.OrderBookPayload;
 import com.ibbe.entity.Trade;
-import com.ibbe.entity.TradeWs;
+import com.ibbe.util.PropertiesUtil;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
 import org.apache.kafka.common.KafkaException;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.AuthorizationException;
+import org.apache.kafka.common.errors.InterruptException;
 import org.apache.kafka.common.errors.WakeupException;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
-import java.time.ZonedDateTime;
-import java.time.ZoneOffset;
-import java.math.BigDecimal;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Kafka consumer for processing trade messages from the Bitso trades topic.
- * This consumer always starts from the beginning of the topic and processes all messages.
- * It deserializes trade data from Kafka messages and provides it to registered handlers.
+ * Kafka consumer for processing trade messages from the curated Bitso trades topic (see TradeCleanser).
+ * This consumer starts from the beginning of the topic (or a given start offset) and processes all messages.
+ * It deserializes trade data from Kafka messages and provides it to registered handlers; the records were validated
+ * when they were curated, so they are handed on without further checks.
  * Enhanced with automatic reconnection capabilities for handling Kafka broker unavailability.
+ * <p>
+ * Records go through a three-stage pipeline: a fetch thread polls the topic, a decode pool shared by all consumers
+ * deserializes the records in parallel, and the consumer thread hands the decoded trades to the message handler in
+ * offset order. Fetching, decoding and the handler's trading decisions overlap, so a replay runs at the speed of its
+ * slowest stage.
  */
 public class TradesConsumer {
     private static final Logger logger = LoggerFactory.getLogger(TradesConsumer.class);
-    private static final String TOPIC = "bitso-trades";
+    private static final String TOPIC = TradeCleanser.CURATED_TOPIC;
     private static final int PARTITION = 0;
     private static final String BOOTSTRAP_SERVERS = "localhost:9092";
-    private static final ObjectMapper objectMapper = new ObjectMapper();
     private static final int MAX_RECONNECT_ATTEMPTS = 10;
     private static final long RECONNECT_BACKOFF_MS = 1000; // Start with 1 second
+    // records fetched ahead of the message handler
+    private static final int PIPELINE_CAPACITY = 1000;
     
     private final AtomicBoolean running = new AtomicBoolean(false);
     private final AtomicBoolean reconnecting = new AtomicBoolean(false);
@@ -49,6 +60,15 @@ public class TradesConsumer {
     private Thread consumerThread;
     private Consumer<String, String> consumer;
     private long lastOffset = -1;
+    // offset of the record last fetched; the fetch thread resumes after it when reconnecting
+    private volatile long fetchedOffset = -1;
+    // fetched records in offset order, each completed by the decode pool
+    private final BlockingQueue<FetchedRecord> pipeline = new ArrayBlockingQueue<>(PIPELINE_CAPACITY);
+    // offset the consumer starts at; 0 for the beginning of the topic
+    private long startOffset = 0;
+    // offset the consumer stops at (exclusive); -1 to follow the topic
+    private long endOffset = -1;
+    private volatile boolean endReached = false;
     
     // Simplified message handler interface
     public interface MessageHandler {
@@ -56,6 +76,37 @@ public class TradesConsumer {
     }
     
     private MessageHandler messageHandler;
+
+    /**
+     * A record on its way to the message handler; without a trade it marks the position the consumer reached after a
+     * poll.
+     */
+    private record FetchedRecord(long offset, CompletableFuture<Trade> trade) {
+    }
+
+    /**
+     * The pool decoding the records of all consumers; consumer.decode.threads (0 for one per core) daemon threads, created on
+     * first use.
+     */
+    private static final class DecodePool {
+        static final ExecutorService EXECUTOR = create();
+
+        private static ExecutorService create() {
+            String configured = PropertiesUtil.getProperty("consumer.decode.threads");
+            int threads = configured != null && Integer.parseInt(configured.trim()) > 0
+                ? Integer.parseInt(configured.trim()) : Runtime.getRuntime().availableProcessors();
+            AtomicInteger threadNumber = new AtomicInteger();
+            return Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "trades-decode-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // one-shot listener fired once the consumer has passed positionListenerOffset
+    private Runnable positionListener;
+    private long positionListenerOffset = -1;
     
     /**
      * Registers a message handler to receive Trade objects.
@@ -67,7 +118,104 @@ public class TradesConsumer {
     }
     
     /**
-     * Starts the consumer in a separate thread.
+     * Registers a listener that is called once, on the consumer thread, when every record before the given offset
+     * has been handed to the message handler - either when the first record at or past the offset arrives, or when
+     * the consumer's position reaches it while the topic is idle.
+     *
+     * @param offset   the offset to wait for
+     * @param listener called once the consumer has passed the offset
+     */
+    public void notifyAtOffset(long offset, Runnable listener) {
+        this.positionListenerOffset = offset;
+        this.positionListener = listener;
+    }
+
+    /**
+     * Makes the consumer start at the given offset instead of the beginning of the topic, e.g. to resume a backtest
+     * from a trader checkpoint. Must be called before the consumer is started.
+     *
+     * @param offset the first offset to consume
+     */
+    public void setStartOffset(long offset) {
+        this.startOffset = offset;
+    }
+
+    /**
+     * Makes the consumer stop once every record before the given offset has been handed to the message handler, e.g.
+     * at the end of a time range (see offsetsForTimes). Must be called before the consumer is started.
+     *
+     * @param offset the first offset not to consume; -1 to follow the topic
+     */
+    public void setEndOffset(long offset) {
+        this.endOffset = offset;
+    }
+
+    /**
+     * Resolves a time range to the offsets of the topic, by record timestamps (the trades' times, see TradesProducer),
+     * so that replaying a range only reads the range.
+     *
+     * @param fromMillis start of the range in epoch millis; 0 for the beginning of the topic
+     * @param toMillis   end (exclusive) of the range in epoch millis; 0 for the current end of the topic
+     * @return the first offset at or after fromMillis and the first offset at or after toMillis; the current end
+     * offset of the topic where no record is that late
+     */
+    public long[] offsetsForTimes(long fromMillis, long toMillis) {
+        try (Consumer<String, String> lookup = createConsumer()) {
+            return offsetsForTimes(lookup, fromMillis, toMillis);
+        }
+    }
+
+    static long[] offsetsForTimes(Consumer<String, String> lookup, long fromMillis, long toMillis) {
+        TopicPartition partition = new TopicPartition(TOPIC, PARTITION);
+        Set<TopicPartition> partitions = Collections.singleton(partition);
+        long end = lookup.endOffsets(partitions).get(partition);
+        long from = fromMillis > 0 ? offsetForTime(lookup, partition, fromMillis, end)
+            : lookup.beginningOffsets(partitions).get(partition);
+        long to = toMillis > 0 ? offsetForTime(lookup, partition, toMillis, end) : end;
+        logger.info("Time range [{}, {}) is offsets [{}, {})", fromMillis, toMillis, from, to);
+        return new long[] {from, Math.max(from, to)};
+    }
+
+    /**
+     * @return whether the consumer stopped because it reached its end offset
+     */
+    public boolean isEndReached() {
+        return endReached;
+    }
+
+    /**
+     * @return the current end offset of the topic, i.e. the offset of the next record to be curated
+     */
+    public long fetchEndOffset() {
+        TopicPartition partition = new TopicPartition(TOPIC, PARTITION);
+        try (Consumer<String, String> lookup = createConsumer()) {
+            return lookup.endOffsets(Collections.singleton(partition)).get(partition);
+        }
+    }
+
+    private static long offsetForTime(Consumer<String, String> lookup, TopicPartition partition, long millis,
+                                      long end) {
+        OffsetAndTimestamp found = lookup.offsetsForTimes(Map.of(partition, millis)).get(partition);
+        return found != null ? found.offset() : end;
+    }
+
+    /**
+     * @return offset of the record currently (or last) handed to the message handler; -1 before the first record
+     */
+    public long getLastOffset() {
+        return lastOffset;
+    }
+
+    private void firePositionListener(long position) {
+        Runnable listener = positionListener;
+        if (listener != null && position >= positionListenerOffset) {
+            positionListener = null;
+            listener.run();
+        }
+    }
+
+    /**
+     * Starts the consumer in a separate (virtual) thread.
      * If the consumer is already running, this method does nothing.
      * 
      * @return true if the consumer was started, false if it was already running
@@ -78,8 +226,24 @@ public class TradesConsumer {
             return false;
         }
         
-        consumerThread = new Thread(this::consumeMessages);
-        consumerThread.start();
+        consumerThread = Thread.ofVirtual().name("trades-consumer-" + System.nanoTime()).start(this::consumeMessages);
+        return true;
+    }
+
+    /**
+     * Runs the consumer loop on the calling thread until it is stopped, the handler asks to stop, or the calling
+     * thread is interrupted. Meant for callers that already run on a dedicated (virtual) worker thread.
+     *
+     * @return false if the consumer was already running, true once the loop has finished
+     */
+    public boolean runConsumer() {
+        if (running.get()) {
+            logger.info("Consumer is already running");
+            return false;
+        }
+
+        consumerThread = Thread.currentThread();
+        consumeMessages();
         return true;
     }
     
@@ -106,7 +270,10 @@ public class TradesConsumer {
         }
         
         try {
-            consumerThread.join(5000); // Wait up to 5 seconds for the thread to finish
+            // the consumer may be running on the caller's own thread (see runConsumer)
+            if (consumerThread != null && consumerThread != Thread.currentThread()) {
+                consumerThread.join(5000); // Wait up to 5 seconds for the thread to finish
+            }
         } catch (InterruptedException e) {
             logger.error("Interrupted while waiting for consumer thread to finish", e);
             Thread.currentThread().interrupt();
@@ -142,6 +309,13 @@ public class TradesConsumer {
         return props;
     }
     
+    /**
+     * @return a new consumer of the Kafka cluster; a mock one in tests
+     */
+    Consumer<String, String> createConsumer() {
+        return new KafkaConsumer<>(createConsumerProperties());
+    }
+
     /**
      * Attempts to reconnect to Kafka with exponential backoff
      * 
@@ -178,20 +352,13 @@ public class TradesConsumer {
             
             // Create a new consumer
             try {
-                consumer = new KafkaConsumer<>(createConsumerProperties());
+                consumer = createConsumer();
                 
                 // Manually assign to the partition
                 TopicPartition partition = new TopicPartition(TOPIC, PARTITION);
                 consumer.assign(Collections.singleton(partition));
                 
-                // If we have a last offset, seek to it; otherwise start from the beginning
-                if (lastOffset >= 0) {
-                    logger.info("Seeking to last processed offset: {}", lastOffset + 1);
-                    consumer.seek(partition, lastOffset + 1);
-                } else {
-                    logger.info("Starting from the beginning of the topic");
-                    consumer.seekToBeginning(Collections.singleton(partition));
-                }
+                seekToResume(partition);
                 
                 // Test the connection with a poll
                 consumer.poll(Duration.ofMillis(100));
@@ -221,117 +388,100 @@ public class TradesConsumer {
     }
     
     /**
-     * Main consumer loop that processes messages from Kafka.
-     * This method runs in a separate thread.
+     * Seeks past the record last fetched, or to the start offset (the beginning of the topic if none) if no record was
+     * fetched yet; the same on the first connect and on reconnects.
+     */
+    private void seekToResume(TopicPartition partition) {
+        if (fetchedOffset >= 0) {
+            logger.info("Seeking to last fetched offset: {}", fetchedOffset + 1);
+            consumer.seek(partition, fetchedOffset + 1);
+        } else if (startOffset > 0) {
+            consumer.seek(partition, startOffset);
+            logger.info("Starting from offset {}", startOffset);
+        } else {
+            consumer.seekToBeginning(Collections.singleton(partition));
+            logger.info("Starting from the beginning of the topic");
+        }
+    }
+
+    /**
+     * Main consumer loop: the message handler stage of the pipeline. Runs on the consumer thread (see startConsumer /
+     * runConsumer) and starts the fetch stage on a thread of its own; records are decoded by the shared decode pool in
+     * between, and handed to the message handler in offset order.
      */
     private void consumeMessages() {
         running.set(true);
+        // a restarted consumer starts over at the start offset, not after the records of its previous run
+        fetchedOffset = -1;
         logger.info("Starting Kafka consumer for topic: {}", TOPIC);
         
+        Thread fetchThread = null;
+        boolean interrupted = false;
         try {
-            consumer = new KafkaConsumer<>(createConsumerProperties());
+            consumer = createConsumer();
             
-            // Manually assign to the partition and seek to the beginning
+            // Manually assign to the partition and seek to the requested start offset (or the beginning)
             TopicPartition partition = new TopicPartition(TOPIC, PARTITION);
             consumer.assign(Collections.singleton(partition));
-            consumer.seekToBeginning(Collections.singleton(partition));
-            
             logger.info("Consumer assigned to partition: {}-{}", TOPIC, PARTITION);
-            logger.info("Starting from the beginning of the topic");
+            seekToResume(partition);
+            // from here on only the fetch thread uses the Kafka consumer, until it is joined below
+            fetchThread = Thread.ofVirtual().name("trades-fetch-" + System.nanoTime())
+                .start(() -> fetchRecords(partition));
             
             // Statistics counter
             int totalMessages = 0;
             
             // Process messages until stopped
-            while (running.get()) {
-                try {
-                    ConsumerRecords<String, String> records = consumer.poll(Duration.ofMillis(1000));
-                    
-                    if (records.count() > 0) {
-                        logger.debug("Received {} records", records.count());
-
-
-                        // going through the messages in a loop
-                        for (ConsumerRecord<String, String> record : records) {
-                            // Update last offset for recovery purposes
-                            lastOffset = record.offset();
-                            
-                            totalMessages++;
-                            Trade trade = unpackTrade(record);
-                            // skip if there is no order book payload with the record
-                            if (trade == null || trade.getObp() == null) {
-                                break;
-                            }
-                            // there are some bad record where the price is likely set in pesos, not dollars - we should
-                            // skip processing those!
-                            if (trade.getObp().getBids().length > 0) {
-                                // if the current trade's ask price is more than a million then must have a contaminated
-                                // kafka record that is in pesos - so skip processing this
-                                if (trade.getObp().getAsks()[0].getP().compareTo(BigDecimal.valueOf(1000000)) > 0) {
-                                    break;
-                                }
-                            }
-                            
-                            // Notify message handler if registered
-                            if (messageHandler != null && trade != null) {
-                                // Ensure OrderBookPayload is not null to prevent NullPointerException
-
-                                boolean continueProcessing = messageHandler.handleMessage(trade);
-                                // set the current trade as the previous trade
-
-                                if (!continueProcessing) {
-                                    logger.info("Message handler requested to stop processing");
-                                    running.set(false);
-                                    break;
-                                }
-                            }
-                        }
-                    } else {
-                        logger.debug("Message does not contain orderbook payload");
-                    }
-                } catch (WakeupException e) {
-                    // Ignore exception if closing
-                    if (!running.get()) {
-                        logger.info("Consumer woken up as part of shutdown");
-                    } else {
-                        logger.warn("Unexpected wakeup exception", e);
-                    }
-                } catch (AuthorizationException e) {
-                    logger.error("Authorization error: {}", e.getMessage());
-                    running.set(false);
-                } catch (KafkaException e) {
-                    logger.error("Kafka error: {}", e.getMessage());
-                    
-                    // Try to reconnect
-                    if (running.get()) {
-                        logger.info("Attempting to reconnect due to Kafka error");
-                        boolean reconnected = reconnect();
-                        if (!reconnected && reconnectAttempts.get() >= MAX_RECONNECT_ATTEMPTS) {
-                            logger.error("Failed to reconnect after {} attempts, stopping consumer", MAX_RECONNECT_ATTEMPTS);
-                            running.set(false);
-                        }
-                    }
-                } catch (Exception e) {
-                    logger.error("Unexpected error in consumer loop: {}", e.getMessage(), e);
-                    
-                    // Try to reconnect on unexpected errors
-                    if (running.get()) {
-                        logger.info("Attempting to reconnect due to unexpected error");
-                        boolean reconnected = reconnect();
-                        if (!reconnected && reconnectAttempts.get() >= MAX_RECONNECT_ATTEMPTS) {
-                            logger.error("Failed to reconnect after {} attempts, stopping consumer", MAX_RECONNECT_ATTEMPTS);
-                            running.set(false);
-                        }
+            while (running.get() && !Thread.currentThread().isInterrupted()) {
+                FetchedRecord fetched = pipeline.poll(100, TimeUnit.MILLISECONDS);
+                if (fetched == null) {
+                    continue;
+                }
+                if (fetched.trade() == null) {
+                    // the topic may have no record at the listener's offset yet
+                    firePositionListener(fetched.offset());
+                    stopAtEnd(fetched.offset());
+                    continue;
+                }
+                if (stopAtEnd(fetched.offset())) {
+                    continue;
+                }
+                firePositionListener(fetched.offset());
+                // Update last offset for recovery purposes
+                lastOffset = fetched.offset();
+                
+                totalMessages++;
+                Trade trade = decoded(fetched);
+                if (trade == null) {
+                    continue;
+                }
+                
+                // Notify message handler if registered
+                if (messageHandler != null) {
+                    boolean continueProcessing = messageHandler.handleMessage(trade);
+                    if (!continueProcessing) {
+                        logger.info("Message handler requested to stop processing");
+                        running.set(false);
                     }
                 }
             }
             
             logger.info("Consumer stopped. Processed {} total messages", totalMessages);
+        } catch (InterruptedException e) {
+            // the worker thread was interrupted (e.g. its websocket session closed) - stop
+            logger.info("Consumer thread interrupted, stopping");
+            interrupted = true;
         } catch (Exception e) {
             logger.error("Error initializing Kafka consumer", e);
         } finally {
             running.set(false);
             
+            if (fetchThread != null) {
+                consumer.wakeup();
+                interrupted |= joinUninterruptibly(fetchThread);
+            }
+            pipeline.clear();
             // Close the consumer
             if (consumer != null) {
                 try {
@@ -340,129 +490,154 @@ public class TradesConsumer {
                     logger.warn("Error closing consumer: {}", e.getMessage());
                 }
             }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
     
     /**
-     * Unpacks a Kafka record into a Trade object by deserializing the JSON value.
-     * 
-     * @param record The Kafka record to process
-     * @return The deserialized Trade object, or null if processing failed
+     * The fetch stage: polls the topic until the consumer stops, submitting each record to the decode pool and
+     * queueing it, in offset order, for the handler stage. Reconnects on Kafka errors.
      */
-    private Trade unpackTrade(ConsumerRecord<String, String> record) {
-        try {
-            String key = record.key();
-            String value = record.value();
-            
-            // Log basic record info
-            // logger.info("Processing record from {}-{} at offset {} with key: {}", 
-            //         record.topic(), record.partition(), record.offset(), key);
-            
-            // Check if it's a test/heartbeat message
-            if (key != null && key.startsWith("test")) {
-                // Change from INFO to DEBUG to reduce log verbosity
-                logger.debug("Skipping test/heartbeat message with key: {}", key);
-                return null;
-            }
-            
-            // Try to parse as a Trade object
+    private void fetchRecords(TopicPartition partition) {
+        while (running.get()) {
             try {
-                // For numeric keys, we expect JSON with trade data
-                if (key != null && key.matches("\\d+")) {
-                    // Extract the orderbook payload from the JSON
-                    if (value.contains("\"obp\"")) {
-                        // Log the first part of the JSON for debugging
-                        // logger.info("Processing JSON message: {}", value.length() > 100 ? value.substring(0, 100) + "..." : value);
-                        
-                        try {
-                            // Directly deserialize to TradeWs
-                            TradeWs tradeWs = objectMapper.readValue(value, TradeWs.class);
-                            
-                            if (tradeWs != null) {
-                                // Validate essential fields
-                                if (tradeWs.getTid() == null) {
-                                    logger.warn("Trade ID is null, generating a placeholder ID");
-                                    tradeWs.setTid(System.currentTimeMillis()); // Use current time as fallback ID
-                                }
-                                
-                                if (tradeWs.getPrice() == null) {
-                                    logger.warn("Trade price is null, skipping this trade");
-                                    return null;
-                                }
-                                
-                                // Log trade details
-                                // logger.info("Processed Trade ID: {} with price: {} and amount: {}", 
-                                //         tradeWs.getTid(), 
-                                //         tradeWs.getPrice(),
-                                //         tradeWs.getAmount());
-                                
-                                return tradeWs;
-                            } else {
-                                logger.warn("Deserialized TradeWs is null");
-                            }
-                        } catch (Exception e) {
-                            logger.error("Error deserializing trade: {}", e.getMessage(), e);
-                            
-                            // Try to extract essential fields manually as a fallback
-                            try {
-                                JsonNode rootNode = objectMapper.readTree(value);
-                                
-                                // Extract essential fields
-                                Long tid = rootNode.has("tid") ? rootNode.get("tid").asLong() : System.currentTimeMillis();
-                                BigDecimal price = rootNode.has("price") ? new BigDecimal(rootNode.get("price").asText()) : null;
-                                BigDecimal amount = rootNode.has("amount") ? new BigDecimal(rootNode.get("amount").asText()) : null;
-                                String makerSide = rootNode.has("makerSide") ? rootNode.get("makerSide").asText() : "buy";
-                                String createdAt = rootNode.has("createdAt") ? rootNode.get("createdAt").asText() : 
-                                                  ZonedDateTime.now(ZoneOffset.UTC).toString();
-                                
-                                // Skip if price is null
-                                if (price == null) {
-                                    logger.warn("Trade price is null in manual extraction, skipping this trade");
-                                    return null;
-                                }
-                                
-                                // Create trade manually
-                                Trade trade = Trade.builder()
-                                    .tid(tid)
-                                    .price(price)
-                                    .amount(amount)
-                                    .makerSide(makerSide)
-                                    .createdAt(createdAt)
-                                    .build();
-                                
-                                // Try to extract orderbook if available
-                                if (rootNode.has("obp") && !rootNode.get("obp").isNull()) {
-                                    try {
-                                        OrderBookPayload obp = objectMapper.treeToValue(rootNode.get("obp"), OrderBookPayload.class);
-                                        trade.setObp(obp);
-                                    } catch (Exception obpEx) {
-                                        logger.warn("Could not parse orderbook payload: {}", obpEx.getMessage());
-                                    }
-                                }
-                                
-                                logger.debug("Manually extracted Trade ID: {} with price: {} and amount: {}",
-                                        trade.getTid(), trade.getPrice(), trade.getAmount());
-                                
-                                return trade;
-                            } catch (Exception ex) {
-                                logger.error("Manual extraction also failed: {}", ex.getMessage());
-                            }
-                        }
-                    } else {
-                        logger.debug("Message does not contain orderbook payload");
+                ConsumerRecords<String, String> records = consumer.poll(Duration.ofMillis(1000));
+                if (records.count() > 0) {
+                    logger.debug("Received {} records", records.count());
+                }
+                for (ConsumerRecord<String, String> record : records) {
+                    fetchedOffset = record.offset();
+                    if (!handOff(new FetchedRecord(record.offset(), decode(record)))) {
+                        return;
                     }
+                }
+                if ((positionListener != null || endOffset >= 0)
+                    && !handOff(new FetchedRecord(consumer.position(partition), null))) {
+                    return;
+                }
+            } catch (WakeupException e) {
+                // Ignore exception if closing
+                if (!running.get()) {
+                    logger.info("Consumer woken up as part of shutdown");
                 } else {
-                    logger.debug("Message with key {} doesn't match expected format", key);
+                    logger.warn("Unexpected wakeup exception", e);
+                }
+            } catch (InterruptException e) {
+                logger.info("Fetch thread interrupted, stopping");
+                running.set(false);
+            } catch (AuthorizationException e) {
+                logger.error("Authorization error: {}", e.getMessage());
+                running.set(false);
+            } catch (KafkaException e) {
+                logger.error("Kafka error: {}", e.getMessage());
+                
+                // Try to reconnect
+                if (running.get()) {
+                    logger.info("Attempting to reconnect due to Kafka error");
+                    boolean reconnected = reconnect();
+                    if (!reconnected && reconnectAttempts.get() >= MAX_RECONNECT_ATTEMPTS) {
+                        logger.error("Failed to reconnect after {} attempts, stopping consumer", MAX_RECONNECT_ATTEMPTS);
+                        running.set(false);
+                    }
                 }
             } catch (Exception e) {
-                logger.error("Error processing record value: {}", value, e);
+                logger.error("Unexpected error in consumer loop: {}", e.getMessage(), e);
+                
+                // Try to reconnect on unexpected errors
+                if (running.get()) {
+                    logger.info("Attempting to reconnect due to unexpected error");
+                    boolean reconnected = reconnect();
+                    if (!reconnected && reconnectAttempts.get() >= MAX_RECONNECT_ATTEMPTS) {
+                        logger.error("Failed to reconnect after {} attempts, stopping consumer", MAX_RECONNECT_ATTEMPTS);
+                        running.set(false);
+                    }
+                }
             }
-            
-        } catch (Exception e) {
-            logger.error("Error processing Kafka record", e);
         }
-        
-        return null;
+    }
+    
+    /**
+     * Stops the consumer once it has reached the end offset.
+     *
+     * @return whether it has
+     */
+    private boolean stopAtEnd(long offset) {
+        if (endOffset < 0 || offset < endOffset) {
+            return false;
+        }
+        logger.info("Reached end offset {}", endOffset);
+        endReached = true;
+        running.set(false);
+        return true;
+    }
+
+    /**
+     * Queues a fetched record for the handler stage, waiting while the pipeline is full.
+     *
+     * @return false if the consumer stopped first
+     */
+    private boolean handOff(FetchedRecord fetched) {
+        try {
+            while (running.get()) {
+                if (pipeline.offer(fetched, 100, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            running.set(false);
+        }
+        return false;
+    }
+    
+    /**
+     * @return the trade decoded from the record, or null if it could not be decoded
+     */
+    private static Trade decoded(FetchedRecord fetched) throws InterruptedException {
+        try {
+            return fetched.trade().get();
+        } catch (ExecutionException e) {
+            logger.error("Error decoding record at offset {}", fetched.offset(), e.getCause());
+            return null;
+        }
+    }
+    
+    /**
+     * @return true if the calling thread was interrupted while waiting
+     */
+    private static boolean joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                return interrupted;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+    }
+    
+    /**
+     * The decode stage: decodes the record on the shared decode pool. The futures of consecutive records may complete
+     * in any order; the handler stage waits for each in turn.
+     */
+    CompletableFuture<Trade> decode(ConsumerRecord<String, String> record) {
+        return CompletableFuture.supplyAsync(() -> unpackTrade(record), DecodePool.EXECUTOR);
+    }
+
+    /**
+     * Unpacks a curated Kafka record into a Trade object.
+     * 
+     * @param record The Kafka record to process
+     * @return The deserialized Trade object, or null if the record is not in the curated format
+     */
+    static Trade unpackTrade(ConsumerRecord<String, String> record) {
+        Trade trade = record.value() != null ? CuratedTradeCodec.decode(record.value()) : null;
+        if (trade == null) {
+            logger.warn("Skipping record at offset {} that is not a curated trade", record.offset());
+        }
+        return trade;
     }
     
     /**
@@ -3,6 +3,7 @@ package com.ibbe.kafka;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ibbe.entity.BitsoDataAggregator;
+import com.ibbe.entity.Trade;
 import com.ibbe.entity.TradeWs;
 import com.ibbe.util.PropertiesUtil;
 import org.apache.kafka.clients.producer.KafkaProducer;
@@ -150,7 +151,16 @@ public class TradesProducer {
   }
 
   /**
-   * Produces a Kafka message with the trade data
+   * @return the trade's time in epoch millis, to stamp its record with so that time ranges can be looked up with
+   * offsetsForTimes; null (the time of sending) if the trade has no parseable time
+   */
+  static Long eventTime(TradeWs tradeWs) {
+    long millis = tradeWs.getCreatedAtMillis();
+    return millis != Trade.NO_TIME ? millis : null;
+  }
+
+  /**
+   * Produces a Kafka message with the trade data, stamped with the trade's time
    * @todo investigate if this method would also work with Trade as an input object; as then we could also parse into
    * trade when we read stuff out
    */
@@ -172,7 +182,7 @@ public class TradesProducer {
       attempts++;
       
       try {
-        producer.send(new ProducerRecord<>("bitso-trades", messageKey, messageValue), 
+        producer.send(new ProducerRecord<>("bitso-trades", null, eventTime(tradeWs), messageKey, messageValue),
             (metadata, exception) -> {
               if (exception != null) {
                 LOGGER.error("Error sending message to Kafka: {}", exception.getMessage());
@@ -338,6 +348,13 @@ public class TradesProducer {
     }
   }
   
+  /**
+   * Blocks until the messages sent so far are acknowledged (or have failed).
+   */
+  public void flush() {
+    producer.flush();
+  }
+  
   /**
    * Manually triggers a reconnection to Kafka.
    */
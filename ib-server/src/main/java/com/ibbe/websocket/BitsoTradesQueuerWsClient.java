@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ibbe.entity.BitsoDataAggregator;
 import com.ibbe.entity.TradeWs;
 import com.ibbe.entity.TradesWs;
+import com.ibbe.kafka.TradeIngestGuard;
 import com.ibbe.kafka.TradesProducer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +48,8 @@ public class BitsoTradesQueuerWsClient
   private BitsoDataAggregator bitsoDataAggregator;
   @Autowired
   private TradesProducer tradesProducer;
+  @Autowired
+  private TradeIngestGuard tradeIngestGuard;
 
 
   public BitsoTradesQueuerWsClient() {
@@ -93,6 +96,7 @@ public class BitsoTradesQueuerWsClient
   /**
    * Bitso Websocket callback method for each trade message
    * for each trade received
+   * - drop it if it was already received (e.g. again after a reconnect)
    * - enhance object for internal use
    * - add to the BitsoDataAggregator trades queue
    * - send to Kafka for playback together with the orderbook
@@ -107,6 +111,9 @@ public class BitsoTradesQueuerWsClient
       // check if it is not a keep alive message
       if (tradesWs.isTrade() && tradesWs.getPayload() != null) {
         TradeWs tradeWs = tradesWs.getPayload()[0];
+        if (!tradeIngestGuard.admit(tradeWs)) {
+          return;
+        }
         //multiply TID by 10 so pretend trades can be inserted in between
         tradeWs.setTid(tradeWs.getTid() * 10);
         // internalize tradeWs object preparing it for use in ib app
@@ -0,0 +1,94 @@
+package com.ibbe.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibbe.entity.MonteCarloRequest;
+import com.ibbe.executor.MonteCarloSimulator;
+import com.ibbe.executor.SessionExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * WebSocket endpoint for Monte Carlo robustness runs.
+ * Expects a MonteCarloRequest as the message payload and streams MonteCarloBands back while the simulations run;
+ * a new request on the same session replaces the running one.
+ */
+@Component
+public class MonteCarloEndpoint extends TextWebSocketHandler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MonteCarloEndpoint.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private SessionExecutor sessionExecutor;
+
+    @Autowired
+    private MonteCarloSimulator monteCarloSimulator;
+
+    @Override
+    public void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        try {
+            MonteCarloRequest request = objectMapper.readValue(message.getPayload(), MonteCarloRequest.class);
+            LOGGER.info("Received Monte Carlo request from client {}: {}", session.getId(), request);
+            sessionExecutor.cancel(session.getId());
+            sessionExecutor.submit(session.getId(), () -> simulate(session, request));
+        } catch (Exception e) {
+            LOGGER.error("Error processing client message", e);
+            sendErrorMessage(session, "Error processing request: " + e.getMessage());
+        }
+    }
+
+    /**
+     * runs on the session's virtual thread; the simulations themselves run on the compute pool
+     */
+    private void simulate(WebSocketSession session, MonteCarloRequest request) {
+        try {
+            monteCarloSimulator.run(request, bands -> {
+                try {
+                    session.sendMessage(new TextMessage(objectMapper.writeValueAsString(bands)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (InterruptedException e) {
+            LOGGER.info("Monte Carlo run of session {} cancelled", session.getId());
+        } catch (Exception e) {
+            LOGGER.error("Error running Monte Carlo simulations", e);
+            try {
+                if (session.isOpen()) {
+                    sendErrorMessage(session, "Error running simulations: " + e.getMessage());
+                }
+            } catch (IOException ex) {
+                LOGGER.error("Error sending error message to client", ex);
+            }
+        }
+    }
+
+    private void sendErrorMessage(WebSocketSession session, String errorMessage) throws IOException {
+        Map<String, Object> errorData = new HashMap<>();
+        errorData.put("error", true);
+        errorData.put("message", errorMessage);
+        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(errorData)));
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        LOGGER.info("WebSocket connection closed: {}, status: {}", session.getId(), status);
+        sessionExecutor.cancel(session.getId());
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        LOGGER.error("WebSocket transport error: {}", exception.getMessage());
+        afterConnectionClosed(session, CloseStatus.SERVER_ERROR);
+    }
+}
@@ -1,23 +1,50 @@
 package com.ibbe.websocket;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ibbe.entity.BitsoDataAggregator;
 import com.ibbe.entity.OrderBook;
 import com.ibbe.entity.OrderBookPayload;
+import com.ibbe.entity.TradeWs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
 
 import jakarta.annotation.PostConstruct;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Broadcasts the orderbook and the most recent trades to the STOMP topics.
+ * The broadcast is versioned: the payloads are serialized only when the book sequence or the tail of the recent
+ * trades changed, and the same bytes are then fanned out to all subscribers (no per-subscriber conversion).
+ * <ul>
+ *   <li>/topic/orderbook - full book depth (ChartWindow)</li>
+ *   <li>/topic/orderbook/top - book limited to displaydata.topx levels per side (TradingWindow)</li>
+ * </ul>
+ */
 @Service
 public class OrderbookPublisherService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(OrderbookPublisherService.class);
+    static final String ORDERBOOK_TOPIC = "/topic/orderbook";
+    static final String ORDERBOOK_TOP_TOPIC = "/topic/orderbook/top";
+    // number of most recent trades shipped with the book
+    private static final int RECENT_TRADES = 20;
+
     private final AtomicLong messageCount = new AtomicLong(0);
+    private final AtomicLong skippedCount = new AtomicLong(0);
     private long startTime;
 
     @Autowired
@@ -25,48 +52,109 @@ public class OrderbookPublisherService {
 
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${displaydata.topx:10}")
+    private int topX;
+
+    // version of the last serialized broadcast
+    private long publishedSequence = Long.MIN_VALUE;
+    private Long publishedTid = null;
+    // serialized payloads of the last broadcast, re-sent as-is when a new subscriber shows up
+    private byte[] fullPayload;
+    private byte[] topPayload;
+    private volatile boolean resendRequested = false;
     
     @PostConstruct
     public void init() {
         startTime = System.currentTimeMillis();
-        LOGGER.info("OrderbookPublisherService initialized - will publish orderbook data to /topic/orderbook every 2 seconds");
+        LOGGER.info("OrderbookPublisherService initialized - will publish orderbook data to {} every 2 seconds when changed",
+            ORDERBOOK_TOPIC);
     }
 
     /**
-     * Publishes orderbook data to the STOMP broker every 2 seconds
+     * New subscribers would otherwise wait for the next change of the book; have the cached payloads re-sent.
+     */
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        String destination = SimpMessageHeaderAccessor.getDestination(event.getMessage().getHeaders());
+        if (destination != null && destination.startsWith(ORDERBOOK_TOPIC)) {
+            resendRequested = true;
+        }
+    }
+
+    /**
+     * Publishes orderbook data to the STOMP broker every 2 seconds, if the book or the trade tail changed
      */
     @Scheduled(fixedRate = 2000)
     public void publishOrderbookData() {
         try {
             OrderBookPayload obp = bitsoDataAggregator.getOrderbookPayload();
-            if (obp != null) {
-                OrderBook orderBook = new OrderBook(true, obp);
-                
-                // Add recent trades to the orderbook
-                Object[] recentTrades = bitsoDataAggregator.getRecentTrades();
-                // If there are too many trades, limit to the most recent 20
-                if (recentTrades != null && recentTrades.length > 20) {
-                    Object[] limitedTrades = new Object[20];
-                    System.arraycopy(recentTrades, recentTrades.length - 20, limitedTrades, 0, 20);
-                    orderBook.setTrades(limitedTrades);
-                } else {
-                    orderBook.setTrades(recentTrades);
-                }
-                
-                // Publish to the STOMP topic
-                messagingTemplate.convertAndSend("/topic/orderbook", orderBook);
-                
-                // Log every 100 messages or at debug level
-                long count = messageCount.incrementAndGet();
-                if (count % 100 == 0) {
-                    long uptime = (System.currentTimeMillis() - startTime) / 1000;
-                    LOGGER.info("Published {} orderbook messages to /topic/orderbook in {} seconds", count, uptime);
-                } else {
-                    LOGGER.debug("Published orderbook data to /topic/orderbook (message #{})", count);
-                }
+            if (obp == null) {
+                return;
+            }
+            TradeWs mostRecentTrade = bitsoDataAggregator.getMostRecentTrade();
+            Long tid = mostRecentTrade != null ? mostRecentTrade.getTid() : null;
+
+            boolean changed = fullPayload == null || obp.getSequence() != publishedSequence
+                || (tid != null && !tid.equals(publishedTid));
+            if (changed) {
+                serialize(obp);
+                publishedSequence = obp.getSequence();
+                publishedTid = tid;
+            } else if (!resendRequested) {
+                skippedCount.incrementAndGet();
+                return;
+            }
+            resendRequested = false;
+
+            // Publish the same bytes to all subscribers of each STOMP topic
+            messagingTemplate.send(ORDERBOOK_TOPIC, jsonMessage(fullPayload));
+            messagingTemplate.send(ORDERBOOK_TOP_TOPIC, jsonMessage(topPayload));
+
+            // Log every 100 messages or at debug level
+            long count = messageCount.incrementAndGet();
+            if (count % 100 == 0) {
+                long uptime = (System.currentTimeMillis() - startTime) / 1000;
+                LOGGER.info("Published {} orderbook messages ({} unchanged skipped) to {} in {} seconds",
+                    count, skippedCount.get(), ORDERBOOK_TOPIC, uptime);
+            } else {
+                LOGGER.debug("Published orderbook data to {} (message #{})", ORDERBOOK_TOPIC, count);
             }
         } catch (Exception e) {
             LOGGER.error("Error publishing orderbook data", e);
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * serializes the full and the depth-limited broadcast once for the current version
+     */
+    private void serialize(OrderBookPayload obp) throws JsonProcessingException {
+        // Add the most recent trades to the orderbook
+        Object[] recentTrades = bitsoDataAggregator.getRecentTrades(RECENT_TRADES);
+
+        OrderBook orderBook = new OrderBook(true, obp);
+        orderBook.setTrades(recentTrades);
+        fullPayload = objectMapper.writeValueAsBytes(orderBook);
+
+        OrderBookPayload topObp = new OrderBookPayload(
+            Arrays.copyOf(obp.getAsks(), Math.min(topX, obp.getAsks().length)),
+            Arrays.copyOf(obp.getBids(), Math.min(topX, obp.getBids().length)),
+            obp.getUpdated_at(), obp.getSequence());
+        OrderBook topOrderBook = new OrderBook(true, topObp);
+        topOrderBook.setTrades(recentTrades);
+        topPayload = objectMapper.writeValueAsBytes(topOrderBook);
+    }
+
+    /**
+     * wraps already serialized JSON so the messaging template passes it through without converting again
+     */
+    private static Message<byte[]> jsonMessage(byte[] json) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(json, accessor.getMessageHeaders());
+    }
+}
@@ -1,19 +1,30 @@
 package com.ibbe.websocket;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.ibbe.entity.OrderBookPayload;
+import com.ibbe.entity.ReplayRequest;
 import com.ibbe.entity.Trade;
 import com.ibbe.entity.TradeSnapshot;
 import com.ibbe.entity.TradeConfig;
 import com.ibbe.entity.ChunkInfo;
+import com.ibbe.executor.BacktestResultStore;
+import com.ibbe.executor.BacktestTally;
 import com.ibbe.executor.BasicTrader;
+import com.ibbe.executor.FeatureStore;
+import com.ibbe.executor.ReplayScheduler;
+import com.ibbe.executor.SessionExecutor;
+import com.ibbe.executor.TraderCheckpoint;
+import com.ibbe.executor.TraderCheckpointStore;
+import com.ibbe.executor.TradeFeatures;
 import com.ibbe.kafka.TradesConsumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
@@ -22,15 +33,12 @@ import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import java.io.IOException;
 
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 /**
@@ -42,15 +50,34 @@ public class PerformanceAnalysisEndpoint extends TextWebSocketHandler {
     private static final Logger LOGGER = LoggerFactory.getLogger(PerformanceAnalysisEndpoint.class);
     private final ObjectMapper objectMapper;
     
-    // Map to store active sessions and their associated executor services
-    private static final Set<WebSocketSession> activeSessions = Collections.synchronizedSet(new HashSet<>());
-    private final Map<String, ExecutorService> sessionExecutors = new HashMap<>();
-    private final Map<String, AtomicBoolean> sessionRunningFlags = new HashMap<>();
+    // Set of active sessions and their running flags; mutated from websocket and worker threads
+    private static final Set<WebSocketSession> activeSessions = ConcurrentHashMap.newKeySet();
+    private final Map<String, AtomicBoolean> sessionRunningFlags = new ConcurrentHashMap<>();
     
     // Map to store consumer instances
-    private final Map<String, TradesConsumer> sessionConsumers = new HashMap<>();
+    private final Map<String, TradesConsumer> sessionConsumers = new ConcurrentHashMap<>();
     
     private final Supplier<TradesConsumer> tradesConsumerSupplier;
+
+    // runs each session's replay on a virtual thread and cancels it when the session closes
+    @Autowired
+    private SessionExecutor sessionExecutor;
+
+    // trader state saved at each replay checkpoint, so later requests for the tail resume instead of replaying all
+    @Autowired
+    private TraderCheckpointStore checkpointStore;
+
+    // precomputed per-trade features; the part of the topic they cover is replayed from them instead of from Kafka
+    @Autowired
+    private FeatureStore featureStore;
+
+    // admits the replays to a bounded number of workers, interactive ones first and fairly between users
+    @Autowired
+    private ReplayScheduler replayScheduler;
+
+    // summaries of the replays that cover a whole range, for lookups and the leaderboard
+    @Autowired
+    private BacktestResultStore resultStore;
     
     // Constructor for Spring
     public PerformanceAnalysisEndpoint() {
@@ -70,7 +97,8 @@ public class PerformanceAnalysisEndpoint extends TextWebSocketHandler {
     
     /**
      * Receives the triggering WS message from PerformanceAnalysisClient on the FX side.
-     * Expects a TradeConfig object as the message payload.
+     * Expects a TradeConfig object as the message payload, or a ReplayRequest when the client already holds the
+     * results up to some offset and only needs the tail.
      * Start the Kafka consumer in a separate thread
      *
      */
@@ -84,22 +112,25 @@ public class PerformanceAnalysisEndpoint extends TextWebSocketHandler {
             
             LOGGER.info("Reset sequence counter for new client connection");
             
-            // Parse the trade configuration
-            TradeConfig tradeConfig = objectMapper.readValue(message.getPayload(), TradeConfig.class);
-            LOGGER.info("Analyzing performance for config - ID: {}, Ups: {}, Downs: {}", 
-                    tradeConfig.getId(), tradeConfig.getUps(), tradeConfig.getDowns());
+            // Parse the trade configuration - either bare or wrapped in a replay request
+            JsonNode payload = objectMapper.readTree(message.getPayload());
+            ReplayRequest replayRequest = payload.has("config")
+                    ? objectMapper.treeToValue(payload, ReplayRequest.class)
+                    : new ReplayRequest(objectMapper.treeToValue(payload, TradeConfig.class), 0, -1);
+            TradeConfig tradeConfig = replayRequest.getConfig();
+            LOGGER.info("Analyzing performance for config - ID: {}, Ups: {}, Downs: {}, from offset: {}", 
+                    tradeConfig.getId(), tradeConfig.getUps(), tradeConfig.getDowns(), replayRequest.getFromOffset());
             
-            // Create a running flag for this session
+            // A new request on the same session replaces the previous replay
             String sessionId = session.getId();
+            stopSessionWork(sessionId);
+
+            // Create a running flag for this session
             AtomicBoolean isRunning = new AtomicBoolean(true);
             sessionRunningFlags.put(sessionId, isRunning);
             
-            // Create an executor service for this session
-            ExecutorService executor = Executors.newSingleThreadExecutor();
-            sessionExecutors.put(sessionId, executor);
-            
-            // Start the Kafka consumer in a separate thread
-            executor.submit(() -> analyzeTradeConfigPerf(session, tradeConfig, isRunning));
+            // Run the Kafka consumer on a virtual thread owned by this session
+            sessionExecutor.submit(sessionId, () -> analyzeTradeConfigPerf(session, replayRequest, isRunning));
             
         } catch (Exception e) {
             LOGGER.error("Error processing client message", e);
@@ -111,39 +142,142 @@ public class PerformanceAnalysisEndpoint extends TextWebSocketHandler {
      * retrieve and process all Trades stored in Kafka
      * defines the MessageHandler for the Kafka message consumer
      * and sends performance data to the client.
+     * Runs on the session's virtual thread; the consumer loop runs inline until the session closes or the thread is
+     * interrupted by SessionExecutor.
+     * Trades before the request's fromOffset still go through the trader (its state depends on them) but their
+     * results are not sent - unless a trader checkpoint of the config at or before fromOffset exists, in which case
+     * the trader is restored from it and the replay starts at its offset. The trader state at the request's
+     * checkpointOffset is saved for the next request.
+     * The offsets the FeatureStore has materialized are replayed from their features; the consumer takes over after
+     * them.
+     * A request with a time range replays only the offsets of the range, resolved from the record timestamps, with a
+     * fresh trader and no checkpoints, and tells the client when the range is complete.
+     * The replay waits for a worker of the ReplayScheduler first; an open-ended one hands its worker back once it has
+     * caught up with the topic and only follows the live trades.
+     * The summary of the replay is saved to the BacktestResultStore when a time range is complete, or when an
+     * open-ended replay has caught up - unless it was resumed from a checkpoint, missing the chunks before it.
      */
-    private void analyzeTradeConfigPerf(WebSocketSession session, TradeConfig config, AtomicBoolean isRunning) {
+    private void analyzeTradeConfigPerf(WebSocketSession session, ReplayRequest request, AtomicBoolean isRunning) {
+        ReplayScheduler.Slot slot = null;
+        try {
+            if (replayScheduler != null) {
+                slot = replayScheduler.acquire(ownerOf(session), ReplayScheduler.Priority.INTERACTIVE,
+                        "config " + request.getConfig().getId() + " for session " + session.getId());
+            }
+            replay(session, request, isRunning, slot);
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Rejected replay for session {}: {}", session.getId(), e.getMessage());
+            try {
+                sendErrorMessage(session, "Server busy, try again later: " + e.getMessage());
+            } catch (IOException ex) {
+                LOGGER.error("Error sending error message to client", ex);
+            }
+        } catch (InterruptedException e) {
+            // the session closed or sent a new request while this replay was queued
+            Thread.currentThread().interrupt();
+        } finally {
+            if (slot != null) {
+                slot.close();
+            }
+        }
+    }
+
+    /**
+     * @param slot the worker of the replay; null when there is no scheduler
+     */
+    private void replay(WebSocketSession session, ReplayRequest request, AtomicBoolean isRunning,
+                        ReplayScheduler.Slot slot) {
         try {
             // Get consumer from supplier
             TradesConsumer sessionConsumer = tradesConsumerSupplier.get();
-            sessionConsumer.startConsumer();
 
             // objects to keep track of performance over many of the played back kafka trades
-            final BasicTrader trader = new BasicTrader(config);
-            
-            // Add processing rate control to avoid overwhelming the client
-            final AtomicInteger messageCounter = new AtomicInteger(0);
-            final long startTime = System.currentTimeMillis();
+            final BasicTrader trader = new BasicTrader(request.getConfig());
+            final String configHash = request.getConfig().canonicalHash();
+
+            // a time range replays its own offsets only, with a fresh trader
+            long[] range = request.hasTimeRange()
+                    ? sessionConsumer.offsetsForTimes(request.getFromTime(), request.getToTime()) : null;
+            long endOffset = range != null ? range[1] : -1;
+
+            // the client holds the results up to fromOffset, so any trader checkpoint up to there can be resumed from
+            TraderCheckpoint resumeFrom = checkpointStore != null && range == null && request.getFromOffset() > 0
+                    ? checkpointStore.findLatest(configHash, request.getFromOffset()) : null;
+            long startOffset = range != null ? range[0] : 0;
+            if (resumeFrom != null) {
+                trader.restore(resumeFrom);
+                startOffset = resumeFrom.getOffset();
+            }
+            final long rangeStart = startOffset;
+            final BacktestTally tally = resultStore != null && resumeFrom == null ? new BacktestTally() : null;
+
+            // tell the client once everything up to the checkpoint has been sent, so it can cache the results
+            long checkpointOffset = range == null ? request.getCheckpointOffset() : -1;
+            AtomicBoolean checkpointDone = new AtomicBoolean(checkpointOffset < 0);
+            Runnable onCheckpoint = () -> {
+                if (checkpointDone.compareAndSet(false, true)) {
+                    sendCheckpointMessage(session, checkpointOffset);
+                    if (checkpointStore != null) {
+                        checkpointStore.save(configHash, trader.checkpoint(checkpointOffset));
+                    }
+                }
+            };
+
+            startOffset = replayFromFeatures(session, request, isRunning, trader, tally, startOffset, endOffset,
+                    checkpointOffset, onCheckpoint);
+            if (startOffset < 0) {
+                return; // stopped while replaying features
+            }
+            if (endOffset >= 0 && startOffset >= endOffset) {
+                sendRangeCompleteMessage(session, endOffset);
+                saveSummary(tally, trader, request, rangeStart, endOffset);
+                return;
+            }
+            sessionConsumer.setStartOffset(startOffset);
+            sessionConsumer.setEndOffset(endOffset);
+
+            // from the end of the topic on, an open-ended replay only waits for live trades and needs no worker
+            long liveOffset = endOffset < 0 && (slot != null || tally != null) ? sessionConsumer.fetchEndOffset() : -1;
+            AtomicBoolean caughtUp = new AtomicBoolean(false);
+            Runnable onCaughtUp = () -> {
+                if (caughtUp.compareAndSet(false, true)) {
+                    if (slot != null) {
+                        slot.close();
+                    }
+                    saveSummary(tally, trader, request, rangeStart, liveOffset);
+                }
+            };
+            if (liveOffset >= 0 && liveOffset <= startOffset) {
+                onCaughtUp.run();
+            }
 
             // Register message handler - for each Kafka message call...
             sessionConsumer.registerMessageHandler(trade -> {
                 // Delegate to a testable method
-                return processKafkaTradeForPerformanceAnalysis(
-                        trade, session, isRunning, trader, this.objectMapper
+                boolean proceed = processKafkaTradeForPerformanceAnalysis(
+                        trade, session, isRunning, trader, this.objectMapper,
+                        sessionConsumer.getLastOffset() >= request.getFromOffset(), tally
                 );
+                if (liveOffset >= 0 && sessionConsumer.getLastOffset() >= liveOffset - 1) {
+                    onCaughtUp.run();
+                }
+                return proceed;
             });
+            if (!checkpointDone.get()) {
+                sessionConsumer.notifyAtOffset(checkpointOffset, onCheckpoint);
+            }
 
             // Store the consumer in a map for cleanup
             sessionConsumers.put(session.getId(), sessionConsumer);
 
-            // Wait until session is closed
-            while (isRunning.get() && session.isOpen()) {
-                Thread.sleep(1000);
+            // Consume on this thread until the handler stops it, the session closes or the thread is interrupted
+            sessionConsumer.runConsumer();
+            sessionConsumers.remove(session.getId(), sessionConsumer);
+            if (sessionConsumer.isEndReached() && session.isOpen()) {
+                sendRangeCompleteMessage(session, endOffset);
+                saveSummary(tally, trader, request, rangeStart, endOffset);
             }
 
-            // Stop the consumer when done
-            sessionConsumer.stopConsumer();
-
         } catch (Exception e) {
             LOGGER.error("Error processing Kafka messages", e);
             try {
@@ -154,6 +288,51 @@ public class PerformanceAnalysisEndpoint extends TextWebSocketHandler {
         }
     }
 
+    /**
+     * Replays the offsets from startOffset up to the end of the materialized features, or up to endOffset.
+     *
+     * @param endOffset the first offset not to replay; -1 for none
+     * @return the offset the Kafka consumer continues from; -1 if the session stopped meanwhile
+     */
+    private long replayFromFeatures(WebSocketSession session, ReplayRequest request, AtomicBoolean isRunning,
+                                    BasicTrader trader, BacktestTally tally, long startOffset, long endOffset,
+                                    long checkpointOffset, Runnable onCheckpoint) throws IOException {
+        if (featureStore == null || featureStore.getMaterializedOffset() <= startOffset) {
+            return startOffset;
+        }
+        try (FeatureStore.Reader features = featureStore.openReader()) {
+            if (features == null) {
+                return startOffset;
+            }
+            long end = endOffset >= 0 ? Math.min(features.size(), endOffset) : features.size();
+            LOGGER.info("Replaying offsets {} to {} from features for session {}", startOffset, end, session.getId());
+            for (long offset = startOffset; offset < end; offset++) {
+                if (!isRunning.get() || !session.isOpen() || Thread.currentThread().isInterrupted()) {
+                    return -1;
+                }
+                if (checkpointOffset >= 0 && offset >= checkpointOffset) {
+                    onCheckpoint.run();
+                }
+                TradeFeatures tradeFeatures = features.at(offset);
+                if (!tradeFeatures.isValid()) {
+                    continue;
+                }
+                TradeSnapshot tradeSnapshot = trader.makeTradeDecision(tradeFeatures);
+                if (tally != null) {
+                    tally.add(tradeSnapshot);
+                }
+                if (offset >= request.getFromOffset()
+                        && (tradeSnapshot.getPretendTrade() != null || tradeSnapshot.getCompletedChunk() != null)) {
+                    session.sendMessage(new TextMessage(objectMapper.writeValueAsString(tradeSnapshot)));
+                }
+            }
+            if (checkpointOffset >= 0 && end >= checkpointOffset) {
+                onCheckpoint.run();
+            }
+            return end;
+        }
+    }
+
     /**
      * Processes a single Kafka trade for performance analysis.
      * This method contains the core logic originally in the lambda.
@@ -167,6 +346,16 @@ public class PerformanceAnalysisEndpoint extends TextWebSocketHandler {
      * @return True to continue processing, false to stop.
      */
     boolean processKafkaTradeForPerformanceAnalysis(Trade trade, WebSocketSession session, AtomicBoolean isRunning, BasicTrader trader, ObjectMapper objectMapper) {
+        return processKafkaTradeForPerformanceAnalysis(trade, session, isRunning, trader, objectMapper, true, null);
+    }
+
+    /**
+     * @param send  whether to send the resulting snapshot; false for trades whose results the client already has
+     * @param tally tallies the resulting snapshot for the replay's summary; null for none
+     */
+    boolean processKafkaTradeForPerformanceAnalysis(Trade trade, WebSocketSession session, AtomicBoolean isRunning,
+                                                    BasicTrader trader, ObjectMapper objectMapper, boolean send,
+                                                    BacktestTally tally) {
         if (!isRunning.get() || !session.isOpen()) {
             return false; // Stop processing
         }
@@ -174,7 +363,13 @@ public class PerformanceAnalysisEndpoint extends TextWebSocketHandler {
             OrderBookPayload orderBook = trade.getObp();
             if (orderBook != null) {
                 TradeSnapshot tradeSnapshot = trader.makeTradeDecision(trade, orderBook);
-                if (tradeSnapshot.getPretendTrade() != null || tradeSnapshot.getCompletedChunk() != null) {
+                if (tradeSnapshot == null) {
+                    return true; // the trader skipped the trade
+                }
+                if (tally != null) {
+                    tally.add(tradeSnapshot);
+                }
+                if (send && (tradeSnapshot.getPretendTrade() != null || tradeSnapshot.getCompletedChunk() != null)) {
                     String jsonData = objectMapper.writeValueAsString(tradeSnapshot);
                     session.sendMessage(new TextMessage(jsonData));
                 }
@@ -186,6 +381,29 @@ public class PerformanceAnalysisEndpoint extends TextWebSocketHandler {
         }
     }
 
+    /**
+     * Saves the summary of the replay over the offsets [fromOffset, toOffset), if it is tallied and not empty.
+     */
+    private void saveSummary(BacktestTally tally, BasicTrader trader, ReplayRequest request, long fromOffset,
+                             long toOffset) {
+        if (tally != null && toOffset > fromOffset) {
+            resultStore.save(tally.summarize(request.getConfig(), fromOffset, toOffset, trader));
+        }
+    }
+
+    /**
+     * @return the user a session's replays are scheduled for: its principal, else the client's host
+     */
+    private static String ownerOf(WebSocketSession session) {
+        if (session.getPrincipal() != null) {
+            return session.getPrincipal().getName();
+        }
+        if (session.getRemoteAddress() != null) {
+            return session.getRemoteAddress().getHostString();
+        }
+        return session.getId();
+    }
+
     /**
      * Sends an error message to the client.
      */
@@ -198,6 +416,34 @@ public class PerformanceAnalysisEndpoint extends TextWebSocketHandler {
         session.sendMessage(new TextMessage(jsonError));
     }
     
+    /**
+     * Tells the client that all results of a time range replay have been sent.
+     */
+    private void sendRangeCompleteMessage(WebSocketSession session, long endOffset) {
+        Map<String, Object> complete = new HashMap<>();
+        complete.put("rangeComplete", true);
+        complete.put("endOffset", endOffset);
+        try {
+            session.sendMessage(new TextMessage(objectMapper.writeValueAsString(complete)));
+        } catch (IOException e) {
+            LOGGER.error("Error sending range completion to client for session {}", session.getId(), e);
+        }
+    }
+
+    /**
+     * Tells the client that all results of the records before the offset have been sent.
+     */
+    private void sendCheckpointMessage(WebSocketSession session, long offset) {
+        Map<String, Object> checkpoint = new HashMap<>();
+        checkpoint.put("replayCheckpoint", true);
+        checkpoint.put("endOffset", offset);
+        try {
+            session.sendMessage(new TextMessage(objectMapper.writeValueAsString(checkpoint)));
+        } catch (IOException e) {
+            LOGGER.error("Error sending replay checkpoint to client for session {}", session.getId(), e);
+        }
+    }
+    
     /**
      * Handles WebSocket connection closure.
      */
@@ -208,28 +454,29 @@ public class PerformanceAnalysisEndpoint extends TextWebSocketHandler {
         // Remove session from active sessions
         activeSessions.remove(session);
         
+        stopSessionWork(session.getId());
+    }
+
+    /**
+     * Stops the running flag, the consumer and the virtual thread(s) of a session.
+     */
+    private void stopSessionWork(String sessionId) {
         // Stop the running flag for this session
-        String sessionId = session.getId();
-        AtomicBoolean isRunning = sessionRunningFlags.get(sessionId);
+        AtomicBoolean isRunning = sessionRunningFlags.remove(sessionId);
         if (isRunning != null) {
             isRunning.set(false);
         }
         
-        // Shutdown the executor service for this session
-        ExecutorService executor = sessionExecutors.get(sessionId);
-        if (executor != null) {
-            executor.shutdown();
-        }
-        
-        // Clean up
-        sessionRunningFlags.remove(sessionId);
-        sessionExecutors.remove(sessionId);
-        
         // Stop and remove the consumer
         TradesConsumer consumer = sessionConsumers.remove(sessionId);
         if (consumer != null) {
             consumer.stopConsumer();
         }
+
+        // Interrupt whatever is still running for this session
+        if (sessionExecutor != null) {
+            sessionExecutor.cancel(sessionId);
+        }
     }
     
     /**
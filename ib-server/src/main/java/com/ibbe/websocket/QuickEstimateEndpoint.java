@@ -0,0 +1,94 @@
+package com.ibbe.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibbe.entity.TradeConfig;
+import com.ibbe.executor.ChunkSampleEstimator;
+import com.ibbe.executor.SessionExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * WebSocket endpoint for quick profit estimates.
+ * Expects a TradeConfig as the message payload and streams ProfitEstimates back while the chunks are replayed;
+ * a new configuration on the same session replaces the running estimate.
+ */
+@Component
+public class QuickEstimateEndpoint extends TextWebSocketHandler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(QuickEstimateEndpoint.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private SessionExecutor sessionExecutor;
+
+    @Autowired
+    private ChunkSampleEstimator chunkSampleEstimator;
+
+    @Override
+    public void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        try {
+            TradeConfig config = objectMapper.readValue(message.getPayload(), TradeConfig.class);
+            LOGGER.info("Received quick estimate request from client {}: {}", session.getId(), config);
+            sessionExecutor.cancel(session.getId());
+            sessionExecutor.submit(session.getId(), () -> estimate(session, config));
+        } catch (Exception e) {
+            LOGGER.error("Error processing client message", e);
+            sendErrorMessage(session, "Error processing request: " + e.getMessage());
+        }
+    }
+
+    /**
+     * runs on the session's virtual thread; the chunks themselves are replayed on the compute pool
+     */
+    private void estimate(WebSocketSession session, TradeConfig config) {
+        try {
+            chunkSampleEstimator.run(config, System.nanoTime(), estimate -> {
+                try {
+                    session.sendMessage(new TextMessage(objectMapper.writeValueAsString(estimate)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (InterruptedException e) {
+            LOGGER.info("Quick estimate of session {} cancelled", session.getId());
+        } catch (Exception e) {
+            LOGGER.error("Error estimating profit", e);
+            try {
+                if (session.isOpen()) {
+                    sendErrorMessage(session, "Error estimating profit: " + e.getMessage());
+                }
+            } catch (IOException ex) {
+                LOGGER.error("Error sending error message to client", ex);
+            }
+        }
+    }
+
+    private void sendErrorMessage(WebSocketSession session, String errorMessage) throws IOException {
+        Map<String, Object> errorData = new HashMap<>();
+        errorData.put("error", true);
+        errorData.put("message", errorMessage);
+        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(errorData)));
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        LOGGER.info("WebSocket connection closed: {}, status: {}", session.getId(), status);
+        sessionExecutor.cancel(session.getId());
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        LOGGER.error("WebSocket transport error: {}", exception.getMessage());
+        afterConnectionClosed(session, CloseStatus.SERVER_ERROR);
+    }
+}
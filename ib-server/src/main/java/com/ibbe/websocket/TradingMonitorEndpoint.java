@@ -4,26 +4,38 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ibbe.entity.FxTradesDisplayData;
 import com.ibbe.entity.TradeConfig;
 import com.ibbe.executor.LiveTrader;
+import com.ibbe.executor.SessionExecutor;
 import com.ibbe.executor.TraderFactory;
 import com.ibbe.util.PropertiesUtil;
+import jakarta.annotation.PreDestroy;
 import jakarta.websocket.Session;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
+import java.beans.PropertyChangeListener;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * websocket endpoint to serve the javafx ui with refreshed display info
+ * websocket endpoint to serve the javafx ui with refreshed display info.
+ * Display data is pushed when a LiveTrader processes a trade; changes within monitor.coalesce.ms are coalesced and
+ * serialized once per trader for all sessions monitoring it. Each session is sent to by one task of the SessionExecutor at
+ * a time, which always sends the newest display data not sent yet, so a session never gets older data after newer.
  */
 @Component
 public class TradingMonitorEndpoint extends TextWebSocketHandler {
@@ -35,19 +47,42 @@ public class TradingMonitorEndpoint extends TextWebSocketHandler {
   private static int uniCounter = 0;
   private static final String interval = PropertiesUtil.getProperty("");
   private static ObjectMapper objectMapper = new ObjectMapper();
+  private static final int SEND_TIME_LIMIT_MS = 10 * 1000;
+  private static final int SEND_BUFFER_LIMIT_BYTES = 512 * 1024;
 
-  // Map to store active sessions and their associated executor services
-  private static final Set<WebSocketSession> activeSessions = Collections.synchronizedSet(new HashSet<>());
-  private ExecutorService exe = Executors.newSingleThreadExecutor();
-  private TradeConfig tradeConfig;
-  private volatile boolean isRunning = true;
+  // Set of active sessions, each subscribed to the display data of one trader
+  private static final Set<WebSocketSession> activeSessions = ConcurrentHashMap.newKeySet();
+
+  // Key: configuration ID of the trader; Value: sessions monitoring it (send-safe decorators)
+  private final Map<String, Set<WebSocketSession>> subscribers = new ConcurrentHashMap<>();
+  // Key: websocket session ID; Value: configuration ID the session is subscribed to
+  private final Map<String, String> sessionTraders = new ConcurrentHashMap<>();
+  // Key: websocket session ID; Value: the decorator used for sending to that session
+  private final Map<String, WebSocketSession> sendableSessions = new ConcurrentHashMap<>();
+  // configuration IDs that have a flush scheduled; further changes within the window are coalesced into it
+  private final Set<String> pendingFlushes = ConcurrentHashMap.newKeySet();
+  // Key: websocket session ID; Value: the newest display message not sent to that session yet
+  private final Map<String, AtomicReference<TextMessage>> unsentMessages = new ConcurrentHashMap<>();
+  // websocket session IDs that have a task sending to them
+  private final Set<String> sendingSessions = ConcurrentHashMap.newKeySet();
+
+  private final ScheduledExecutorService flushScheduler =
+      Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("monitor-flush").factory());
+  private final PropertyChangeListener traderChangeListener = evt -> scheduleFlush(evt.getPropertyName());
+
+  // window in which trader changes are coalesced into a single push
+  @Value("${monitor.coalesce.ms:250}")
+  private long coalesceMillis = 250;
 
   @Autowired
   TraderFactory traderFactory;
 
+  @Autowired
+  SessionExecutor sessionExecutor;
+
   /**
-   * keep sending trading display data for given TradingConfig
-   * to the websocket client that sent the given configuration
+   * subscribe the websocket client to the trading display data of the given TradingConfig; data is pushed whenever
+   * the trader processed a trade, instead of being polled
    *
    * @param session
    * @param anyMessage should map to a TradeConfig
@@ -56,77 +91,140 @@ public class TradingMonitorEndpoint extends TextWebSocketHandler {
   public void handleTextMessage(WebSocketSession session, TextMessage anyMessage) throws Exception {
     try {
       LOGGER.info("Received message from client: {}", session.getId());
-      System.out.println("!!!!!&&&&!!!!!! " + anyMessage.getPayload());
       
       // Add session to active sessions
       activeSessions.add(session);
       
       // Parse the trade configuration
-      tradeConfig = objectMapper.readValue(anyMessage.getPayload(), TradeConfig.class);
-      
-      // Create a new thread for sending data to this client
-      exe.submit(() -> {
-        try {
-          while (isRunning && session.isOpen()) {
-            try {
-              Thread.sleep(1000);
-              
-              // Check if session is still open before sending
-              if (!session.isOpen()) {
-                LOGGER.info("Session closed, stopping data transmission: {}", session.getId());
-                break;
-              }
-              
-              FxTradesDisplayData fxTradesDisplayData = traderFactory.getTraderDisplayData(tradeConfig.getId());
-              String displayString = objectMapper.writeValueAsString(fxTradesDisplayData);
-              
-              // Send data only if session is still open
-              if (session.isOpen()) {
-                session.sendMessage(new TextMessage(displayString));
-              } else {
-                LOGGER.info("Session closed during send operation: {}", session.getId());
-                break;
-              }
-            } catch (IOException e) {
-              // Check if this is a broken pipe or closed channel exception
-              if (isBrokenPipeOrClosedChannel(e)) {
-                LOGGER.info("Client disconnected: {}", session.getId());
-                break;
-              } else {
-                LOGGER.error("Error sending message to client: {}", e.getMessage());
-                e.printStackTrace();
-              }
-              break;
-            } catch (Exception e) {
-              LOGGER.error("Error in data transmission loop: {}", e.getMessage());
-              e.printStackTrace();
-              break;
-            }
-          }
-        } catch (Exception e) {
-          LOGGER.error("Error in WebSocket thread: {}", e.getMessage());
-          e.printStackTrace();
-        } finally {
-          // Clean up when the loop exits
-          try {
-            if (session.isOpen()) {
-              session.close();
-            }
-          } catch (IOException e) {
-            LOGGER.error("Error closing session: {}", e.getMessage());
-          }
-          activeSessions.remove(session);
-          LOGGER.info("WebSocket thread terminated for session: {}", session.getId());
-        }
-        return null;
-      });
+      TradeConfig tradeConfig = objectMapper.readValue(anyMessage.getPayload(), TradeConfig.class);
       
+      // a new configuration on the same session replaces the previous subscription
+      unsubscribe(session);
+      subscribe(session, tradeConfig.getId());
     } catch (Exception ex) {
       LOGGER.error("Error processing client message: {}", ex.getMessage());
       ex.printStackTrace();
     }
   }
 
+  private void subscribe(WebSocketSession session, String traderId) {
+    WebSocketSession sendable = sendableSessions.computeIfAbsent(session.getId(),
+        k -> new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, SEND_BUFFER_LIMIT_BYTES));
+    sessionTraders.put(session.getId(), traderId);
+    subscribers.compute(traderId, (id, sessions) -> {
+      if (sessions == null) {
+        // first monitor of this trader - start listening to its changes
+        sessions = ConcurrentHashMap.newKeySet();
+        traderFactory.addDisplayListener(id, traderChangeListener);
+      }
+      sessions.add(sendable);
+      return sessions;
+    });
+    LOGGER.info("Session {} monitoring trader {}", session.getId(), traderId);
+    // push the current state right away rather than waiting for the next trade
+    flushScheduler.execute(() -> flush(traderId));
+  }
+
+  private void unsubscribe(WebSocketSession session) {
+    String traderId = sessionTraders.remove(session.getId());
+    WebSocketSession sendable = sendableSessions.get(session.getId());
+    if (traderId == null || sendable == null) {
+      return;
+    }
+    subscribers.computeIfPresent(traderId, (id, sessions) -> {
+      sessions.remove(sendable);
+      if (sessions.isEmpty()) {
+        // last monitor of this trader is gone - stop listening
+        traderFactory.removeDisplayListener(id, traderChangeListener);
+        return null;
+      }
+      return sessions;
+    });
+  }
+
+  /**
+   * called on the trade ingest thread by TraderFactory; only schedules a flush, at most one per trader per window
+   */
+  private void scheduleFlush(String traderId) {
+    if (pendingFlushes.add(traderId)) {
+      flushScheduler.schedule(() -> flush(traderId), coalesceMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * serializes the trader's display data once and sends the same message to all of its monitoring sessions
+   */
+  private void flush(String traderId) {
+    // changes arriving from here on schedule a new flush
+    pendingFlushes.remove(traderId);
+    Set<WebSocketSession> sessions = subscribers.get(traderId);
+    if (sessions == null || sessions.isEmpty()) {
+      return;
+    }
+    FxTradesDisplayData fxTradesDisplayData = traderFactory.getTraderDisplayData(traderId);
+    if (fxTradesDisplayData == null) {
+      return;
+    }
+    TextMessage displayMessage;
+    try {
+      // the trader mutates the display data under this lock
+      synchronized (fxTradesDisplayData) {
+        displayMessage = new TextMessage(objectMapper.writeValueAsString(fxTradesDisplayData));
+      }
+    } catch (IOException e) {
+      LOGGER.error("Error serializing display data of trader {}: {}", traderId, e.getMessage());
+      return;
+    }
+    for (WebSocketSession session : sessions) {
+      enqueue(session, displayMessage);
+    }
+  }
+
+  /**
+   * makes the message the next one sent to the session, replacing an older one not sent yet, and starts a task
+   * sending to the session unless one is running; a slow client must not hold up the others
+   */
+  private void enqueue(WebSocketSession session, TextMessage displayMessage) {
+    unsentMessages.computeIfAbsent(session.getId(), id -> new AtomicReference<>()).set(displayMessage);
+    if (sendingSessions.add(session.getId())) {
+      sessionExecutor.submit(session.getId(), () -> drain(session));
+    }
+  }
+
+  /**
+   * sends the session's unsent messages until there are none; the only task sending to the session
+   */
+  private void drain(WebSocketSession session) {
+    AtomicReference<TextMessage> unsent = unsentMessages.get(session.getId());
+    do {
+      TextMessage displayMessage;
+      while (unsent != null && (displayMessage = unsent.getAndSet(null)) != null
+          && !Thread.currentThread().isInterrupted()) {
+        send(session, displayMessage);
+      }
+      sendingSessions.remove(session.getId());
+      // a message enqueued after the last one was taken but before the removal found this task still running
+    } while (unsent != null && unsent.get() != null && !Thread.currentThread().isInterrupted()
+        && sendingSessions.add(session.getId()));
+  }
+
+  private void send(WebSocketSession session, TextMessage displayMessage) {
+    try {
+      if (session.isOpen()) {
+        session.sendMessage(displayMessage);
+      }
+    } catch (IOException e) {
+      // Check if this is a broken pipe or closed channel exception
+      if (isBrokenPipeOrClosedChannel(e)) {
+        LOGGER.info("Client disconnected: {}", session.getId());
+      } else {
+        LOGGER.error("Error sending message to client: {}", e.getMessage());
+      }
+    } catch (Exception e) {
+      LOGGER.error("Error in data transmission: {}", e.getMessage());
+    }
+  }
+
   /**
    * Helper method to check if an exception is related to client disconnection
    */
@@ -164,6 +262,8 @@ public class TradingMonitorEndpoint extends TextWebSocketHandler {
     try {
       // Clean up resources for this session
       activeSessions.remove(session);
+      unsubscribe(session);
+      stopSending(session);
       
       t.printStackTrace();
       int count = 0;
@@ -204,5 +304,19 @@ public class TradingMonitorEndpoint extends TextWebSocketHandler {
     
     // Clean up resources for this session
     activeSessions.remove(session);
+    unsubscribe(session);
+    stopSending(session);
+  }
+
+  private void stopSending(WebSocketSession session) {
+    sessionExecutor.cancel(session.getId());
+    sendableSessions.remove(session.getId());
+    unsentMessages.remove(session.getId());
+    sendingSessions.remove(session.getId());
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    flushScheduler.shutdownNow();
   }
 }
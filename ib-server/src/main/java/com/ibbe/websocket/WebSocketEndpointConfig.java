@@ -29,11 +29,19 @@ public class WebSocketEndpointConfig implements WebSocketConfigurer {
   @Autowired
   PerformanceAnalysisEndpoint performanceAnalysisEndpoint;
 
+  @Autowired
+  MonteCarloEndpoint monteCarloEndpoint;
+
+  @Autowired
+  QuickEstimateEndpoint quickEstimateEndpoint;
+
   @Override
   public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
       // Removed BitsoOrderbookMonitorEndpoint registration as it's been deprecated in favor of OrderbookPublisherService
       registry.addHandler(tradingMonitorEndpoint, "/tradingconfigmonitor").setAllowedOrigins("*");
       registry.addHandler(performanceAnalysisEndpoint, "/performanceanalysis").setAllowedOrigins("*");
+      registry.addHandler(monteCarloEndpoint, "/montecarlo").setAllowedOrigins("*");
+      registry.addHandler(quickEstimateEndpoint, "/quickestimate").setAllowedOrigins("*");
       LOGGER.info("websocket handlers registered");
   }
 
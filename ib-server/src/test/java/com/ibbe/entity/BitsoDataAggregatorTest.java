@@ -0,0 +1,56 @@
+package com.ibbe.entity;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BitsoDataAggregatorTest {
+
+    /**
+     * internalizes trades of the prices one after the other, at an exchange rate of 1
+     */
+    private static List<TradeWs> internalize(long... prices) {
+        BitsoDataAggregator aggregator = new BitsoDataAggregator();
+        ReflectionTestUtils.setField(aggregator, "currXRate", BigDecimal.ONE);
+        List<TradeWs> trades = new ArrayList<>();
+        TradeWs previous = null;
+        for (int i = 0; i < prices.length; i++) {
+            TradeWs trade = new TradeWs(1L + i, String.valueOf(1_710_072_000_000L + i), BigDecimal.ONE,
+                BigDecimal.valueOf(prices[i]), BigDecimal.valueOf(prices[i]), "1", "2", "buy");
+            aggregator.internalizeBackfilledTradeWs(trade, previous, null);
+            trades.add(trade);
+            previous = trade;
+        }
+        return trades;
+    }
+
+    @Test
+    void countsRunsOfUpAndDownTicks() {
+        List<TradeWs> trades = internalize(100, 110, 120, 110, 100, 90, 100);
+
+        assertEquals(Tick.TICK_UP, trades.get(0).getTick(), "Expected the first trade to be made up as UP 1");
+        assertEquals(1, trades.get(0).getNthRun());
+        assertEquals(2, trades.get(1).getNthRun());
+        assertEquals(3, trades.get(2).getNthRun());
+        assertEquals(Tick.TICK_DOWN, trades.get(3).getTick());
+        assertEquals(-1, trades.get(3).getNthRun());
+        assertEquals(-3, trades.get(5).getNthRun());
+        assertEquals("TICK_DOWN3", trades.get(5).getNthStatus());
+        assertEquals(1, trades.get(6).getNthRun());
+    }
+
+    @Test
+    void zeroTicksContinueTheRunBeforeThem() {
+        List<TradeWs> trades = internalize(100, 110, 110, 120, 120, 110);
+
+        assertEquals(Tick.TICK_ZERO, trades.get(2).getTick());
+        assertEquals(2, trades.get(2).getNthRun(), "Expected a zero tick to keep the run");
+        assertEquals(3, trades.get(3).getNthRun(), "Expected an UP after a zero tick to continue an UP run");
+        assertEquals(-1, trades.get(5).getNthRun(), "Expected a DOWN after a zero tick to start a DOWN run");
+    }
+}
@@ -0,0 +1,209 @@
+package com.ibbe.executor;
+
+import com.ibbe.entity.ChunkInfo;
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeConfig;
+import com.ibbe.entity.TradeSnapshot;
+import com.ibbe.kafka.TradesConsumer;
+import com.ibbe.kafka.TradesConsumerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BacktestJobServiceTest {
+
+    private static final TradeConfig RUNS = new TradeConfig("runs", "2", "3", false, false, false, false);
+    private static final TradeConfig QUICK = new TradeConfig("quick", "1", "1", false, false, false, false);
+    private static final TradeConfig AVERAGES = new TradeConfig("averages", "1", "1", true, true, false, false);
+
+    @TempDir
+    Path directory;
+
+    private List<Trade> trades;
+    private FeatureStore store;
+    private ReplayScheduler scheduler;
+    private BacktestResultStore resultStore;
+    private BacktestJobService service;
+
+    /**
+     * resolves every time range to the whole of the materialized trades, so that jobs never reach the topic
+     */
+    private final TradesConsumerFactory consumerFactory = new TradesConsumerFactory() {
+        @Override
+        public TradesConsumer createConsumer() {
+            return new TradesConsumer() {
+                @Override
+                public long[] offsetsForTimes(long fromMillis, long toMillis) {
+                    return new long[] {0, trades.size()};
+                }
+            };
+        }
+    };
+
+    @BeforeEach
+    void setUp() {
+        trades = TestTrades.generate(300, 31);
+        store = TestTrades.materialize(directory, trades);
+        scheduler = new ReplayScheduler();
+        ReflectionTestUtils.setField(scheduler, "workers", 1);
+        resultStore = new BacktestResultStore();
+        ReflectionTestUtils.setField(resultStore, "resultsDir", directory.resolve("results").toString());
+        service = new BacktestJobService();
+        ReflectionTestUtils.setField(service, "replayScheduler", scheduler);
+        ReflectionTestUtils.setField(service, "featureStore", store);
+        ReflectionTestUtils.setField(service, "tradesConsumerFactory", consumerFactory);
+        ReflectionTestUtils.setField(service, "resultStore", resultStore);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+        store.stop();
+    }
+
+    private static BacktestJob awaitFinished(BacktestJob job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!job.getState().isFinished()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Expected job " + job.getId() + " to finish");
+            Thread.sleep(5);
+        }
+        return job;
+    }
+
+    private static void awaitState(BacktestJob job, BacktestJob.State state) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (job.getState() != state) {
+            assertTrue(System.currentTimeMillis() < deadline, "Expected job " + job.getId() + " to be " + state
+                + " but was " + job.getState());
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void aJobReplaysItsRangeLikeTheLiveTrader() throws Exception {
+        BasicTrader trader = new BasicTrader(RUNS);
+        BacktestTally tally = new BacktestTally();
+        List<ChunkInfo> chunks = new ArrayList<>();
+        for (Trade trade : trades) {
+            TradeSnapshot snapshot = trader.makeTradeDecision(trade, trade.getObp());
+            tally.add(snapshot);
+            if (snapshot.getCompletedChunk() != null) {
+                chunks.add(snapshot.getCompletedChunk());
+            }
+        }
+        BacktestSummary expected = tally.summarize(RUNS, 0, trades.size(), trader);
+        assertFalse(chunks.isEmpty(), "Expected the trades to span several chunks");
+
+        BacktestJob job = awaitFinished(service.submit("alice", RUNS, 0, 0));
+
+        assertEquals(BacktestJob.State.DONE, job.getState(), "Expected the job done, error: " + job.getError());
+        assertEquals(trades.size(), job.getProcessed());
+        assertEquals(trades.size(), job.getTotal());
+        BacktestSummary summary = job.getSummary();
+        assertEquals(0, expected.getProfit().compareTo(summary.getProfit()),
+            "Expected " + expected.getProfit() + " but was " + summary.getProfit());
+        assertEquals(expected.getCompletedChunks(), summary.getCompletedChunks());
+        assertEquals(expected.getPretendTrades(), summary.getPretendTrades());
+        assertTrue(expected.getAvgSlippageBps() > 0, "Expected the pretend trades to walk the orderbooks");
+        assertEquals(expected.getAvgSlippageBps(), summary.getAvgSlippageBps(), 1e-9);
+        assertEquals(expected.getPartialFills(), summary.getPartialFills());
+        assertEquals(expected.getFromTime(), summary.getFromTime());
+        assertEquals(expected.getToTime(), summary.getToTime());
+        assertEquals(chunks.size(), job.getChunks().size());
+        for (int i = 0; i < chunks.size(); i++) {
+            assertEquals(0, chunks.get(i).getProfit().compareTo(job.getChunks().get(i).getProfit()),
+                "Expected the profit of chunk " + i);
+        }
+        assertSame(summary, resultStore.find(RUNS.canonicalHash(), 0, trades.size()),
+            "Expected the summary saved to the result store");
+
+        Map<String, Object> status = job.toStatus();
+        assertEquals(BacktestJob.State.DONE, status.get("state"));
+        assertEquals((long) trades.size(), status.get("processed"));
+        assertEquals("alice", status.get("owner"));
+        assertSame(summary, job.toResult().get("summary"));
+    }
+
+    @Test
+    void theSameWorkIsOneJob() throws Exception {
+        BacktestJob job = awaitFinished(service.submit("alice", RUNS, 0, 0));
+        TradeConfig same = new TradeConfig("renamed", "2", "3", false, false, false, false);
+
+        assertSame(job, service.submit("bob", same, 0, 0), "Expected the done job for the same configuration");
+        assertEquals(1, service.list().size());
+        assertNotSame(job, service.submit("alice", QUICK, 0, 0), "Expected a job for another configuration");
+    }
+
+    @Test
+    void aCancelledJobIsRunAgain() throws Exception {
+        // the only worker is busy, so the job waits
+        ReplayScheduler.Slot busy = scheduler.acquire("other", ReplayScheduler.Priority.INTERACTIVE, "busy");
+        BacktestJob job = service.submit("alice", RUNS, 0, 0);
+        assertEquals(BacktestJob.State.QUEUED, job.getState());
+        assertSame(job, service.submit("alice", RUNS, 0, 0), "Expected the queued job for the same work");
+
+        assertSame(job, service.cancel(job.getId()));
+        awaitState(job, BacktestJob.State.CANCELLED);
+        assertNull(service.cancel(-1), "Expected no job for an unknown ID");
+
+        BacktestJob again = service.submit("alice", RUNS, 0, 0);
+        assertNotSame(job, again, "Expected the cancelled work to be run again");
+        busy.close();
+        assertEquals(BacktestJob.State.DONE, awaitFinished(again).getState());
+        assertEquals(List.of(job, again), service.list());
+    }
+
+    @Test
+    void onlyTheMostRecentFinishedJobsAreKept() throws Exception {
+        ReflectionTestUtils.setField(service, "keep", 1);
+        BacktestJob first = awaitFinished(service.submit("alice", RUNS, 0, 0));
+        BacktestJob second = awaitFinished(service.submit("alice", QUICK, 0, 0));
+        BacktestJob third = awaitFinished(service.submit("alice", AVERAGES, 0, 0));
+
+        assertNull(service.get(first.getId()), "Expected the oldest finished job dropped");
+        assertSame(second, service.get(second.getId()));
+        assertSame(third, service.get(third.getId()));
+        BacktestJob again = service.submit("alice", RUNS, 0, 0);
+        assertNotSame(first, again, "Expected a new job for a dropped job's work");
+        assertTrue(again.isFromStore(), "Expected the dropped job's work done from its stored summary");
+    }
+
+    @Test
+    void storedWorkIsDoneWithoutReplaying() throws Exception {
+        BacktestSummary summary = awaitFinished(service.submit("alice", RUNS, 0, 0)).getSummary();
+        assertFalse(service.list().get(0).isFromStore());
+
+        // a restarted server: no jobs, the same result store
+        BacktestJobService restarted = new BacktestJobService();
+        ReflectionTestUtils.setField(restarted, "replayScheduler", scheduler);
+        ReflectionTestUtils.setField(restarted, "featureStore", store);
+        ReflectionTestUtils.setField(restarted, "tradesConsumerFactory", consumerFactory);
+        ReflectionTestUtils.setField(restarted, "resultStore", resultStore);
+        // the only worker is busy, so a job that replayed would wait
+        try (ReplayScheduler.Slot busy = scheduler.acquire("other", ReplayScheduler.Priority.INTERACTIVE, "busy")) {
+            BacktestJob job = restarted.submit("bob", RUNS, 0, 0);
+
+            assertEquals(BacktestJob.State.DONE, job.getState(), "Expected the job done at submission");
+            assertTrue(job.isFromStore());
+            assertSame(summary, job.getSummary());
+            assertEquals(trades.size(), job.getProcessed());
+            assertTrue(job.getChunks().isEmpty(), "Expected no chunks for a stored summary");
+            assertEquals(true, job.toStatus().get("fromStore"));
+            assertSame(job, restarted.submit("alice", RUNS, 0, 0), "Expected the done job for the same work");
+            BacktestJob replayed = restarted.submit("alice", QUICK, 0, 0);
+            assertEquals(BacktestJob.State.QUEUED, replayed.getState(),
+                "Expected work without a stored summary to wait for the worker");
+            restarted.cancel(replayed.getId());
+            awaitState(replayed, BacktestJob.State.CANCELLED);
+        }
+    }
+}
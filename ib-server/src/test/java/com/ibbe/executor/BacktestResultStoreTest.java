@@ -0,0 +1,183 @@
+package com.ibbe.executor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibbe.entity.TradeConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BacktestResultStoreTest {
+
+    private static final TradeConfig RUNS = new TradeConfig("runs", "2", "3", false, false, false, false);
+    private static final TradeConfig QUICK = new TradeConfig("quick", "1", "1", false, false, false, false);
+    private static final TradeConfig AVERAGES = new TradeConfig("averages", "1", "1", true, true, false, false);
+    private static final long MARCH = 1_709_251_200_000L;
+    private static final long APRIL = 1_711_929_600_000L;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * @return a store over the temp directory, loaded from what is saved there
+     */
+    private BacktestResultStore open() {
+        BacktestResultStore store = new BacktestResultStore();
+        ReflectionTestUtils.setField(store, "resultsDir", directory.toString());
+        store.load();
+        return store;
+    }
+
+    private Path file() {
+        return directory.resolve("summaries-v1.dat");
+    }
+
+    private static BacktestSummary summary(TradeConfig config, long fromOffset, long fromTime, String profit) {
+        return new BacktestSummary(config.canonicalHash(), config, fromOffset, fromOffset + 1000, fromTime,
+            fromTime + 86_400_000L, new BigDecimal(profit), 4, new BigDecimal(profit), 9, 3.25, 2,
+            new BigDecimal("1.5"), 120, fromTime + 90_000_000L);
+    }
+
+    @Test
+    void savedSummariesAreLoadedBack() {
+        BacktestResultStore store = open();
+        BacktestSummary saved = summary(RUNS, 0, MARCH, "12.34");
+        store.save(saved);
+        store.save(summary(QUICK, 0, MARCH, "-5"));
+
+        BacktestResultStore loaded = open();
+        assertEquals(2, loaded.size());
+        BacktestSummary found = loaded.find(RUNS.canonicalHash(), 0, 1000);
+        assertNotNull(found);
+        assertEquals(saved.key(), found.key());
+        assertEquals("runs", found.getConfig().getId());
+        assertEquals(0, new BigDecimal("12.34").compareTo(found.getProfit()));
+        assertEquals(4, found.getCompletedChunks());
+        assertEquals(9, found.getPretendTrades());
+        assertEquals(3.25, found.getAvgSlippageBps());
+        assertEquals(2, found.getPartialFills());
+        assertEquals(0, new BigDecimal("1.5").compareTo(found.getMaxDrawdown()));
+        assertEquals(MARCH, found.getFromTime());
+        assertEquals(MARCH + 86_400_000L, found.getToTime());
+        assertEquals(120, found.getRuntimeMillis());
+        assertNull(loaded.find(RUNS.canonicalHash(), 0, 999), "Expected no summary for another range");
+    }
+
+    @Test
+    void replacedSummariesAreCompactedAway() throws Exception {
+        BacktestResultStore store = open();
+        store.save(summary(RUNS, 0, MARCH, "1"));
+        long oneSummary = Files.size(file());
+        store.save(summary(RUNS, 0, MARCH, "2"));
+        store.save(summary(RUNS, 0, MARCH, "3"));
+        assertEquals(1, store.size(), "Expected the later summaries of a run to replace the earlier one");
+        assertEquals(3 * oneSummary, Files.size(file()), "Expected every save appended to the log");
+
+        BacktestResultStore loaded = open();
+        assertEquals(1, loaded.size());
+        assertEquals(0, BigDecimal.valueOf(3).compareTo(loaded.find(RUNS.canonicalHash(), 0, 1000).getProfit()),
+            "Expected the last summary saved");
+        assertEquals(oneSummary, Files.size(file()), "Expected the replaced summaries compacted out of the log");
+        assertEquals(1, loaded.findByConfig(RUNS.canonicalHash()).size());
+        assertEquals(1, loaded.top(10, 0, 0).size());
+    }
+
+    @Test
+    void aTornLastSummaryIsCutOff() throws Exception {
+        BacktestResultStore store = open();
+        store.save(summary(RUNS, 0, MARCH, "1"));
+        store.save(summary(QUICK, 0, MARCH, "2"));
+        long intact = Files.size(file());
+        // the length of a summary whose bytes were never all written
+        Files.write(file(), ByteBuffer.allocate(7).putInt(500).array(), StandardOpenOption.APPEND);
+
+        BacktestResultStore loaded = open();
+        assertEquals(2, loaded.size());
+        assertEquals(intact, Files.size(file()), "Expected the torn summary cut off the log");
+
+        loaded.save(summary(AVERAGES, 0, MARCH, "3"));
+        assertEquals(3, open().size(), "Expected summaries saved after the cut to be read back");
+    }
+
+    @Test
+    void summariesOfTheFirstFormatReadBackWithoutFillStatistics() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        byte[] config = new ObjectMapper().writeValueAsBytes(RUNS);
+        out.writeInt(1);
+        out.writeUTF(RUNS.canonicalHash());
+        out.writeInt(config.length);
+        out.write(config);
+        out.writeLong(0);
+        out.writeLong(1000);
+        out.writeLong(MARCH);
+        out.writeLong(APRIL);
+        out.writeUTF("7.5");
+        out.writeInt(4);
+        out.writeUTF("6");
+        out.writeInt(9);
+        out.writeUTF("1.5");
+        out.writeLong(120);
+        out.writeLong(APRIL);
+
+        BacktestSummary read = BacktestSummary.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(RUNS.canonicalHash() + ":0-1000", read.key());
+        assertEquals(0, new BigDecimal("7.5").compareTo(read.getProfit()));
+        assertEquals(9, read.getPretendTrades());
+        assertEquals(0, read.getAvgSlippageBps());
+        assertEquals(0, read.getPartialFills());
+        assertEquals(0, new BigDecimal("1.5").compareTo(read.getMaxDrawdown()));
+        assertEquals(APRIL, read.getFinishedAtMillis());
+    }
+
+    @Test
+    void anUnreadableSummaryEndsTheLog() throws Exception {
+        BacktestResultStore store = open();
+        store.save(summary(RUNS, 0, MARCH, "1"));
+        long intact = Files.size(file());
+        // a summary of another format version, then one that can no longer be reached
+        Files.write(file(), ByteBuffer.allocate(12).putInt(8).putInt(99).putInt(0).array(), StandardOpenOption.APPEND);
+        byte[] log = Files.readAllBytes(file());
+        Files.write(file(), Arrays.copyOf(log, (int) intact), StandardOpenOption.APPEND);
+
+        BacktestResultStore loaded = open();
+        assertEquals(1, loaded.size());
+        assertEquals(intact, Files.size(file()), "Expected the log cut at the unreadable summary");
+    }
+
+    @Test
+    void configurationsAreRankedByTheirBestRun() {
+        BacktestResultStore store = open();
+        store.save(summary(RUNS, 0, MARCH, "10"));
+        store.save(summary(RUNS, 5000, APRIL, "30"));
+        store.save(summary(QUICK, 0, MARCH, "20"));
+        store.save(summary(AVERAGES, 5000, APRIL, "-1"));
+
+        List<BacktestSummary> top = store.top(10, 0, 0);
+        assertEquals(List.of(RUNS.canonicalHash(), QUICK.canonicalHash(), AVERAGES.canonicalHash()),
+            top.stream().map(BacktestSummary::getConfigHash).toList(), "Expected one run per configuration");
+        assertEquals(5000, top.get(0).getFromOffset(), "Expected the best run of a configuration");
+        assertEquals(2, store.top(2, 0, 0).size());
+
+        List<BacktestSummary> march = store.top(10, MARCH, APRIL);
+        assertEquals(List.of(QUICK.canonicalHash(), RUNS.canonicalHash()),
+            march.stream().map(BacktestSummary::getConfigHash).toList(), "Expected only the runs within March");
+        assertEquals(0, march.get(1).getFromOffset());
+
+        assertEquals(List.of(0L, 5000L), store.findByConfig(RUNS.canonicalHash()).stream()
+            .map(BacktestSummary::getFromOffset).toList(), "Expected the runs of a configuration by range");
+    }
+}
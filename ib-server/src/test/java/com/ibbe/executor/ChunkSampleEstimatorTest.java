@@ -0,0 +1,174 @@
+package com.ibbe.executor;
+
+import com.ibbe.entity.ProfitEstimate;
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeConfig;
+import com.ibbe.entity.TradeSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkSampleEstimatorTest {
+
+    private static final TradeConfig RUNS = new TradeConfig("runs", "2", "3", false, false, false, false);
+
+    @TempDir
+    Path directory;
+
+    private final ComputeExecutor computeExecutor = new ComputeExecutor();
+    private FeatureStore store;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(computeExecutor, "threads", 3);
+        computeExecutor.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        computeExecutor.stop();
+        if (store != null) {
+            store.stop();
+        }
+    }
+
+    /**
+     * @return generated trades, with a gap of exactly the chunk gap before trade 100 and one just short of it before
+     * trade 200
+     */
+    private static List<Trade> tradesWithEdgeGaps() {
+        List<Trade> trades = TestTrades.generate(500, 41);
+        setGap(trades, 100, BasicTrader.MAX_TRADE_GAP_HOURS * BasicTrader.MILLIS_PER_HOUR);
+        setGap(trades, 200, BasicTrader.MAX_TRADE_GAP_HOURS * BasicTrader.MILLIS_PER_HOUR - 1);
+        return trades;
+    }
+
+    /**
+     * moves the trade at the index and all after it, so that it follows the trade before it by the gap
+     */
+    private static void setGap(List<Trade> trades, int index, long gapMillis) {
+        long shift = trades.get(index - 1).getCreatedAtMillis() + gapMillis - trades.get(index).getCreatedAtMillis();
+        for (Trade trade : trades.subList(index, trades.size())) {
+            trade.setCreatedAtMillis(trade.getCreatedAtMillis() + shift);
+        }
+    }
+
+    @Test
+    void chunksSplitWhereTheTraderCompletesOne() throws Exception {
+        List<Trade> trades = tradesWithEdgeGaps();
+        store = TestTrades.materialize(directory, trades);
+        BasicTrader trader = new BasicTrader(RUNS);
+        List<Long> completedAt = new ArrayList<>();
+        for (int offset = 0; offset < trades.size(); offset++) {
+            Trade trade = trades.get(offset);
+            if (trader.makeTradeDecision(trade, trade.getObp()).getCompletedChunk() != null) {
+                completedAt.add((long) offset);
+            }
+        }
+        assertTrue(completedAt.contains(100L), "Expected a gap of exactly the chunk gap to start a chunk");
+        assertFalse(completedAt.contains(200L), "Expected a gap just short of it not to");
+
+        try (FeatureStore.Reader reader = store.openReader()) {
+            List<ChunkSampleEstimator.Chunk> chunks = ChunkSampleEstimator.chunks(reader);
+
+            assertEquals(completedAt.size() + 1, chunks.size(), "Expected the open chunk at the end as well");
+            assertEquals(0, chunks.get(0).from());
+            for (int i = 1; i < chunks.size(); i++) {
+                assertEquals(completedAt.get(i - 1), chunks.get(i).from(),
+                    "Expected chunk " + i + " to start where the trader completed the one before");
+                assertEquals(chunks.get(i).from(), chunks.get(i - 1).to(), "Expected the chunks to follow each other");
+            }
+            assertEquals(reader.size(), chunks.get(chunks.size() - 1).to());
+            assertEquals(trades.size(), chunks.stream().mapToInt(ChunkSampleEstimator.Chunk::trades).sum());
+        }
+    }
+
+    @Test
+    void strataHoldEveryChunkOnceBySize() {
+        List<ChunkSampleEstimator.Chunk> chunks = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            chunks.add(new ChunkSampleEstimator.Chunk(i * 100L, i * 100L + 100, (i * 7) % 25 + 1));
+        }
+        List<List<ChunkSampleEstimator.Chunk>> strata = ChunkSampleEstimator.strata(chunks, 3);
+
+        assertEquals(2, strata.size(), "Expected at least 10 chunks per stratum");
+        assertEquals(new HashSet<>(chunks), new HashSet<>(strata.stream().flatMap(List::stream).toList()));
+        assertEquals(25, strata.get(0).size() + strata.get(1).size());
+        int largestOfFirst = strata.get(0).stream().mapToInt(ChunkSampleEstimator.Chunk::trades).max().orElseThrow();
+        int smallestOfSecond = strata.get(1).stream().mapToInt(ChunkSampleEstimator.Chunk::trades).min().orElseThrow();
+        assertTrue(largestOfFirst <= smallestOfSecond, "Expected the strata split by trade count");
+        assertEquals(strata, ChunkSampleEstimator.strata(chunks, 3), "Expected the same order for the same seed");
+    }
+
+    @Test
+    void theEstimateClosesOnTheExactSum() {
+        ChunkSampleEstimator.Estimate estimate = new ChunkSampleEstimator.Estimate(new int[] {2, 3});
+        estimate.add(0, new BigDecimal("0.1"));
+        assertFalse(estimate.hasInterval(), "Expected no interval from one chunk");
+        estimate.add(1, new BigDecimal("0.6"));
+
+        assertTrue(estimate.hasInterval());
+        assertFalse(estimate.isDone());
+        assertEquals(2 * 0.1 + 3 * 0.6, estimate.total(), 1e-9, "Expected each stratum scaled up from its mean");
+        assertTrue(estimate.variance() > 0, "Expected an interval while chunks are missing");
+
+        estimate.add(0, new BigDecimal("0.2"));
+        estimate.add(1, new BigDecimal("2.3"));
+        estimate.add(1, new BigDecimal("-1.7"));
+
+        // the scaled up means of these add up to 1.4999999999999998
+        double sampledProfit = new BigDecimal("1.5").doubleValue();
+        assertTrue(estimate.isDone());
+        assertEquals(0, estimate.variance(), "Expected no variance once every chunk is sampled");
+        assertEquals(sampledProfit, estimate.total(), "Expected exactly the sum of the chunks");
+        ProfitEstimate result = estimate.toProfitEstimate();
+        assertTrue(result.isDone());
+        assertEquals(5, result.getChunksDone());
+        assertEquals(5, result.getChunks());
+        assertEquals(sampledProfit, result.getEstimatedProfit());
+        assertEquals(sampledProfit, result.getLowerBound());
+        assertEquals(sampledProfit, result.getUpperBound());
+        assertEquals(sampledProfit, result.getSampledProfit());
+    }
+
+    @Test
+    void theLastEstimateIsTheProfitOfTheFullReplay() throws Exception {
+        List<Trade> trades = tradesWithEdgeGaps();
+        store = TestTrades.materialize(directory, trades);
+        BasicTrader trader = new BasicTrader(RUNS);
+        BigDecimal profit = BigDecimal.ZERO;
+        TradeSnapshot last = null;
+        for (Trade trade : trades) {
+            last = trader.makeTradeDecision(trade, trade.getObp());
+            if (last.getCompletedChunk() != null) {
+                profit = profit.add(last.getCompletedChunk().getProfit());
+            }
+        }
+        profit = profit.add(trader.calculateChunkProfit(last));
+
+        ChunkSampleEstimator estimator = new ChunkSampleEstimator();
+        ReflectionTestUtils.setField(estimator, "featureStore", store);
+        ReflectionTestUtils.setField(estimator, "computeExecutor", computeExecutor);
+        List<ProfitEstimate> estimates = new ArrayList<>();
+        estimator.run(RUNS, 7, estimates::add);
+
+        ProfitEstimate result = estimates.get(estimates.size() - 1);
+        assertTrue(result.isDone());
+        assertEquals(result.getChunks(), result.getChunksDone());
+        assertEquals(profit.doubleValue(), result.getEstimatedProfit(),
+            "Expected the profit of replaying every trade in one go");
+        assertEquals(result.getEstimatedProfit(), result.getLowerBound());
+        assertEquals(result.getEstimatedProfit(), result.getUpperBound());
+        assertEquals(1, estimates.stream().filter(ProfitEstimate::isDone).count(), "Expected one final estimate");
+    }
+}
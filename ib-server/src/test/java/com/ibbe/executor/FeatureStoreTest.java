@@ -0,0 +1,205 @@
+package com.ibbe.executor;
+
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeConfig;
+import com.ibbe.entity.TradeSnapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FeatureStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private static List<String> decideLive(TradeConfig config, List<Trade> trades) {
+        BasicTrader trader = new BasicTrader(config);
+        List<String> decisions = new ArrayList<>();
+        for (Trade trade : trades) {
+            decisions.add(TestTrades.describe(trader.makeTradeDecision(trade, trade.getObp())));
+        }
+        return decisions;
+    }
+
+    private static List<String> decideFromFeatures(TradeConfig config, FeatureStore.Reader reader) {
+        return decideFromFeatures(config, reader, 0);
+    }
+
+    private static List<String> decideFromFeatures(TradeConfig config, FeatureStore.Reader reader, long start) {
+        BasicTrader trader = new BasicTrader(config);
+        List<String> decisions = new ArrayList<>();
+        for (long offset = start; offset < reader.size(); offset++) {
+            decisions.add(TestTrades.describe(trader.makeTradeDecision(reader.at(offset))));
+        }
+        return decisions;
+    }
+
+    @Test
+    void decisionsFromFeaturesMatchTheLiveComputation() throws IOException {
+        List<Trade> trades = TestTrades.generate(500, 11);
+        FeatureStore store = TestTrades.materialize(directory, trades);
+        try (FeatureStore.Reader reader = store.openReader()) {
+            assertEquals(trades.size(), reader.size());
+            for (TradeConfig config : List.of(
+                new TradeConfig("runs", "2", "3", false, false, false, false),
+                new TradeConfig("averages", "1", "1", true, true, false, false),
+                new TradeConfig("momentum", "0", "0", false, false, true, true))) {
+                List<String> live = decideLive(config, trades);
+                assertTrue(live.stream().anyMatch(line -> line.contains("PRETEND")),
+                    "Expected " + config.getId() + " to make pretend trades");
+                assertEquals(live, decideFromFeatures(config, reader),
+                    "Expected the same decisions from the features for " + config.getId());
+            }
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    void decisionsFromFeaturesMatchALiveReplayStartedMidChunk() throws IOException {
+        List<Trade> trades = TestTrades.generate(300, 11);
+        FeatureStore store = TestTrades.materialize(directory, trades);
+        try (FeatureStore.Reader reader = store.openReader()) {
+            for (TradeConfig config : List.of(
+                new TradeConfig("averages", "1", "1", true, true, false, false),
+                new TradeConfig("momentum", "0", "0", false, false, true, true))) {
+                // a few trades into a chunk, and far enough into one for the trend windows to have filled up
+                for (int start : List.of(3, 17, 45, 101)) {
+                    assertTrue(reader.at(start).getChunkTradeCount() > 1, "Expected offset " + start + " mid-chunk");
+                    assertEquals(decideLive(config, trades.subList(start, trades.size())),
+                        decideFromFeatures(config, reader, start),
+                        "Expected the decisions of a replay from offset " + start + " for " + config.getId());
+                }
+            }
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    void featuresHoldWhatTheTraderComputes() throws IOException {
+        List<Trade> trades = TestTrades.generate(60, 13);
+        FeatureStore store = TestTrades.materialize(directory, trades);
+        BasicTrader trader = new BasicTrader(new TradeConfig("plain", "0", "0", false, false, false, false));
+        try (FeatureStore.Reader reader = store.openReader()) {
+            for (int offset = 0; offset < trades.size(); offset++) {
+                Trade trade = trades.get(offset);
+                TradeSnapshot snapshot = trader.makeTradeDecision(trade, trade.getObp());
+                TradeFeatures features = reader.at(offset);
+                assertTrue(features.isValid());
+                assertEquals(trade.getTid(), features.getTid());
+                assertEquals(trade.getCreatedAtMillis(), features.getTimeMillis());
+                assertEquals(trade.getTick(), features.getTick());
+                assertEquals(trade.getNthRun(), features.getNthRun());
+                assertEquals(snapshot.getAvgBidAmount(), features.getAvgBidAmount());
+                assertEquals(snapshot.getPriceCloserToBestAsk(), features.getPriceCloserToBestAsk());
+                assertEquals(snapshot.getSTMAPrice(), features.getStmaPrice(), "Wrong stma at offset " + offset);
+                assertEquals(snapshot.getLTMAPrice(), features.getLtmaPrice(), "Wrong ltma at offset " + offset);
+                assertEquals(trader.getCurrentChunkTradeCount(), features.getChunkTradeCount());
+            }
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    void materializedFillsPriceLikeTheLiveOrderbook() throws IOException {
+        List<Trade> trades = TestTrades.generate(200, 37);
+        FeatureStore store = TestTrades.materialize(directory, trades);
+        TradeConfig config = new TradeConfig("plain", "0", "0", false, false, false, false);
+        BasicTrader live = new BasicTrader(config);
+        BasicTrader fromFeatures = new BasicTrader(config);
+        int walked = 0;
+        try (FeatureStore.Reader reader = store.openReader()) {
+            for (int offset = 0; offset < trades.size(); offset++) {
+                Trade trade = trades.get(offset);
+                live.makeTradeDecision(trade, trade.getObp());
+                fromFeatures.makeTradeDecision(reader.at(offset));
+                for (String side : List.of(BasicTrader.MARKER_SIDE_BUY, BasicTrader.MARKER_SIDE_SELL)) {
+                    BigDecimal price = live.trade(trade, side).getPrice();
+                    assertEquals(price, fromFeatures.trade(trade, side).getPrice(),
+                        "Wrong " + side + " fill at offset " + offset);
+                    walked += price.compareTo(trade.getPrice()) != 0 ? 1 : 0;
+                }
+            }
+        } finally {
+            store.stop();
+        }
+        assertEquals(2 * trades.size(), walked, "Expected every fill priced from the orderbook, not the trade");
+    }
+
+    @Test
+    void skippedOffsetsAndTradesWithoutAnOrderbookHoldNoFeatures() throws IOException {
+        List<Trade> trades = TestTrades.generate(3, 17);
+        trades.get(2).setObp(null);
+        FeatureStore store = TestTrades.openFeatureStore(directory);
+        store.append(0, trades.get(0));
+        store.append(3, trades.get(1));
+        store.append(4, trades.get(2));
+        store.flush();
+
+        assertEquals(5, store.getMaterializedOffset());
+        try (FeatureStore.Reader reader = store.openReader()) {
+            assertTrue(reader.at(0).isValid());
+            assertFalse(reader.at(1).isValid(), "Expected a placeholder for a skipped offset");
+            assertFalse(reader.at(2).isValid(), "Expected a placeholder for a skipped offset");
+            assertTrue(reader.at(3).isValid());
+            assertEquals(trades.get(1).getTid(), reader.at(3).getTid());
+            assertFalse(reader.at(4).isValid(), "Expected a placeholder for a trade without an orderbook");
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    void reopenedStoreResumesAsIfItNeverStopped() throws IOException {
+        List<Trade> trades = TestTrades.generate(300, 19);
+        FeatureStore first = TestTrades.materialize(directory.resolve("resumed"), trades.subList(0, 170));
+        first.stop();
+        FeatureStore resumed = TestTrades.openFeatureStore(directory.resolve("resumed"));
+        assertEquals(170, resumed.getMaterializedOffset(), "Expected the store to resume at its end");
+        for (int offset = 170; offset < trades.size(); offset++) {
+            resumed.append(offset, trades.get(offset));
+        }
+        resumed.flush();
+
+        FeatureStore uninterrupted = TestTrades.materialize(directory.resolve("uninterrupted"), trades);
+        TradeConfig config = new TradeConfig("averages", "1", "1", true, true, false, false);
+        try (FeatureStore.Reader resumedReader = resumed.openReader();
+             FeatureStore.Reader uninterruptedReader = uninterrupted.openReader()) {
+            assertEquals(decideFromFeatures(config, uninterruptedReader), decideFromFeatures(config, resumedReader));
+        } finally {
+            resumed.stop();
+            uninterrupted.stop();
+        }
+    }
+
+    @Test
+    void storeWithoutItsCheckpointIsRebuilt() throws IOException {
+        FeatureStore store = TestTrades.materialize(directory, TestTrades.generate(50, 23));
+        store.stop();
+        try (Stream<Path> checkpoints = Files.list(directory.resolve("checkpoints"))) {
+            for (Path checkpoint : checkpoints.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(checkpoint);
+            }
+        }
+
+        FeatureStore reopened = TestTrades.openFeatureStore(directory);
+        try {
+            assertEquals(0, reopened.getMaterializedOffset(),
+                "Expected the features to be rebuilt when the trader state cannot be restored");
+        } finally {
+            reopened.stop();
+        }
+    }
+}
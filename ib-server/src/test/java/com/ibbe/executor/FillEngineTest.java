@@ -0,0 +1,115 @@
+package com.ibbe.executor;
+
+import com.ibbe.entity.Order;
+import com.ibbe.entity.OrderBookPayload;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FillEngineTest {
+
+    private static Order order(double price, double amount) {
+        return new Order("btc_mxn", BigDecimal.valueOf(price), BigDecimal.valueOf(amount), null);
+    }
+
+    private static OrderBookPayload book(Order[] asks, Order[] bids, long sequence) {
+        return new OrderBookPayload(asks, bids, new Timestamp(TestTrades.START_MILLIS), sequence);
+    }
+
+    /**
+     * @return the VWAP of the amount, walking the levels one by one
+     */
+    private static double walk(Order[] orders, boolean ascending, double amount) {
+        Order[] levels = orders.clone();
+        Comparator<Order> bestFirst = Comparator.comparing(Order::getP);
+        Arrays.sort(levels, ascending ? bestFirst : bestFirst.reversed());
+        double remaining = amount;
+        double notional = 0;
+        for (Order level : levels) {
+            double taken = Math.min(remaining, level.getA().doubleValue());
+            notional += taken * level.getP().doubleValue();
+            remaining -= taken;
+        }
+        notional += remaining * levels[levels.length - 1].getP().doubleValue();
+        return notional / amount;
+    }
+
+    @Test
+    void buysWalkTheAsksAndSellsTheBids() {
+        OrderBookPayload book = book(
+            new Order[]{order(100, 1), order(101, 2), order(103, 1)},
+            new Order[]{order(99, 1), order(98, 1), order(95, 2)}, 1);
+        FillEngine engine = new FillEngine();
+
+        assertEquals(100, engine.buy(book, 0.5).price(), 1e-9);
+        assertEquals(100, engine.buy(book, 1).price(), 1e-9, "Expected a level filled exactly to stay at its price");
+        assertEquals(100.5, engine.buy(book, 2).price(), 1e-9);
+        assertEquals((100 + 2 * 101 + 103) / 4.0, engine.buy(book, 4).price(), 1e-9);
+        assertEquals(98.5, engine.sell(book, 2).price(), 1e-9);
+        assertEquals((99 + 98 + 95) / 3.0, engine.sell(book, 3).price(), 1e-9);
+
+        FillEngine.Fill fill = engine.buy(book, 2);
+        assertEquals(2, fill.filledAmount(), 1e-9);
+        assertEquals(0.5 / 100 * 10_000, fill.slippageBps(), 1e-9);
+    }
+
+    @Test
+    void amountsBeyondTheDepthFillAtTheWorstPrice() {
+        OrderBookPayload book = book(new Order[]{order(100, 1), order(102, 1)}, new Order[]{order(99, 1)}, 1);
+        FillEngine engine = new FillEngine();
+
+        FillEngine.Fill buy = engine.buy(book, 4);
+        assertEquals((100 + 102 + 2 * 102) / 4.0, buy.price(), 1e-9);
+        assertEquals(2, buy.filledAmount(), 1e-9, "Expected only the stored depth to be filled");
+        FillEngine.Fill sell = engine.sell(book, 3);
+        assertEquals(99, sell.price(), 1e-9);
+        assertEquals(1, sell.filledAmount(), 1e-9);
+    }
+
+    @Test
+    void unsortedEmptyAndMissingBooks() {
+        FillEngine engine = new FillEngine();
+        OrderBookPayload unsorted = book(new Order[]{order(103, 1), order(100, 1), order(101, 1)},
+            new Order[]{order(95, 1), order(99, 1)}, 1);
+        assertEquals(100.5, engine.buy(unsorted, 2).price(), 1e-9);
+        assertEquals(97, engine.sell(unsorted, 2).price(), 1e-9);
+
+        OrderBookPayload oneSided = book(new Order[]{order(100, 1)}, new Order[0], 2);
+        assertNull(engine.sell(oneSided, 1), "Expected no fill without bids");
+        assertNull(engine.buy(oneSided, 0), "Expected no fill of nothing");
+        assertNull(engine.buy(null, 1));
+    }
+
+    @Test
+    void laddersAreRebuiltForANewBookVersionOnly() {
+        FillEngine engine = new FillEngine();
+        Order[] bids = {order(99, 1)};
+        assertEquals(100, engine.buy(book(new Order[]{order(100, 1)}, bids, 7), 1).price(), 1e-9);
+        // another payload of the same version is the same book
+        assertEquals(100, engine.buy(book(new Order[]{order(100, 1)}, bids, 7), 1).price(), 1e-9);
+        assertEquals(110, engine.buy(book(new Order[]{order(110, 1)}, bids, 8), 1).price(), 1e-9);
+        // books without a version are told apart by instance
+        assertEquals(120, engine.buy(book(new Order[]{order(120, 1)}, bids, 0), 1).price(), 1e-9);
+        assertEquals(130, engine.buy(book(new Order[]{order(130, 1)}, bids, 0), 1).price(), 1e-9);
+    }
+
+    @Test
+    void fillsMatchALevelByLevelWalk() {
+        Random random = new Random(3);
+        FillEngine engine = new FillEngine();
+        for (int sequence = 1; sequence <= 200; sequence++) {
+            OrderBookPayload book = TestTrades.orderBook(10_000 + 10 * random.nextInt(100), random, sequence);
+            for (int i = 0; i < 10; i++) {
+                double amount = 0.001 + random.nextDouble() * 0.4;
+                assertEquals(walk(book.getAsks(), true, amount), engine.buy(book, amount).price(), 1e-6);
+                assertEquals(walk(book.getBids(), false, amount), engine.sell(book, amount).price(), 1e-6);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.ibbe.executor;
+
+import com.ibbe.entity.MonteCarloBands;
+import com.ibbe.entity.MonteCarloRequest;
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeConfig;
+import com.ibbe.entity.TradeSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MonteCarloSimulatorTest {
+
+    private static final TradeConfig CONFIG = new TradeConfig("averages", "1", "1", true, true, false, false);
+
+    @TempDir
+    Path directory;
+
+    private final ComputeExecutor computeExecutor = new ComputeExecutor();
+    private final List<Trade> trades = TestTrades.generate(600, 31);
+    private FeatureStore store;
+    private MonteCarloSimulator simulator;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(computeExecutor, "threads", 3);
+        computeExecutor.start();
+        store = TestTrades.materialize(directory, trades);
+        simulator = new MonteCarloSimulator();
+        ReflectionTestUtils.setField(simulator, "featureStore", store);
+        ReflectionTestUtils.setField(simulator, "computeExecutor", computeExecutor);
+        ReflectionTestUtils.setField(simulator, "publishMillis", 0L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        computeExecutor.stop();
+        store.stop();
+    }
+
+    /**
+     * @return the bands published by a run of the request
+     */
+    private List<MonteCarloBands> run(MonteCarloRequest request) throws IOException, InterruptedException {
+        List<MonteCarloBands> published = new ArrayList<>();
+        simulator.run(request, published::add);
+        return published;
+    }
+
+    @Test
+    void tapesBookWhatTheTraderMadeInEachChunk() throws IOException {
+        BasicTrader trader = new BasicTrader(CONFIG);
+        List<BigDecimal> profits = new ArrayList<>();
+        TradeSnapshot last = null;
+        for (Trade trade : trades) {
+            last = trader.makeTradeDecision(trade, trade.getObp());
+            if (last.getCompletedChunk() != null) {
+                profits.add(last.getCompletedChunk().getProfit());
+            }
+        }
+        profits.add(trader.calculateChunkProfit(last));
+
+        MonteCarloSimulator.Tapes tapes;
+        try (FeatureStore.Reader reader = store.openReader()) {
+            tapes = MonteCarloSimulator.decode(CONFIG, reader);
+        }
+        assertEquals(profits.size(), tapes.chunks().size());
+        int traded = 0;
+        for (int i = 0; i < profits.size(); i++) {
+            MonteCarloSimulator.ChunkTape tape = tapes.chunks().get(i);
+            traded += tape.size;
+            // BasicTrader rounds the balances to cents and satoshis after every trade
+            double tolerance = 0.02 * (tape.size + 2);
+            assertEquals(profits.get(i).doubleValue(),
+                tape.profit(null, 0, 0, tapes.startCurrency(), tapes.startCoin()), tolerance,
+                "Wrong profit of chunk " + i);
+        }
+        assertTrue(traded > 0, "Expected pretend trades on the tapes");
+    }
+
+    @Test
+    void slippageOnlyLowersAChunksProfit() throws IOException {
+        MonteCarloSimulator.Tapes tapes;
+        try (FeatureStore.Reader reader = store.openReader()) {
+            tapes = MonteCarloSimulator.decode(CONFIG, reader);
+        }
+        SplittableRandom random = new SplittableRandom(5);
+        for (MonteCarloSimulator.ChunkTape tape : tapes.chunks()) {
+            double exact = tape.profit(null, 0, 0, tapes.startCurrency(), tapes.startCoin());
+            for (int i = 0; i < 20; i++) {
+                double slipped = tape.profit(random, 0.001, 0, tapes.startCurrency(), tapes.startCoin());
+                assertTrue(slipped <= exact + 1e-9, "Expected " + slipped + " <= " + exact);
+                if (tape.size == 0) {
+                    assertEquals(exact, slipped, 1e-9, "Expected a chunk without trades to have no slippage");
+                }
+            }
+        }
+    }
+
+    @Test
+    void simulationsDoNotDependOnTheirBatch() throws IOException {
+        MonteCarloSimulator.Tapes tapes;
+        try (FeatureStore.Reader reader = store.openReader()) {
+            tapes = MonteCarloSimulator.decode(CONFIG, reader);
+        }
+        int[] steps = MonteCarloSimulator.steps(tapes.chunks().size());
+        double[][] all = MonteCarloSimulator.simulate(tapes, steps, 0, 10, 42, 0.0005, 0.2);
+        double[][] first = MonteCarloSimulator.simulate(tapes, steps, 0, 4, 42, 0.0005, 0.2);
+        double[][] second = MonteCarloSimulator.simulate(tapes, steps, 4, 10, 42, 0.0005, 0.2);
+        for (int simulation = 0; simulation < 10; simulation++) {
+            double[] path = simulation < 4 ? first[simulation] : second[simulation - 4];
+            assertArrayEquals(all[simulation], path, "Simulation " + simulation + " differs by batch");
+        }
+        assertFalse(all[0][steps.length - 1] == all[1][steps.length - 1], "Expected simulations to differ");
+    }
+
+    @Test
+    void stepsEndWithAllChunks() {
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5}, MonteCarloSimulator.steps(5));
+        int[] steps = MonteCarloSimulator.steps(250);
+        assertEquals(100, steps.length);
+        assertEquals(250, steps[steps.length - 1]);
+        for (int i = 1; i < steps.length; i++) {
+            assertTrue(steps[i] > steps[i - 1], "Expected ascending steps");
+        }
+    }
+
+    @Test
+    void bandsAreOrderedAndRepeatableBySeed() throws Exception {
+        MonteCarloRequest request = new MonteCarloRequest(CONFIG, 450, 5, 0.1, 99);
+        List<MonteCarloBands> published = run(request);
+        MonteCarloBands bands = published.get(published.size() - 1);
+        assertTrue(bands.isDone());
+        assertEquals(450, bands.getSimulationsDone());
+        assertTrue(published.stream().limit(published.size() - 1).noneMatch(MonteCarloBands::isDone));
+
+        double historical = 0;
+        try (FeatureStore.Reader reader = store.openReader()) {
+            MonteCarloSimulator.Tapes tapes = MonteCarloSimulator.decode(CONFIG, reader);
+            assertEquals(tapes.chunks().size(), bands.getChunks());
+            for (MonteCarloSimulator.ChunkTape tape : tapes.chunks()) {
+                historical += tape.profit(null, 0, 0, tapes.startCurrency(), tapes.startCoin());
+            }
+        }
+        assertEquals(historical, bands.getHistoricalProfit(), 1e-9);
+        assertEquals(bands.getChunks(), bands.getSteps()[bands.getSteps().length - 1]);
+        for (int point = 0; point < bands.getSteps().length; point++) {
+            for (int p = 1; p < bands.getPercentiles().length; p++) {
+                assertTrue(bands.getBands()[p][point] >= bands.getBands()[p - 1][point],
+                    "Expected percentile bands in order at point " + point);
+            }
+        }
+        assertTrue(bands.getLossProbability() >= 0 && bands.getLossProbability() <= 1);
+
+        // batches complete in any order, but the bands do not depend on it
+        List<MonteCarloBands> rerun = run(request);
+        MonteCarloBands again = rerun.get(rerun.size() - 1);
+        for (int p = 0; p < bands.getPercentiles().length; p++) {
+            assertArrayEquals(bands.getBands()[p], again.getBands()[p], "Expected the same bands from the seed");
+        }
+        assertEquals(bands.getLossProbability(), again.getLossProbability());
+    }
+
+    @Test
+    void rejectsRequestsOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> run(new MonteCarloRequest(null, 10, 0, 0, 1)));
+        assertThrows(IllegalArgumentException.class, () -> run(new MonteCarloRequest(CONFIG, 0, 0, 0, 1)));
+        assertThrows(IllegalArgumentException.class, () -> run(new MonteCarloRequest(CONFIG, 100_001, 0, 0, 1)));
+        assertThrows(IllegalArgumentException.class, () -> run(new MonteCarloRequest(CONFIG, 10, -1, 0, 1)));
+        assertThrows(IllegalArgumentException.class, () -> run(new MonteCarloRequest(CONFIG, 10, 0, 1, 1)));
+    }
+}
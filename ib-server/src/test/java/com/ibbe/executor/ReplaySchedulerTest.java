@@ -0,0 +1,169 @@
+package com.ibbe.executor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplaySchedulerTest {
+
+    private ReplayScheduler scheduler;
+    // the replays admitted on their own threads, in the order they were admitted
+    private final BlockingQueue<Admission> admitted = new LinkedBlockingQueue<>();
+
+    private record Admission(String owner, ReplayScheduler.Slot slot) {
+    }
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new ReplayScheduler();
+        ReflectionTestUtils.setField(scheduler, "workers", 1);
+        ReflectionTestUtils.setField(scheduler, "maxQueued", 10);
+    }
+
+    /**
+     * acquires a slot on a thread of its own and waits until the replay is queued
+     */
+    private void acquireLater(String owner, ReplayScheduler.Priority priority) throws InterruptedException {
+        long queued = queued();
+        Thread.ofVirtual().start(() -> {
+            try {
+                admitted.add(new Admission(owner, scheduler.acquire(owner, priority, owner + " " + priority)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        awaitQueued(queued + 1);
+    }
+
+    private long queued() {
+        return scheduler.getJobs().stream().filter(job -> job.state().equals("QUEUED")).count();
+    }
+
+    private void awaitQueued(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (queued() != count) {
+            assertTrue(System.currentTimeMillis() < deadline, "Expected " + count + " replays to be queued");
+            Thread.sleep(5);
+        }
+    }
+
+    private Admission nextAdmitted() throws InterruptedException {
+        Admission admission = admitted.poll(5, TimeUnit.SECONDS);
+        assertNotNull(admission, "Expected a replay to be admitted");
+        return admission;
+    }
+
+    @Test
+    void admitsUpToTheWorkersAndQueuesTheRest() throws Exception {
+        ReflectionTestUtils.setField(scheduler, "workers", 2);
+        ReplayScheduler.Slot first = scheduler.acquire("a", ReplayScheduler.Priority.INTERACTIVE, "first");
+        ReplayScheduler.Slot second = scheduler.acquire("b", ReplayScheduler.Priority.INTERACTIVE, "second");
+        acquireLater("c", ReplayScheduler.Priority.INTERACTIVE);
+
+        List<ReplayScheduler.JobStatus> jobs = scheduler.getJobs();
+        assertEquals(List.of("RUNNING", "RUNNING", "QUEUED"),
+            jobs.stream().map(ReplayScheduler.JobStatus::state).toList());
+        assertEquals("c", jobs.get(2).owner());
+        assertTrue(admitted.isEmpty(), "Expected the third replay to wait for a worker");
+
+        first.close();
+        assertEquals("c", nextAdmitted().owner(), "Expected the freed worker to go to the waiting replay");
+        assertEquals(0, queued());
+        second.close();
+        assertEquals(1, scheduler.getJobs().size());
+    }
+
+    @Test
+    void rejectsReplaysBeyondTheQueue() throws Exception {
+        ReflectionTestUtils.setField(scheduler, "maxQueued", 1);
+        ReplayScheduler.Slot slot = scheduler.acquire("a", ReplayScheduler.Priority.INTERACTIVE, "running");
+        acquireLater("b", ReplayScheduler.Priority.INTERACTIVE);
+
+        assertThrows(RejectedExecutionException.class,
+            () -> scheduler.acquire("c", ReplayScheduler.Priority.INTERACTIVE, "rejected"));
+        assertEquals(1, scheduler.getRejectedCount());
+        assertEquals(2, scheduler.getJobs().size(), "Expected the rejected replay not to be queued");
+        slot.close();
+        nextAdmitted().slot().close();
+    }
+
+    @Test
+    void interactiveReplaysGoFirstThenTheOwnersServedLeast() throws Exception {
+        ReplayScheduler.Slot slot = scheduler.acquire("a", ReplayScheduler.Priority.INTERACTIVE, "running");
+        acquireLater("c", ReplayScheduler.Priority.BATCH);
+        acquireLater("a", ReplayScheduler.Priority.INTERACTIVE);
+        acquireLater("b", ReplayScheduler.Priority.INTERACTIVE);
+
+        slot.close();
+        Admission next = nextAdmitted();
+        assertEquals("b", next.owner(), "Expected the interactive replay of the owner served least recently");
+        next.slot().close();
+        next = nextAdmitted();
+        assertEquals("a", next.owner(), "Expected the other interactive replay before the batch one");
+        next.slot().close();
+        next = nextAdmitted();
+        assertEquals("c", next.owner());
+        next.slot().close();
+        assertTrue(scheduler.getJobs().isEmpty());
+    }
+
+    @Test
+    void ownersWithFewerReplaysRunningGoFirst() throws Exception {
+        ReflectionTestUtils.setField(scheduler, "workers", 2);
+        ReplayScheduler.Slot first = scheduler.acquire("b", ReplayScheduler.Priority.BATCH, "first");
+        ReplayScheduler.Slot second = scheduler.acquire("a", ReplayScheduler.Priority.BATCH, "second");
+        acquireLater("b", ReplayScheduler.Priority.BATCH);
+        acquireLater("a", ReplayScheduler.Priority.BATCH);
+
+        // b was served before a, but b keeps a replay running while a has none
+        second.close();
+        assertEquals("a", nextAdmitted().owner(), "Expected the owner with fewer replays running first");
+        first.close();
+        assertEquals("b", nextAdmitted().owner());
+    }
+
+    @Test
+    void closingASlotTwiceFreesOneWorker() throws Exception {
+        ReplayScheduler.Slot slot = scheduler.acquire("a", ReplayScheduler.Priority.INTERACTIVE, "running");
+        acquireLater("b", ReplayScheduler.Priority.INTERACTIVE);
+        acquireLater("c", ReplayScheduler.Priority.INTERACTIVE);
+
+        slot.close();
+        slot.close();
+        assertEquals("b", nextAdmitted().owner());
+        assertEquals(1, queued(), "Expected the second close not to admit another replay");
+        assertNull(admitted.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void interruptingAWaitingReplayTakesItOffTheQueue() throws Exception {
+        ReplayScheduler.Slot slot = scheduler.acquire("a", ReplayScheduler.Priority.INTERACTIVE, "running");
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long queued = queued();
+        Thread waiting = Thread.ofVirtual().start(() -> {
+            try {
+                scheduler.acquire("b", ReplayScheduler.Priority.INTERACTIVE, "interrupted");
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        awaitQueued(queued + 1);
+
+        waiting.interrupt();
+        waiting.join(5000);
+        assertInstanceOf(InterruptedException.class, failure.get());
+        assertEquals(0, queued(), "Expected the interrupted replay off the queue");
+        acquireLater("c", ReplayScheduler.Priority.INTERACTIVE);
+        slot.close();
+        assertEquals("c", nextAdmitted().owner());
+    }
+}
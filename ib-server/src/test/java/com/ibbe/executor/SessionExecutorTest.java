@@ -0,0 +1,60 @@
+package com.ibbe.executor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionExecutorTest {
+
+    private final SessionExecutor sessionExecutor = new SessionExecutor();
+
+    @AfterEach
+    void tearDown() {
+        sessionExecutor.shutdown();
+    }
+
+    @Test
+    void cancelInterruptsOnlyTheTasksOfTheSession() throws Exception {
+        CountDownLatch started = new CountDownLatch(3);
+        CountDownLatch interrupted = new CountDownLatch(2);
+        Runnable blocking = () -> {
+            started.countDown();
+            try {
+                Thread.sleep(60_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        };
+        sessionExecutor.submit("a", blocking);
+        sessionExecutor.submit("a", blocking);
+        Future<?> other = sessionExecutor.submit("b", blocking);
+        assertTrue(started.await(5, TimeUnit.SECONDS), "All tasks should start on their own virtual threads");
+        assertEquals(2, sessionExecutor.getTaskCount("a"));
+        assertEquals(2, sessionExecutor.getActiveSessionCount());
+
+        assertEquals(2, sessionExecutor.cancel("a"));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS), "Tasks of the cancelled session should be interrupted");
+        assertEquals(0, sessionExecutor.getTaskCount("a"));
+        assertFalse(other.isDone(), "Tasks of other sessions keep running");
+        assertEquals(1, sessionExecutor.getActiveSessionCount());
+    }
+
+    @Test
+    void finishedTasksAreReleased() throws Exception {
+        Future<?> task = sessionExecutor.submit("a", () -> { });
+        task.get(5, TimeUnit.SECONDS);
+        // the task is released right after its future completes
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sessionExecutor.getTaskCount("a") > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, sessionExecutor.getTaskCount("a"));
+        assertEquals(0, sessionExecutor.getActiveSessionCount());
+        assertEquals(0, sessionExecutor.cancel("a"), "Nothing is left to cancel");
+    }
+}
@@ -0,0 +1,127 @@
+package com.ibbe.executor;
+
+import com.ibbe.entity.Order;
+import com.ibbe.entity.OrderBookPayload;
+import com.ibbe.entity.Tick;
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeSnapshot;
+
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic trades for the executor tests: a random walk of prices in steps of 10 with ticks and runs set the way
+ * BitsoDataAggregator sets them, an orderbook of five levels per side around each price, and trade times a few seconds
+ * apart with an occasional two hour gap, so a trader splits them into several chunks.
+ */
+final class TestTrades {
+
+    static final long START_MILLIS = 1_710_072_000_000L;
+
+    private TestTrades() {
+    }
+
+    static List<Trade> generate(int count, long seed) {
+        Random random = new Random(seed);
+        List<Trade> trades = new ArrayList<>(count);
+        long time = START_MILLIS;
+        long price = 10500;
+        Tick direction = Tick.TICK_UP;
+        int run = 0;
+        for (int i = 0; i < count; i++) {
+            time += i > 0 && random.nextInt(40) == 0 ? 2 * BasicTrader.MILLIS_PER_HOUR : 1000 + random.nextInt(5000);
+            int step = random.nextInt(3) - 1;
+            price += step * 10L;
+            Tick tick = step > 0 ? Tick.TICK_UP : step < 0 ? Tick.TICK_DOWN : Tick.TICK_ZERO;
+            if (tick != Tick.TICK_ZERO) {
+                run = tick == direction ? run + 1 : 1;
+                direction = tick;
+            } else if (run == 0) {
+                run = 1;
+            }
+            Trade trade = Trade.builder()
+                .createdAtMillis(time)
+                .amount(BigDecimal.valueOf(1 + random.nextInt(40), 3))
+                .makerSide(random.nextBoolean() ? "buy" : "sell")
+                .price(BigDecimal.valueOf(price))
+                .tid(1000L + i)
+                .tick(tick)
+                .obp(orderBook(price, random, i))
+                .build();
+            trade.setRun(direction, run);
+            trades.add(trade);
+        }
+        return trades;
+    }
+
+    /**
+     * @return five asks 10 apart from 5-15 above the price up and five bids from 5-15 below the price down, with
+     * random amounts
+     */
+    static OrderBookPayload orderBook(long price, Random random, long sequence) {
+        Order[] asks = new Order[5];
+        Order[] bids = new Order[5];
+        long bestAsk = price + 5 + 5 * random.nextInt(3);
+        long bestBid = price - 5 - 5 * random.nextInt(3);
+        for (int level = 0; level < 5; level++) {
+            asks[level] = new Order("btc_mxn", BigDecimal.valueOf(bestAsk + 10 * level),
+                BigDecimal.valueOf(1 + random.nextInt(60), 3), null);
+            bids[level] = new Order("btc_mxn", BigDecimal.valueOf(bestBid - 10 * level),
+                BigDecimal.valueOf(1 + random.nextInt(60), 3), null);
+        }
+        return new OrderBookPayload(asks, bids, new Timestamp(START_MILLIS), sequence);
+    }
+
+    /**
+     * Materializes the features of the trades, at offsets 0.., into a feature store in the directory (with its
+     * checkpoints in a subdirectory); stop() the store when done.
+     */
+    static FeatureStore materialize(Path directory, List<Trade> trades) {
+        FeatureStore store = openFeatureStore(directory);
+        for (int offset = 0; offset < trades.size(); offset++) {
+            store.append(offset, trades.get(offset));
+        }
+        store.flush();
+        return store;
+    }
+
+    /**
+     * @return a feature store opened on the directory as at startup, without following the topic
+     */
+    static FeatureStore openFeatureStore(Path directory) {
+        TraderCheckpointStore checkpointStore = new TraderCheckpointStore();
+        ReflectionTestUtils.setField(checkpointStore, "checkpointDir", directory.resolve("checkpoints").toString());
+        FeatureStore store = new FeatureStore();
+        ReflectionTestUtils.setField(store, "checkpointStore", checkpointStore);
+        ReflectionTestUtils.setField(store, "storeDir", directory.toString());
+        ReflectionTestUtils.invokeMethod(store, "open");
+        return store;
+    }
+
+    /**
+     * @return the decision-relevant values of a snapshot, for comparing the decisions of two traders
+     */
+    static String describe(TradeSnapshot snapshot) {
+        Trade pretend = snapshot.getPretendTrade();
+        return "seq=" + snapshot.getSequence()
+            + " tid=" + snapshot.getTradeId()
+            + " stma=" + snapshot.getSTMAPrice()
+            + " ltma=" + snapshot.getLTMAPrice()
+            + " up=" + snapshot.getTradeAmountIncrease()
+            + " down=" + snapshot.getTradeAmountDecrease()
+            + " pretend=" + (pretend == null ? "-" : pretend.getMakerSide() + "@" + pretend.getPrice() + "x"
+                + pretend.getAmount() + " slippage=" + snapshot.getPretendSlippageBps() + " filled="
+                + snapshot.getPretendFilledAmount())
+            + " currency=" + snapshot.getCurrencyBalance()
+            + " coin=" + snapshot.getCoinBalance()
+            + " value=" + snapshot.getAccountValueInChunk()
+            + " chunk=" + (snapshot.getCompletedChunk() == null ? "-"
+                : snapshot.getCompletedChunk().getChunkNumber() + ":" + snapshot.getCompletedChunk().getProfit());
+    }
+}
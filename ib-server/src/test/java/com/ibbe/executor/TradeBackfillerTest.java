@@ -0,0 +1,232 @@
+package com.ibbe.executor;
+
+import com.ibbe.entity.BitsoDataAggregator;
+import com.ibbe.entity.TradeWs;
+import com.ibbe.kafka.TradeArchive;
+import com.ibbe.kafka.TradeArchiveIndex;
+import com.ibbe.kafka.TradeGapLog;
+import com.ibbe.kafka.TradeIngestGuard;
+import com.ibbe.kafka.TradesProducer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TradeBackfillerTest {
+
+    private static final long START = Instant.parse("2024-03-10T12:00:00Z").toEpochMilli();
+    // the trades the stub endpoint has, with a few trade IDs Bitso skipped
+    private static final long LAST_TID = 400;
+    private static final Set<Long> MISSING = Set.of(17L, 205L, 206L);
+
+    @TempDir
+    Path directory;
+
+    private HttpServer server;
+    // the markers of the pages requested, and when each request arrived
+    private final List<Long> markers = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> arrivals = Collections.synchronizedList(new ArrayList<>());
+    // the HTTP statuses to answer before answering with trades again
+    private final Queue<Integer> failures = new ConcurrentLinkedQueue<>();
+
+    private final TradeGapLog gapLog = new TradeGapLog();
+    private final TradeIngestGuard ingestGuard = new TradeIngestGuard();
+    private final TradesProducer tradesProducer = Mockito.mock(TradesProducer.class);
+    private final TradeBackfiller backfiller = new TradeBackfiller();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/trades", this::trades);
+        server.start();
+
+        TradeArchiveIndex archiveIndex = new TradeArchiveIndex();
+        ReflectionTestUtils.setField(archiveIndex, "indexDir", directory.resolve("index").toString());
+        ReflectionTestUtils.setField(gapLog, "logDir", directory.resolve("ingest").toString());
+        ReflectionTestUtils.setField(ingestGuard, "gapLog", gapLog);
+        ReflectionTestUtils.setField(ingestGuard, "archiveIndex", archiveIndex);
+        ReflectionTestUtils.setField(ingestGuard, "windowSize", 1024);
+        ReflectionTestUtils.setField(ingestGuard, "bloomExpected", 10_000L);
+        ingestGuard.init();
+
+        ReflectionTestUtils.setField(backfiller, "tradesUrl",
+            "http://localhost:" + server.getAddress().getPort() + "/trades?book=btc_mxn&limit=");
+        ReflectionTestUtils.setField(backfiller, "httpClient", HttpClient.newHttpClient());
+        ReflectionTestUtils.setField(backfiller, "enabled", false);
+        ReflectionTestUtils.setField(backfiller, "retryBackoffMillis", 1L);
+        ReflectionTestUtils.setField(backfiller, "requestsPerSecond", 1000.0);
+        ReflectionTestUtils.setField(backfiller, "gapLog", gapLog);
+        ReflectionTestUtils.setField(backfiller, "ingestGuard", ingestGuard);
+        ReflectionTestUtils.setField(backfiller, "bitsoDataAggregator", Mockito.mock(BitsoDataAggregator.class));
+        ReflectionTestUtils.setField(backfiller, "tradesProducer", tradesProducer);
+        ReflectionTestUtils.setField(backfiller, "tradeArchive", Mockito.mock(TradeArchive.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * the stub Bitso trades endpoint: up to limit trades after the marker, ascending
+     */
+    private void trades(HttpExchange exchange) throws IOException {
+        arrivals.add(System.nanoTime());
+        String query = exchange.getRequestURI().getQuery();
+        int limit = Integer.parseInt(parameter(query, "limit"));
+        long marker = Long.parseLong(parameter(query, "marker"));
+        markers.add(marker);
+        assertEquals("asc", parameter(query, "sort"));
+
+        Integer failure = failures.poll();
+        if (failure != null) {
+            exchange.sendResponseHeaders(failure, -1);
+            exchange.close();
+            return;
+        }
+        String payload = LongStream.rangeClosed(marker + 1, LAST_TID)
+            .filter(tid -> !MISSING.contains(tid))
+            .limit(limit)
+            .mapToObj(tid -> "{\"book\":\"btc_mxn\",\"created_at\":\"" + Instant.ofEpochMilli(START + tid * 1000)
+                + "\",\"amount\":\"0.01\",\"maker_side\":\"" + (tid % 2 == 0 ? "buy" : "sell")
+                + "\",\"price\":\"1150000.00\",\"tid\":" + tid + "}")
+            .collect(Collectors.joining(",", "{\"success\":true,\"payload\":[", "]}"));
+        byte[] body = payload.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String parameter(String query, String name) {
+        for (String pair : query.split("&")) {
+            if (pair.startsWith(name + "=")) {
+                return pair.substring(name.length() + 1);
+            }
+        }
+        throw new AssertionError("No " + name + " in " + query);
+    }
+
+    private void configure(int concurrency, long segmentTids, double requestsPerSecond) {
+        ReflectionTestUtils.setField(backfiller, "concurrency", concurrency);
+        ReflectionTestUtils.setField(backfiller, "segmentTids", segmentTids);
+        ReflectionTestUtils.setField(backfiller, "requestsPerSecond", requestsPerSecond);
+        backfiller.start();
+    }
+
+    private static List<Long> existing(long fromTid, long toTid) {
+        return LongStream.rangeClosed(fromTid, toTid).filter(tid -> !MISSING.contains(tid)).boxed().toList();
+    }
+
+    private static TradeWs trade(long tid) {
+        return new TradeWs(tid, String.valueOf(START + tid * 1000), new BigDecimal("0.01"),
+            new BigDecimal("1150000.00"), null, null, null, "0");
+    }
+
+    private List<Long> producedTids() {
+        ArgumentCaptor<TradeWs> produced = ArgumentCaptor.forClass(TradeWs.class);
+        Mockito.verify(tradesProducer, Mockito.atLeast(0)).produceKafkaMessage(produced.capture());
+        return produced.getAllValues().stream().map(TradeWs::getTid).toList();
+    }
+
+    @Test
+    void eachSegmentIsPagedByMarkerUntilItsLastTrade() throws Exception {
+        configure(3, 120, 1000);
+
+        List<Long> fetched = new ArrayList<>(backfiller.fetch(1, 350).keySet());
+
+        assertEquals(existing(1, 350), fetched, "Expected every trade of the range, by trade ID");
+        assertTrue(markers.containsAll(List.of(0L, 120L, 240L)), "Expected each segment paged from its start but got "
+            + markers);
+        // 1..120 and 121..240 take two pages each, 241..350 a full page and the 10 trades after it
+        assertEquals(6, markers.size(), "Expected no page past the end of a segment but got " + markers);
+        assertTrue(markers.contains(340L), "Expected the page after a full one asked for by its last trade ID");
+    }
+
+    @Test
+    void throttledAndFailingPagesAreRetried() throws Exception {
+        configure(1, 1000, 1000);
+        failures.addAll(List.of(429, 503));
+
+        assertEquals(existing(1, 50), new ArrayList<>(backfiller.fetch(1, 50).keySet()));
+        assertEquals(List.of(0L, 0L, 0L), markers, "Expected the page asked for again after HTTP 429 and 503");
+    }
+
+    @Test
+    void aPageFailingEveryAttemptFailsTheFetch() {
+        configure(1, 1000, 1000);
+        failures.addAll(List.of(503, 503, 503, 503, 503));
+
+        IOException e = assertThrows(IOException.class, () -> backfiller.fetch(1, 50));
+        assertEquals("Bitso trades returned HTTP 503", e.getMessage());
+        assertEquals(5, markers.size(), "Expected as many requests as attempts");
+    }
+
+    @Test
+    void concurrentSegmentsShareOneRateLimit() throws Exception {
+        configure(4, 50, 20);
+
+        assertEquals(existing(1, 400), new ArrayList<>(backfiller.fetch(1, 400).keySet()));
+
+        // eight segments of a page each, at most one request every 50 ms among all of them
+        List<Long> times = new ArrayList<>(arrivals);
+        Collections.sort(times);
+        assertEquals(8, times.size());
+        long spanMillis = (times.get(times.size() - 1) - times.get(0)) / 1_000_000;
+        assertTrue(spanMillis >= 7 * 50 - 20, "Expected the requests spread over 350 ms but took " + spanMillis);
+    }
+
+    @Test
+    void theTradesOfAGapAreProducedInTradeIdOrder() throws Exception {
+        configure(3, 100, 1000);
+
+        int backfilled = backfiller.backfill(new TradeGapLog.Gap(1, 250, START, START + 251_000));
+
+        List<Long> expected = existing(1, 250).stream().map(tid -> tid * 10).toList();
+        assertEquals(expected.size(), backfilled);
+        assertEquals(expected, producedTids(), "Expected the trades produced by trade ID, as stored (times 10)");
+        Mockito.verify(tradesProducer).flush();
+    }
+
+    @Test
+    void tradesIngestedAfterAllAreNotProducedAgain() throws Exception {
+        configure(2, 100, 1000);
+        for (long tid : List.of(5L, 6L, 150L)) {
+            assertTrue(ingestGuard.admit(trade(tid)));
+        }
+
+        int backfilled = backfiller.backfill(new TradeGapLog.Gap(1, 200, START, START + 201_000));
+
+        List<Long> expected = existing(1, 200).stream()
+            .filter(tid -> tid != 5 && tid != 6 && tid != 150)
+            .map(tid -> tid * 10)
+            .toList();
+        assertEquals(expected.size(), backfilled);
+        assertEquals(expected, producedTids());
+        assertEquals(3, ingestGuard.getDuplicateCount(), "Expected the ingested trades dropped as duplicates");
+    }
+}
@@ -0,0 +1,134 @@
+package com.ibbe.executor;
+
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeConfig;
+import com.ibbe.entity.TradeSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TraderCheckpointTest {
+
+    @TempDir
+    Path directory;
+
+    private TraderCheckpointStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new TraderCheckpointStore();
+        ReflectionTestUtils.setField(store, "checkpointDir", directory.toString());
+    }
+
+    /**
+     * @return the decisions of the trader for the trades, one line per trade
+     */
+    private static List<String> decide(BasicTrader trader, List<Trade> trades) {
+        List<String> decisions = new ArrayList<>(trades.size());
+        for (Trade trade : trades) {
+            TradeSnapshot snapshot = trader.makeTradeDecision(trade, trade.getObp());
+            decisions.add(TestTrades.describe(snapshot));
+        }
+        return decisions;
+    }
+
+    private void assertRestoredTraderDecidesAsTheUninterruptedOne(TradeConfig config, int stopAt) {
+        List<Trade> trades = TestTrades.generate(400, 7);
+        List<String> uninterrupted = decide(new BasicTrader(config), trades);
+        assertTrue(uninterrupted.stream().anyMatch(line -> line.contains("PRETEND")),
+            "Expected the configuration to make pretend trades");
+
+        BasicTrader stopped = new BasicTrader(config);
+        decide(stopped, trades.subList(0, stopAt));
+        store.save(config.canonicalHash(), stopped.checkpoint(stopAt));
+
+        TraderCheckpoint checkpoint = store.findLatest(config.canonicalHash(), trades.size());
+        assertNotNull(checkpoint, "Expected the saved checkpoint to be found");
+        assertEquals(stopAt, checkpoint.getOffset());
+        BasicTrader restored = new BasicTrader(config);
+        restored.restore(checkpoint);
+
+        List<String> resumed = decide(restored, trades.subList(stopAt, trades.size()));
+        assertEquals(uninterrupted.subList(stopAt, trades.size()), resumed,
+            "Expected the restored trader to decide as the one that never stopped");
+    }
+
+    @Test
+    void restoredTraderDecidesAsTheUninterruptedOne() {
+        assertRestoredTraderDecidesAsTheUninterruptedOne(
+            new TradeConfig("ckpt-runs", "2", "2", false, false, false, false), 137);
+    }
+
+    @Test
+    void restoredTraderKeepsTheTrendWindows() {
+        // momentum and moving averages depend on the trades before the checkpoint
+        assertRestoredTraderDecidesAsTheUninterruptedOne(
+            new TradeConfig("ckpt-trends", "1", "1", false, false, true, false), 211);
+    }
+
+    @Test
+    void checkpointSurvivesSerialization() throws IOException {
+        BasicTrader trader = new BasicTrader(new TradeConfig("ckpt-io", "2", "2", false, false, false, false));
+        decide(trader, TestTrades.generate(50, 3));
+        TraderCheckpoint checkpoint = trader.checkpoint(50);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        checkpoint.write(new DataOutputStream(bytes));
+        TraderCheckpoint read = TraderCheckpoint.read(
+            new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(checkpoint.offset, read.offset);
+        assertEquals(checkpoint.sequence, read.sequence);
+        assertEquals(checkpoint.currencyBalance, read.currencyBalance);
+        assertEquals(checkpoint.coinBalance, read.coinBalance);
+        assertEquals(checkpoint.tradePrices, read.tradePrices);
+        assertEquals(checkpoint.tradeAmounts, read.tradeAmounts);
+        assertEquals(checkpoint.trades.size(), read.trades.size());
+        for (int i = 0; i < read.trades.size(); i++) {
+            assertEquals(checkpoint.trades.get(i).getNthRun(), read.trades.get(i).getNthRun(),
+                "Expected the run of trade " + i + " to be kept");
+            assertEquals(checkpoint.trades.get(i).getCreatedAtMillis(), read.trades.get(i).getCreatedAtMillis());
+        }
+        assertEquals(checkpoint.lastProcessedTrade.getTid(), read.lastProcessedTrade.getTid());
+        assertEquals(checkpoint.currentChunkNumber, read.currentChunkNumber);
+        assertEquals(checkpoint.currentChunkStartTimeMillis, read.currentChunkStartTimeMillis);
+    }
+
+    @Test
+    void storeFindsTheLatestCheckpointNotPastTheOffsetAndPrunesOldOnes() {
+        BasicTrader trader = new BasicTrader(new TradeConfig("ckpt-store", "2", "2", false, false, false, false));
+        decide(trader, TestTrades.generate(10, 5));
+        for (long offset : new long[]{100, 200, 300, 400}) {
+            store.save("cfg", trader.checkpoint(offset));
+        }
+
+        assertFalse(Files.exists(directory.resolve("cfg-100.ckpt")), "Expected only the newest 3 to be kept");
+        assertEquals(400, store.findLatest("cfg", 1000).getOffset());
+        assertEquals(300, store.findLatest("cfg", 399).getOffset());
+        assertNull(store.findLatest("cfg", 199), "Expected no checkpoint before the pruned one");
+        assertNull(store.findLatest("other", 1000));
+    }
+
+    @Test
+    void storeSkipsAnUnreadableCheckpoint() throws IOException {
+        BasicTrader trader = new BasicTrader(new TradeConfig("ckpt-bad", "2", "2", false, false, false, false));
+        decide(trader, TestTrades.generate(10, 5));
+        store.save("cfg", trader.checkpoint(100));
+        Files.write(directory.resolve("cfg-200.ckpt"), new byte[]{0, 0, 0, 99});
+
+        assertEquals(100, store.findLatest("cfg", 1000).getOffset(), "Expected the older readable checkpoint");
+    }
+}
@@ -0,0 +1,175 @@
+package com.ibbe.executor;
+
+import com.ibbe.entity.Trade;
+import com.ibbe.entity.TradeConfig;
+import com.ibbe.entity.TradeSnapshot;
+import com.ibbe.entity.WalkForwardReport;
+import com.ibbe.entity.WalkForwardRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WalkForwardEngineTest {
+
+    private static final List<TradeConfig> CANDIDATES = List.of(
+        new TradeConfig("runs", "2", "3", false, false, false, false),
+        new TradeConfig("quick", "1", "1", false, false, false, false),
+        new TradeConfig("averages", "1", "1", true, true, false, false),
+        new TradeConfig("momentum", "0", "0", false, false, true, true));
+
+    @TempDir
+    Path directory;
+
+    private final ComputeExecutor computeExecutor = new ComputeExecutor();
+    private FeatureStore store;
+    private WalkForwardEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(computeExecutor, "threads", 3);
+        computeExecutor.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        computeExecutor.stop();
+        if (store != null) {
+            store.stop();
+        }
+    }
+
+    private void materialize(List<Trade> trades) {
+        store = TestTrades.materialize(directory, trades);
+        engine = new WalkForwardEngine();
+        ReflectionTestUtils.setField(engine, "featureStore", store);
+        ReflectionTestUtils.setField(engine, "computeExecutor", computeExecutor);
+    }
+
+    @Test
+    void scoreIsWhatTheLiveTraderMakes() throws IOException {
+        List<Trade> trades = TestTrades.generate(400, 21);
+        materialize(trades);
+        for (TradeConfig config : CANDIDATES) {
+            BasicTrader trader = new BasicTrader(config);
+            BigDecimal profit = BigDecimal.ZERO;
+            int chunks = 0;
+            int pretendTrades = 0;
+            TradeSnapshot last = null;
+            for (Trade trade : trades) {
+                last = trader.makeTradeDecision(trade, trade.getObp());
+                if (last.getCompletedChunk() != null) {
+                    profit = profit.add(last.getCompletedChunk().getProfit());
+                    chunks++;
+                }
+                pretendTrades += last.getPretendTrade() != null ? 1 : 0;
+            }
+            profit = profit.add(trader.calculateChunkProfit(last));
+
+            try (FeatureStore.Reader reader = store.openReader()) {
+                WalkForwardEngine.Score score = WalkForwardEngine.score(config, reader, 0, reader.size());
+                assertEquals(0, profit.compareTo(score.profit()),
+                    "Expected " + profit + " for " + config.getId() + " but was " + score.profit());
+                assertEquals(chunks + 1, score.chunks(), "Expected the open chunk counted for " + config.getId());
+                assertEquals(pretendTrades, score.pretendTrades());
+            }
+        }
+    }
+
+    @Test
+    void scoreOfALaterRangeIsWhatATraderStartedThereMakes() throws IOException {
+        List<Trade> trades = TestTrades.generate(400, 22);
+        materialize(trades);
+        for (TradeConfig config : CANDIDATES) {
+            for (int from : new int[] {37, 150}) {
+                BasicTrader trader = new BasicTrader(config);
+                BigDecimal profit = BigDecimal.ZERO;
+                TradeSnapshot last = null;
+                for (Trade trade : trades.subList(from, trades.size())) {
+                    last = trader.makeTradeDecision(trade, trade.getObp());
+                    if (last.getCompletedChunk() != null) {
+                        profit = profit.add(last.getCompletedChunk().getProfit());
+                    }
+                }
+                profit = profit.add(trader.calculateChunkProfit(last));
+
+                try (FeatureStore.Reader reader = store.openReader()) {
+                    WalkForwardEngine.Score score = WalkForwardEngine.score(config, reader, from, reader.size());
+                    assertEquals(0, profit.compareTo(score.profit()), "Expected " + profit + " for "
+                        + config.getId() + " from " + from + " but was " + score.profit());
+                }
+            }
+        }
+    }
+
+    @Test
+    void eachWindowRunsTheBestTrainCandidateOnItsTestPart() throws IOException {
+        materialize(TestTrades.generate(650, 23));
+        WalkForwardReport report = engine.run(new WalkForwardRequest(CANDIDATES, 200, 100));
+
+        // windows of 200 + 100 records every 100 records; the 50 records after the last whole window are not scored
+        assertEquals(4, report.getWindows().size());
+        assertEquals(CANDIDATES.size(), report.getCandidates());
+        BigDecimal inSample = BigDecimal.ZERO;
+        BigDecimal outOfSample = BigDecimal.ZERO;
+        try (FeatureStore.Reader reader = store.openReader()) {
+            for (int i = 0; i < report.getWindows().size(); i++) {
+                WalkForwardReport.Window window = report.getWindows().get(i);
+                assertEquals(100L * i, window.getTrainFrom());
+                assertEquals(100L * i + 200, window.getTestFrom());
+                assertEquals(100L * i + 300, window.getTestTo());
+
+                // the first candidate of the highest train profit wins
+                TradeConfig best = null;
+                BigDecimal bestProfit = null;
+                for (TradeConfig candidate : CANDIDATES) {
+                    BigDecimal profit = WalkForwardEngine.score(candidate, reader, window.getTrainFrom(),
+                        window.getTestFrom()).profit();
+                    if (bestProfit == null || profit.compareTo(bestProfit) > 0) {
+                        best = candidate;
+                        bestProfit = profit;
+                    }
+                }
+                WalkForwardEngine.Score test = WalkForwardEngine.score(best, reader, window.getTestFrom(),
+                    window.getTestTo());
+                assertEquals(best.getId(), window.getWinner().getId(), "Wrong winner of window " + i);
+                assertEquals(0, bestProfit.compareTo(window.getTrainProfit()), "Wrong train profit of window " + i);
+                assertEquals(0, test.profit().compareTo(window.getTestProfit()), "Wrong test profit of window " + i);
+                assertEquals(test.pretendTrades(), window.getTestPretendTrades());
+                assertEquals(test.chunks(), window.getTestChunks());
+                inSample = inSample.add(bestProfit);
+                outOfSample = outOfSample.add(test.profit());
+            }
+        }
+        assertEquals(0, inSample.compareTo(report.getInSampleProfit()));
+        assertEquals(0, outOfSample.compareTo(report.getOutOfSampleProfit()));
+    }
+
+    @Test
+    void rejectsWindowsTheStoreCannotHold() {
+        materialize(TestTrades.generate(50, 29));
+        assertThrows(IllegalArgumentException.class, () -> engine.run(new WalkForwardRequest(CANDIDATES, 0, 10)));
+        assertThrows(IllegalArgumentException.class, () -> engine.run(new WalkForwardRequest(CANDIDATES, 10, -1)));
+        TradeConfig bad = new TradeConfig("bad", "0", "0", false, false, false, false);
+        bad.setSellRule("price >");
+        assertThrows(IllegalArgumentException.class, () -> engine.run(new WalkForwardRequest(List.of(bad), 10, 10)));
+        assertThrows(IllegalStateException.class, () -> engine.run(new WalkForwardRequest(CANDIDATES, 40, 11)));
+        assertEquals(1, assertDoesNotThrow(() -> engine.run(new WalkForwardRequest(CANDIDATES, 40, 10)))
+            .getWindows().size());
+    }
+
+    @Test
+    void defaultCandidatesCoverEveryRunAndFlagCombination() {
+        List<TradeConfig> candidates = WalkForwardEngine.defaultCandidates();
+        assertEquals(4 * 4 * 16, candidates.size());
+        assertEquals(candidates.size(), candidates.stream().map(TradeConfig::getId).distinct().count());
+    }
+}
@@ -0,0 +1,85 @@
+package com.ibbe.kafka;
+
+import com.ibbe.entity.Order;
+import com.ibbe.entity.OrderBookPayload;
+import com.ibbe.entity.Tick;
+import com.ibbe.entity.Trade;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CuratedTradeCodecTest {
+
+    private static Trade trade(Tick tick, Tick direction, int run) {
+        OrderBookPayload book = new OrderBookPayload(
+            new Order[]{new Order(null, new BigDecimal("1234.5"), new BigDecimal("0.25"), null),
+                new Order(null, new BigDecimal("1235.5"), new BigDecimal("1.5"), null)},
+            new Order[]{new Order(null, new BigDecimal("1233.5"), new BigDecimal("0.01"), null)},
+            new Timestamp(1_710_071_999_000L), 42);
+        Trade trade = Trade.builder()
+            .tid(123L)
+            .createdAtMillis(1_710_072_000_123L)
+            .price(new BigDecimal("1234.50"))
+            .amount(new BigDecimal("0.01"))
+            .makerSide("sell")
+            .tick(tick)
+            .obp(book)
+            .build();
+        trade.setRun(direction, run);
+        return trade;
+    }
+
+    @Test
+    void tradesSurviveTheRoundTrip() {
+        Trade trade = trade(Tick.TICK_ZERO, Tick.TICK_DOWN, 3);
+        Trade decoded = CuratedTradeCodec.decode(CuratedTradeCodec.encode(trade));
+
+        assertNotNull(decoded);
+        assertEquals(123L, decoded.getTid());
+        assertEquals(1_710_072_000_123L, decoded.getCreatedAtMillis());
+        assertEquals(0, trade.getPrice().compareTo(decoded.getPrice()));
+        assertEquals(0, trade.getAmount().compareTo(decoded.getAmount()));
+        assertEquals("sell", decoded.getMakerSide());
+        assertEquals(Tick.TICK_ZERO, decoded.getTick());
+        assertEquals(-3, decoded.getNthRun());
+        assertEquals("TICK_DOWN3", decoded.getNthStatus(), "Expected the status built from the run");
+
+        OrderBookPayload book = decoded.getObp();
+        assertEquals(42, book.getSequence());
+        assertEquals(1_710_071_999_000L, book.getUpdated_at().getTime());
+        assertEquals(2, book.getAsks().length);
+        assertEquals(0, new BigDecimal("1235.5").compareTo(book.getAsks()[1].getP()));
+        assertEquals(0, new BigDecimal("1.5").compareTo(book.getAsks()[1].getA()));
+        assertEquals(1, book.getBids().length);
+        assertEquals(0, new BigDecimal("0.01").compareTo(book.getBids()[0].getA()));
+    }
+
+    @Test
+    void theRunIsEncodedAsANumber() {
+        String encoded = CuratedTradeCodec.encode(trade(Tick.TICK_UP, Tick.TICK_UP, 12));
+        assertTrue(encoded.contains("\"r\":12"), encoded);
+        assertFalse(encoded.contains("\"n\""), "Expected no status string in " + encoded);
+        assertEquals(12, CuratedTradeCodec.decode(encoded).getNthRun());
+    }
+
+    @Test
+    void recordsWithTheStatusStringStillDecode() {
+        Trade decoded = CuratedTradeCodec.decode("{\"i\":7,\"t\":1710072000000,\"p\":1234.5,\"k\":\"TICK_UP\","
+            + "\"n\":\"TICK_UP4\",\"q\":1,\"asks\":[1235,0.5],\"bids\":[1234,0.5]}");
+        assertNotNull(decoded);
+        assertEquals(4, decoded.getNthRun());
+        assertEquals("TICK_UP4", decoded.getNthStatus());
+    }
+
+    @Test
+    void recordsNotInTheCuratedFormatAreRejected() {
+        assertNull(CuratedTradeCodec.decode("[]"));
+        assertNull(CuratedTradeCodec.decode("{\"i\":7"), "Expected a truncated record rejected");
+        assertNull(CuratedTradeCodec.decode("{\"p\":1234.5,\"asks\":[],\"bids\":[]}"), "Expected a tid required");
+        assertNull(CuratedTradeCodec.decode("{\"i\":7,\"p\":1234.5,\"asks\":[]}"), "Expected both sides required");
+        assertNull(CuratedTradeCodec.decode("{\"i\":7,\"p\":1234.5,\"k\":\"SIDEWAYS\",\"asks\":[],\"bids\":[]}"));
+    }
+}
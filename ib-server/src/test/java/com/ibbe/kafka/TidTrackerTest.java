@@ -0,0 +1,106 @@
+package com.ibbe.kafka;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TidTrackerTest {
+
+    private final List<long[]> gaps = new ArrayList<>();
+    // a window of 128 IDs; the filter is sized so that a false positive in these tests is practically impossible
+    private final TidTracker tracker = new TidTracker(128, 100_000, 1e-9,
+        (fromTid, toTid, fromMillis, toMillis) -> gaps.add(new long[]{fromTid, toTid, fromMillis, toMillis}));
+
+    @Test
+    void duplicatesInsideTheWindowAreRecognized() {
+        for (long tid = 1000; tid < 1050; tid++) {
+            assertTrue(tracker.add(tid, tid * 10), "Expected " + tid + " to be new");
+        }
+        assertFalse(tracker.add(1000, 0));
+        assertFalse(tracker.add(1049, 0));
+        assertTrue(tracker.contains(1025));
+        assertFalse(tracker.contains(1050));
+        assertEquals(1049, tracker.getHighestTid());
+        assertTrue(gaps.isEmpty(), "Expected no gaps in consecutive IDs");
+    }
+
+    @Test
+    void duplicatesAreRecognizedAfterTheWindowSlidesPastThem() {
+        for (long tid = 1000; tid < 1100; tid++) {
+            tracker.add(tid, 0);
+        }
+        // 1200 is beyond the window, so it slides by a few words: part of the IDs are handed to the bloom filter
+        tracker.add(1200, 0);
+        for (long tid = 1000; tid < 1100; tid++) {
+            assertTrue(tracker.contains(tid), "Expected " + tid + " to be remembered after the slide");
+            assertFalse(tracker.add(tid, 0), "Expected " + tid + " to be a duplicate after the slide");
+        }
+        assertFalse(tracker.add(1200, 0));
+        assertTrue(tracker.add(1150, 0), "Expected a skipped ID in the window to be new");
+        assertTrue(tracker.add(950, 0), "Expected an ID never seen before the window to be new");
+        assertFalse(tracker.add(950, 0));
+    }
+
+    @Test
+    void aJumpLargerThanTheWindowReportsOneGap() {
+        tracker.add(1000, 10_000);
+        tracker.add(1001, 10_010);
+        assertTrue(tracker.add(100_000, 20_000));
+
+        assertEquals(1, gaps.size());
+        assertArrayEquals(new long[]{1002, 99_999, 10_010, 20_000}, gaps.get(0));
+        assertEquals(100_000, tracker.getHighestTid());
+        assertFalse(tracker.add(1000, 0), "Expected IDs the window jumped past to be remembered");
+        assertFalse(tracker.add(1001, 0));
+        assertFalse(tracker.contains(99_999), "Expected the window to hold nothing but the new ID");
+        assertFalse(tracker.contains(1002));
+    }
+
+    @Test
+    void aLateOlderIdDoesNotReportAGap() {
+        tracker.add(1000, 10_000);
+        tracker.add(1005, 10_050);
+        assertEquals(1, gaps.size());
+        assertArrayEquals(new long[]{1001, 1004, 10_000, 10_050}, gaps.get(0));
+
+        // backfilled IDs of the gap arrive after the ones around it
+        assertTrue(tracker.add(1002, 10_020));
+        assertTrue(tracker.add(1001, 10_010));
+        assertEquals(1, gaps.size(), "Expected no gap for IDs below the highest one");
+        assertEquals(1005, tracker.getHighestTid());
+
+        // the same for an ID older than the window
+        tracker.add(2000, 20_000);
+        assertEquals(2, gaps.size());
+        assertTrue(tracker.add(1003, 10_030));
+        assertEquals(2, gaps.size(), "Expected no gap for an ID older than the window");
+        assertFalse(tracker.add(1003, 10_030));
+        assertTrue(tracker.add(2001, 20_010));
+        assertEquals(2, gaps.size());
+    }
+
+    @Test
+    void theFirstIdSitsInTheLastQuarterOfTheWindow() {
+        TidTracker large = new TidTracker(1024, 1000, 1e-9, null);
+        large.add(5000, 0);
+        // IDs up to a quarter window above the first one, and up to 3/4 below it, are tracked in the window
+        for (long tid = 4300; tid < 5200; tid++) {
+            assertEquals(tid != 5000, large.add(tid, 0), "Wrong result for " + tid);
+        }
+        assertFalse(large.contains(4299));
+    }
+
+    @Test
+    void windowsOfOneWordSlideWithEveryWord() {
+        TidTracker small = new TidTracker(10, 1000, 1e-9, null);
+        for (long tid = 0; tid < 1000; tid += 3) {
+            assertTrue(small.add(tid, 0), "Expected " + tid + " to be new");
+            assertFalse(small.add(tid, 0), "Expected " + tid + " to be a duplicate");
+        }
+        assertFalse(small.add(3, 0));
+        assertTrue(small.add(4, 0));
+    }
+}
@@ -0,0 +1,192 @@
+package com.ibbe.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TradeArchiveIndexTest {
+
+    private static final long START = Instant.parse("2024-03-10T12:00:00Z").toEpochMilli();
+
+    @TempDir
+    Path directory;
+
+    private TradeArchiveIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = newIndex();
+    }
+
+    private TradeArchiveIndex newIndex() {
+        TradeArchiveIndex index = new TradeArchiveIndex();
+        ReflectionTestUtils.setField(index, "indexIntervalMillis", 60_000L);
+        ReflectionTestUtils.setField(index, "indexIntervalRecords", 1000);
+        ReflectionTestUtils.setField(index, "indexDir", directory.toString());
+        return index;
+    }
+
+    private static String tradeJson(long tid, long timeMillis) {
+        return "{\"obo\":{\"bids\":[{\"p\":1,\"a\":2}],\"asks\":[]},\"price\":100.5,\"tid\":" + tid
+            + ",\"createdAt\":\"" + Instant.ofEpochMilli(timeMillis) + "\"}";
+    }
+
+    private void index(long offset, long tid, long timeMillis) {
+        ConsumerRecord<String, String> record = new ConsumerRecord<>(TradeArchiveIndex.TOPIC,
+            TradeArchiveIndex.PARTITION, offset, String.valueOf(tid), tradeJson(tid, timeMillis));
+        ReflectionTestUtils.invokeMethod(index, "index", record);
+    }
+
+    /**
+     * indexes one trade per 10 seconds at offsets 0..count-1, tids 1000.., so a point is recorded every 6 records
+     */
+    private void indexTrades(int count) {
+        for (int i = 0; i < count; i++) {
+            index(i, 1000 + i, START + i * 10_000L);
+        }
+    }
+
+    @Test
+    void readsTidAndTimeSkippingThePayload() {
+        assertArrayEquals(new long[]{42, START}, TradeArchiveIndex.readTidAndTime(tradeJson(42, START)));
+        assertNull(TradeArchiveIndex.readTidAndTime("{\"tid\":42}"), "Expected null without createdAt");
+        assertNull(TradeArchiveIndex.readTidAndTime("not json"), "Expected null for invalid JSON");
+        assertNull(TradeArchiveIndex.readTidAndTime("[1,2]"), "Expected null for a non-object");
+    }
+
+    @Test
+    void recordsAPointPerIntervalOfTradeTime() {
+        indexTrades(60);
+
+        assertEquals(10, index.getIndexPointCount(), "Expected a point every 6 records of 10 seconds");
+        assertEquals(60, index.getIndexedOffset());
+        assertEquals(START, index.getFirstTradeTime());
+        assertEquals(START + 59 * 10_000L, index.getLastTradeTime());
+    }
+
+    @Test
+    void recordsAPointAfterIntervalRecordsWithinTheSameTime() {
+        ReflectionTestUtils.setField(index, "indexIntervalRecords", 5);
+        for (int i = 0; i < 20; i++) {
+            index(i, 1000 + i, START + i);
+        }
+        assertEquals(4, index.getIndexPointCount(), "Expected points at offsets 0, 5, 10, 15");
+        assertEquals(15, index.startOffsetForTid(1017));
+    }
+
+    @Test
+    void skipsRecordsThatAreNotTrades() {
+        ConsumerRecord<String, String> heartbeat = new ConsumerRecord<>(TradeArchiveIndex.TOPIC,
+            TradeArchiveIndex.PARTITION, 0, "heartbeat", "{}");
+        ReflectionTestUtils.invokeMethod(index, "index", heartbeat);
+
+        assertEquals(0, index.getIndexPointCount());
+        assertEquals(1, index.getIndexedOffset(), "Expected skipped records to be indexed past");
+        assertNull(index.getLastTradeTime());
+    }
+
+    @Test
+    void timeRangeOffsetsEncloseTheRange() {
+        indexTrades(60);
+        // points at offsets 0, 6, 12, ... at START + 0, 60s, 120s, ...
+        long from = START + 200_000;
+        long to = START + 400_000;
+
+        long start = index.startOffsetForTime(from);
+        long end = index.endOffsetForTime(to);
+
+        assertTrue(start <= 20, "Expected start at or before offset 20 of the range start, was " + start);
+        assertTrue(end > 40, "Expected end past offset 40 of the range end, was " + end);
+        assertEquals(12, start, "Expected one point before the floor point, for slightly out-of-order times");
+        assertEquals(48, end, "Expected one point after the higher point");
+    }
+
+    @Test
+    void timeRangeOffsetsAtTheEdgesOfTheIndex() {
+        indexTrades(60);
+
+        assertEquals(0, index.startOffsetForTime(START - 1), "Expected 0 before the first point");
+        assertEquals(0, index.startOffsetForTime(START + 30_000), "Expected 0 without a point before the floor");
+        assertEquals(-1, index.endOffsetForTime(START + 590_000), "Expected -1 at the end of the index");
+    }
+
+    @Test
+    void tidRangeOffsetsEncloseTheRange() {
+        indexTrades(60);
+
+        assertEquals(18, index.startOffsetForTid(1020), "Expected the floor point of tid 1020");
+        assertEquals(18, index.startOffsetForTid(1018), "Expected the point of tid 1018 itself");
+        assertEquals(42, index.endOffsetForTid(1040), "Expected the point after tid 1040");
+        assertEquals(0, index.startOffsetForTid(5), "Expected 0 before the first point");
+        assertEquals(-1, index.endOffsetForTid(1059), "Expected -1 at the end of the index");
+    }
+
+    @Test
+    void backfilledRecordsAreKeptApartFromThePoints() {
+        indexTrades(60);
+        // a gap of tids 1060..1062 backfilled after three more trades, with times before those
+        index(60, 1063, START + 630_000);
+        index(61, 1064, START + 640_000);
+        index(62, 1065, START + 650_000);
+        index(63, 1060, START + 600_000);
+        index(64, 1061, START + 610_000);
+        index(65, 1062, START + 620_000);
+        index(66, 1066, START + 660_000);
+
+        assertEquals(3, index.getLateRecordCount());
+        assertEquals(11, index.getIndexPointCount(), "Expected no points at the backfilled records");
+        assertEquals(54, index.startOffsetForTid(1061), "Expected the tid points to stay ordered by offset");
+        assertEquals(START + 660_000, index.getLastTradeTime());
+
+        List<TradeArchiveIndex.LateRecord> byTime = index.lateRecordsForTime(START + 605_000, START + 640_000);
+        assertEquals(List.of(64L, 65L), byTime.stream().map(TradeArchiveIndex.LateRecord::offset).toList());
+        assertEquals(1061, byTime.get(0).tid());
+        assertEquals(START + 610_000, byTime.get(0).tradeTime());
+        assertEquals(List.of(63L, 64L),
+            index.lateRecordsForTid(1000, 1061).stream().map(TradeArchiveIndex.LateRecord::offset).toList());
+        assertTrue(index.lateRecordsForTime(START, START + 590_000).isEmpty());
+    }
+
+    @Test
+    void aCheckpointedIndexIsLoadedBack() {
+        indexTrades(40);
+        index.checkpoint();
+
+        TradeArchiveIndex loaded = newIndex();
+        loaded.load();
+        assertEquals(40, loaded.getIndexedOffset(), "Expected the index as of the checkpoint");
+        assertEquals(7, loaded.getIndexPointCount());
+        assertEquals(START + 39 * 10_000L, loaded.getLastTradeTime());
+        assertEquals(18, loaded.startOffsetForTid(1020));
+        assertEquals(12, loaded.startOffsetForTime(START + 200_000));
+
+        // indexing resumes where the checkpoint left off, as if it had never stopped
+        for (int i = 40; i < 60; i++) {
+            index(i, 1000 + i, START + i * 10_000L);
+            ReflectionTestUtils.invokeMethod(loaded, "index", new ConsumerRecord<>(TradeArchiveIndex.TOPIC,
+                TradeArchiveIndex.PARTITION, i, String.valueOf(1000 + i), tradeJson(1000 + i, START + i * 10_000L)));
+        }
+        assertEquals(10, loaded.getIndexPointCount());
+        assertEquals(index.endOffsetForTime(START + 400_000), loaded.endOffsetForTime(START + 400_000));
+        assertEquals(0, loaded.getLateRecordCount(), "Expected the records after the checkpoint not taken as late");
+    }
+
+    @Test
+    void anUnreadableCheckpointIsIgnored() throws Exception {
+        Files.write(directory.resolve("archive-index-v1.dat"), new byte[] {0, 0, 0, 1, 0, 0});
+
+        index.load();
+        assertEquals(0, index.getIndexedOffset(), "Expected indexing from the start");
+        assertEquals(0, index.getIndexPointCount());
+        assertFalse(index.isComplete(), "Expected the index incomplete before the topic end is known");
+    }
+}
@@ -0,0 +1,238 @@
+package com.ibbe.kafka;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibbe.entity.Order;
+import com.ibbe.entity.OrderBookPayload;
+import com.ibbe.entity.Trade;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TradeCleanserTest {
+
+    private static final long START = Instant.parse("2024-03-10T12:00:00Z").toEpochMilli();
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    private TradeCleanser cleanser;
+    private TradeGapLog gapLog;
+    private MockProducer<String, String> producer;
+
+    @BeforeEach
+    void setUp() {
+        gapLog = new TradeGapLog();
+        ReflectionTestUtils.setField(gapLog, "logDir", directory.toString());
+        cleanser = new TradeCleanser();
+        ReflectionTestUtils.setField(cleanser, "gapLog", gapLog);
+        ReflectionTestUtils.setField(cleanser, "reorderBuffer", new TradeCleanser.ReorderBuffer(Long.MIN_VALUE));
+        producer = new MockProducer<>(true, new StringSerializer(), new StringSerializer());
+    }
+
+    /**
+     * a raw record of a trade, with the trade ID as stored (Bitso ID times 10) and a time of START + tid seconds
+     */
+    private static ConsumerRecord<String, String> raw(long offset, long tid) throws Exception {
+        OrderBookPayload book = new OrderBookPayload(
+            new Order[]{new Order(null, new BigDecimal("1235.5"), new BigDecimal("0.5"), null)},
+            new Order[]{new Order(null, new BigDecimal("1233.5"), new BigDecimal("0.5"), null)},
+            new Timestamp(START), 1);
+        Trade trade = Trade.builder()
+            .tid(tid)
+            .createdAtMillis(START + tid * 1000)
+            .price(new BigDecimal("1234.50"))
+            .amount(new BigDecimal("0.01"))
+            .makerSide("buy")
+            .obp(book)
+            .build();
+        return new ConsumerRecord<>(TradeArchiveIndex.TOPIC, TradeArchiveIndex.PARTITION, offset,
+            String.valueOf(tid), objectMapper.writeValueAsString(trade));
+    }
+
+    private void cleanse(ConsumerRecord<String, String> record) {
+        ReflectionTestUtils.invokeMethod(cleanser, "cleanse", producer, record);
+    }
+
+    private void release(long nextOffset) {
+        ReflectionTestUtils.invokeMethod(cleanser, "release", producer, nextOffset);
+    }
+
+    private static long header(ProducerRecord<String, String> record, String name) {
+        return Long.parseLong(new String(record.headers().lastHeader(name).value(), StandardCharsets.UTF_8));
+    }
+
+    private List<String> curatedKeys() {
+        return producer.history().stream()
+            .filter(record -> record.topic().equals(TradeCleanser.CURATED_TOPIC))
+            .map(ProducerRecord::key)
+            .toList();
+    }
+
+    @Test
+    void theRawTradesAreCurated() throws Exception {
+        assertNotNull(TradeCleanser.validate("1000", raw(0, 1000).value()).trade(), "Expected the test trade to pass");
+        assertEquals("key is not a trade ID", TradeCleanser.validate("heartbeat", raw(0, 1000).value()).reason());
+        assertEquals("no orderbook payload", TradeCleanser.validate("1000", "{\"tid\":1000}").reason());
+    }
+
+    @Test
+    void openGapsHoldBackFromTheirFirstTrade() {
+        long now = START + 3_600_000;
+        TradeGapLog.Gap recent = new TradeGapLog.Gap(12, 13, now - 2000, now - 1000);
+        TradeGapLog.Gap later = new TradeGapLog.Gap(20, 21, now - 900, now - 800);
+        TradeGapLog.Gap stale = new TradeGapLog.Gap(5, 6, START, START + 1000);
+        TradeGapLog.Gap untimed = new TradeGapLog.Gap(7, 8, Trade.NO_TIME, Trade.NO_TIME);
+
+        assertEquals(120, TradeCleanser.heldBackFrom(List.of(later, recent), now, 600_000),
+            "Expected the first trade of the earliest gap, as stored (times 10)");
+        assertEquals(200, TradeCleanser.heldBackFrom(List.of(stale, later, untimed), now, 600_000),
+            "Expected gaps older than the maximum wait and gaps without times to hold nothing back");
+        assertEquals(Long.MAX_VALUE, TradeCleanser.heldBackFrom(List.of(), now, 600_000));
+    }
+
+    @Test
+    void theReorderBufferReleasesInTradeIdOrder() throws Exception {
+        TradeCleanser.ReorderBuffer buffer = new TradeCleanser.ReorderBuffer(50);
+        assertFalse(buffer.hold(50, 0, null), "Expected the last trade curated not to be held again");
+        assertTrue(buffer.hold(100, 1, null));
+        assertTrue(buffer.hold(140, 2, null));
+        assertTrue(buffer.hold(110, 3, null));
+        assertFalse(buffer.hold(140, 4, null), "Expected a trade held already not to be held twice");
+
+        List<TradeCleanser.ReorderBuffer.Held> released = buffer.release(120);
+        assertEquals(List.of(1L, 3L), released.stream().map(TradeCleanser.ReorderBuffer.Held::rawOffset).toList(),
+            "Expected the trades below 120 in trade ID order");
+        assertEquals(110, buffer.getReleasedTid());
+        assertEquals(2, buffer.lowestRawOffset());
+        assertFalse(buffer.hold(105, 5, null), "Expected a trade below one released to be too late");
+
+        assertEquals(1, buffer.release(Long.MAX_VALUE).size());
+        assertEquals(0, buffer.size());
+        assertEquals(Long.MAX_VALUE, buffer.lowestRawOffset());
+    }
+
+    @Test
+    void backfilledTradesAreCuratedInTradeIdOrder() throws Exception {
+        // trades 120 and 130 were missed; the trades after the gap are in the raw topic before them
+        gapLog.append(new TradeGapLog.Gap(12, 13, START + 110_000, System.currentTimeMillis()));
+        cleanse(raw(0, 100));
+        cleanse(raw(1, 110));
+        cleanse(raw(2, 140));
+        cleanse(raw(3, 150));
+        release(4);
+
+        assertEquals(List.of("100", "110"), curatedKeys(), "Expected the trades after the gap to be held back");
+        List<ProducerRecord<String, String>> history = producer.history();
+        assertEquals(1, header(history.get(0), TradeCleanser.RESUME_OFFSET_HEADER),
+            "Expected the next record of the batch to be read again after the first");
+        assertEquals(2, header(history.get(1), TradeCleanser.RESUME_OFFSET_HEADER),
+            "Expected the held records to be read again on a restart");
+        assertEquals(START + 100_000, history.get(0).timestamp(), "Expected the trade time as the timestamp");
+
+        release(4);
+        assertEquals(2, curatedKeys().size(), "Expected nothing released while the gap is open");
+
+        cleanse(raw(4, 120));
+        cleanse(raw(5, 130));
+        gapLog.remove(gapLog.read().get(0));
+        release(6);
+
+        assertEquals(List.of("100", "110", "120", "130", "140", "150"), curatedKeys());
+        history = producer.history();
+        assertEquals(2, header(history.get(2), TradeCleanser.RESUME_OFFSET_HEADER),
+            "Expected the trades after 120 still to be read from the first held");
+        assertEquals(3, header(history.get(4), TradeCleanser.RESUME_OFFSET_HEADER));
+        assertEquals(6, header(history.get(5), TradeCleanser.RESUME_OFFSET_HEADER),
+            "Expected the last record to resume after the batch");
+        assertEquals(3, header(history.get(5), TradeCleanser.RAW_OFFSET_HEADER));
+        assertEquals(START + 120_000, history.get(2).timestamp());
+    }
+
+    @Test
+    void tradesAfterALaterCuratedTradeAreQuarantinedAsLate() throws Exception {
+        cleanse(raw(0, 100));
+        cleanse(raw(1, 110));
+        release(2);
+        // backfilled without a logged gap, e.g. after the wait for the gap ran out
+        cleanse(raw(2, 105));
+        cleanse(raw(3, 120));
+        release(4);
+
+        assertEquals(List.of("100", "110", "120"), curatedKeys(), "Expected the late trade left out");
+        List<ProducerRecord<String, String>> quarantined = producer.history().stream()
+            .filter(record -> record.topic().equals(TradeCleanser.DEAD_LETTER_TOPIC))
+            .toList();
+        assertEquals(1, quarantined.size(), "Expected the late trade quarantined");
+        assertEquals("105", quarantined.get(0).key());
+        assertEquals(2, header(quarantined.get(0), TradeCleanser.RAW_OFFSET_HEADER));
+        assertEquals("late: trade 110 was curated already",
+            new String(quarantined.get(0).headers().lastHeader(TradeCleanser.REASON_HEADER).value(),
+                StandardCharsets.UTF_8));
+        assertEquals(1, cleanser.getLateCount());
+    }
+
+    @Test
+    void aTradeHeldAlreadyIsQuarantinedAsADuplicate() throws Exception {
+        gapLog.append(new TradeGapLog.Gap(11, 11, START + 100_000, System.currentTimeMillis()));
+        cleanse(raw(0, 100));
+        cleanse(raw(1, 120));
+        cleanse(raw(2, 120));
+
+        List<ProducerRecord<String, String>> history = producer.history();
+        assertEquals(1, history.size(), "Expected only the duplicate written while 120 is held back");
+        assertEquals(TradeCleanser.DEAD_LETTER_TOPIC, history.get(0).topic());
+        assertEquals("duplicate: trade 120 is held already",
+            new String(history.get(0).headers().lastHeader(TradeCleanser.REASON_HEADER).value(),
+                StandardCharsets.UTF_8));
+        assertEquals(1, cleanser.getLateCount());
+    }
+
+    @Test
+    void quarantinedRecordsResumeFromTheHeldRecords() throws Exception {
+        gapLog.append(new TradeGapLog.Gap(11, 11, START + 100_000, System.currentTimeMillis()));
+        cleanse(raw(0, 100));
+        cleanse(raw(1, 120));
+        ConsumerRecord<String, String> rejected = new ConsumerRecord<>(TradeArchiveIndex.TOPIC,
+            TradeArchiveIndex.PARTITION, 2, START, TimestampType.CREATE_TIME, 3, 2, "130", "{}", new RecordHeaders(),
+            Optional.empty());
+        cleanse(rejected);
+        // the same record read again after a restart
+        cleanse(rejected);
+
+        List<ProducerRecord<String, String>> quarantined = producer.history();
+        assertEquals(1, quarantined.size(), "Expected the record quarantined once");
+        assertEquals(TradeCleanser.DEAD_LETTER_TOPIC, quarantined.get(0).topic());
+        assertEquals(0, header(quarantined.get(0), TradeCleanser.RESUME_OFFSET_HEADER),
+            "Expected the trades held back to be read again on a restart");
+    }
+
+    @Test
+    void legacyRecordsResumeAfterTheirRawRecord() {
+        assertEquals(0, TradeCleanser.resumeOffset(null), "Expected an empty topic to resume from the start");
+
+        ConsumerRecord<String, String> legacy = new ConsumerRecord<>(TradeCleanser.CURATED_TOPIC, 0, 7, "100", "");
+        legacy.headers().add(TradeCleanser.RAW_OFFSET_HEADER, "41".getBytes(StandardCharsets.UTF_8));
+        assertEquals(42, TradeCleanser.resumeOffset(legacy));
+
+        legacy.headers().add(TradeCleanser.RESUME_OFFSET_HEADER, "39".getBytes(StandardCharsets.UTF_8));
+        assertEquals(39, TradeCleanser.resumeOffset(legacy), "Expected the resume offset when there is one");
+    }
+}
@@ -0,0 +1,85 @@
+package com.ibbe.kafka;
+
+import com.ibbe.entity.TradeWs;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TradeIngestGuardTest {
+
+    private static final long START = Instant.parse("2024-03-10T12:00:00Z").toEpochMilli();
+
+    @TempDir
+    Path directory;
+
+    private final TradeArchiveIndex archiveIndex = new TradeArchiveIndex();
+    private final TradeGapLog gapLog = new TradeGapLog();
+    private final TradeIngestGuard guard = new TradeIngestGuard();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(archiveIndex, "indexDir", directory.resolve("index").toString());
+        ReflectionTestUtils.setField(gapLog, "logDir", directory.resolve("ingest").toString());
+        ReflectionTestUtils.setField(guard, "gapLog", gapLog);
+        ReflectionTestUtils.setField(guard, "archiveIndex", archiveIndex);
+        ReflectionTestUtils.setField(guard, "windowSize", 1024);
+        ReflectionTestUtils.setField(guard, "bloomExpected", 10_000L);
+        guard.init();
+    }
+
+    /**
+     * indexes the trades of an earlier run at offsets 0..count-1, tids 1000.., one per second
+     */
+    private void archive(int count) {
+        for (int i = 0; i < count; i++) {
+            String json = "{\"obo\":{\"bids\":[],\"asks\":[]},\"price\":100.5,\"tid\":" + (1000 + i)
+                + ",\"createdAt\":\"" + Instant.ofEpochMilli(START + i * 1000L) + "\"}";
+            ReflectionTestUtils.invokeMethod(archiveIndex, "index", new ConsumerRecord<>(TradeArchiveIndex.TOPIC,
+                TradeArchiveIndex.PARTITION, i, String.valueOf(1000 + i), json));
+        }
+        ReflectionTestUtils.setField(archiveIndex, "endOffset", (long) count);
+    }
+
+    private static TradeWs trade(long tid, long millis) {
+        return new TradeWs(tid, String.valueOf(millis), new BigDecimal("0.01"), new BigDecimal("100.5"), null, null,
+            null, "1");
+    }
+
+    @Test
+    void tradesMissedWhileDownAreLoggedAsAGap() {
+        archive(50);
+        long restarted = START + 3_600_000L;
+
+        assertTrue(guard.admit(trade(1100, restarted)));
+
+        assertEquals(List.of(new TradeGapLog.Gap(1050, 1099, START + 49_000L, restarted)), gapLog.read());
+        assertTrue(guard.isIngested(1049), "Expected the highest archived trade ID seen");
+        assertFalse(guard.admit(trade(1049, START + 49_000L)), "Expected the archived trade a duplicate");
+        assertEquals(1100, guard.getHighestTid());
+    }
+
+    @Test
+    void noGapWhenTheFirstTradeFollowsTheArchive() {
+        archive(50);
+        assertTrue(guard.admit(trade(1050, START + 50_000L)));
+        assertTrue(guard.admit(trade(1051, START + 51_000L)));
+        assertTrue(gapLog.read().isEmpty(), "Expected no gap but got " + gapLog.read());
+    }
+
+    @Test
+    void anEmptyArchiveSeedsNothing() {
+        assertTrue(guard.admit(trade(1100, START)));
+        assertTrue(guard.admit(trade(1101, START + 1000L)));
+        assertTrue(gapLog.read().isEmpty());
+        assertFalse(guard.isIngested(1099));
+    }
+}
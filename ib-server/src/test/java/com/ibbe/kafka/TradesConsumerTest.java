@@ -0,0 +1,197 @@
+package com.ibbe.kafka;
+
+import com.ibbe.entity.Order;
+import com.ibbe.entity.OrderBookPayload;
+import com.ibbe.entity.Trade;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TradesConsumerTest {
+
+    private final TopicPartition partition = new TopicPartition(TradeCleanser.CURATED_TOPIC, 0);
+    private final TradesConsumer tradesConsumer = new TradesConsumer();
+    private MockConsumer<String, String> kafka;
+
+    @BeforeEach
+    void setUp() {
+        kafka = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        kafka.assign(List.of(partition));
+        kafka.updateBeginningOffsets(Map.of(partition, 3L));
+        ReflectionTestUtils.setField(tradesConsumer, "consumer", kafka);
+    }
+
+    private long resumePosition() {
+        ReflectionTestUtils.invokeMethod(tradesConsumer, "seekToResume", partition);
+        return kafka.position(partition);
+    }
+
+    @Test
+    void startsAtTheBeginningWithoutAStartOffset() {
+        assertEquals(3, resumePosition());
+    }
+
+    @Test
+    void reconnectBeforeAnyFetchResumesAtTheStartOffset() {
+        tradesConsumer.setStartOffset(120);
+        assertEquals(120, resumePosition(), "Expected a reconnect before the first fetch to keep the start offset");
+    }
+
+    @Test
+    void reconnectAfterAFetchResumesPastIt() {
+        tradesConsumer.setStartOffset(120);
+        ReflectionTestUtils.setField(tradesConsumer, "fetchedOffset", 150L);
+        assertEquals(151, resumePosition());
+    }
+
+    /**
+     * @return a consumer of the topic from offset 3 whose records are stamped with the times, looked up the way the
+     * broker looks up offsetsForTimes: the first offset stamped at or after the time
+     */
+    private MockConsumer<String, String> stampedTopic(long... times) {
+        MockConsumer<String, String> lookup = new MockConsumer<>(OffsetResetStrategy.EARLIEST) {
+            @Override
+            public synchronized Map<TopicPartition, OffsetAndTimestamp> offsetsForTimes(
+                Map<TopicPartition, Long> timestampsToSearch) {
+                Map<TopicPartition, OffsetAndTimestamp> found = new HashMap<>();
+                timestampsToSearch.forEach((searched, millis) -> {
+                    for (int i = 0; i < times.length; i++) {
+                        if (times[i] >= millis) {
+                            found.put(searched, new OffsetAndTimestamp(3 + i, times[i]));
+                            break;
+                        }
+                    }
+                });
+                return found;
+            }
+
+            @Override
+            public Map<TopicPartition, OffsetAndTimestamp> offsetsForTimes(Map<TopicPartition, Long> timestampsToSearch,
+                                                                           Duration timeout) {
+                return offsetsForTimes(timestampsToSearch);
+            }
+        };
+        lookup.updateBeginningOffsets(Map.of(partition, 3L));
+        lookup.updateEndOffsets(Map.of(partition, 3L + times.length));
+        return lookup;
+    }
+
+    @Test
+    void timeRangesResolveToTheOffsetsStampedInThem() {
+        MockConsumer<String, String> lookup = stampedTopic(1000, 2000, 2000, 3000, 4000);
+        assertArrayEquals(new long[]{4, 6}, TradesConsumer.offsetsForTimes(lookup, 2000, 3000));
+        assertArrayEquals(new long[]{4, 6}, TradesConsumer.offsetsForTimes(lookup, 1500, 2500),
+            "Expected bounds between records to round up");
+        assertArrayEquals(new long[]{3, 8}, TradesConsumer.offsetsForTimes(lookup, 0, 0),
+            "Expected no bounds to cover the whole topic");
+        assertArrayEquals(new long[]{6, 8}, TradesConsumer.offsetsForTimes(lookup, 3000, 9000),
+            "Expected an end after the last record to be the end of the topic");
+        assertArrayEquals(new long[]{8, 8}, TradesConsumer.offsetsForTimes(lookup, 5000, 0),
+            "Expected a start after the last record to be an empty range");
+        assertArrayEquals(new long[]{6, 6}, TradesConsumer.offsetsForTimes(lookup, 3000, 1000),
+            "Expected an end before the start to be an empty range");
+    }
+
+    /**
+     * @return a consumer of the mock topic whose record at the offset decodes the given time after all others
+     */
+    private TradesConsumer slowToDecode(long slowOffset, long delayMillis, List<Long> decoded) {
+        return new TradesConsumer() {
+            @Override
+            Consumer<String, String> createConsumer() {
+                return kafka;
+            }
+
+            @Override
+            CompletableFuture<Trade> decode(ConsumerRecord<String, String> record) {
+                Executor executor = record.offset() == slowOffset
+                    ? CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS) : Runnable::run;
+                return CompletableFuture.supplyAsync(() -> {
+                    decoded.add(record.offset());
+                    return unpackTrade(record);
+                }, executor);
+            }
+        };
+    }
+
+    private void addTrades(long fromOffset, int count) {
+        for (long offset = fromOffset; offset < fromOffset + count; offset++) {
+            OrderBookPayload book = new OrderBookPayload(
+                new Order[]{new Order(null, new BigDecimal("1001"), new BigDecimal("1"), null)},
+                new Order[]{new Order(null, new BigDecimal("999"), new BigDecimal("1"), null)}, null, offset);
+            Trade trade = Trade.builder()
+                .tid(offset * 10)
+                .createdAtMillis(1_710_072_000_000L + offset)
+                .price(new BigDecimal("1000"))
+                .amount(new BigDecimal("0.01"))
+                .makerSide("buy")
+                .obp(book)
+                .build();
+            kafka.addRecord(new ConsumerRecord<>(TradeCleanser.CURATED_TOPIC, 0, offset, String.valueOf(offset * 10),
+                CuratedTradeCodec.encode(trade)));
+        }
+    }
+
+    @Test
+    void tradesDecodedOutOfOrderAreHandledInOffsetOrderUpToTheEnd() {
+        addTrades(3, 20);
+        List<Long> decoded = Collections.synchronizedList(new ArrayList<>());
+        TradesConsumer pipelined = slowToDecode(3, 200, decoded);
+        pipelined.setEndOffset(18);
+        List<Long> handledOffsets = new ArrayList<>();
+        List<Long> handledTids = new ArrayList<>();
+        pipelined.registerMessageHandler(trade -> {
+            handledOffsets.add(pipelined.getLastOffset());
+            handledTids.add(trade.getTid());
+            return true;
+        });
+
+        assertTrue(pipelined.runConsumer());
+
+        assertNotEquals(3L, decoded.get(0), "Expected the first record decoded after the ones behind it");
+        List<Long> expectedOffsets = new ArrayList<>();
+        List<Long> expectedTids = new ArrayList<>();
+        for (long offset = 3; offset < 18; offset++) {
+            expectedOffsets.add(offset);
+            expectedTids.add(offset * 10);
+        }
+        assertEquals(expectedOffsets, handledOffsets, "Expected the trades handled in offset order");
+        assertEquals(expectedTids, handledTids);
+        assertTrue(pipelined.isEndReached(), "Expected the consumer stopped at its end offset");
+        assertFalse(pipelined.isRunning());
+    }
+
+    @Test
+    void theEndOffsetStopsAnIdleTopic() {
+        addTrades(3, 5);
+        TradesConsumer pipelined = slowToDecode(7, 100, Collections.synchronizedList(new ArrayList<>()));
+        pipelined.setEndOffset(8);
+        List<Long> handledTids = new ArrayList<>();
+        pipelined.registerMessageHandler(trade -> handledTids.add(trade.getTid()));
+
+        // no record at the end offset ever arrives; the consumer's position says it has passed it
+        assertTrue(pipelined.runConsumer());
+
+        assertEquals(List.of(30L, 40L, 50L, 60L, 70L), handledTids);
+        assertTrue(pipelined.isEndReached());
+    }
+}
@@ -0,0 +1,138 @@
+package com.ibbe.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibbe.entity.BitsoDataAggregator;
+import com.ibbe.entity.Order;
+import com.ibbe.entity.OrderBookPayload;
+import com.ibbe.entity.TradeWs;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class OrderbookPublisherServiceTest {
+
+    private static final int TOP_X = 3;
+
+    private BitsoDataAggregator aggregator;
+    private SimpMessagingTemplate messagingTemplate;
+    private ObjectMapper objectMapper;
+    private OrderbookPublisherService publisher;
+
+    @BeforeEach
+    void setUp() {
+        aggregator = Mockito.mock(BitsoDataAggregator.class);
+        messagingTemplate = Mockito.mock(SimpMessagingTemplate.class);
+        objectMapper = Mockito.spy(new ObjectMapper());
+        when(aggregator.getRecentTrades(anyInt())).thenReturn(new Object[0]);
+        publisher = new OrderbookPublisherService();
+        ReflectionTestUtils.setField(publisher, "bitsoDataAggregator", aggregator);
+        ReflectionTestUtils.setField(publisher, "messagingTemplate", messagingTemplate);
+        ReflectionTestUtils.setField(publisher, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(publisher, "topX", TOP_X);
+        publisher.init();
+    }
+
+    @Test
+    void serializesOncePerVersionAndSkipsUnchangedBooks() throws Exception {
+        when(aggregator.getOrderbookPayload()).thenReturn(book(1));
+        when(aggregator.getMostRecentTrade()).thenReturn(trade(100L));
+
+        publisher.publishOrderbookData();
+        publisher.publishOrderbookData();
+        publisher.publishOrderbookData();
+
+        // the full and the top payload, once
+        verify(objectMapper, times(2)).writeValueAsBytes(any());
+        verify(messagingTemplate, times(1)).send(eq(OrderbookPublisherService.ORDERBOOK_TOPIC), any());
+        verify(messagingTemplate, times(1)).send(eq(OrderbookPublisherService.ORDERBOOK_TOP_TOPIC), any());
+    }
+
+    @Test
+    void newBookSequenceOrNewTradeIsANewVersion() throws Exception {
+        when(aggregator.getOrderbookPayload()).thenReturn(book(1));
+        when(aggregator.getMostRecentTrade()).thenReturn(trade(100L));
+        publisher.publishOrderbookData();
+
+        when(aggregator.getOrderbookPayload()).thenReturn(book(2));
+        publisher.publishOrderbookData();
+
+        when(aggregator.getMostRecentTrade()).thenReturn(trade(101L));
+        publisher.publishOrderbookData();
+
+        verify(objectMapper, times(6)).writeValueAsBytes(any());
+        verify(messagingTemplate, times(3)).send(eq(OrderbookPublisherService.ORDERBOOK_TOPIC), any());
+    }
+
+    @Test
+    void newSubscriberGetsTheCachedBytesWithoutSerializingAgain() throws Exception {
+        when(aggregator.getOrderbookPayload()).thenReturn(book(1));
+        when(aggregator.getMostRecentTrade()).thenReturn(trade(100L));
+        publisher.publishOrderbookData();
+
+        publisher.onSubscribe(subscription(OrderbookPublisherService.ORDERBOOK_TOP_TOPIC));
+        publisher.publishOrderbookData();
+        // the request is served once
+        publisher.publishOrderbookData();
+
+        verify(objectMapper, times(2)).writeValueAsBytes(any());
+        verify(messagingTemplate, times(2)).send(eq(OrderbookPublisherService.ORDERBOOK_TOPIC), any());
+        verify(messagingTemplate, times(2)).send(eq(OrderbookPublisherService.ORDERBOOK_TOP_TOPIC), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void topTopicIsLimitedToTopXLevels() throws Exception {
+        when(aggregator.getOrderbookPayload()).thenReturn(book(1));
+        publisher.publishOrderbookData();
+
+        ArgumentCaptor<Message<?>> full = ArgumentCaptor.forClass(Message.class);
+        ArgumentCaptor<Message<?>> top = ArgumentCaptor.forClass(Message.class);
+        verify(messagingTemplate).send(eq(OrderbookPublisherService.ORDERBOOK_TOPIC), full.capture());
+        verify(messagingTemplate).send(eq(OrderbookPublisherService.ORDERBOOK_TOP_TOPIC), top.capture());
+        JsonNode fullBook = new ObjectMapper().readTree((byte[]) full.getValue().getPayload());
+        JsonNode topBook = new ObjectMapper().readTree((byte[]) top.getValue().getPayload());
+        assertEquals(10, fullBook.path("payload").path("asks").size());
+        assertEquals(TOP_X, topBook.path("payload").path("asks").size());
+        assertEquals(TOP_X, topBook.path("payload").path("bids").size());
+        verify(messagingTemplate, never()).convertAndSend(anyString(), any(Object.class));
+    }
+
+    private static OrderBookPayload book(long sequence) {
+        Order[] asks = new Order[10];
+        Order[] bids = new Order[10];
+        for (int i = 0; i < 10; i++) {
+            asks[i] = new Order("btc_mxn", BigDecimal.valueOf(101 + i), BigDecimal.ONE, "a" + i);
+            bids[i] = new Order("btc_mxn", BigDecimal.valueOf(99 - i), BigDecimal.ONE, "b" + i);
+        }
+        return new OrderBookPayload(asks, bids, null, sequence);
+    }
+
+    private static TradeWs trade(Long tid) {
+        return new TradeWs(tid, "1700000000000", BigDecimal.ONE, BigDecimal.valueOf(100), BigDecimal.valueOf(100),
+            "m", "t", "buy");
+    }
+
+    private static SessionSubscribeEvent subscription(String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setDestination(destination);
+        return new SessionSubscribeEvent(new Object(), MessageBuilder.createMessage(new byte[0],
+            accessor.getMessageHeaders()));
+    }
+}
@@ -0,0 +1,122 @@
+package com.ibbe.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ibbe.entity.FxTradesDisplayData;
+import com.ibbe.entity.TradeConfig;
+import com.ibbe.executor.SessionExecutor;
+import com.ibbe.executor.TraderFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class TradingMonitorEndpointTest {
+
+    private static final String TRADER_ID = "monitored";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SessionExecutor sessionExecutor = new SessionExecutor();
+    private final FxTradesDisplayData displayData = new FxTradesDisplayData();
+    private final List<BigDecimal> receivedPrices = new CopyOnWriteArrayList<>();
+    private TraderFactory traderFactory;
+    private TradingMonitorEndpoint endpoint;
+    private WebSocketSession session;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        traderFactory = Mockito.mock(TraderFactory.class);
+        when(traderFactory.getTraderDisplayData(TRADER_ID)).thenReturn(displayData);
+        endpoint = new TradingMonitorEndpoint();
+        endpoint.traderFactory = traderFactory;
+        endpoint.sessionExecutor = sessionExecutor;
+        ReflectionTestUtils.setField(endpoint, "coalesceMillis", 1L);
+
+        session = Mockito.mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("session-1");
+        when(session.isOpen()).thenReturn(true);
+        // a slow client, so that newer display data is ready while older data is still being sent
+        doAnswer(invocation -> {
+            TextMessage message = invocation.getArgument(0);
+            receivedPrices.add(objectMapper.readTree(message.getPayload()).path("latestPrice").decimalValue());
+            Thread.sleep(5);
+            return null;
+        }).when(session).sendMessage(any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        endpoint.shutdown();
+        sessionExecutor.shutdown();
+    }
+
+    @Test
+    void sendsDisplayDataInOrderAndEndsWithTheNewest() throws Exception {
+        PropertyChangeListener listener = subscribe();
+
+        for (int price = 1; price <= 100; price++) {
+            synchronized (displayData) {
+                displayData.setLatestPrice(BigDecimal.valueOf(price));
+            }
+            listener.propertyChange(new PropertyChangeEvent(traderFactory, TRADER_ID, null, displayData));
+            Thread.sleep(1);
+        }
+
+        awaitPrice(BigDecimal.valueOf(100));
+        for (int i = 1; i < receivedPrices.size(); i++) {
+            assertTrue(receivedPrices.get(i).compareTo(receivedPrices.get(i - 1)) >= 0,
+                "Display data went back from " + receivedPrices.get(i - 1) + " to " + receivedPrices.get(i));
+        }
+        assertTrue(receivedPrices.size() < 100, "Updates arriving while sending should be coalesced");
+    }
+
+    @Test
+    void closingTheSessionStopsListeningToTheTrader() throws Exception {
+        PropertyChangeListener listener = subscribe();
+        awaitPrice(displayData.getLatestPrice());
+
+        endpoint.afterConnectionClosed(session, CloseStatus.NORMAL);
+
+        verify(traderFactory).removeDisplayListener(TRADER_ID, listener);
+        assertEquals(0, sessionExecutor.getTaskCount("session-1"));
+    }
+
+    /**
+     * subscribes the session to the trader and waits for the initial push
+     *
+     * @return the listener the endpoint registered with the trader factory
+     */
+    private PropertyChangeListener subscribe() throws Exception {
+        TradeConfig config = new TradeConfig(TRADER_ID, "3", "2", false, false, false, false);
+        endpoint.handleTextMessage(session, new TextMessage(objectMapper.writeValueAsString(config)));
+        ArgumentCaptor<PropertyChangeListener> listener = ArgumentCaptor.forClass(PropertyChangeListener.class);
+        verify(traderFactory).addDisplayListener(eq(TRADER_ID), listener.capture());
+        return listener.getValue();
+    }
+
+    private void awaitPrice(BigDecimal price) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline
+            && (receivedPrices.isEmpty() || receivedPrices.get(receivedPrices.size() - 1).compareTo(price) != 0)) {
+            Thread.sleep(5);
+        }
+        assertFalse(receivedPrices.isEmpty(), "Nothing was sent");
+        assertEquals(0, price.compareTo(receivedPrices.get(receivedPrices.size() - 1)),
+            "The last display data sent should be the newest");
+    }
+}